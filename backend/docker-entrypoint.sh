@@ -86,6 +86,11 @@ if [ ! -z "$WEBP_PROCESSOR_MAX_RETRIES" ]; then
   sed -i "s|webp-processor.max-retries=.*|webp-processor.max-retries=$WEBP_PROCESSOR_MAX_RETRIES|g" "$CONFIG_FILE"
 fi
 
+if [ ! -z "$WEBP_PROCESSOR_SHARED_FRAMES_DIRECTORY" ]; then
+  mkdir -p "$WEBP_PROCESSOR_SHARED_FRAMES_DIRECTORY"
+  sed -i "s|webp-processor.shared-frames-directory=.*|webp-processor.shared-frames-directory=$WEBP_PROCESSOR_SHARED_FRAMES_DIRECTORY|g" "$CONFIG_FILE"
+fi
+
 # 自定义服务器端口
 if [ ! -z "$SERVER_PORT" ]; then
   sed -i "s|server.port=.*|server.port=$SERVER_PORT|g" "$CONFIG_FILE"
@@ -55,12 +55,109 @@ public class ParallelProcessingConfig {
      */
     private long taskTimeout = 60000L;
     
+    /**
+     * 图像编码等待超时时间（毫秒）
+     * 等待整张图片写入或一帧编码到GIF的最长时间，大图串行编码可能远超单帧处理时间；不大于0时不限制
+     */
+    private long encodeTimeout = 600000L;
+    
     /**
      * 进度监听器清理延迟（毫秒）
      * 进度监听器在任务完成后的清理延迟时间
      */
     private long progressCleanupDelay = 60000L;
-    
+
+    /**
+     * 是否启用静态大图的分带并行文本生成
+     * 启用后，像素数超过阈值的静态图像会按行分带，由ForkJoin线程池并行生成字符文本
+     */
+    private boolean bandParallelEnabled = true;
+
+    /**
+     * 分带并行的最小字符数阈值
+     * 输出字符数（缩放后的像素数）低于该值时仍使用单线程生成，避免任务调度开销
+     */
+    private int bandParallelMinPixels = 1000000;
+
+    /**
+     * 是否启用单张字符画图片的分条并行渲染
+     * 启用后，字符数超过阈值的静态图像在使用字形图集渲染时按水平条带拆分，由ForkJoin线程池并行渲染
+     */
+    private boolean stripParallelEnabled = true;
+
+    /**
+     * 分条并行渲染的最小字符数阈值
+     * 字符画的字符数低于该值时仍使用单线程渲染，避免任务调度开销
+     */
+    private int stripParallelMinChars = 20000;
+
+    /**
+     * 图像编码线程数
+     * 所有字符画图片写入和GIF帧编码任务共用一个固定大小的编码线程池，避免为每张图片或每一帧创建线程池
+     */
+    private int encoderThreads = 2;
+
+    /**
+     * 是否在内存中传递GIF动画帧
+     * 启用后，渲染完成的字符画帧直接按顺序交给GIF编码器，不再写入PNG临时文件再读回；关闭时每帧都写入临时文件
+     */
+    private boolean inMemoryFramesEnabled = true;
+
+    /**
+     * 内存中等待编码的GIF动画帧的内存预算（MB）
+     * 已渲染但尚未编码的帧占用的像素内存超过该值时，后续完成的帧写入PNG临时文件，编码时再读回
+     */
+    private int frameMemoryBudgetMb = 256;
+
+    /**
+     * 是否并行编码GIF帧
+     * 启用后，每帧的调色板量化、像素索引映射和LZW压缩在帧处理线程中完成，只有按帧序写出帧数据是串行的；
+     * 关闭时使用AnimatedGifEncoder逐帧串行编码
+     */
+    private boolean gifParallelEncodingEnabled = true;
+
+    /**
+     * GIF源帧预解码窗口（帧数）
+     * 源GIF按帧序逐帧解码，最多有该数量的帧已解码但尚未编码，用于限制源帧占用的内存；0表示使用帧处理线程数的2倍
+     */
+    private int gifDecodeWindow = 0;
+
+    /**
+     * 是否启用动画重复帧检测
+     * 启用后，字符网格和单元格颜色完全相同的帧复用已渲染的输出，连续相同的帧合并为一帧并累加延迟，适用于GIF和WebP动画
+     */
+    private boolean duplicateFrameDetectionEnabled = true;
+
+    /**
+     * 重复帧检测缓存的帧数
+     * 按最近使用保留该数量的不同帧内容及其渲染输出，被淘汰的内容再次出现时重新渲染
+     */
+    private int duplicateFrameCacheSize = 16;
+
+    /**
+     * 动画帧流水线文本生成阶段的线程数
+     * 动画帧按"解码 → 文本生成 → 图像生成 → 编码"分阶段处理，各阶段由各自的线程处理；0表示使用帧处理线程数
+     */
+    private int pipelineTextThreads = 0;
+
+    /**
+     * 动画帧流水线图像生成阶段的线程数
+     * 0表示使用帧处理线程数
+     */
+    private int pipelineRenderThreads = 0;
+
+    /**
+     * 动画帧流水线编码阶段的线程数
+     * 编码阶段完成GIF帧的量化和LZW压缩或字符画帧PNG文件的写出；0表示使用帧处理线程数
+     */
+    private int pipelineEncodeThreads = 0;
+
+    /**
+     * 动画帧流水线阶段之间队列的容量（帧数）
+     * 下游阶段的队列已满时上游阶段等待，较慢的阶段由此限制上游的处理速度；0表示使用帧处理线程数
+     */
+    private int pipelineQueueCapacity = 0;
+
     /**
      * 计算实际使用的线程数
      * <p>
@@ -75,4 +172,16 @@ public class ParallelProcessingConfig {
         int cpuBasedThreads = Math.max((int) (Runtime.getRuntime().availableProcessors() * threadPoolFactor), minThreads);
         return Math.min(cpuBasedThreads, Math.min(frameCount, maxFrameThreads));
     }
+
+    /**
+     * 计算单张图像分带并行处理使用的线程数
+     * <p>
+     * 单张图像不存在帧数上限，因此只根据CPU核心数、线程池因子和最小线程数计算。
+     * </p>
+     *
+     * @return 计算得出的分带线程数
+     */
+    public int calculateBandThreadCount() {
+        return Math.max((int) (Runtime.getRuntime().availableProcessors() * threadPoolFactor), minThreads);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.doreamr233.charartconverter.config;
+
+import com.doreamr233.charartconverter.util.CharArtProcessor;
+import com.doreamr233.charartconverter.util.PngStreamWriter;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 渲染配置类
+ * <p>
+ * 该类用于配置字符画图片的渲染方式。通过@ConfigurationProperties注解
+ * 从配置文件中读取相关配置项，并在初始化后注入到CharArtProcessor中。
+ * </p>
+ *
+ * @author doreamr233
+ */
+@Data
+@Slf4j
+@Component
+@ConfigurationProperties(prefix = "char-art.render")
+public class RenderConfig {
+
+    /**
+     * 是否使用字形图集渲染
+     * 启用后每个字符只光栅化一次，渲染时直接混合到图像像素中；
+     * 关闭后回退为逐字符调用Graphics2D.drawString，两者输出逐像素一致
+     */
+    private boolean glyphAtlasEnabled = true;
+
+    /**
+     * 灰度模式是否输出8位灰度调色板图像
+     * 启用后灰度模式的字符画图片使用每像素1字节的TYPE_BYTE_INDEXED图像并写出为调色板PNG，
+     * 关闭后仍使用TYPE_INT_RGB图像写出真彩色PNG，两者像素颜色完全相同
+     */
+    private boolean indexedGrayscaleEnabled = true;
+
+    /**
+     * 未使用字形图集时是否按同色游程批量绘制
+     * 启用后同一行中颜色相同的相邻单元格合并为一次fillRect和一次drawGlyphVector调用，
+     * 关闭后逐字符调用drawString
+     */
+    private boolean runBatchingEnabled = true;
+
+    /**
+     * 游程分组前单元格颜色每个通道保留的位数（1-8）
+     * 默认6位与颜色查找表精度相同，不改变输出；减小该值可得到更长的游程，但颜色层次会减少
+     */
+    private int runColorBits = 6;
+
+    /**
+     * 启用逐行流式渲染的最小图像像素数
+     * 输出图像像素数达到该值时不再创建整张图像，而是逐个字符行渲染并直接编码写入PNG文件，
+     * 峰值内存只与图像宽度和行高有关；需要启用字形图集，设置为0时禁用流式渲染
+     */
+    private long streamingMinPixels = 16777216L;
+
+    /**
+     * PNG输出的deflate压缩级别（0-9）
+     * 级别越高文件越小但编码越慢，0表示只存储不压缩
+     */
+    private int pngCompressionLevel = 6;
+
+    /**
+     * PNG扫描行过滤方式（none, sub, up, average, paeth, adaptive）
+     * adaptive逐行选择最优过滤方式，压缩率最好；固定过滤方式编码更快
+     */
+    private PngStreamWriter.Filter pngFilter = PngStreamWriter.Filter.ADAPTIVE;
+
+    /**
+     * 是否并行压缩PNG数据
+     * 启用后静态字符画图片的IDAT数据分块并以前一块末尾数据为预置字典独立压缩，由多个线程同时完成；
+     * 动画帧已在帧级别并行，始终在帧处理线程中压缩
+     */
+    private boolean pngParallelEnabled = true;
+
+    /**
+     * 灰度模式GIF动画是否使用固定全局颜色表
+     * 启用后（需同时启用并行GIF编码和灰度调色板输出），灰度帧直接以灰度调色板作为全局颜色表，
+     * 像素索引原样写入，不做逐帧NeuQuant量化，输出颜色无损
+     */
+    private boolean gifFixedPaletteEnabled = true;
+
+    /**
+     * 彩色模式GIF动画是否使用固定全局颜色表
+     * 启用后（需同时启用并行GIF编码），彩色模式和彩色背景模式使用由颜色增强查找表一次生成的256色颜色表，
+     * 通过查找表映射像素，不做逐帧NeuQuant量化；编码更快，但颜色误差大于逐帧量化，默认关闭
+     */
+    private boolean gifFixedColorPaletteEnabled = false;
+
+    /**
+     * 是否增量渲染动画帧
+     * 启用后（需启用字形图集），每帧只重新渲染相对上一帧发生变化的单元格：GIF帧裁剪到变化区域，
+     * 使用"不处置"方式叠加在上一帧之上，区域内未变化的像素尽量写为透明（需启用并行GIF编码）；
+     * WebP帧只编码变化区域，作为带偏移量的动画帧叠加在上一帧之上，区域内未变化的像素写为透明
+     * （由WebP处理服务编码时将局部图像和偏移量交给服务，由服务合成完整帧）
+     * 增量帧会改变输出文件的帧结构，默认关闭
+     */
+    private boolean incrementalFramesEnabled = false;
+
+    /**
+     * 是否在进程内编码WebP动画
+     * 启用后字符画帧在帧处理线程中渲染完成即由libwebp编码，按帧序直接写出WebP动画文件，
+     * 不再写出PNG帧文件交给WebP处理服务合成；本地编码库不可用时回退到WebP处理服务
+     */
+    private boolean webpEncoderEnabled = true;
+
+    /**
+     * 进程内编码WebP动画时是否使用无损压缩
+     * 字符画由大面积纯色和锐利的文字边缘组成，无损压缩的文件通常远小于有损压缩且没有失真；
+     * 关闭后使用有损压缩，与WebP处理服务的编码参数相同
+     */
+    private boolean webpLossless = true;
+
+    /**
+     * 进程内编码WebP动画的压缩质量（0-100）
+     * 无损压缩时表示压缩力度，越高文件越小但编码越慢；有损压缩时质量越高文件越大，80与WebP处理服务相同
+     */
+    private int webpQuality = 80;
+
+    /**
+     * 初始化渲染配置
+     * <p>
+     * 在Bean初始化后将配置注入到CharArtProcessor中。
+     * </p>
+     */
+    @PostConstruct
+    public void initRenderConfig() {
+        CharArtProcessor.setRenderConfig(this);
+        log.debug("渲染配置初始化完成: 字形图集={}, 灰度调色板输出={}, 同色游程绘制={}({}位), 流式渲染阈值={}像素, PNG压缩级别={}, PNG过滤方式={}, PNG并行压缩={}, GIF固定颜色表=灰度{}/彩色{}, 动画帧增量渲染={}, WebP进程内编码={}(无损={}, 质量={})",
+                glyphAtlasEnabled, indexedGrayscaleEnabled, runBatchingEnabled, runColorBits, streamingMinPixels,
+                pngCompressionLevel, pngFilter, pngParallelEnabled, gifFixedPaletteEnabled,
+                gifFixedColorPaletteEnabled, incrementalFramesEnabled, webpEncoderEnabled, webpLossless, webpQuality);
+    }
+}
@@ -4,6 +4,8 @@ import cn.hutool.core.io.FileTypeUtil;
 import cn.hutool.core.io.FileUtil;
 import com.doreamr233.charartconverter.enums.CloseReason;
 import com.doreamr233.charartconverter.enums.EventType;
+import com.doreamr233.charartconverter.enums.OutputFormat;
+import com.doreamr233.charartconverter.exception.BusinessException;
 import com.doreamr233.charartconverter.exception.FileTypeException;
 import com.doreamr233.charartconverter.event.ProgressUpdateEvent;
 import com.doreamr233.charartconverter.exception.ServiceException;
@@ -144,6 +146,7 @@ public class CharArtController {
      * @param colorMode 颜色模式，可选值为"color"、"colorBackground"、"grayscale"，默认为"grayscale"
      * @param limitSize 是否限制字符画的最大尺寸，默认为true
      * @param progressIdParam 进度ID，用于跟踪转换进度，如果不提供则自动生成
+     * @param outputFormatParam 输出格式，可选值为"image"、"ansi"、"html"、"svg"，默认为"image"；文本格式仅支持静态图片
      * @return 包含进度ID的HTTP响应，客户端可用此ID监听转换进度
      */
     @PostMapping("/convert")
@@ -152,12 +155,19 @@ public class CharArtController {
             @RequestParam(value = "density", defaultValue = defaultDensity) String density,
             @RequestParam(value = "colorMode", defaultValue = defaultColorMode) String colorMode,
             @RequestParam(value = "limitSize", defaultValue = "true") boolean limitSize,
-            @RequestParam(value = "progressId", required = false) String progressIdParam) {
+            @RequestParam(value = "progressId", required = false) String progressIdParam,
+            @RequestParam(value = "outputFormat", defaultValue = "image") String outputFormatParam) {
+
+        // 校验输出格式
+        OutputFormat outputFormat = OutputFormat.parseOutputFormat(outputFormatParam);
+        if (outputFormat == null) {
+            throw new BusinessException("不支持的输出格式: " + outputFormatParam);
+        }
         
         try {
             String originalFilename = imageFile.getOriginalFilename();
-            log.debug("接收到图片转换请求: {}, 密度: {}, 颜色模式: {}, 限制尺寸: {}", 
-                    originalFilename, density, colorMode, limitSize);
+            log.debug("接收到图片转换请求: {}, 密度: {}, 颜色模式: {}, 限制尺寸: {}, 输出格式: {}", 
+                    originalFilename, density, colorMode, limitSize, outputFormat.getValue());
             
             // 使用前端传递的progressId，如果没有则生成一个新的
             String progressId = (progressIdParam != null && !progressIdParam.isEmpty()) 
@@ -234,7 +244,8 @@ public class CharArtController {
                                 colorMode,
                                 progressId,
                                 limitSize,
-                                tempDir
+                                tempDir,
+                                outputFormat
                         );
                     } catch (Exception e) {
                         // 将IOException包装为ServiceException
@@ -277,6 +288,12 @@ public class CharArtController {
                         resultExtension = ".webp";
                     }
 
+                    // 文本输出格式使用对应的内容类型和扩展名
+                    if (outputFormat.isText()) {
+                        contentType = outputFormat.getContentType();
+                        resultExtension = outputFormat.getExtension();
+                    }
+
                     // 将结果保存到专用临时目录中
                     String resultFileName = "result_" + progressId + resultExtension;
                     resultFile = tempDir.resolve(resultFileName);
@@ -746,9 +763,10 @@ public class CharArtController {
                 return ResponseEntity.notFound().build();
             }
             
-            // 检查文件是否是图片
+            // 检查文件是否是图片或文本输出格式的结果
             fileName = fullPath.getFileName().toString().toLowerCase();
-            if (!fileName.endsWith(".png") && !fileName.endsWith(".jpg") && 
+            OutputFormat textFormat = OutputFormat.fromFileName(fileName);
+            if (textFormat == null && !fileName.endsWith(".png") && !fileName.endsWith(".jpg") && 
                 !fileName.endsWith(".jpeg") && !fileName.endsWith(".gif") && 
                 !fileName.endsWith(".bmp") && !fileName.endsWith(".webp")) {
                 log.warn("请求的文件不是支持的图片格式: {}", fullPath);
@@ -768,6 +786,8 @@ public class CharArtController {
                 contentType = "image/bmp";
             } else if (fileName.endsWith(".webp")) {
                 contentType = "image/webp";
+            } else if (textFormat != null) {
+                contentType = textFormat.getContentType();
             }
             
             log.debug("成功获取临时图片: {}, 大小: {} 字节", fullPath, imageData.length);
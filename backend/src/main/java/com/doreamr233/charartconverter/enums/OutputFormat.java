@@ -0,0 +1,106 @@
+package com.doreamr233.charartconverter.enums;
+
+import lombok.Getter;
+
+/**
+ * 输出格式枚举
+ * <p>
+ * 定义字符画转换结果的输出格式。IMAGE为默认的图片输出（PNG、GIF或WebP），
+ * 其余格式直接由字符网格生成文本，不进行字形光栅化和图像编码。
+ * </p>
+ *
+ * @author doreamr233
+ */
+@Getter
+public enum OutputFormat {
+    /**
+     * 图片
+     * 静态图片输出PNG，GIF和WebP动图输出同格式的动图
+     */
+    IMAGE("image", null, null),
+
+    /**
+     * ANSI文本
+     * 使用24位真彩色转义序列着色的终端文本
+     */
+    ANSI("ansi", "text/plain;charset=UTF-8", ".ans"),
+
+    /**
+     * HTML文档
+     * 在pre元素中按同色游程使用span着色
+     */
+    HTML("html", "text/html;charset=UTF-8", ".html"),
+
+    /**
+     * SVG矢量图
+     * 每个字符行为一个text元素，按同色游程使用tspan着色
+     */
+    SVG("svg", "image/svg+xml", ".svg");
+
+    /**
+     * 请求参数中的取值
+     */
+    private final String value;
+
+    /**
+     * 结果文件的Content-Type，图片格式为null（由输入图片类型决定）
+     */
+    private final String contentType;
+
+    /**
+     * 结果文件扩展名，图片格式为null（由输入图片类型决定）
+     */
+    private final String extension;
+
+    OutputFormat(String value, String contentType, String extension) {
+        this.value = value;
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    /**
+     * 是否为直接由字符网格生成的文本格式
+     *
+     * @return 非图片格式返回true
+     */
+    public boolean isText() {
+        return this != IMAGE;
+    }
+
+    /**
+     * 解析输出格式字符串为枚举值
+     * <p>
+     * 忽略大小写，输入为null或空字符串时返回默认的IMAGE，不匹配任何已知值时返回null。
+     * </p>
+     *
+     * @param outputFormat 输出格式字符串
+     * @return 对应的OutputFormat枚举值
+     */
+    public static OutputFormat parseOutputFormat(String outputFormat) {
+        if (outputFormat == null || outputFormat.isEmpty()) {
+            return IMAGE;
+        }
+        for (OutputFormat format : values()) {
+            if (format.value.equalsIgnoreCase(outputFormat)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 根据结果文件扩展名查找文本格式
+     *
+     * @param fileName 文件名
+     * @return 对应的文本格式，不是文本格式文件时返回null
+     */
+    public static OutputFormat fromFileName(String fileName) {
+        String lowerName = fileName.toLowerCase();
+        for (OutputFormat format : values()) {
+            if (format.extension != null && lowerName.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+package com.doreamr233.charartconverter.model;
+
+import lombok.Getter;
+
+/**
+ * 字符网格类
+ * <p>
+ * 字符画的紧凑内存表示，在文本生成、图像渲染和Redis文本缓存之间共享。
+ * 每个单元格只保存一个字节的字符索引（指向所属字符集），
+ * 彩色模式下另外保存每个单元格的打包RGB颜色。
+ * 字符串形式只在需要时通过{@link #toText()}生成，避免在各处理阶段之间反复复制和拆分文本。
+ * </p>
+ *
+ * @author doreamr233
+ */
+@Getter
+public class CharGrid {
+
+    /**
+     * 网格宽度（每行字符数）
+     */
+    private final int width;
+
+    /**
+     * 网格高度（行数）
+     */
+    private final int height;
+
+    /**
+     * 字符集，字符索引指向该数组
+     */
+    private final char[] charset;
+
+    /**
+     * 按行存储的字符索引，长度为 width * height
+     */
+    private final byte[] glyphs;
+
+    /**
+     * 按行存储的单元格颜色（0xRRGGBB），灰度模式下为null
+     */
+    private final int[] colors;
+
+    /**
+     * 构造函数
+     * <p>
+     * 创建一个空白字符网格，由调用方填充字符索引和颜色。
+     * </p>
+     *
+     * @param width 网格宽度
+     * @param height 网格高度
+     * @param charset 字符集
+     * @param withColors 是否保存单元格颜色
+     */
+    public CharGrid(int width, int height, char[] charset, boolean withColors) {
+        this.width = width;
+        this.height = height;
+        this.charset = charset;
+        this.glyphs = new byte[width * height];
+        this.colors = withColors ? new int[width * height] : null;
+    }
+
+    /**
+     * 是否保存了单元格颜色
+     *
+     * @return 如果保存了颜色返回true
+     */
+    public boolean hasColors() {
+        return colors != null;
+    }
+
+    /**
+     * 获取指定单元格的字符
+     *
+     * @param x 列号
+     * @param y 行号
+     * @return 单元格字符
+     */
+    public char charAt(int x, int y) {
+        return charset[glyphs[y * width + x]];
+    }
+
+    /**
+     * 获取指定单元格的颜色
+     *
+     * @param x 列号
+     * @param y 行号
+     * @return 单元格颜色（0xRRGGBB）
+     */
+    public int colorAt(int x, int y) {
+        return colors[y * width + x];
+    }
+
+    /**
+     * 复制一个矩形区域的单元格
+     * <p>
+     * 新网格与原网格共用字符集，字符索引和颜色按区域复制。
+     * </p>
+     *
+     * @param x 区域左上角列号
+     * @param y 区域左上角行号
+     * @param regionWidth 区域宽度（列数）
+     * @param regionHeight 区域高度（行数）
+     * @return 包含该区域单元格的字符网格
+     */
+    public CharGrid region(int x, int y, int regionWidth, int regionHeight) {
+        CharGrid region = new CharGrid(regionWidth, regionHeight, charset, colors != null);
+        for (int row = 0; row < regionHeight; row++) {
+            int from = (y + row) * width + x;
+            System.arraycopy(glyphs, from, region.glyphs, row * regionWidth, regionWidth);
+            if (colors != null) {
+                System.arraycopy(colors, from, region.colors, row * regionWidth, regionWidth);
+            }
+        }
+        return region;
+    }
+
+    /**
+     * 生成字符画文本
+     * <p>
+     * 按行输出字符，每行末尾追加换行符。
+     * </p>
+     *
+     * @return 字符画文本
+     */
+    public String toText() {
+        char[] chars = new char[(width + 1) * height];
+        int index = 0;
+        int cell = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                chars[index++] = charset[glyphs[cell++]];
+            }
+            chars[index++] = '\n';
+        }
+        return new String(chars);
+    }
+}
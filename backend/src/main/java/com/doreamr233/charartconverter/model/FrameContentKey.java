@@ -0,0 +1,66 @@
+package com.doreamr233.charartconverter.model;
+
+import java.util.Arrays;
+
+/**
+ * 动画帧内容键
+ * <p>
+ * 由一帧的字符网格（字符索引和单元格颜色）计算得到，用于识别内容完全相同的动画帧。
+ * 字符画图片只由字符网格和颜色模式决定，因此同一次转换中键相等的两帧渲染结果相同，
+ * 可以复用已渲染的输出，连续的相同帧可以合并为一帧。
+ * 哈希值只用于快速比较，相等判断会逐个比较字符索引和颜色，不会因哈希冲突误判。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class FrameContentKey {
+
+    private final int width;
+    private final int height;
+    private final char[] charset;
+    private final byte[] glyphs;
+    private final int[] colors;
+    private final int hash;
+
+    /**
+     * 构造函数
+     * <p>
+     * 键直接引用字符网格的数组，创建后不应再修改该网格。
+     * </p>
+     *
+     * @param grid 已生成完毕的字符网格
+     */
+    public FrameContentKey(CharGrid grid) {
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.charset = grid.getCharset();
+        this.glyphs = grid.getGlyphs();
+        this.colors = grid.getColors();
+        int h = 31 * width + height;
+        h = 31 * h + Arrays.hashCode(glyphs);
+        h = 31 * h + Arrays.hashCode(colors);
+        this.hash = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FrameContentKey)) {
+            return false;
+        }
+        FrameContentKey other = (FrameContentKey) o;
+        return hash == other.hash
+                && width == other.width
+                && height == other.height
+                && Arrays.equals(charset, other.charset)
+                && Arrays.equals(glyphs, other.glyphs)
+                && Arrays.equals(colors, other.colors);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -2,13 +2,16 @@ package com.doreamr233.charartconverter.model;
 
 import lombok.Data;
 
+import java.awt.image.BufferedImage;
 import java.nio.file.Path;
 
 /**
  * 帧处理结果类
  * <p>
  * 用于表示动图（如GIF）中单个帧的处理结果。
- * 包含帧索引、字符画文件路径和帧延迟时间等信息。
+ * 包含帧索引、字符画图像或其溢出文件路径和帧延迟时间等信息。
+ * 帧在内存中传递时charImage或gifFrameBlock不为null，超出内存预算溢出到磁盘时charFramePath不为null。
+ * 启用重复帧检测时，内容相同的帧共用同一份渲染输出，复用的结果不占用帧内存预算。
  * </p>
  *
  * @author doreamr233
@@ -21,15 +24,35 @@ public class FrameProcessResult {
     private final int frameIndex;
     
     /**
-     * 字符画帧文件的路径
+     * 字符画帧文件的路径，帧在内存中传递时为null
      */
     private final Path charFramePath;
+
+    /**
+     * 内存中的字符画帧图像，帧已写入文件时为null
+     */
+    private final BufferedImage charImage;
+
+    /**
+     * 内存中已编码的GIF帧数据块，未在帧处理线程中编码或已写入文件时为null
+     */
+    private final byte[] gifFrameBlock;
     
     /**
      * 帧延迟时间（毫秒），控制动画播放速度
      */
     private final int delay;
 
+    /**
+     * 帧内容键，未启用重复帧检测时为null
+     */
+    private FrameContentKey contentKey;
+
+    /**
+     * 渲染输出是否复用自内容相同的其他帧，复用的输出由首次渲染的帧计入内存预算
+     */
+    private boolean sharedOutput;
+
     /**
      * 构造函数
      * <p>
@@ -43,6 +66,72 @@ public class FrameProcessResult {
     public FrameProcessResult(int frameIndex, Path charFramePath, int delay) {
         this.frameIndex = frameIndex;
         this.charFramePath = charFramePath;
+        this.charImage = null;
+        this.gifFrameBlock = null;
+        this.delay = delay;
+    }
+
+    /**
+     * 构造函数
+     * <p>
+     * 创建一个在内存中传递字符画图像的帧处理结果对象。
+     * </p>
+     *
+     * @param frameIndex 帧索引，表示该帧在动图中的位置
+     * @param charImage 字符画帧图像
+     * @param delay 帧延迟时间（毫秒）
+     */
+    public FrameProcessResult(int frameIndex, BufferedImage charImage, int delay) {
+        this.frameIndex = frameIndex;
+        this.charFramePath = null;
+        this.charImage = charImage;
+        this.gifFrameBlock = null;
         this.delay = delay;
     }
+
+    /**
+     * 构造函数
+     * <p>
+     * 创建一个在内存中传递已编码GIF帧数据块的帧处理结果对象。
+     * </p>
+     *
+     * @param frameIndex 帧索引，表示该帧在动图中的位置
+     * @param gifFrameBlock 已编码的GIF帧数据块
+     * @param delay 帧延迟时间（毫秒）
+     */
+    public FrameProcessResult(int frameIndex, byte[] gifFrameBlock, int delay) {
+        this.frameIndex = frameIndex;
+        this.charFramePath = null;
+        this.charImage = null;
+        this.gifFrameBlock = gifFrameBlock;
+        this.delay = delay;
+    }
+
+    /**
+     * 构造函数
+     * <p>
+     * 创建一个与已有结果共用渲染输出的帧处理结果对象。
+     * </p>
+     */
+    private FrameProcessResult(int frameIndex, Path charFramePath, BufferedImage charImage, byte[] gifFrameBlock, int delay) {
+        this.frameIndex = frameIndex;
+        this.charFramePath = charFramePath;
+        this.charImage = charImage;
+        this.gifFrameBlock = gifFrameBlock;
+        this.delay = delay;
+    }
+
+    /**
+     * 为内容相同的另一帧复用本结果的渲染输出
+     *
+     * @param frameIndex 复用该输出的帧索引
+     * @param delay 复用该输出的帧的延迟时间（毫秒）
+     * @return 共用渲染输出的帧处理结果，内容键与本结果相同
+     */
+    public FrameProcessResult reuseFor(int frameIndex, int delay) {
+        FrameProcessResult result = new FrameProcessResult(frameIndex, charFramePath, charImage, gifFrameBlock, delay);
+        result.contentKey = contentKey;
+        result.sharedOutput = true;
+        return result;
+    }
 }
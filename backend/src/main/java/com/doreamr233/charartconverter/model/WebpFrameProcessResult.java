@@ -1,5 +1,6 @@
 package com.doreamr233.charartconverter.model;
 
+import com.doreamr233.charartconverter.util.WebpAnimationWriter;
 import lombok.Data;
 
 import java.nio.file.Path;
@@ -10,6 +11,8 @@ import java.nio.file.Path;
  * 用于表示WebP动图中单个帧的处理结果。
  * 与FrameProcessResult类似，但专门用于WebP格式的动图处理，
  * 不包含延迟时间信息（WebP的延迟时间由Python服务处理）。
+ * 增量渲染时字符画帧文件只包含相对上一帧发生变化的区域，frameX和frameY为该区域在画布上的位置。
+ * 在进程内编码WebP动画时不写出字符画帧文件，结果为已编码的WebP帧。
  * </p>
  *
  * @author doreamr233
@@ -22,10 +25,30 @@ public class WebpFrameProcessResult {
     private final int frameIndex;
     
     /**
-     * 字符画帧文件的路径
+     * 字符画帧文件的路径，在进程内编码时为null
      */
     private final Path charFramePath;
 
+    /**
+     * 已编码的WebP帧，写出字符画帧文件时为null
+     */
+    private final WebpAnimationWriter.EncodedFrame encodedFrame;
+
+    /**
+     * 帧内容键，未启用重复帧检测时为null
+     */
+    private final FrameContentKey contentKey;
+
+    /**
+     * 字符画帧在画布上的X坐标，整帧时为0
+     */
+    private final int frameX;
+
+    /**
+     * 字符画帧在画布上的Y坐标，整帧时为0
+     */
+    private final int frameY;
+
     /**
      * 构造函数
      * <p>
@@ -36,8 +59,63 @@ public class WebpFrameProcessResult {
      * @param charFramePath 字符画帧文件的路径
      */
     public WebpFrameProcessResult(int frameIndex, Path charFramePath) {
+        this(frameIndex, charFramePath, null);
+    }
+
+    /**
+     * 构造函数
+     * <p>
+     * 创建一个带帧内容键的WebP帧处理结果对象，内容相同的帧共用同一个字符画帧文件。
+     * </p>
+     *
+     * @param frameIndex 帧索引，表示该帧在WebP动图中的位置
+     * @param charFramePath 字符画帧文件的路径
+     * @param contentKey 帧内容键，未启用重复帧检测时为null
+     */
+    public WebpFrameProcessResult(int frameIndex, Path charFramePath, FrameContentKey contentKey) {
+        this(frameIndex, charFramePath, contentKey, 0, 0);
+    }
+
+    /**
+     * 构造函数
+     * <p>
+     * 创建一个局部帧的WebP帧处理结果对象，字符画帧文件只覆盖画布上从指定位置开始的区域。
+     * </p>
+     *
+     * @param frameIndex 帧索引，表示该帧在WebP动图中的位置
+     * @param charFramePath 字符画帧文件的路径
+     * @param contentKey 帧内容键，未启用重复帧检测时为null
+     * @param frameX 字符画帧在画布上的X坐标
+     * @param frameY 字符画帧在画布上的Y坐标
+     */
+    public WebpFrameProcessResult(int frameIndex, Path charFramePath, FrameContentKey contentKey, int frameX, int frameY) {
         this.frameIndex = frameIndex;
         this.charFramePath = charFramePath;
+        this.encodedFrame = null;
+        this.contentKey = contentKey;
+        this.frameX = frameX;
+        this.frameY = frameY;
+    }
+
+    /**
+     * 构造函数
+     * <p>
+     * 创建一个已编码为WebP帧的处理结果对象，帧覆盖画布上从指定位置开始的区域。
+     * </p>
+     *
+     * @param frameIndex 帧索引，表示该帧在WebP动图中的位置
+     * @param encodedFrame 已编码的WebP帧
+     * @param contentKey 帧内容键，未启用重复帧检测时为null
+     * @param frameX 帧在画布上的X坐标
+     * @param frameY 帧在画布上的Y坐标
+     */
+    public WebpFrameProcessResult(int frameIndex, WebpAnimationWriter.EncodedFrame encodedFrame, FrameContentKey contentKey, int frameX, int frameY) {
+        this.frameIndex = frameIndex;
+        this.charFramePath = null;
+        this.encodedFrame = encodedFrame;
+        this.contentKey = contentKey;
+        this.frameX = frameX;
+        this.frameY = frameY;
     }
 
 }
\ No newline at end of file
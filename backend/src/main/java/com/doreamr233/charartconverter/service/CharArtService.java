@@ -1,5 +1,7 @@
 package com.doreamr233.charartconverter.service;
 
+import com.doreamr233.charartconverter.enums.OutputFormat;
+
 import java.io.InputStream;
 import java.util.Map;
 
@@ -31,9 +33,11 @@ public interface CharArtService {
      * @param progressId 进度ID
      * @param limitSize 是否限制字符画的最大宽度和高度
      * @param tempDir 专用临时目录路径
-     * @return 字符画图片的字节数组
+     * @param outputFormat 输出格式，文本格式（ANSI、HTML、SVG）仅支持静态图片
+     * @return 字符画图片或文本的字节数组
      */
-    byte[] convertToCharArt(InputStream imageStream, String filename, String density, String colorMode, String progressId, boolean limitSize, java.nio.file.Path tempDir);
+    byte[] convertToCharArt(InputStream imageStream, String filename, String density, String colorMode, String progressId, boolean limitSize, java.nio.file.Path tempDir,
+                            OutputFormat outputFormat);
 
     /**
      * 获取指定文件的字符画文本
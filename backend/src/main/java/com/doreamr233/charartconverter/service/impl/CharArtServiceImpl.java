@@ -1,6 +1,7 @@
 package com.doreamr233.charartconverter.service.impl;
 
 import com.doreamr233.charartconverter.config.RedisConfig;
+import com.doreamr233.charartconverter.enums.OutputFormat;
 import com.doreamr233.charartconverter.exception.ServiceException;
 import com.doreamr233.charartconverter.service.CharArtService;
 import com.doreamr233.charartconverter.service.ProgressService;
@@ -67,10 +68,12 @@ public class CharArtServiceImpl implements CharArtService {
      * @param colorMode 颜色模式，可选值为"color"、"grayscale"
      * @param progressId 进度ID，用于跟踪和报告转换进度
      * @param limitSize 是否限制字符画的最大尺寸
-     * @return 转换后的字符画图片字节数组
+     * @param outputFormat 输出格式
+     * @return 转换后的字符画图片或文本字节数组
      */
     @Override
-    public byte[] convertToCharArt(InputStream imageStream, String filename, String density, String colorMode, String progressId, boolean limitSize, Path tempDir) {
+    public byte[] convertToCharArt(InputStream imageStream, String filename, String density, String colorMode, String progressId, boolean limitSize, Path tempDir,
+                                   OutputFormat outputFormat) {
         try {
             // 判断图片类型
             boolean isGif = filename != null && filename.toLowerCase().endsWith(".gif");
@@ -110,6 +113,10 @@ public class CharArtServiceImpl implements CharArtService {
                 baos.write(buffer, 0, bytesRead);
             }
             byte[] imageBytes = baos.toByteArray();
+
+            if (outputFormat != null && outputFormat.isText() && (isGif || (isWebp && isAnimated))) {
+                throw new ServiceException(outputFormat.getValue() + "输出格式仅支持静态图片");
+            }
             
             if (isGif) {
                 log.debug("处理GIF：{}", filename);
@@ -119,7 +126,7 @@ public class CharArtServiceImpl implements CharArtService {
                 return CharArtProcessor.processWebpAnimation(tempWebpPath, density, colorMode, limitSize, progressId, progressService, webpProcessorClient, tempDir);
             } else {
                 log.debug("处理静态图片：{}", filename);
-                return CharArtProcessor.processStaticImage(imageBytes, density, colorMode, limitSize, progressId, progressService, filename, redisTemplate, tempDir);
+                return CharArtProcessor.processStaticImage(imageBytes, density, colorMode, limitSize, progressId, progressService, filename, redisTemplate, tempDir, outputFormat);
             }
         } catch (Exception e) {
             log.error("转换字符画失败", e);
@@ -0,0 +1,115 @@
+package com.doreamr233.charartconverter.util;
+
+/**
+ * 区域平均缩小器
+ * <p>
+ * 在内存中将源图像按区域平均（盒式滤波）直接缩小到目标字符网格尺寸。
+ * 每个源像素按坐标比例归入唯一的目标单元格，目标单元格的颜色为其覆盖的所有源像素的平均值。
+ * 缩放过程逐行读取源像素并累加，只占用与源宽度和目标宽度成正比的缓冲区，
+ * 不创建临时文件，也不创建中间BufferedImage。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class AreaAverageScaler {
+
+    private AreaAverageScaler() {
+    }
+
+    /**
+     * 目标行消费者
+     * <p>
+     * 每生成一行目标像素回调一次，回调中的数组在下一次回调时会被复用，
+     * 如需保留数据请自行复制。
+     * </p>
+     */
+    @FunctionalInterface
+    public interface RowConsumer {
+
+        /**
+         * 接收一行缩小后的像素
+         *
+         * @param targetY 目标行号
+         * @param rgbRow  目标行的像素，0xRRGGBB格式，有效长度为目标宽度
+         */
+        void accept(int targetY, int[] rgbRow);
+    }
+
+    /**
+     * 将源图像区域平均缩小到指定尺寸
+     * <p>
+     * 目标尺寸不应大于源尺寸；按目标行顺序回调消费者。
+     * </p>
+     *
+     * @param source       源图像的亮度内核
+     * @param targetWidth  目标宽度
+     * @param targetHeight 目标高度
+     * @param consumer     目标行消费者
+     */
+    public static void scale(LumaKernel source, int targetWidth, int targetHeight, RowConsumer consumer) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+
+        // 预先计算每个源列所属的目标列，以及每个目标列覆盖的源列数
+        int[] columnBin = new int[sourceWidth];
+        int[] columnCount = new int[targetWidth];
+        for (int x = 0; x < sourceWidth; x++) {
+            int bin = (int) ((long) x * targetWidth / sourceWidth);
+            columnBin[x] = bin;
+            columnCount[bin]++;
+        }
+
+        int[] sourceRow = new int[sourceWidth];
+        int[] targetRow = new int[targetWidth];
+        long[] sumRed = new long[targetWidth];
+        long[] sumGreen = new long[targetWidth];
+        long[] sumBlue = new long[targetWidth];
+
+        int currentTargetY = 0;
+        int rowsInBin = 0;
+        for (int y = 0; y < sourceHeight; y++) {
+            int targetY = (int) ((long) y * targetHeight / sourceHeight);
+            if (targetY != currentTargetY) {
+                emitRow(currentTargetY, rowsInBin, columnCount, sumRed, sumGreen, sumBlue, targetRow, consumer);
+                currentTargetY = targetY;
+                rowsInBin = 0;
+            }
+
+            source.readRgbRow(y, sourceRow);
+            for (int x = 0; x < sourceWidth; x++) {
+                int rgb = sourceRow[x];
+                int bin = columnBin[x];
+                sumRed[bin] += (rgb >> 16) & 0xFF;
+                sumGreen[bin] += (rgb >> 8) & 0xFF;
+                sumBlue[bin] += rgb & 0xFF;
+            }
+            rowsInBin++;
+        }
+        if (rowsInBin > 0) {
+            emitRow(currentTargetY, rowsInBin, columnCount, sumRed, sumGreen, sumBlue, targetRow, consumer);
+        }
+    }
+
+    /**
+     * 计算当前目标行的平均颜色并回调，然后清空累加器
+     */
+    private static void emitRow(int targetY, int rowsInBin, int[] columnCount, long[] sumRed, long[] sumGreen,
+                                long[] sumBlue, int[] targetRow, RowConsumer consumer) {
+        for (int x = 0; x < targetRow.length; x++) {
+            long count = (long) columnCount[x] * rowsInBin;
+            if (count == 0) {
+                targetRow[x] = 0xFFFFFF;
+            } else {
+                long half = count >> 1;
+                int red = (int) ((sumRed[x] + half) / count);
+                int green = (int) ((sumGreen[x] + half) / count);
+                int blue = (int) ((sumBlue[x] + half) / count);
+                targetRow[x] = (red << 16) | (green << 8) | blue;
+            }
+            sumRed[x] = 0;
+            sumGreen[x] = 0;
+            sumBlue[x] = 0;
+        }
+        consumer.accept(targetY, targetRow);
+    }
+}
@@ -1,18 +1,19 @@
 package com.doreamr233.charartconverter.util;
 
 import com.doreamr233.charartconverter.config.ParallelProcessingConfig;
+import com.doreamr233.charartconverter.config.RenderConfig;
 import com.doreamr233.charartconverter.config.TempDirectoryConfig;
+import com.doreamr233.charartconverter.enums.OutputFormat;
 import com.doreamr233.charartconverter.exception.ServiceException;
+import com.doreamr233.charartconverter.model.CharGrid;
+import com.doreamr233.charartconverter.model.FrameContentKey;
 import com.doreamr233.charartconverter.model.FrameProcessResult;
 import com.doreamr233.charartconverter.model.WebpFrameProcessResult;
 import com.doreamr233.charartconverter.model.WebpProcessResult;
 import com.doreamr233.charartconverter.service.ProgressService;
 import com.madgag.gif.fmsware.AnimatedGifEncoder;
-import com.madgag.gif.fmsware.GifDecoder;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import net.coobird.thumbnailator.Thumbnails;
-import org.jetbrains.annotations.NotNull;
 import org.springframework.data.redis.core.RedisTemplate;
 
 import cn.hutool.core.io.FileUtil;
@@ -24,21 +25,43 @@ import javax.imageio.spi.IIORegistry;
 
 import com.luciad.imageio.webp.WebPImageReaderSpi;
 import java.awt.*;
+import java.awt.font.GlyphVector;
+import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
 import java.io.*;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.function.ToIntFunction;
 
 import static com.doreamr233.charartconverter.config.RedisConfig.CACHE_KEY_PREFIX;
 
@@ -80,6 +103,13 @@ public class CharArtProcessor {
      */
     @Setter
     private static TempDirectoryConfig tempDirectoryConfig;
+    /**
+     * -- SETTER --
+     *  设置渲染配置
+     *
+     */
+    @Setter
+    private static RenderConfig renderConfig;
 
     /**
      * 获取临时目录路径
@@ -106,6 +136,82 @@ public class CharArtProcessor {
             ".'`^\",:;Il!i><~+_-?][}{1)(|\\/tfjrxnuvczXYUJCLQ0OZmwqpdbkhao*#MW&8%B@$" // 高密度
     };
 
+    /**
+     * 每个字符集对应的字符数组，避免逐像素调用charAt
+     */
+    private static final char[][] CHAR_SET_CHARS = new char[CHAR_SETS.length][];
+
+    /**
+     * 每个字符集对应的灰度到字符索引查找表（256项）
+     */
+    private static final byte[][] GLYPH_LUTS = new byte[CHAR_SETS.length][];
+
+    static {
+        for (int i = 0; i < CHAR_SETS.length; i++) {
+            CHAR_SET_CHARS[i] = CHAR_SETS[i].toCharArray();
+            GLYPH_LUTS[i] = LumaKernel.buildGlyphLut(CHAR_SETS[i].length());
+        }
+    }
+
+    /**
+     * 256级灰度调色板，用于灰度模式的字符画图片
+     * <p>
+     * 索引i对应灰度255-i（即墨色深度），索引0为白色。调色板不是递增的灰度阶梯，
+     * PNG编码器因此会写出调色板PNG而不是灰度PNG，读回时颜色保持不变
+     * （灰度PNG读回后getRGB会经过线性灰度色彩空间转换而改变颜色）。
+     * </p>
+     */
+    private static final IndexColorModel GRAYSCALE_PALETTE = createGrayscalePalette();
+
+    /**
+     * 分带拆分因子，分带数量约为线程池并行度的该倍数，用于平衡各线程的负载
+     */
+    private static final int BAND_SPLIT_FACTOR = 4;
+
+    /**
+     * 分带并行处理共享的ForkJoin线程池，首次使用时创建
+     */
+    private static volatile ForkJoinPool bandPool;
+
+    /**
+     * 共享图像编码线程池的任务队列容量
+     */
+    private static final int ENCODER_QUEUE_CAPACITY = 64;
+
+    /**
+     * 图像写入和GIF帧编码共享的线程池，首次使用时创建
+     */
+    private static volatile ExecutorService encoderExecutor;
+
+    /**
+     * 彩色模式和彩色背景模式的GIF固定颜色表，首次使用时生成
+     */
+    private static volatile GifStreamWriter.Palette colorGifPalette;
+    private static volatile GifStreamWriter.Palette colorBackgroundGifPalette;
+
+    /**
+     * 字符画图片的基础字体大小
+     */
+    private static final int CHAR_IMAGE_FONT_SIZE = 12;
+
+    /**
+     * WebP动画单帧的最大延迟（毫秒），ANMF块以24位记录帧时长
+     */
+    private static final int WEBP_MAX_DELAY_MILLIS = 0xFFFFFF;
+
+    /**
+     * 创建256级灰度调色板
+     *
+     * @return 灰度调色板
+     */
+    private static IndexColorModel createGrayscalePalette() {
+        byte[] levels = new byte[256];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = (byte) (0xFF - i);
+        }
+        return new IndexColorModel(8, levels.length, levels, levels, levels);
+    }
+
     /**
      * 检查WebP文件是否为动画
      * <p>
@@ -135,6 +241,7 @@ public class CharArtProcessor {
      * <p>
      * 将静态图像转换为字符画，并根据需要生成字符画图像。
      * 处理流程包括：读取图像、转换为字符文本、缓存文本结果、生成字符画图像。
+     * 输出格式为文本格式（ANSI、HTML、SVG）时，直接由字符网格生成结果，跳过图像生成。
      * </p>
      *
      * @param imageBytes 图像字节数组
@@ -145,10 +252,12 @@ public class CharArtProcessor {
      * @param progressService 进度服务
      * @param filename 文件名，用于缓存键
      * @param redisTemplate Redis模板，用于缓存字符画文本
-     * @return 处理后的图像字节数组
+     * @param outputFormat 输出格式
+     * @return 处理后的图像或文本字节数组
      * @throws ServiceException 如果处理过程中发生错误
      */
-    public static byte[] processStaticImage(byte[] imageBytes, String density, String colorMode, boolean limitSize, String progressId, ProgressService progressService, String filename, RedisTemplate<String, String> redisTemplate, Path tempDir) {
+    public static byte[] processStaticImage(byte[] imageBytes, String density, String colorMode, boolean limitSize, String progressId, ProgressService progressService, String filename, RedisTemplate<String, String> redisTemplate, Path tempDir,
+                                            OutputFormat outputFormat) {
         List<Path> tempFiles = new ArrayList<>();
 
         try {
@@ -180,23 +289,31 @@ public class CharArtProcessor {
             int densityLevel = getDensityLevel(density);
 
             // 转换为字符文本
-            String charText = convertImageToCharText(image, densityLevel, limitSize, progressId, totalPixels, 0, 1, 1, pregressStart,pregressEnd,"文本生成", progressService,true, tempDir);
+            CharGrid charGrid = convertImageToCharGrid(image, densityLevel, limitSize, needsCellColors(colorMode), progressId, totalPixels, 0, 1, 1, pregressStart,pregressEnd,"文本生成", progressService,true, true);
 
-            // 将字符画文本存入Redis缓存
+            // 将字符画文本存入Redis缓存（文本只在此处按需生成）
             if (redisTemplate != null && filename != null && !filename.isEmpty()) {
                 String cacheKey = CACHE_KEY_PREFIX + filename;
-                redisTemplate.opsForValue().set(cacheKey, charText);
+                redisTemplate.opsForValue().set(cacheKey, charGrid.toText());
                 log.debug("已将字符画文本缓存到Redis: {}", cacheKey);
             }
 
             // 更新进度
             progressService.updateProgress(progressId, 60, "字符画文本生成完成", "文本生成", totalPixels, totalPixels,false);
 
+            if (outputFormat != null && outputFormat.isText()) {
+                // 文本格式直接由字符网格生成，不需要光栅化和图像编码
+                byte[] textBytes = CharTextFormatter.format(charGrid, colorMode, outputFormat);
+                log.debug("已生成{}格式字符画，大小: {} 字节", outputFormat.getValue(), textBytes.length);
+                progressService.updateProgress(progressId, 100, "处理完成", "完成", totalPixels, totalPixels,true);
+                return textBytes;
+            }
+
             pregressStart = 60;
             pregressEnd = 80;
 
             // 生成字符画图片
-            Path charImagePath = createCharImageFile(charText, colorMode, image, progressId, 0, totalPixels, tempFiles,1,pregressStart, pregressEnd,"图像生成",progressService,true, tempDir);
+            Path charImagePath = createCharImageFile(charGrid, colorMode, image, progressId, 0, totalPixels, tempFiles,1,pregressStart, pregressEnd,"图像生成",progressService,true, tempDir, true);
             tempFiles.add(charImagePath);
 
             // 更新进度
@@ -237,39 +354,29 @@ public class CharArtProcessor {
 
         try {
 
-            // 将图像字节数组保存为临时文件
-            // 对于GIF处理，我们知道文件类型是gif
-            Path tempImagePath = createTempFileInDirectory(tempDir, "original_", ".gif");
-            FileUtil.writeBytes(imageBytes, tempImagePath.toFile());
-            tempFiles.add(tempImagePath);
-
-            // 使用GifDecoder解码GIF
-            GifDecoder gifDecoder = new GifDecoder();
-            try (InputStream is = FileUtil.getInputStream(tempImagePath.toFile())) {
-                int status = gifDecoder.read(is);
-                if (status != GifDecoder.STATUS_OK) {
-                    throw new ServiceException("GIF解码失败，状态码: " + status);
-                }
+            // 只扫描GIF结构得到帧数和延迟，帧图像在处理过程中按需逐帧解码
+            GifStreamReader gifReader;
+            try {
+                gifReader = GifStreamReader.open(imageBytes);
             } catch (IOException e) {
-                throw new ServiceException("GIF读取失败: " + e.getMessage(), e);
+                throw new ServiceException("GIF解码失败: " + e.getMessage(), e);
             }
 
             // 获取GIF信息
-            int frameCount = gifDecoder.getFrameCount();
+            int frameCount = gifReader.getFrameCount();
             int[] delays = new int[frameCount];
 
             // 提取每一帧的延迟时间
             for (int i = 0; i < frameCount; i++) {
-                delays[i] = gifDecoder.getDelay(i); // 获取每一帧的延迟时间（毫秒）
+                delays[i] = gifReader.getDelay(i); // 获取每一帧的延迟时间（毫秒）
             }
 
             // 更新进度
-            progressService.updateProgress(progressId, 40, "GIF解码完成，共" + frameCount + "帧", "GIF解码", 1, 1,false);
+            progressService.updateProgress(progressId, 40, "GIF解析完成，共" + frameCount + "帧", "GIF解码", 1, 1,false);
 
-            // 获取第一帧的尺寸
-            BufferedImage firstFrame = gifDecoder.getFrame(0);
-            int width = firstFrame.getWidth();
-            int height = firstFrame.getHeight();
+            // 获取画布尺寸
+            int width = gifReader.getWidth();
+            int height = gifReader.getHeight();
 
             // 处理每一帧
             int densityLevel = getDensityLevel(density);
@@ -277,23 +384,38 @@ public class CharArtProcessor {
             // 计算总像素数（所有帧）
             int totalPixels = width * height * frameCount;
 
-            // 创建GIF编码器
-            AnimatedGifEncoder gifEncoder = new AnimatedGifEncoder();
+            // 创建GIF编码器：启用并行GIF编码时各帧在帧处理线程中完成量化和LZW压缩，只按帧序写出；否则使用AnimatedGifEncoder串行编码
+            boolean parallelGifEncoding = isParallelGifEncodingEnabled();
+            AnimatedGifEncoder gifEncoder = parallelGifEncoding ? null : new AnimatedGifEncoder();
             Path outputGifPath = createTempFileInDirectory(tempDir, "output_", ".gif");
             tempFiles.add(outputGifPath);
-            gifEncoder.start(outputGifPath.toString());
-            gifEncoder.setRepeat(0); // 0表示无限循环
-            double pregressStart = 40;
-            double pregressEnd = 80;
-            double singlePregress = ((pregressEnd - pregressStart) / (double)frameCount);
-            
-            // 使用多线程并行处理帧
-            processFramesInParallel(gifDecoder, frameCount, width, height, densityLevel, limitSize, 
-                                  colorMode, progressId, totalPixels, tempFiles, delays, gifEncoder, 
-                                  pregressStart, pregressEnd, singlePregress, progressService, tempDir);
-
-            // 完成GIF编码
-            gifEncoder.finish();
+            // 通过统计字节数的输出流写出GIF，编码进度按实际写出的字节数更新
+            long updateInterval = parallelConfig != null ? parallelConfig.getProgressUpdateInterval() : 500L;
+            try (ProgressOutputStream gifOut = new ProgressOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(outputGifPath)), updateInterval, null)) {
+                GifStreamWriter gifWriter = parallelGifEncoding
+                        ? new GifStreamWriter(gifOut, 0, getGifPalette(colorMode)) // 0表示无限循环
+                        : null;
+                if (gifEncoder != null) {
+                    gifEncoder.start(gifOut);
+                    gifEncoder.setRepeat(0); // 0表示无限循环
+                }
+                double pregressStart = 40;
+                double pregressEnd = 80;
+                double singlePregress = ((pregressEnd - pregressStart) / (double)frameCount);
+
+                // 使用多线程并行处理帧
+                processFramesInParallel(gifReader, frameCount, width, height, densityLevel, limitSize,
+                                      colorMode, progressId, totalPixels, tempFiles, delays, gifEncoder, gifWriter, gifOut,
+                                      pregressStart, pregressEnd, singlePregress, progressService, tempDir);
+
+                // 完成GIF编码
+                if (gifWriter != null) {
+                    gifWriter.finish();
+                } else {
+                    gifEncoder.finish();
+                }
+            }
 
             // 更新进度
             progressService.updateProgress(progressId, 90, "GIF编码完成", "GIF编码", totalPixels - 1, totalPixels,false);
@@ -318,6 +440,13 @@ public class CharArtProcessor {
      * 该方法专门处理WebP格式的动画，将其转换为字符画动画并保存为WebP格式。
      * 处理流程包括：解码WebP动画、处理每一帧、生成字符画图片、组合成新的WebP动画。
      * </p>
+     * <p>
+     * 默认在进程内按需解码WebP动画，每帧在流水线中解码后即处理；文件无法在进程内解码
+     * （格式不支持或本地解码库不可用）时回退到WebP处理服务解码，服务每解码一帧即通知，
+     * 该帧到达后即进入流水线处理；关闭逐帧获取时等待服务解码全部帧后再处理。
+     * 字符画帧默认在渲染完成后即在进程内编码，按帧序直接写出WebP动画文件；
+     * 关闭进程内编码或本地编码库不可用时写出PNG帧文件，由WebP处理服务合成动画。
+     * </p>
      *
      * @param originalPath 原始WebP文件路径
      * @param density 字符密度 (low, medium, high)
@@ -331,28 +460,82 @@ public class CharArtProcessor {
      */
     public static byte[] processWebpAnimation(Path originalPath, String density, String colorMode, boolean limitSize, String progressId, ProgressService progressService, WebpProcessorClient webpProcessorClient, Path tempDir) {
         List<Path> tempFiles = new ArrayList<>();
+        WebpAnimationReader webpReader = null;
+        WebpFrameStream webpFrameStream = null;
 
         try {
-            // 检查WebP处理服务是否可用
-            if (!webpProcessorClient.isServiceAvailable()) {
-                throw new ServiceException("WebP处理服务不可用，请确保Python服务已启动");
+            // 不在进程内编码时由WebP处理服务合成动画，先检查服务是否可用
+            boolean javaEncoder = isWebpEncoderEnabled();
+            if (!javaEncoder) {
+                checkWebpService(webpProcessorClient);
             }
             
             // 存储临时目录信息到WebpProcessorClient
             webpProcessorClient.storeTempDirectory(progressId, tempDir);
-            
-            // 使用WebP处理服务解码WebP动画，传递任务ID用于进度跟踪
-            WebpProcessResult webpResult = webpProcessorClient.processWebp(originalPath.toFile(), progressId);
-            int frameCount = webpResult.getFrameCount();
-            BufferedImage[] frames = webpResult.getFrames();
-            int[] delays = webpResult.getDelays();
 
-            progressService.updateProgress(progressId, 40, "WebP解码完成，共" + frameCount + "帧", "WebP解码", 1, 1,false);
+            // 优先在进程内按需解码WebP动画，先解码第一帧确认可以解码，失败时回退到WebP处理服务
+            BufferedImage firstFrame = null;
+            if (webpProcessorClient.isJavaDecoderEnabled()) {
+                try {
+                    webpReader = WebpAnimationReader.open(Files.readAllBytes(originalPath));
+                    firstFrame = webpReader.nextFrame();
+                } catch (IOException | LinkageError e) {
+                    log.warn("进程内解码WebP动画失败，改用WebP处理服务解码: {}", e.getMessage());
+                    if (webpReader != null) {
+                        webpReader.close();
+                        webpReader = null;
+                    }
+                }
+            }
 
-            // 获取第一帧的尺寸
-            BufferedImage firstFrame = frames[0];
-            int width = firstFrame.getWidth();
-            int height = firstFrame.getHeight();
+            int frameCount;
+            int[] delays;
+            int width;
+            int height;
+            FramePipeline.FrameSource<BufferedImage> frameSource;
+            if (webpReader != null) {
+                WebpAnimationReader reader = webpReader;
+                frameCount = reader.getFrameCount();
+                delays = new int[frameCount];
+                for (int i = 0; i < frameCount; i++) {
+                    delays[i] = reader.getDelay(i);
+                }
+                width = reader.getWidth();
+                height = reader.getHeight();
+                // 源帧在流水线中按帧序逐帧解码，第一帧已解码
+                AtomicReference<BufferedImage> decodedFirstFrame = new AtomicReference<>(firstFrame);
+                frameSource = frameIndex -> frameIndex == 0 ? decodedFirstFrame.getAndSet(null) : reader.nextFrame();
+                progressService.updateProgress(progressId, 40, "WebP解析完成，共" + frameCount + "帧", "WebP解码", 1, 1,false);
+            } else {
+                if (javaEncoder) {
+                    checkWebpService(webpProcessorClient);
+                }
+                if (webpProcessorClient.isFrameStreamingEnabled()) {
+                    // 使用WebP处理服务逐帧解码，源帧在流水线中按帧序等待到达，每帧的延迟在该帧到达时填入
+                    webpFrameStream = webpProcessorClient.processWebpStreaming(originalPath.toFile(), progressId);
+                    frameCount = webpFrameStream.getFrameCount();
+                    delays = webpFrameStream.getDelays();
+                    width = webpFrameStream.getWidth();
+                    height = webpFrameStream.getHeight();
+                    frameSource = webpFrameStream::takeFrame;
+                    progressService.updateProgress(progressId, 40, "WebP开始解码，共" + frameCount + "帧", "WebP解码", 1, 1,false);
+                } else {
+                    // 使用WebP处理服务解码WebP动画，传递任务ID用于进度跟踪
+                    WebpProcessResult webpResult = webpProcessorClient.processWebp(originalPath.toFile(), progressId);
+                    frameCount = webpResult.getFrameCount();
+                    BufferedImage[] frames = webpResult.getFrames();
+                    delays = webpResult.getDelays();
+                    width = frames[0].getWidth();
+                    height = frames[0].getHeight();
+                    // 逐帧取出并释放数组中的引用
+                    frameSource = frameIndex -> {
+                        BufferedImage frame = frames[frameIndex];
+                        frames[frameIndex] = null;
+                        return frame;
+                    };
+                    progressService.updateProgress(progressId, 40, "WebP解码完成，共" + frameCount + "帧", "WebP解码", 1, 1,false);
+                }
+            }
 
             // 处理每一帧
             int densityLevel = getDensityLevel(density);
@@ -367,15 +550,33 @@ public class CharArtProcessor {
             double pregressEnd = 80;
             double singlePregress = ((pregressEnd - pregressStart) / (double)frameCount);
             
-            // 使用多线程处理WebP帧
-            processWebpFramesInParallel(frames, frameCount, width, height, densityLevel, limitSize, 
-                colorMode, progressId, totalPixels, tempFiles, charFramePaths, 
+            // 进程内编码时保存每帧编码结果，否则保存字符画帧文件路径
+            WebpAnimationWriter.EncodedFrame[] encodedFrames = javaEncoder ? new WebpAnimationWriter.EncodedFrame[frameCount] : null;
+
+            // 增量渲染时记录每帧局部图像在画布上的位置
+            int[][] frameOffsets = isIncrementalFramesEnabled() ? new int[frameCount][] : null;
+
+            // 使用多线程处理WebP帧，连续相同的帧合并为一帧
+            int outputFrameCount = processWebpFramesInParallel(frameSource, frameCount, width, height, densityLevel, limitSize, 
+                colorMode, progressId, totalPixels, tempFiles, charFramePaths, encodedFrames, delays, frameOffsets, 
                 pregressStart, pregressEnd, singlePregress, progressService, tempDir);
+            if (outputFrameCount < frameCount) {
+                charFramePaths = Arrays.copyOf(charFramePaths, outputFrameCount);
+                delays = Arrays.copyOf(delays, outputFrameCount);
+                if (frameOffsets != null) {
+                    frameOffsets = Arrays.copyOf(frameOffsets, outputFrameCount);
+                }
+            }
 
-            // 使用WebP处理服务创建WebP动画
             progressService.updateProgress(progressId, 90, "创建WebP动画", "WebP编码", totalPixels - 1, totalPixels,false);
-            // 使用相同的任务ID进行WebP动画创建，以便继续跟踪进度
-            File webpOutputFile = webpProcessorClient.createWebpAnimationFromFiles(charFramePaths, delays, progressId);
+            File webpOutputFile;
+            if (encodedFrames != null) {
+                // 按帧序将已编码的帧写出为WebP动画
+                webpOutputFile = writeWebpAnimation(encodedFrames, delays, frameOffsets, outputFrameCount, tempDir);
+            } else {
+                // 使用相同的任务ID进行WebP动画创建，以便继续跟踪进度
+                webpOutputFile = webpProcessorClient.createWebpAnimationFromFiles(charFramePaths, delays, frameOffsets, progressId);
+            }
 
             // 读取生成的WebP文件
             tempFiles.add(webpOutputFile.toPath());
@@ -388,20 +589,101 @@ public class CharArtProcessor {
             // 清理临时目录
             deleteTempDirectory(tempDir);
             throw new ServiceException("处理WebP动画失败: " + e.getMessage(), e);
+        } finally {
+            if (webpReader != null) {
+                webpReader.close();
+            }
+            if (webpFrameStream != null) {
+                webpFrameStream.close();
+            }
+        }
+    }
+
+    /**
+     * 检查WebP处理服务是否可用
+     *
+     * @param webpProcessorClient WebP处理客户端
+     * @throws ServiceException 如果服务不可用
+     */
+    private static void checkWebpService(WebpProcessorClient webpProcessorClient) {
+        if (!webpProcessorClient.isServiceAvailable()) {
+            throw new ServiceException("WebP处理服务不可用，请确保Python服务已启动");
+        }
+    }
+
+    /**
+     * 将已编码的帧写出为WebP动画文件
+     * <p>
+     * 画布尺寸取第一帧（完整帧）的尺寸，局部帧按frameOffsets中的位置叠加在上一帧之上，动画无限循环。
+     * </p>
+     *
+     * @param encodedFrames 已编码的帧
+     * @param delays 每帧延迟（毫秒）
+     * @param frameOffsets 每帧在画布上的位置（{x, y}），为null时每帧都是完整帧
+     * @param frameCount 帧数
+     * @param tempDir 临时目录
+     * @return WebP动画文件
+     * @throws IOException 如果写出失败
+     */
+    private static File writeWebpAnimation(WebpAnimationWriter.EncodedFrame[] encodedFrames, int[] delays, int[][] frameOffsets,
+                                           int frameCount, Path tempDir) throws IOException {
+        Path outputPath = createTempFileInDirectory(tempDir, "char_art_", ".webp");
+        try (WebpAnimationWriter writer = WebpAnimationWriter.create(outputPath,
+                encodedFrames[0].getWidth(), encodedFrames[0].getHeight(), 0)) {
+            for (int i = 0; i < frameCount; i++) {
+                int[] offset = frameOffsets != null ? frameOffsets[i] : null;
+                writer.writeFrame(encodedFrames[i], offset != null ? offset[0] : 0, offset != null ? offset[1] : 0, delays[i]);
+                encodedFrames[i] = null;
+            }
+            writer.finish();
         }
+        return outputPath.toFile();
     }
 
 
     /**
-     * 将图像转换为字符画文本
+     * 将图像转换为字符网格
      * <p>
-     * 根据图像的灰度值，将每个像素映射为对应的字符，生成字符画文本。
+     * 根据图像的灰度值，将每个像素映射为对应的字符索引，生成字符网格。
      * 可以根据需要限制字符画的大小，避免生成过大的字符画。
+     * 彩色模式下同时记录每个单元格的颜色，供渲染阶段直接使用。
+     * </p>
+     *
+     * @param image 要转换的图像
+     * @param densityLevel 密度级别 (0-低, 1-中, 2-高)
+     * @param limitSize 是否限制字符画大小
+     * @param withColors 是否记录单元格颜色
+     * @param progressId 进度ID
+     * @param totalPixels 总像素数
+     * @param pixelOffset 像素偏移量
+     * @param nowFrame 当前帧
+     * @param totalFrame 总帧数
+     * @param pregressStart 子任务开始前进度百分比
+     * @param pregressEnd 子任务结束后进度百分比
+     * @param stageName 进度阶段
+     * @param progressService 进度服务
+     * @param isShowProgress 是否显示进度
+     * @return 生成的字符网格
+     */
+    public static CharGrid convertImageToCharGrid(BufferedImage image, int densityLevel, boolean limitSize, boolean withColors, String progressId, int totalPixels,
+                                                  int pixelOffset, int nowFrame, int totalFrame, double pregressStart,double pregressEnd,
+                                                  String stageName, ProgressService progressService,boolean isShowProgress) {
+        return convertImageToCharGrid(image, densityLevel, limitSize, withColors, progressId, totalPixels, pixelOffset, nowFrame, totalFrame,
+                pregressStart, pregressEnd, stageName, progressService, isShowProgress, false);
+    }
+
+    /**
+     * 将图像转换为字符网格，可选对大图分带并行处理
+     * <p>
+     * 当allowBandParallel为true且输出字符数超过配置的阈值时，
+     * 图像按行拆分为多个分带，由共享的ForkJoin线程池并行转换，每完成一个分带报告一次进度。
+     * 动画帧本身已在帧级别并行，调用方应传入false以避免线程过度订阅。
      * </p>
      *
      * @param image 要转换的图像
      * @param densityLevel 密度级别 (0-低, 1-中, 2-高)
      * @param limitSize 是否限制字符画大小
+     * @param withColors 是否记录单元格颜色
      * @param progressId 进度ID
      * @param totalPixels 总像素数
      * @param pixelOffset 像素偏移量
@@ -412,11 +694,13 @@ public class CharArtProcessor {
      * @param stageName 进度阶段
      * @param progressService 进度服务
      * @param isShowProgress 是否显示进度
-     * @return 生成的字符画文本
+     * @param allowBandParallel 是否允许分带并行处理
+     * @return 生成的字符网格
      */
-    public static String convertImageToCharText(BufferedImage image, int densityLevel, boolean limitSize, String progressId, int totalPixels,
-                                                int pixelOffset, int nowFrame, int totalFrame, double pregressStart,double pregressEnd,
-                                                String stageName, ProgressService progressService,boolean isShowProgress, Path tempDir) {
+    private static CharGrid convertImageToCharGrid(BufferedImage image, int densityLevel, boolean limitSize, boolean withColors, String progressId, int totalPixels,
+                                                   int pixelOffset, int nowFrame, int totalFrame, double pregressStart,double pregressEnd,
+                                                   String stageName, ProgressService progressService,boolean isShowProgress,
+                                                   boolean allowBandParallel) {
         int width = image.getWidth();
         int height = image.getHeight();
 
@@ -436,99 +720,205 @@ public class CharArtProcessor {
             scale = Math.min(scaleWidth, scaleHeight);
         }
 
-        // 计算缩放后的尺寸
-        int scaledWidth = (int) (width * scale);
-        int scaledHeight = (int) (height * scale);
+        // 计算缩放后的尺寸（至少保留一个字符）
+        int scaledWidth = Math.max(1, (int) (width * scale));
+        int scaledHeight = Math.max(1, (int) (height * scale));
 
-        // 使用临时文件进行图像缩放
-        BufferedImage scaledImage = image;
-        if (scale < 1.0) {
+        // 获取灰度查找表，字符索引直接写入网格
+        byte[] glyphLut = GLYPH_LUTS[densityLevel];
+        LumaKernel kernel = LumaKernel.of(image);
+        CharGrid grid = new CharGrid(scaledWidth, scaledHeight, CHAR_SET_CHARS[densityLevel], withColors);
+
+        int totalScaledPixels = scaledWidth * scaledHeight;
+        double progress = pregressStart + ((double)nowFrame / totalFrame * (pregressEnd-pregressStart));
+
+        if (scale >= 1.0 && allowBandParallel && shouldSplitIntoBands(totalScaledPixels, scaledHeight)) {
+            // 大图按行分带，由ForkJoin线程池并行生成，各分带直接写入网格中互不重叠的区间
+            int bandRows = Math.max(1, (int) Math.ceil((double) scaledHeight / (getBandPool().getParallelism() * BAND_SPLIT_FACTOR)));
+            AtomicInteger completedRows = new AtomicInteger();
+            IntConsumer bandListener = rows -> {
+                int processedPixels = completedRows.addAndGet(rows) * scaledWidth;
+                if (isShowProgress) {
+                    int currentPixel = pixelOffset + (int)((double)processedPixels / totalScaledPixels * (width * height));
+                    progressService.updateProgress(progressId, progress, "生成字符画文本: " + currentPixel + "/" + totalPixels + " 像素", stageName, currentPixel, totalPixels,false);
+                }
+            };
+            log.debug("分带并行生成字符画文本: {}x{}, 每带{}行, 并行度{}", scaledWidth, scaledHeight, bandRows, getBandPool().getParallelism());
             try {
-                // 创建临时文件用于存储缩放后的图像
-                Path scaledImagePath = createTempFileInDirectory(tempDir, "scaled_", ".png");
-
-                // 使用Thumbnailator进行图像缩放并保存到临时文件
-                Thumbnails.of(image)
-                        .size(scaledWidth, scaledHeight)
-                        .toFile(scaledImagePath.toFile());
-
-                // 从临时文件读取缩放后的图像
-                scaledImage = ImageIO.read(scaledImagePath.toFile());
-
-                // 更新宽高为实际缩放后的尺寸
-                scaledWidth = scaledImage.getWidth();
-                scaledHeight = scaledImage.getHeight();
-
-                // 删除临时文件
-                FileUtil.del(scaledImagePath.toFile());
-            } catch (Exception e) {
-                log.warn("使用Thumbnailator缩放图像失败: {}", e.getMessage());
-                // 如果缩放失败，继续使用原始图像和计算的尺寸
+                getBandPool().invoke(new TextBandTask(kernel, glyphLut, grid, 0, scaledHeight, bandRows, bandListener));
+            } catch (RuntimeException e) {
+                throw new ServiceException("分带并行生成字符画文本失败: " + e.getMessage(), e);
             }
+            return grid;
         }
 
-        // 获取字符集
-        String charSet = CHAR_SETS[densityLevel];
-
-        // 转换为字符
-        StringBuilder sb = new StringBuilder();
-        int processedPixels = 0;
-        int totalScaledPixels = scaledWidth * scaledHeight;
-
-        for (int y = 0; y < scaledHeight; y++) {
-            for (int x = 0; x < scaledWidth; x++) {
-                // 获取像素颜色
-                int rgb;
-                if (scale < 1.0 && scaledImage != image) {
-                    // 如果已缩放，直接获取缩放后图像的像素
-                    rgb = scaledImage.getRGB(x, y);
-                } else {
-                    // 计算原图中对应的坐标
-                    int origX = (int) (x / scale);
-                    int origY = (int) (y / scale);
-
-                    // 确保坐标不超出原图范围
-                    origX = Math.min(origX, width - 1);
-                    origY = Math.min(origY, height - 1);
+        // 更新进度（按行检查是否跨过报告间隔，避免逐像素判断）
+        int progressInterval = parallelConfig != null ? parallelConfig.getPixelProgressInterval() : 1000;
+        int[] nextProgressPixels = {progressInterval};
+        IntConsumer rowListener = y -> {
+            int processedPixels = (y + 1) * scaledWidth;
+            if (isShowProgress && (processedPixels >= nextProgressPixels[0] || y == scaledHeight - 1)) {
+                nextProgressPixels[0] = (processedPixels / progressInterval + 1) * progressInterval;
+                // 计算当前处理的实际像素位置（考虑偏移量）
+                int currentPixel = pixelOffset + (int)((double)processedPixels / totalScaledPixels * (width * height));
+                progressService.updateProgress(progressId, progress, "生成字符画文本: " + currentPixel + "/" + totalPixels + " 像素", stageName, currentPixel, totalPixels,false);
+            }
+        };
 
-                    rgb = image.getRGB(origX, origY);
-                }
+        if (scale < 1.0) {
+            // 在内存中按区域平均直接缩小到字符网格尺寸，不再经过临时文件
+            AreaAverageScaler.scale(kernel, scaledWidth, scaledHeight, (y, rgbRow) -> {
+                fillGridRow(grid, glyphLut, rgbRow, y);
+                rowListener.accept(y);
+            });
+        } else {
+            int[] rgbRow = new int[kernel.getWidth()];
+            for (int y = 0; y < scaledHeight; y++) {
+                convertRows(kernel, rgbRow, glyphLut, grid, y, y + 1);
+                rowListener.accept(y);
+            }
+        }
 
-                int r = (rgb >> 16) & 0xFF;
-                int g1 = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
+        return grid;
+    }
 
-                // 计算灰度值 (0-255)
-                // 使用加权平均法计算灰度，更符合人眼感知
-                int gray = (int)(0.299 * r + 0.587 * g1 + 0.114 * b);
+    /**
+     * 将指定范围内的行转换为字符索引
+     * <p>
+     * 逐行读取像素并通过查找表映射为字符索引，写入网格对应行的位置。
+     * 不同行区间写入的位置互不重叠，可由多个线程同时调用。
+     * </p>
+     *
+     * @param kernel 亮度内核
+     * @param rgbRow 像素行缓冲区，长度不小于源图像宽度，每个线程独占
+     * @param glyphLut 灰度到字符索引的查找表
+     * @param grid 结果字符网格
+     * @param yStart 起始行（包含）
+     * @param yEnd 结束行（不包含）
+     */
+    private static void convertRows(LumaKernel kernel, int[] rgbRow, byte[] glyphLut, CharGrid grid, int yStart, int yEnd) {
+        for (int y = yStart; y < yEnd; y++) {
+            kernel.readRgbRow(y, rgbRow);
+            fillGridRow(grid, glyphLut, rgbRow, y);
+        }
+    }
 
-                // 映射到字符集
-                int charIndex = gray * (charSet.length() - 1) / 255;
-                char c = charSet.charAt(charIndex);
+    /**
+     * 将一行像素写入字符网格的指定行
+     *
+     * @param grid 结果字符网格
+     * @param glyphLut 灰度到字符索引的查找表
+     * @param rgbRow 像素行（0xRRGGBB），有效长度不小于网格宽度
+     * @param y 网格行号
+     */
+    private static void fillGridRow(CharGrid grid, byte[] glyphLut, int[] rgbRow, int y) {
+        int width = grid.getWidth();
+        int rowStart = y * width;
+        byte[] glyphs = grid.getGlyphs();
+        for (int x = 0; x < width; x++) {
+            glyphs[rowStart + x] = glyphLut[LumaKernel.luma(rgbRow[x])];
+        }
+        if (grid.hasColors()) {
+            System.arraycopy(rgbRow, 0, grid.getColors(), rowStart, width);
+        }
+    }
 
-                sb.append(c);
+    /**
+     * 判断是否应对单张图像进行分带并行处理
+     *
+     * @param totalScaledPixels 输出字符总数
+     * @param scaledHeight 输出行数
+     * @return 如果启用了分带并行且图像足够大则返回true
+     */
+    private static boolean shouldSplitIntoBands(int totalScaledPixels, int scaledHeight) {
+        boolean enabled = parallelConfig == null || parallelConfig.isBandParallelEnabled();
+        int minPixels = parallelConfig != null ? parallelConfig.getBandParallelMinPixels() : 1000000;
+        return enabled && totalScaledPixels >= minPixels && scaledHeight > 1 && getBandPool().getParallelism() > 1;
+    }
 
-                // 更新进度（每处理一定数量的像素更新一次，避免过于频繁的更新）
-                processedPixels++;
-                int progressInterval = parallelConfig != null ? parallelConfig.getPixelProgressInterval() : 1000;
-            if ((processedPixels % progressInterval == 0 || processedPixels == totalScaledPixels) && isShowProgress ) {
-                    // 计算当前处理的实际像素位置（考虑偏移量）
-                    int currentPixel = pixelOffset + (int)((double)processedPixels / totalScaledPixels * (width * height));
-                    double progress = pregressStart + ((double)nowFrame / totalFrame * (pregressEnd-pregressStart));
-                    progressService.updateProgress(progressId, progress, "生成字符画文本: " + currentPixel + "/" + totalPixels + " 像素", stageName, currentPixel, totalPixels,false);
+    /**
+     * 获取分带并行处理共享的ForkJoin线程池
+     * <p>
+     * 线程池在首次使用时按并行处理配置创建，之后在所有任务间共享。
+     * 工作线程为守护线程，不会阻止JVM退出。
+     * </p>
+     *
+     * @return 分带并行线程池
+     */
+    private static ForkJoinPool getBandPool() {
+        ForkJoinPool pool = bandPool;
+        if (pool == null) {
+            synchronized (CharArtProcessor.class) {
+                pool = bandPool;
+                if (pool == null) {
+                    int parallelism = parallelConfig != null ?
+                        parallelConfig.calculateBandThreadCount() :
+                        Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+                    AtomicInteger threadIndex = new AtomicInteger();
+                    pool = new ForkJoinPool(parallelism, p -> {
+                        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                        thread.setName("char-art-band-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, null, false);
+                    bandPool = pool;
+                    log.debug("已创建分带并行线程池，并行度: {}", parallelism);
                 }
             }
-            sb.append('\n');
+        }
+        return pool;
+    }
+
+    /**
+     * 字符文本分带生成任务
+     * <p>
+     * 按行区间递归拆分，直到区间不超过单个分带的行数后直接转换。
+     * 每完成一个分带，通过监听器报告完成的行数。
+     * </p>
+     */
+    private static class TextBandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final LumaKernel kernel;
+        private final byte[] glyphLut;
+        private final CharGrid grid;
+        private final int yStart;
+        private final int yEnd;
+        private final int bandRows;
+        private final IntConsumer bandListener;
+
+        TextBandTask(LumaKernel kernel, byte[] glyphLut, CharGrid grid, int yStart, int yEnd, int bandRows,
+                     IntConsumer bandListener) {
+            this.kernel = kernel;
+            this.glyphLut = glyphLut;
+            this.grid = grid;
+            this.yStart = yStart;
+            this.yEnd = yEnd;
+            this.bandRows = bandRows;
+            this.bandListener = bandListener;
         }
 
-        return sb.toString();
+        @Override
+        protected void compute() {
+            if (yEnd - yStart <= bandRows) {
+                int[] rgbRow = new int[kernel.getWidth()];
+                convertRows(kernel, rgbRow, glyphLut, grid, yStart, yEnd);
+                bandListener.accept(yEnd - yStart);
+                return;
+            }
+            // 按分带边界对半拆分
+            int bands = (yEnd - yStart + bandRows - 1) / bandRows;
+            int middle = yStart + (bands / 2) * bandRows;
+            invokeAll(new TextBandTask(kernel, glyphLut, grid, yStart, middle, bandRows, bandListener),
+                      new TextBandTask(kernel, glyphLut, grid, middle, yEnd, bandRows, bandListener));
+        }
     }
 
     /**
      * 创建字符画图片文件（带进度更新）
-     * @param charText 字符画文本
+     * @param grid 字符网格，彩色模式下需包含单元格颜色
      * @param colorMode 颜色模式 (grayscale, color, colorBackground)
-     * @param originalImage 原始图片，用于彩色模式获取颜色信息
+     * @param originalImage 原始图片，用于计算进度对应的像素位置
      * @param progressId 进度ID，用于更新进度
      * @param pixelOffset 像素偏移量，用于计算当前处理的像素位置
      * @param totalPixels 总像素数
@@ -541,56 +931,169 @@ public class CharArtProcessor {
      * @param isShowProgress 是否显示进度
      * @return 字符画图片文件路径
      */
-    public static Path createCharImageFile(String charText, String colorMode, BufferedImage originalImage, String progressId, int pixelOffset,
+    public static Path createCharImageFile(CharGrid grid, String colorMode, BufferedImage originalImage, String progressId, int pixelOffset,
                                            int totalPixels, List<Path> tempFiles, int totalFrame, double pregressStart, double pregressEnd,
                                            String stageName, ProgressService progressService,boolean isShowProgress, Path tempDir) {
+        return createCharImageFile(grid, colorMode, originalImage, progressId, pixelOffset, totalPixels, tempFiles, totalFrame,
+                pregressStart, pregressEnd, stageName, progressService, isShowProgress, tempDir, false);
+    }
+
+    /**
+     * 创建字符画图片文件，可选对大图分条并行渲染
+     * <p>
+     * 当allowStripParallel为true、启用了字形图集且字符数超过配置的阈值时，
+     * 图片按水平条带拆分，由共享的ForkJoin线程池并行渲染到同一个目标像素数组中。
+     * 动画帧本身已在帧级别并行，调用方应传入false以避免线程过度订阅。
+     * </p>
+     *
+     * @param grid 字符网格，彩色模式下需包含单元格颜色
+     * @param colorMode 颜色模式 (grayscale, color, colorBackground)
+     * @param originalImage 原始图片，用于计算进度对应的像素位置
+     * @param progressId 进度ID，用于更新进度
+     * @param pixelOffset 像素偏移量，用于计算当前处理的像素位置
+     * @param totalPixels 总像素数
+     * @param tempFiles 临时文件列表，用于跟踪和清理
+     * @param totalFrame 总共需要处理的帧
+     * @param pregressStart 子任务开始前进度百分比
+     * @param pregressEnd 子任务结束后进度百分比
+     * @param stageName 进度阶段
+     * @param progressService 进度服务
+     * @param isShowProgress 是否显示进度
+     * @param allowStripParallel 是否允许分条并行渲染
+     * @return 字符画图片文件路径
+     */
+    private static Path createCharImageFile(CharGrid grid, String colorMode, BufferedImage originalImage, String progressId, int pixelOffset,
+                                            int totalPixels, List<Path> tempFiles, int totalFrame, double pregressStart, double pregressEnd,
+                                            String stageName, ProgressService progressService,boolean isShowProgress, Path tempDir,
+                                            boolean allowStripParallel) {
         try{
-            // 计算字体大小和图片尺寸
-            String[] lines = charText.split("\n");
-            int lineCount = lines.length;
-            int maxLineLength = 0;
+            // 创建输出图像文件
+            Path outputImagePath = createTempFileInDirectory(tempDir, "char_image_", ".png");
+            tempFiles.add(outputImagePath);
 
-            for (String line : lines) {
-                maxLineLength = Math.max(maxLineLength, line.length());
+            BufferedImage fullImage = renderCharImage(grid, colorMode, originalImage, progressId, pixelOffset, totalPixels,
+                    pregressStart, pregressEnd, stageName, progressService, isShowProgress, allowStripParallel, outputImagePath);
+            if (fullImage != null) {
+                // 使用多线程保存完整图像到文件并更新进度
+                writeImageWithProgress(fullImage, outputImagePath, progressId, progressService, totalPixels, pregressEnd,
+                        isShowProgress, pngOptions(allowStripParallel));
             }
 
-            // 设置基础字体大小 - 使用固定值以确保清晰可读
-            int baseFontSize = 12; // 基础字体大小
-
-            // 设置等宽字体 - 使用粗体以增强颜色显示效果
-            Font font = new Font(Font.MONOSPACED, Font.BOLD, baseFontSize);
-
-            // 创建临时图形上下文以获取字体度量
-            BufferedImage tempImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
-            Graphics2D tempG = tempImage.createGraphics();
-            tempG.setFont(font);
-            FontMetrics metrics = tempG.getFontMetrics(font);
-            tempG.dispose();
+            return outputImagePath;
+        } catch (Exception e) {
+            String errorType = totalFrame > 1 ? "动态" : "静态";
+            throw new ServiceException("创建" + errorType + "字符画图片文件失败: " + e.getMessage(), e);
+        }
+    }
 
-            // 计算字符宽度和行高
-            int charWidth = metrics.charWidth('M'); // 使用等宽字体的标准字符宽度
-            int lineHeight = metrics.getHeight();
+    /**
+     * 将字符网格渲染为字符画图像
+     * <p>
+     * 字符画文件和动画帧共用的渲染过程。指定了streamingOutputPath且图片超过流式渲染阈值时，
+     * 不创建整图，而是逐行渲染并直接编码写入该文件，此时返回null；否则返回渲染完成的图像，由调用方决定写入文件或直接使用。
+     * </p>
+     *
+     * @param grid 字符网格，彩色模式下需包含单元格颜色
+     * @param colorMode 颜色模式 (grayscale, color, colorBackground)
+     * @param originalImage 原始图片，用于计算进度对应的像素位置
+     * @param progressId 进度ID，用于更新进度
+     * @param pixelOffset 像素偏移量，用于计算当前处理的像素位置
+     * @param totalPixels 总像素数
+     * @param pregressStart 子任务开始前进度百分比
+     * @param pregressEnd 子任务结束后进度百分比
+     * @param stageName 进度阶段
+     * @param progressService 进度服务
+     * @param isShowProgress 是否显示进度
+     * @param allowStripParallel 是否允许分条并行渲染
+     * @param streamingOutputPath 超大图片流式写入的目标文件，为null时总是返回整图
+     * @return 渲染完成的字符画图像，已流式写入文件时返回null
+     * @throws IOException 流式写入文件失败时抛出
+     */
+    private static BufferedImage renderCharImage(CharGrid grid, String colorMode, BufferedImage originalImage, String progressId,
+                                                 int pixelOffset, int totalPixels, double pregressStart, double pregressEnd,
+                                                 String stageName, ProgressService progressService, boolean isShowProgress,
+                                                 boolean allowStripParallel, Path streamingOutputPath) throws IOException {
+        // 计算字体大小和图片尺寸
+        int lineCount = grid.getHeight();
+        int maxLineLength = grid.getWidth();
+
+        // 设置基础字体大小 - 使用固定值以确保清晰可读
+        int baseFontSize = CHAR_IMAGE_FONT_SIZE; // 基础字体大小
+
+        // 设置等宽字体 - 使用粗体以增强颜色显示效果
+        Font font = new Font(Font.MONOSPACED, Font.BOLD, baseFontSize);
+
+        // 创建临时图形上下文以获取字体度量
+        BufferedImage tempImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D tempG = tempImage.createGraphics();
+        tempG.setFont(font);
+        FontMetrics metrics = tempG.getFontMetrics(font);
+        tempG.dispose();
+
+        // 计算字符宽度和行高
+        int charWidth = metrics.charWidth('M'); // 使用等宽字体的标准字符宽度
+        int lineHeight = metrics.getHeight();
+
+        // 计算图片的实际尺寸 - 基于字符画文本的尺寸
+        int imageWidth = maxLineLength * charWidth;
+        int imageHeight = lineCount * lineHeight;
+
+        // 分块处理图像以减少内存使用
+        int blockHeight = 100; // 每次处理100行
+        int numBlocks = (int) Math.ceil((double) lineCount / blockHeight);
+
+        // 计算起始位置 - 从左上角开始
+        int startX = 0;
+        int startY = metrics.getAscent(); // 只加上基线偏移
+
+        // 根据颜色模式绘制字符
+        boolean isColorMode = "color".equalsIgnoreCase(colorMode);
+        boolean isColorBackgroundMode = "colorBackground".equalsIgnoreCase(colorMode);
+        // 灰度模式只包含黑色字符及其抗锯齿灰阶，可输出为8位灰度调色板图像
+        boolean indexedGrayscale = !isColorMode && !isColorBackgroundMode && isIndexedGrayscaleEnabled();
+
+        // 计算总字符数用于进度更新
+        int totalChars = lineCount * maxLineLength;
+        int processedChars = 0;
+
+        // 预先为字符集中的每个字符创建字符串，避免逐字符调用String.valueOf
+        char[] charset = grid.getCharset();
+        String[] glyphStrings = new String[charset.length];
+        for (int g = 0; g < charset.length; g++) {
+            glyphStrings[g] = String.valueOf(charset[g]);
+        }
+        byte[] glyphs = grid.getGlyphs();
+        boolean useCellColors = (isColorMode || isColorBackgroundMode) && grid.hasColors();
 
-            // 计算图片的实际尺寸 - 基于字符画文本的尺寸
-            int imageWidth = maxLineLength * charWidth;
-            int imageHeight = lineCount * lineHeight;
+        // 启用字形图集时，直接将预先光栅化的字形混合到图像像素数组中，否则回退到逐字符drawString
+        GlyphAtlas atlas = isGlyphAtlasEnabled() ? GlyphAtlas.of(font, charset) : null;
 
-            // 创建输出图像文件
-            Path outputImagePath = createTempFileInDirectory(tempDir, "char_image_", ".png");
-            tempFiles.add(outputImagePath);
 
-            // 分块处理图像以减少内存使用
-            int blockHeight = 100; // 每次处理100行
-            int numBlocks = (int) Math.ceil((double) lineCount / blockHeight);
+        if (streamingOutputPath != null && atlas != null && shouldStreamImage(imageWidth, imageHeight)) {
+            // 超大图片不创建整图，逐行渲染并直接编码写入文件
+            log.debug("流式渲染字符画图片: {}x{} 像素", imageWidth, imageHeight);
+            renderImageStreaming(grid, atlas, streamingOutputPath, imageWidth, imageHeight, indexedGrayscale,
+                    useCellColors, isColorMode, isColorBackgroundMode, progressId, progressService, isShowProgress,
+                    originalImage, pixelOffset, totalPixels, pregressStart, pregressEnd, stageName,
+                    pngOptions(allowStripParallel));
+            return null;
+        }
 
-            // 创建最终图像文件
-            BufferedImage fullImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
-            Graphics2D fullG = fullImage.createGraphics();
+        // 创建最终图像
+        BufferedImage fullImage;
+        Graphics2D fullG = null;
+        int[] raster = null;
+        byte[] grayRaster = null;
+        if (atlas != null && indexedGrayscale) {
+            // 图集直接写入灰度调色板图像，每个像素只占1字节，索引0即为白色背景
+            fullImage = createGrayscaleIndexedImage(imageWidth, imageHeight);
+            grayRaster = ((DataBufferByte) fullImage.getRaster().getDataBuffer()).getData();
+        } else {
+            fullImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
+            fullG = fullImage.createGraphics();
 
-            // 设置渲染质量
-            fullG.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-            fullG.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-            fullG.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+            // 设置渲染质量（与字形图集光栅化使用的提示相同）
+            GlyphAtlas.applyTextHints(fullG);
 
             // 设置背景 - 使用白色背景以便彩色字符更加清晰可见
             fullG.setColor(Color.WHITE);
@@ -599,20 +1102,50 @@ public class CharArtProcessor {
             // 设置字体
             fullG.setFont(font);
 
-            // 计算起始位置 - 从左上角开始
-            int startX = 0;
-            int startY = metrics.getAscent(); // 只加上基线偏移
-
-            // 根据颜色模式绘制字符
-            boolean isColorMode = "color".equalsIgnoreCase(colorMode);
-            boolean isColorBackgroundMode = "colorBackground".equalsIgnoreCase(colorMode);
+            if (atlas != null) {
+                raster = ((DataBufferInt) fullImage.getRaster().getDataBuffer()).getData();
+            }
+        }
 
-            // 计算总字符数用于进度更新
-            int totalChars = 0;
-            for (String line : lines) {
-                totalChars += line.length();
+        if (atlas != null && allowStripParallel && shouldSplitIntoStrips(totalChars, lineCount)) {
+            // 大图按水平条带拆分，每个条带由独立的工作线程写入目标像素数组中互不重叠的行
+            int stripLines = Math.max(1, Math.min(blockHeight,
+                    (int) Math.ceil((double) lineCount / (getBandPool().getParallelism() * BAND_SPLIT_FACTOR))));
+            AtomicInteger completedChars = new AtomicInteger();
+            int[] stripRaster = raster;
+            byte[] stripGrayRaster = grayRaster;
+            log.debug("分条并行渲染字符画图片: {}x{}, 每条{}行, 并行度{}", maxLineLength, lineCount, stripLines, getBandPool().getParallelism());
+            List<ForkJoinTask<?>> stripTasks = new ArrayList<>();
+            for (int stripStart = 0; stripStart < lineCount; stripStart += stripLines) {
+                int lineStart = stripStart;
+                int lineEnd = Math.min(stripStart + stripLines, lineCount);
+                stripTasks.add(getBandPool().submit(() -> {
+                    // 只写入本条带的像素行，并重放相邻行中可能溢出到本条带的字形，保证与顺序绘制结果一致
+                    int overhang = atlas.getOverhangLines();
+                    renderAtlasLines(grid, atlas, stripRaster, stripGrayRaster, imageWidth,
+                            lineStart * lineHeight, lineEnd * lineHeight,
+                            Math.max(0, lineStart - overhang), Math.min(lineCount, lineEnd + overhang), 0,
+                            useCellColors, isColorMode, isColorBackgroundMode);
+                    int done = completedChars.addAndGet((lineEnd - lineStart) * maxLineLength);
+                    if (progressId != null && isShowProgress) {
+                        updateRenderProgress(progressId, progressService, done, totalChars, pregressStart, pregressEnd,
+                                pixelOffset, originalImage, totalPixels, stageName);
+                    }
+                }));
             }
-            int processedChars = 0;
+            try {
+                for (ForkJoinTask<?> stripTask : stripTasks) {
+                    stripTask.join();
+                }
+            } catch (RuntimeException e) {
+                throw new ServiceException("分条并行渲染字符画图片失败: " + e.getMessage(), e);
+            }
+        } else {
+            // 未使用字形图集时，可将同色游程合并为一次drawGlyphVector或fillRect调用
+            boolean runBatching = atlas == null && isRunBatchingEnabled();
+            int runColorMask = getRunColorMask();
+            char[] runChars = new char[maxLineLength];
+            int[] runColumns = new int[maxLineLength];
 
             // 分块处理
             for (int block = 0; block < numBlocks; block++) {
@@ -620,47 +1153,51 @@ public class CharArtProcessor {
                 int endLine = Math.min(startLine + blockHeight, lineCount);
 
                 // 绘制当前块的字符
-                for (int i = startLine; i < endLine && i < lines.length; i++) {
-                    String line = lines[i];
-                    for (int j = 0; j < line.length(); j++) {
-                        char c = line.charAt(j);
+                for (int i = startLine; i < endLine; i++) {
+                    if (atlas != null || runBatching) {
+                        // 字形图集和同色游程路径按行绘制，每行检查一次是否需要报告进度
+                        if (atlas != null) {
+                            renderAtlasLines(grid, atlas, raster, grayRaster, imageWidth, 0, imageHeight, i, i + 1, 0,
+                                    useCellColors, isColorMode, isColorBackgroundMode);
+                        } else {
+                            drawLineRuns(fullG, font, grid, i, charWidth, lineHeight, startY, runColorMask,
+                                    useCellColors, isColorMode, isColorBackgroundMode, runChars, runColumns);
+                        }
+                        int previousChars = processedChars;
+                        processedChars += maxLineLength;
+                        if (progressId != null && isShowProgress
+                                && (processedChars / 500 != previousChars / 500 || processedChars == totalChars)) {
+                            updateRenderProgress(progressId, progressService, processedChars, totalChars, pregressStart, pregressEnd,
+                                    pixelOffset, originalImage, totalPixels, stageName);
+                        }
+                        continue;
+                    }
+
+                    for (int j = 0; j < maxLineLength; j++) {
+                        int glyph = glyphs[i * maxLineLength + j];
+                        char c = charset[glyph];
 
                         // 计算当前字符的绘制位置
                         int x = startX + j * charWidth;
                         int y = startY + i * lineHeight;
 
-                        // 计算原图中对应的坐标 - 按比例映射
-                        int origX = 0;
-                        int origY = 0;
-                        Color enhancedColor = Color.BLACK;
-                        
-                        if ((isColorMode || isColorBackgroundMode) && originalImage != null) {
-                            if (maxLineLength > 0) {
-                                origX = Math.min((int)(j * 1.0 / maxLineLength * originalImage.getWidth()), originalImage.getWidth() - 1);
-                                origY = Math.min((int)(i * 1.0 / lineCount * originalImage.getHeight()), originalImage.getHeight() - 1);
-                            }
-
-                            // 获取原始颜色
-                            Color pixelColor = new Color(originalImage.getRGB(origX, origY));
-
-                            // 增强颜色饱和度和亮度
-                            float[] hsb = Color.RGBtoHSB(pixelColor.getRed(), pixelColor.getGreen(), pixelColor.getBlue(), null);
-                            // 增加饱和度，但不超过1.0
-                            hsb[1] = Math.min(1.0f, hsb[1] * 1.5f);
-                            // 确保亮度适中，不会太暗或太亮
-                            hsb[2] = Math.max(0.3f, Math.min(0.9f, hsb[2] * 1.2f));
-
-                            enhancedColor = Color.getHSBColor(hsb[0], hsb[1], hsb[2]);
+                        // 通过查找表获取增强颜色和对比字符颜色（灰度模式下为黑色）
+                        int enhancedRgb = 0x000000;
+                        int contrastRgb = 0x000000;
+                        if (useCellColors) {
+                            int cellRgb = grid.colorAt(j, i);
+                            enhancedRgb = ColorEnhancer.enhance(cellRgb);
+                            contrastRgb = ColorEnhancer.contrast(cellRgb);
                         }
-                        
+
                         if (isColorMode) {
                             // 彩色字符模式：字符使用原图颜色
-                            fullG.setColor(enhancedColor);
-                            
+                            fullG.setColor(new Color(enhancedRgb));
+
                             // 对于非空格字符，直接使用颜色绘制字符
                             if (c != ' ') {
                                 // 已经设置了颜色，直接绘制字符
-                                fullG.drawString(String.valueOf(c), x, y);
+                                fullG.drawString(glyphStrings[glyph], x, y);
                             } else {
                                 // 对于空格，绘制背景色块
                                 fullG.fillRect(x, y - metrics.getAscent(), charWidth, lineHeight);
@@ -668,148 +1205,567 @@ public class CharArtProcessor {
                         } else if (isColorBackgroundMode) {
                             // 彩色背景模式：背景使用原图颜色，字符使用与背景相似但有对比度的颜色
                             // 先绘制背景
-                            fullG.setColor(enhancedColor);
+                            fullG.setColor(new Color(enhancedRgb));
                             fullG.fillRect(x, y - metrics.getAscent(), charWidth, lineHeight);
-                            
+
                             // 使用与背景颜色相似但有一定对比度的颜色绘制字符
-                            Color charColor = getColor(enhancedColor);
-                            fullG.setColor(charColor);
-                            
+                            fullG.setColor(new Color(contrastRgb));
+
                             // 绘制字符（非空格）
                             if (c != ' ') {
-                                fullG.drawString(String.valueOf(c), x, y);
+                                fullG.drawString(glyphStrings[glyph], x, y);
                             }
                         } else {
                             // 灰度模式：使用黑色字符
                             fullG.setColor(Color.BLACK);
-                            fullG.drawString(String.valueOf(c), x, y);
+                            fullG.drawString(glyphStrings[glyph], x, y);
                         }
 
                         // 更新进度
                         processedChars++;
                         if ((progressId != null && (processedChars % 500 == 0 || processedChars == totalChars)) && isShowProgress) {
-                            double progress = (int)(pregressStart + ((double)processedChars / totalChars * (pregressEnd-pregressStart)));
-                            // 计算当前处理的实际像素位置（考虑偏移量）
-                            int currentPixel = pixelOffset + (int)((double)processedChars / totalChars * Objects.requireNonNull(originalImage).getWidth() * originalImage.getHeight());
-                            String progressMessage = "生成字符画图片: " + currentPixel + "/" + totalPixels + " 像素";
-                            progressService.updateProgress(progressId, progress, progressMessage, stageName, currentPixel, totalPixels,false);
+                            updateRenderProgress(progressId, progressService, processedChars, totalChars, pregressStart, pregressEnd,
+                                    pixelOffset, originalImage, totalPixels, stageName);
                         }
                     }
                 }
             }
+        }
 
+        if (fullG != null) {
             fullG.dispose();
-
-            // 使用多线程保存完整图像到文件并更新进度
-            writeImageWithProgress(fullImage, outputImagePath, progressId, progressService, totalPixels, pregressEnd);
-
-            return outputImagePath;
-        } catch (Exception e) {
-            String errorType = totalFrame > 1 ? "动态" : "静态";
-            throw new ServiceException("创建" + errorType + "字符画图片文件失败: " + e.getMessage(), e);
         }
+        if (indexedGrayscale && grayRaster == null) {
+            // Java2D回退路径先在RGB画布上绘制，再转换为相同的灰度调色板图像
+            fullImage = toGrayscaleIndexedImage(fullImage);
+        }
+
+        return fullImage;
     }
 
     /**
-     * 使用多线程写入图像文件并定期更新进度
-     * 
-     * @param image 要保存的图像
+     * 使用字形图集绘制指定范围内的行
+     * <p>
+     * 按从上到下、从左到右的顺序绘制每个单元格，绘制顺序和颜色规则与Java2D回退路径完全相同，
+     * 因此两条路径生成的图像逐像素一致。只写入[clipTop, clipBottom)范围内的像素行，
+     * 不同行范围可由多个线程同时绘制。
+     * </p>
+     *
+     * @param grid 字符网格
+     * @param atlas 字形图集
+     * @param raster RGB目标像素数组，灰度调色板模式下为null
+     * @param grayRaster 灰度调色板目标像素数组，RGB模式下为null
+     * @param imageWidth 目标图像宽度
+     * @param clipTop 可写区域起始行（包含）
+     * @param clipBottom 可写区域结束行（不包含）
+     * @param lineStart 起始字符行（包含）
+     * @param lineEnd 结束字符行（不包含）
+     * @param originLine 目标像素数组第0行对应的字符行，整图绘制时为0，逐行流式绘制时为当前行
+     * @param useCellColors 是否使用单元格颜色
+     * @param isColorMode 是否为彩色字符模式
+     * @param isColorBackgroundMode 是否为彩色背景模式
+     */
+    private static void renderAtlasLines(CharGrid grid, GlyphAtlas atlas, int[] raster, byte[] grayRaster, int imageWidth,
+                                         int clipTop, int clipBottom, int lineStart, int lineEnd, int originLine,
+                                         boolean useCellColors, boolean isColorMode, boolean isColorBackgroundMode) {
+        int width = grid.getWidth();
+        byte[] glyphs = grid.getGlyphs();
+        char[] charset = grid.getCharset();
+        int charWidth = atlas.getCellWidth();
+        int lineHeight = atlas.getCellHeight();
+
+        for (int i = lineStart; i < lineEnd; i++) {
+            int cellTop = (i - originLine) * lineHeight;
+            for (int j = 0; j < width; j++) {
+                int glyph = glyphs[i * width + j];
+                int x = j * charWidth;
+
+                if (grayRaster != null) {
+                    // 灰度调色板模式：黑色字符直接混合到灰度像素
+                    atlas.drawGlyphGray(grayRaster, imageWidth, clipTop, clipBottom, glyph, x, cellTop);
+                    continue;
+                }
+
+                // 通过查找表获取增强颜色和对比字符颜色（灰度模式下为黑色）
+                int enhancedRgb = 0x000000;
+                int contrastRgb = 0x000000;
+                if (useCellColors) {
+                    int cellRgb = grid.colorAt(j, i);
+                    enhancedRgb = ColorEnhancer.enhance(cellRgb);
+                    contrastRgb = ColorEnhancer.contrast(cellRgb);
+                }
+
+                boolean isSpace = charset[glyph] == ' ';
+                if (isColorMode) {
+                    // 彩色字符模式：字符使用原图颜色，空格绘制背景色块
+                    if (!isSpace) {
+                        atlas.drawGlyph(raster, imageWidth, clipTop, clipBottom, glyph, x, cellTop, enhancedRgb);
+                    } else {
+                        atlas.fillCell(raster, imageWidth, clipTop, clipBottom, x, cellTop, enhancedRgb);
+                    }
+                } else if (isColorBackgroundMode) {
+                    // 彩色背景模式：先填充背景，再用有对比度的相似颜色绘制字符
+                    atlas.fillCell(raster, imageWidth, clipTop, clipBottom, x, cellTop, enhancedRgb);
+                    if (!isSpace) {
+                        atlas.drawGlyph(raster, imageWidth, clipTop, clipBottom, glyph, x, cellTop, contrastRgb);
+                    }
+                } else {
+                    // 灰度模式：使用黑色字符
+                    atlas.drawGlyph(raster, imageWidth, clipTop, clipBottom, glyph, x, cellTop, 0x000000);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按同色游程绘制一行字符
+     * <p>
+     * 单元格颜色按配置的位数量化后，通过颜色查找表得到增强颜色；同一行中增强颜色相同的相邻单元格
+     * 组成一个游程，每个游程只设置一次颜色，空格背景合并为一次fillRect，字符合并为一个按单元格
+     * 定位的GlyphVector一次绘制，从而将Java2D的状态校验开销按游程长度摊薄。
+     * 灰度模式下整行为一个游程。
+     * </p>
+     *
+     * @param g 目标图形上下文
+     * @param font 字体
+     * @param grid 字符网格
+     * @param line 字符行
+     * @param charWidth 字符宽度
+     * @param lineHeight 行高
+     * @param ascent 基线偏移
+     * @param colorMask 单元格颜色量化掩码
+     * @param useCellColors 是否使用单元格颜色
+     * @param isColorMode 是否为彩色字符模式
+     * @param isColorBackgroundMode 是否为彩色背景模式
+     * @param runChars 游程字符缓冲区，长度不小于行宽
+     * @param runColumns 游程字符所在列缓冲区，长度不小于行宽
+     */
+    private static void drawLineRuns(Graphics2D g, Font font, CharGrid grid, int line, int charWidth, int lineHeight, int ascent,
+                                     int colorMask, boolean useCellColors, boolean isColorMode, boolean isColorBackgroundMode,
+                                     char[] runChars, int[] runColumns) {
+        int width = grid.getWidth();
+        int top = line * lineHeight;
+        int baseline = top + ascent;
+
+        int runStart = 0;
+        while (runStart < width) {
+            int enhancedRgb = 0x000000;
+            int runEnd = width;
+            if (useCellColors) {
+                enhancedRgb = ColorEnhancer.enhance(grid.colorAt(runStart, line) & colorMask);
+                runEnd = runStart + 1;
+                while (runEnd < width && ColorEnhancer.enhance(grid.colorAt(runEnd, line) & colorMask) == enhancedRgb) {
+                    runEnd++;
+                }
+            }
+
+            if (isColorBackgroundMode) {
+                // 彩色背景模式：整个游程的背景一次填充，再用对比颜色绘制游程内的字符
+                g.setColor(new Color(enhancedRgb));
+                g.fillRect(runStart * charWidth, top, (runEnd - runStart) * charWidth, lineHeight);
+                g.setColor(new Color(ColorEnhancer.contrast(grid.colorAt(runStart, line) & colorMask)));
+            } else {
+                // 彩色字符模式使用增强颜色，灰度模式使用黑色
+                g.setColor(new Color(enhancedRgb));
+            }
+
+            int glyphCount = 0;
+            int spaceStart = -1;
+            for (int j = runStart; j <= runEnd; j++) {
+                boolean isSpace = j < runEnd && grid.charAt(j, line) == ' ';
+                if (isColorMode) {
+                    // 彩色字符模式下连续空格合并为一个背景色块
+                    if (isSpace && spaceStart < 0) {
+                        spaceStart = j;
+                    } else if (!isSpace && spaceStart >= 0) {
+                        g.fillRect(spaceStart * charWidth, top, (j - spaceStart) * charWidth, lineHeight);
+                        spaceStart = -1;
+                    }
+                }
+                if (j < runEnd && !isSpace) {
+                    runChars[glyphCount] = grid.charAt(j, line);
+                    runColumns[glyphCount] = j;
+                    glyphCount++;
+                }
+            }
+
+            if (glyphCount > 0) {
+                GlyphVector glyphVector = font.createGlyphVector(g.getFontRenderContext(), Arrays.copyOf(runChars, glyphCount));
+                for (int k = 0; k < glyphCount; k++) {
+                    glyphVector.setGlyphPosition(k, new Point2D.Float(runColumns[k] * charWidth, 0));
+                }
+                g.drawGlyphVector(glyphVector, 0, baseline);
+            }
+            runStart = runEnd;
+        }
+    }
+
+    /**
+     * 逐行流式渲染字符画图片并写入PNG文件
+     * <p>
+     * 只分配一个字符行高度的像素缓冲区：每个字符行先清空缓冲区，重放可能溢出到本行的相邻行字形，
+     * 绘制本行后将其扫描行直接送入PNG编码器。峰值内存为O(图像宽度 × 行高)，与图像高度无关，
+     * 输出像素与整图渲染完全一致。
+     * </p>
+     *
+     * @param grid 字符网格
+     * @param atlas 字形图集
      * @param outputPath 输出文件路径
+     * @param imageWidth 图像宽度
+     * @param imageHeight 图像高度
+     * @param indexedGrayscale 是否输出灰度调色板PNG
+     * @param useCellColors 是否使用单元格颜色
+     * @param isColorMode 是否为彩色字符模式
+     * @param isColorBackgroundMode 是否为彩色背景模式
      * @param progressId 进度ID
      * @param progressService 进度服务
+     * @param isShowProgress 是否显示进度
+     * @param originalImage 原始图片，用于换算像素位置
+     * @param pixelOffset 像素偏移量
      * @param totalPixels 总像素数
-     * @param startProgress 开始进度百分比
-     * @throws ServiceException 如果写入失败
+     * @param pregressStart 子任务开始前进度百分比
+     * @param pregressEnd 子任务结束后进度百分比
+     * @param stageName 进度阶段
+     * @param pngOptions PNG编码参数
+     * @throws IOException 写入文件失败时抛出
      */
-    private static void writeImageWithProgress(BufferedImage image, Path outputPath, String progressId, ProgressService progressService, int totalPixels, double startProgress) throws ServiceException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        AtomicReference<Exception> exceptionRef = new AtomicReference<>();
-        
-        try {
-            // 提交图像写入任务
-            Future<Void> writeTask = executor.submit(() -> {
-                try {
-                    ImageIO.write(image, "png", outputPath.toFile());
-                } catch (Exception e) {
-                    exceptionRef.set(e);
+    private static void renderImageStreaming(CharGrid grid, GlyphAtlas atlas, Path outputPath, int imageWidth, int imageHeight,
+                                             boolean indexedGrayscale, boolean useCellColors, boolean isColorMode,
+                                             boolean isColorBackgroundMode, String progressId, ProgressService progressService,
+                                             boolean isShowProgress, BufferedImage originalImage, int pixelOffset, int totalPixels,
+                                             double pregressStart, double pregressEnd, String stageName,
+                                             PngStreamWriter.Options pngOptions) throws IOException {
+        int lineCount = grid.getHeight();
+        int lineHeight = atlas.getCellHeight();
+        int overhang = atlas.getOverhangLines();
+        int totalChars = lineCount * grid.getWidth();
+        int[] band = indexedGrayscale ? null : new int[imageWidth * lineHeight];
+        byte[] grayBand = indexedGrayscale ? new byte[imageWidth * lineHeight] : null;
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputPath));
+             PngStreamWriter png = indexedGrayscale
+                     ? PngStreamWriter.indexed(out, imageWidth, imageHeight, GRAYSCALE_PALETTE, pngOptions)
+                     : PngStreamWriter.rgb(out, imageWidth, imageHeight, pngOptions)) {
+            int processedChars = 0;
+            for (int i = 0; i < lineCount; i++) {
+                // 清空为白色背景（灰度调色板索引0为白色）
+                if (band != null) {
+                    Arrays.fill(band, 0xFFFFFF);
+                } else {
+                    Arrays.fill(grayBand, (byte) 0);
                 }
-                return null;
-            });
-            
-            // 在写入过程中定期更新进度
-            double currentProgress = startProgress;
-            double targetProgress = startProgress+10; // 从目标进度开始
-            double progressStep = 0.01;
-            
-            while (!writeTask.isDone()) {
-                try {
-                    // 等待0.5秒
-                    long updateInterval = parallelConfig != null ? parallelConfig.getProgressUpdateInterval() : 500L;
-                    Thread.sleep(updateInterval);
-                    
-                    // 更新进度
-                    currentProgress = Math.min(currentProgress + progressStep, targetProgress);
-                    progressService.updateProgress(progressId, currentProgress, "正在保存字符画图片...", "图像保存", totalPixels, totalPixels, false);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new ServiceException("图像写入被中断", e);
+                renderAtlasLines(grid, atlas, band, grayBand, imageWidth, 0, lineHeight,
+                        Math.max(0, i - overhang), Math.min(lineCount, i + overhang + 1), i,
+                        useCellColors, isColorMode, isColorBackgroundMode);
+
+                for (int row = 0; row < lineHeight; row++) {
+                    if (band != null) {
+                        png.writeRgbRow(band, row * imageWidth);
+                    } else {
+                        png.writeIndexedRow(grayBand, row * imageWidth);
+                    }
+                }
+
+                int previousChars = processedChars;
+                processedChars += grid.getWidth();
+                if (progressId != null && isShowProgress
+                        && (processedChars / 500 != previousChars / 500 || processedChars == totalChars)) {
+                    updateRenderProgress(progressId, progressService, processedChars, totalChars, pregressStart, pregressEnd,
+                            pixelOffset, originalImage, totalPixels, stageName);
                 }
             }
-            
-            // 等待任务完成
-            writeTask.get(15, TimeUnit.SECONDS);
-            
-            // 检查是否有异常
-            if (exceptionRef.get() != null) {
-                throw new ServiceException("写入图像文件失败: " + exceptionRef.get().getMessage(), exceptionRef.get());
+            png.finish();
+        }
+        log.debug("流式图像写入完成，文件路径: {}", outputPath);
+    }
+
+    /**
+     * 判断字符画图片是否应使用逐行流式渲染
+     *
+     * @param imageWidth 图像宽度
+     * @param imageHeight 图像高度
+     * @return 如果图像像素数达到配置的流式渲染阈值则返回true
+     */
+    private static boolean shouldStreamImage(int imageWidth, int imageHeight) {
+        long minPixels = renderConfig != null ? renderConfig.getStreamingMinPixels() : 16777216L;
+        return minPixels > 0 && (long) imageWidth * imageHeight >= minPixels;
+    }
+
+    /**
+     * 更新字符画图片生成进度
+     *
+     * @param progressId 进度ID
+     * @param progressService 进度服务
+     * @param processedChars 已绘制的字符数
+     * @param totalChars 总字符数
+     * @param pregressStart 子任务开始前进度百分比
+     * @param pregressEnd 子任务结束后进度百分比
+     * @param pixelOffset 像素偏移量
+     * @param originalImage 原始图片，用于换算像素位置
+     * @param totalPixels 总像素数
+     * @param stageName 进度阶段
+     */
+    private static void updateRenderProgress(String progressId, ProgressService progressService, int processedChars, int totalChars,
+                                             double pregressStart, double pregressEnd, int pixelOffset, BufferedImage originalImage,
+                                             int totalPixels, String stageName) {
+        double progress = (int)(pregressStart + ((double)processedChars / totalChars * (pregressEnd-pregressStart)));
+        // 计算当前处理的实际像素位置（考虑偏移量）
+        int currentPixel = pixelOffset + (int)((double)processedChars / totalChars * Objects.requireNonNull(originalImage).getWidth() * originalImage.getHeight());
+        String progressMessage = "生成字符画图片: " + currentPixel + "/" + totalPixels + " 像素";
+        progressService.updateProgress(progressId, progress, progressMessage, stageName, currentPixel, totalPixels,false);
+    }
+
+    /**
+     * 判断是否应对单张字符画图片进行分条并行渲染
+     *
+     * @param totalChars 字符总数
+     * @param lineCount 字符行数
+     * @return 如果启用了分条并行且字符画足够大则返回true
+     */
+    private static boolean shouldSplitIntoStrips(int totalChars, int lineCount) {
+        boolean enabled = parallelConfig == null || parallelConfig.isStripParallelEnabled();
+        int minChars = parallelConfig != null ? parallelConfig.getStripParallelMinChars() : 20000;
+        return enabled && totalChars >= minChars && lineCount > 1 && getBandPool().getParallelism() > 1;
+    }
+
+    /**
+     * 创建8位灰度调色板图像
+     *
+     * @param width 图像宽度
+     * @param height 图像高度
+     * @return 使用256级灰度调色板的TYPE_BYTE_INDEXED图像，初始为全白
+     */
+    private static BufferedImage createGrayscaleIndexedImage(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, GRAYSCALE_PALETTE);
+    }
+
+    /**
+     * 将黑白灰度的RGB图像转换为8位灰度调色板图像
+     * <p>
+     * 灰度模式下RGB三个通道的值相同，由蓝色通道换算调色板索引。
+     * </p>
+     *
+     * @param image TYPE_INT_RGB图像
+     * @return 灰度调色板图像
+     */
+    private static BufferedImage toGrayscaleIndexedImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage indexed = createGrayscaleIndexedImage(width, height);
+        byte[] gray = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                gray[offset + x] = (byte) (0xFF - (row[x] & 0xFF));
             }
-            
-            log.debug("多线程图像写入完成，文件路径: {}", outputPath);
-            
-        } catch (TimeoutException e) {
-            throw new ServiceException("图像写入超时", e);
+        }
+        return indexed;
+    }
+
+    /**
+     * 是否将灰度模式的字符画图片输出为8位灰度调色板图像
+     *
+     * @return 未配置时默认启用
+     */
+    private static boolean isIndexedGrayscaleEnabled() {
+        return renderConfig == null || renderConfig.isIndexedGrayscaleEnabled();
+    }
+
+    /**
+     * 未使用字形图集时是否按同色游程批量绘制
+     *
+     * @return 未配置时默认启用
+     */
+    private static boolean isRunBatchingEnabled() {
+        return renderConfig == null || renderConfig.isRunBatchingEnabled();
+    }
+
+    /**
+     * 获取游程分组前的单元格颜色量化掩码
+     *
+     * @return 每个通道保留配置位数的掩码，未配置时保留6位（与颜色查找表精度相同，不改变输出）
+     */
+    private static int getRunColorMask() {
+        int bits = renderConfig != null ? Math.max(1, Math.min(8, renderConfig.getRunColorBits())) : 6;
+        int channelMask = (0xFF << (8 - bits)) & 0xFF;
+        return (channelMask << 16) | (channelMask << 8) | channelMask;
+    }
+
+    /**
+     * 是否使用字形图集渲染字符画图片
+     *
+     * @return 未配置时默认启用
+     */
+    private static boolean isGlyphAtlasEnabled() {
+        return renderConfig == null || renderConfig.isGlyphAtlasEnabled();
+    }
+
+    /**
+     * 是否增量渲染动画帧，局部渲染依赖字形图集给出的字形溢出范围
+     *
+     * @return 如果启用增量渲染且启用了字形图集返回true，未配置时默认不启用
+     */
+    private static boolean isIncrementalFramesEnabled() {
+        return renderConfig != null && renderConfig.isIncrementalFramesEnabled() && isGlyphAtlasEnabled();
+    }
+
+    /**
+     * 是否在进程内编码WebP动画
+     *
+     * @return 如果启用进程内编码且本地编码库可用返回true
+     */
+    private static boolean isWebpEncoderEnabled() {
+        if (renderConfig != null && !renderConfig.isWebpEncoderEnabled()) {
+            return false;
+        }
+        if (!WebpAnimationWriter.isAvailable()) {
+            log.warn("WebP本地编码库不可用，改用WebP处理服务编码WebP动画");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 在共享编码线程池中写入图像文件，并按实际写出的字节数更新进度
+     * <p>
+     * 编码线程通过统计字节数的输出流直接回调进度，调用线程只等待任务完成，不轮询。
+     * 进度按已写出字节数占预估文件大小（原始像素数据的四分之一）的比例推进，最多推进10个百分点。
+     * </p>
+     *
+     * @param image 要保存的图像
+     * @param outputPath 输出文件路径
+     * @param progressId 进度ID
+     * @param progressService 进度服务
+     * @param totalPixels 总像素数
+     * @param startProgress 开始进度百分比
+     * @param isShowProgress 是否显示进度
+     * @param pngOptions PNG编码参数
+     * @throws ServiceException 如果写入失败
+     */
+    private static void writeImageWithProgress(BufferedImage image, Path outputPath, String progressId, ProgressService progressService, int totalPixels, double startProgress,
+                                               boolean isShowProgress, PngStreamWriter.Options pngOptions) throws ServiceException {
+        long updateInterval = parallelConfig != null ? parallelConfig.getProgressUpdateInterval() : 500L;
+        long expectedBytes = Math.max(1L, (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8 / 4);
+        double progressSpan = 10;
+        LongConsumer listener = progressId != null && isShowProgress ? writtenBytes -> {
+            double progress = startProgress + progressSpan * Math.min(0.99, (double) writtenBytes / expectedBytes);
+            progressService.updateProgress(progressId, progress, "正在保存字符画图片: 已写入" + formatBytes(writtenBytes),
+                    "图像保存", totalPixels, totalPixels, false);
+        } : null;
+
+        Future<?> writeTask = getEncoderExecutor().submit(() -> {
+            try (ProgressOutputStream out = new ProgressOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(outputPath)), updateInterval, listener)) {
+                PngStreamWriter.write(image, out, pngOptions);
+            }
+            return null;
+        });
+        try {
+            awaitEncoderTask(writeTask);
+            log.debug("图像写入完成，文件路径: {}", outputPath);
         } catch (InterruptedException e) {
+            writeTask.cancel(true);
             Thread.currentThread().interrupt();
             throw new ServiceException("图像写入被中断", e);
+        } catch (TimeoutException e) {
+            writeTask.cancel(true);
+            log.error("图像写入超时，文件路径: {}", outputPath);
+            throw new ServiceException("图像写入超时", e);
         } catch (ExecutionException e) {
-            throw new ServiceException("图像写入执行失败: " + e.getMessage(), e);
-        } finally {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
+            throw new ServiceException("写入图像文件失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 获取共享的图像编码线程池
+     * <p>
+     * 线程数固定，任务队列有界；队列已满时由提交任务的线程直接执行，从而对提交方形成背压。
+     * 线程均为守护线程，线程池在应用生命周期内复用。
+     * </p>
+     *
+     * @return 编码线程池
+     */
+    private static ExecutorService getEncoderExecutor() {
+        ExecutorService executor = encoderExecutor;
+        if (executor == null) {
+            synchronized (CharArtProcessor.class) {
+                executor = encoderExecutor;
+                if (executor == null) {
+                    int threads = Math.max(1, parallelConfig != null ? parallelConfig.getEncoderThreads() : 2);
+                    AtomicInteger threadIndex = new AtomicInteger();
+                    executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                            new LinkedBlockingQueue<>(ENCODER_QUEUE_CAPACITY), r -> {
+                                Thread thread = new Thread(r, "char-art-encoder-" + threadIndex.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    encoderExecutor = executor;
+                    log.debug("已创建共享图像编码线程池，线程数: {}", threads);
                 }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
             }
         }
+        return executor;
     }
 
-    @NotNull
-    private static Color getColor(Color enhancedColor) {
-        double brightness = (enhancedColor.getRed() * 0.299 +
-                          enhancedColor.getGreen() * 0.587 +
-                          enhancedColor.getBlue() * 0.114) / 255;
+    /**
+     * 将字节数格式化为便于阅读的字符串
+     *
+     * @param bytes 字节数
+     * @return 以KB或MB为单位的字符串
+     */
+    private static String formatBytes(long bytes) {
+        if (bytes >= 1024 * 1024) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+        return String.format("%.1f KB", bytes / 1024.0);
+    }
 
-        // 创建一个与背景相似但有一定对比度的颜色
-        Color charColor;
-        if (brightness > 0.5) {
-            // 亮色背景使用稍暗的相似颜色
-            charColor = new Color(
-                Math.max(0, enhancedColor.getRed() - 80),
-                Math.max(0, enhancedColor.getGreen() - 80),
-                Math.max(0, enhancedColor.getBlue() - 80)
-            );
-        } else {
-            // 暗色背景使用稍亮的相似颜色
-            charColor = new Color(
-                Math.min(255, enhancedColor.getRed() + 80),
-                Math.min(255, enhancedColor.getGreen() + 80),
-                Math.min(255, enhancedColor.getBlue() + 80)
-            );
+    /**
+     * 将图像编码为PNG文件
+     *
+     * @param image 要保存的图像
+     * @param outputPath 输出文件路径
+     * @param pngOptions PNG编码参数
+     * @throws IOException 写入失败时抛出
+     */
+    private static void writePngFile(BufferedImage image, Path outputPath, PngStreamWriter.Options pngOptions) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputPath))) {
+            PngStreamWriter.write(image, out, pngOptions);
+        }
+    }
+
+    /**
+     * 获取PNG编码参数
+     * <p>
+     * 允许并行且配置启用时，IDAT数据分块后由共享的分带线程池并行压缩；
+     * 动画帧已在帧级别并行，调用方应传入false，在当前线程中压缩。
+     * </p>
+     *
+     * @param allowParallel 是否允许并行压缩
+     * @return PNG编码参数
+     */
+    private static PngStreamWriter.Options pngOptions(boolean allowParallel) {
+        int level = renderConfig != null ? renderConfig.getPngCompressionLevel() : 6;
+        PngStreamWriter.Filter filter = renderConfig != null ? renderConfig.getPngFilter() : PngStreamWriter.Filter.ADAPTIVE;
+        boolean parallelEnabled = renderConfig == null || renderConfig.isPngParallelEnabled();
+        if (allowParallel && parallelEnabled && getBandPool().getParallelism() > 1) {
+            ForkJoinPool pool = getBandPool();
+            // 在途块数为并行度的两倍，写出结果时线程池仍有任务可执行
+            return new PngStreamWriter.Options(level, filter, pool, pool.getParallelism() * 2);
         }
-        return charColor;
+        return new PngStreamWriter.Options(level, filter, null, 1);
+    }
+
+    /**
+     * 判断颜色模式是否需要单元格颜色
+     *
+     * @param colorMode 颜色模式 (grayscale, color, colorBackground)
+     * @return 彩色模式或彩色背景模式返回true
+     */
+    private static boolean needsCellColors(String colorMode) {
+        return "color".equalsIgnoreCase(colorMode) || "colorBackground".equalsIgnoreCase(colorMode);
     }
 
     /**
@@ -981,124 +1937,242 @@ public class CharArtProcessor {
 
     /**
      * 并行处理GIF帧并编码到GIF
-     * 整合了帧处理和GIF编码功能，使用统一的线程池提高效率，减少线程中断风险
+     * 帧处理按"解码 → 文本生成 → 图像生成 → 编码"组织为流水线，各阶段由各自数量的线程处理，阶段之间通过有界队列连接，
+     * 较慢的阶段会阻塞向它提交帧的上游阶段。源帧在解码阶段按帧序逐帧解码，已解码但尚未写出的帧数不超过预解码窗口，
+     * 峰值内存不随帧数增长。主线程按帧序取出编码完成的帧写出，第0帧完成后即开始写出。
+     * 传入gifWriter时，编码阶段完成帧的量化和LZW压缩，内存中等待的是编码后的帧数据块，按帧序写出是唯一串行执行的部分；
+     * 否则由gifEncoder在共享编码线程池中串行编码。等待中的帧超出内存预算时写入临时文件，写出时再读回。
      */
-    private static void processFramesInParallel(GifDecoder gifDecoder, int frameCount, int width, int height,
+    private static void processFramesInParallel(GifStreamReader gifReader, int frameCount, int width, int height,
                                                 int densityLevel, boolean limitSize, String colorMode,
                                                 String progressId, int totalPixels, List<Path> tempFiles,
-                                                int[] delays, AnimatedGifEncoder gifEncoder,
+                                                int[] delays, AnimatedGifEncoder gifEncoder, GifStreamWriter gifWriter,
+                                                ProgressOutputStream gifOut,
                                                 double pregressStart, double pregressEnd, double singlePregress,
                                                 ProgressService progressService, Path tempDir) {
         // 优化线程数配置，避免过多线程导致资源竞争
-        int threadCount = parallelConfig != null ? 
-            parallelConfig.calculateThreadCount(frameCount) : 
+        int threadCount = parallelConfig != null ?
+            parallelConfig.calculateThreadCount(frameCount) :
             Math.min(Math.max(Runtime.getRuntime().availableProcessors() / 2, 1), Math.min(frameCount, 4));
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
         AtomicReference<Double> currentProgress = new AtomicReference<>(pregressStart);
+        boolean withColors = needsCellColors(colorMode);
         // 每帧的进度分为三个阶段：文本生成、图像转换、GIF编码
         double progressPerStage = singlePregress / 3.0;
-        
-        try {
-            // 存储每帧的处理结果
-            List<Future<FrameProcessResult>> futures = new ArrayList<>();
-            
-            // 提交所有帧的处理任务
-            for (int i = 0; i < frameCount; i++) {
-                final int frameIndex = i;
-                Future<FrameProcessResult> future = executor.submit(() -> {
+        // 已渲染但尚未编码的内存帧占用的字节数，超出预算的帧写入临时文件
+        long frameMemoryBudget = getFrameMemoryBudget();
+        AtomicLong bufferedFrameBytes = new AtomicLong();
+        // 重复帧检测：内容相同的帧复用渲染输出，连续相同的帧合并为一帧
+        FrameRenderCache<FrameProcessResult> frameCache = createFrameRenderCache();
+        // 增量渲染：每帧与上一帧的字符网格比较，只渲染并编码变化的区域（仅并行GIF编码支持局部帧）
+        boolean incremental = gifWriter != null && isIncrementalFramesEnabled();
+        // 解码阶段在单个线程中按帧序执行，只有该线程访问
+        AtomicReference<CompletableFuture<CharGrid>> lastGridFuture = new AtomicReference<>();
+
+        FramePipeline<AnimationFrame<FrameProcessResult>> pipeline = createFramePipeline("char-art-gif-frame",
+                frameCount, threadCount, getGifDecodeWindow(threadCount));
+        pipeline.addStage("文本生成", getPipelineStageThreads(ParallelProcessingConfig::getPipelineTextThreads, threadCount),
+                (frameIndex, frame) -> generateFrameGrid(frame, frameIndex, frameCount, "GIF", width, height, densityLevel,
+                        limitSize, withColors, progressId, totalPixels, currentProgress, progressPerStage, progressService));
+        pipeline.addStage("图像生成", getPipelineStageThreads(ParallelProcessingConfig::getPipelineRenderThreads, threadCount),
+                (frameIndex, frame) -> {
+                    // 增量渲染时取得上一帧的字符网格，上一帧的文本生成先于本帧开始，等待时间很短
+                    CharGrid previousGrid = frame.previousGridFuture != null ? frame.previousGridFuture.get() : null;
+                    frame.previousGridFuture = null;
+                    // 内容相同的帧只渲染一次，复用首次渲染的输出
+                    if (!claimFrameOutput(frameCache, frame, previousGrid)) {
+                        return;
+                    }
                     try {
-                        // 检查线程中断状态
-                        if (Thread.currentThread().isInterrupted()) {
-                            throw new InterruptedException("任务被中断");
-                        }
-                        
-                        // 获取当前帧
-                        BufferedImage frame = gifDecoder.getFrame(frameIndex);
-                        
-                        // 保存原始帧到临时文件（用于彩色模式）
-                        Path framePath = createTempFileInDirectory(tempDir, "frame_" + frameIndex + "_", ".png");
-                        ImageIO.write(frame, "png", framePath.toFile());
-                        synchronized (tempFiles) {
-                            tempFiles.add(framePath);
-                        }
-                        
-                        // 更新进度：开始处理当前帧
-                        progressService.updateProgress(progressId, currentProgress.get(), 
-                            "处理GIF第" + (frameIndex + 1) + "/" + frameCount + "帧", "帧处理", 
-                            (frameIndex + 1), frameCount, false);
-                        
-                        // 生成字符画文本
-                        int framePixelOffset = width * height * frameIndex;
-                        String frameText = convertImageToCharText(frame, densityLevel, limitSize, progressId, 
-                            totalPixels, framePixelOffset, frameIndex + 1, frameCount, currentProgress.get(), 
-                            currentProgress.get() + progressPerStage, "文本生成：第" + (frameIndex + 1) + "帧/共" + frameCount + "帧", 
-                            progressService, false, tempDir);
-                        
-                        // 文本生成完成，更新进度
-                        double newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
-                        progressService.updateProgress(progressId, newProgress, 
-                            "第" + (frameIndex + 1) + "帧字符画文本生成完成", "文本生成",
-                                frameIndex + 1, frameCount, false);
-                        
-                        // 生成字符画图片
-                        Path charFramePath = createCharImageFile(frameText, colorMode, frame, progressId, 
-                            framePixelOffset, totalPixels, tempFiles, frameCount, currentProgress.get(), 
-                            currentProgress.get() + progressPerStage, "图像生成：第" + (frameIndex + 1) + "帧/共" + frameCount + "帧", 
-                            progressService, false, tempDir);
-                        
-                        synchronized (tempFiles) {
-                            tempFiles.add(charFramePath);
+                        frame.partialFrame = previousGrid != null
+                                ? renderPartialFrame(previousGrid, frame.grid, colorMode, frame.source, progressId, progressService)
+                                : null;
+                        if (frame.partialFrame == null) {
+                            frame.charImage = renderCharImage(frame.grid, colorMode, frame.source, progressId,
+                                width * height * frameIndex, totalPixels, currentProgress.get(),
+                                currentProgress.get() + progressPerStage, "图像生成：第" + (frameIndex + 1) + "帧/共" + frameCount + "帧",
+                                progressService, false, false, null);
                         }
-                        
-                        // 图像生成完成，更新进度
-                        newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
-                        progressService.updateProgress(progressId, newProgress, 
-                            "第" + (frameIndex + 1) + "帧字符画图片生成完成", "图像生成",
-                                frameIndex + 1, frameCount, false);
-                        return new FrameProcessResult(frameIndex, charFramePath, delays[frameIndex]);
-                        
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("处理第" + (frameIndex + 1) + "帧被中断", e);
                     } catch (Exception e) {
-                        log.error("处理第{}帧时发生错误: {}", frameIndex + 1, e.getMessage(), e);
-                        throw new RuntimeException("处理第" + (frameIndex + 1) + "帧失败: " + e.getMessage(), e);
+                        abandonFrameOutput(frameCache, frame, e);
+                        throw e;
                     }
+                    // 释放源帧和字符网格，下一帧需要的网格由gridFuture保留
+                    frame.source = null;
+                    frame.grid = null;
+                });
+        pipeline.addStage("编码", getPipelineStageThreads(ParallelProcessingConfig::getPipelineEncodeThreads, threadCount),
+                (frameIndex, frame) -> {
+                    if (frame.output == null) {
+                        try {
+                            FrameProcessResult encoded;
+                            if (gifWriter != null) {
+                                // 完成量化和LZW压缩，只保留编码后的帧数据块；有固定颜色表时跳过逐帧量化
+                                GifStreamWriter.Palette gifPalette = gifWriter.getGlobalPalette();
+                                PartialFrame partialFrame = frame.partialFrame;
+                                byte[] frameBlock;
+                                if (partialFrame != null) {
+                                    // 局部帧裁剪到变化区域，叠加在上一帧之上，区域内未变化的像素写为透明
+                                    frameBlock = GifStreamWriter.encodePartialFrame(partialFrame.image, delays[frameIndex], gifPalette,
+                                            partialFrame.x, partialFrame.y, partialFrame.changedMask);
+                                } else {
+                                    frameBlock = gifPalette != null
+                                            ? GifStreamWriter.encodeFrame(frame.charImage, delays[frameIndex], gifPalette)
+                                            : GifStreamWriter.encodeFrame(frame.charImage, delays[frameIndex]);
+                                }
+                                if (tryReserveFrameMemory(bufferedFrameBytes, frameBlock.length, frameMemoryBudget)) {
+                                    encoded = new FrameProcessResult(frameIndex, frameBlock, delays[frameIndex]);
+                                } else {
+                                    Path blockPath = createTempFileInDirectory(tempDir, "gif_frame_", ".bin");
+                                    synchronized (tempFiles) {
+                                        tempFiles.add(blockPath);
+                                    }
+                                    Files.write(blockPath, frameBlock);
+                                    encoded = new FrameProcessResult(frameIndex, blockPath, delays[frameIndex]);
+                                }
+                            } else if (tryReserveFrameMemory(bufferedFrameBytes, estimateImageBytes(frame.charImage), frameMemoryBudget)) {
+                                // 在内存中等待编码
+                                encoded = new FrameProcessResult(frameIndex, frame.charImage, delays[frameIndex]);
+                            } else {
+                                // 超出内存预算，写入临时文件
+                                Path charFramePath = createTempFileInDirectory(tempDir, "char_image_", ".png");
+                                synchronized (tempFiles) {
+                                    tempFiles.add(charFramePath);
+                                }
+                                writePngFile(frame.charImage, charFramePath, pngOptions(false));
+                                encoded = new FrameProcessResult(frameIndex, charFramePath, delays[frameIndex]);
+                            }
+                            encoded.setContentKey(frame.contentKey);
+                            completeFrameOutput(frame, encoded);
+                        } catch (Exception e) {
+                            abandonFrameOutput(frameCache, frame, e);
+                            throw e;
+                        }
+                        frame.partialFrame = null;
+                        frame.charImage = null;
+                    }
+
+                    // 图像生成完成，更新进度
+                    double newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
+                    progressService.updateProgress(progressId, newProgress,
+                        "第" + (frameIndex + 1) + "帧字符画图片生成完成", "图像生成",
+                            frameIndex + 1, frameCount, false);
                 });
-                futures.add(future);
-            }
 
-            // 按顺序收集结果并添加到GIF编码器（整合了原addFrameToGifWithProgress的功能）
+        try {
+            // 解码阶段按帧序解码源帧，增量渲染时每帧持有上一帧字符网格的future
+            pipeline.start("解码", frameIndex -> {
+                AnimationFrame<FrameProcessResult> frame = new AnimationFrame<>();
+                try {
+                    frame.source = gifReader.nextFrame();
+                } catch (IOException e) {
+                    throw new ServiceException("解码GIF第" + (frameIndex + 1) + "帧失败: " + e.getMessage(), e);
+                }
+                if (incremental) {
+                    frame.gridFuture = new CompletableFuture<>();
+                    frame.previousGridFuture = lastGridFuture.getAndSet(frame.gridFuture);
+                }
+                return frame;
+            });
+            long taskTimeout = getTaskTimeout();
+            // 等待写出的帧：下一帧内容不同时才写出，连续相同的帧累加到该帧的延迟上
+            FrameContentKey pendingKey = null;
+            byte[] pendingBlock = null;
+            BufferedImage pendingImage = null;
+            int pendingFrameNumber = 0;
+            int pendingDelay = 0;
+            int mergedFrames = 0;
+
+            // 按帧序取出编码完成的帧并写出（整合了原addFrameToGifWithProgress的功能）
             for (int i = 0; i < frameCount; i++) {
                 try {
                     // 检查主线程中断状态
                     if (Thread.currentThread().isInterrupted()) {
-                        // 取消所有未完成的任务
-                        futures.forEach(f -> f.cancel(true));
                         throw new InterruptedException("主处理线程被中断");
                     }
-                    
-                    // 获取帧处理结果，增加超时时间
-                    FrameProcessResult result = futures.get(i).get(60, TimeUnit.SECONDS);
-                    
+
+                    // 获取帧处理结果；复用其他帧输出的帧还需等待该帧编码完成
+                    FrameProcessResult result = takeFrameOutput(pipeline, i, taskTimeout);
+                    if (result.getFrameIndex() != i) {
+                        result = result.reuseFor(i, delays[i]);
+                    }
+
+                    // GIF帧延迟以16位记录，两种编码方式的上限相同
+                    boolean merged = canMergeFrame(pendingKey, pendingDelay, result.getContentKey(), result.getDelay(),
+                            GifStreamWriter.MAX_DELAY_MILLIS);
+                    if (merged) {
+                        // 与上一帧内容相同，合并为一帧，只累加延迟
+                        pendingDelay += result.getDelay();
+                        mergedFrames++;
+                    }
+
+                    if (gifWriter != null) {
+                        // 帧已在编码阶段完成编码，按帧序写出
+                        try {
+                            byte[] frameBlock = result.getGifFrameBlock();
+                            if (frameBlock != null) {
+                                if (!result.isSharedOutput()) {
+                                    bufferedFrameBytes.addAndGet(-frameBlock.length);
+                                }
+                            } else if (!merged) {
+                                frameBlock = Files.readAllBytes(result.getCharFramePath());
+                            }
+                            if (!merged) {
+                                if (pendingBlock != null) {
+                                    gifWriter.writeFrame(GifStreamWriter.withDelay(pendingBlock, pendingDelay));
+                                }
+                                pendingBlock = frameBlock;
+                                pendingKey = result.getContentKey();
+                                pendingDelay = result.getDelay();
+                            }
+                        } catch (IOException e) {
+                            throw new ServiceException("写入GIF帧失败: " + e.getMessage(), e);
+                        }
+                        double newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
+                        progressService.updateProgress(progressId, newProgress,
+                            merged ? "第" + (i + 1) + "帧与上一帧相同，已合并" : "第" + (i + 1) + "帧编码到GIF完成", "GIF编码",
+                            i + 1, frameCount, false);
+                        continue;
+                    }
+
                     // 直接在主线程中添加帧到GIF编码器，避免额外的线程创建
                     try {
-                        // 读取生成的字符画图片
-                        BufferedImage charImage = ImageIO.read(result.getCharFramePath().toFile());
-                        
+                        // 内存中的帧直接编码，溢出到磁盘的帧读回后编码
+                        BufferedImage charImage = result.getCharImage();
+                        if (charImage != null) {
+                            if (!result.isSharedOutput()) {
+                                bufferedFrameBytes.addAndGet(-estimateImageBytes(charImage));
+                            }
+                        } else if (!merged) {
+                            charImage = ImageIO.read(result.getCharFramePath().toFile());
+                        }
+
                         // 检查中断状态
                         if (Thread.currentThread().isInterrupted()) {
                             throw new InterruptedException("GIF编码被中断");
                         }
-                        
-                        // 使用多线程添加帧到GIF编码器（包含进度更新）
-                        addFrameToGifWithProgress(gifEncoder, charImage, result.getDelay(), 
-                            progressId, progressService, i + 1, frameCount, 
-                            currentProgress.get(), progressPerStage);
-                        
+
+                        if (merged) {
+                            double newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
+                            progressService.updateProgress(progressId, newProgress,
+                                "第" + (i + 1) + "帧与上一帧相同，已合并", "GIF编码",
+                                i + 1, frameCount, false);
+                            continue;
+                        }
+
+                        // 在共享编码线程池中将上一个等待的帧添加到GIF编码器（包含进度更新）
+                        if (pendingImage != null) {
+                            addFrameToGifWithProgress(gifEncoder, gifOut, pendingImage, pendingDelay,
+                                progressId, progressService, pendingFrameNumber, frameCount,
+                                currentProgress.get(), progressPerStage);
+                        }
+                        pendingImage = charImage;
+                        pendingKey = result.getContentKey();
+                        pendingDelay = result.getDelay();
+                        pendingFrameNumber = i + 1;
+
                         // 更新原子引用中的进度值
                         currentProgress.updateAndGet(current -> current + progressPerStage);
-                        
+
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
                         throw new ServiceException("GIF帧编码被中断", e);
@@ -1107,18 +2181,33 @@ public class CharArtProcessor {
                     } catch (Exception e) {
                         throw new ServiceException("GIF帧编码失败: " + e.getMessage(), e);
                     }
-                    
+
                 } catch (TimeoutException e) {
                     log.error("第 {} 帧处理超时", i + 1);
-                    // 取消所有未完成的任务
-                    futures.forEach(f -> f.cancel(true));
                     throw new ServiceException("第" + (i + 1) + "帧处理超时", e);
                 } catch (ExecutionException e) {
-                    log.error("第 {} 帧处理失败: {}", i + 1, e.getCause().getMessage());
-                    throw new ServiceException("第" + (i + 1) + "帧处理失败: " + e.getCause().getMessage(), e.getCause());
+                    log.error("GIF帧处理失败: {}", e.getMessage());
+                    throw new ServiceException(e.getMessage(), e.getCause());
                 }
             }
-            
+
+            // 写出最后一个等待的帧
+            if (pendingBlock != null) {
+                try {
+                    gifWriter.writeFrame(GifStreamWriter.withDelay(pendingBlock, pendingDelay));
+                } catch (IOException e) {
+                    throw new ServiceException("写入GIF帧失败: " + e.getMessage(), e);
+                }
+            } else if (pendingImage != null) {
+                addFrameToGifWithProgress(gifEncoder, gifOut, pendingImage, pendingDelay,
+                    progressId, progressService, pendingFrameNumber, frameCount,
+                    currentProgress.get(), 0);
+            }
+            if (frameCache != null) {
+                log.debug("GIF重复帧检测完成: 共{}帧，复用渲染输出{}帧，合并连续相同帧{}帧",
+                        frameCount, frameCache.getReusedFrames(), mergedFrames);
+            }
+
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new ServiceException("GIF帧并行处理被中断", e);
@@ -1127,139 +2216,625 @@ public class CharArtProcessor {
             progressService.updateProgress(progressId, pregressEnd, "处理完成", "完成", frameCount, frameCount, false);
             throw e;
         } finally {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
-                    log.warn("强制关闭线程池");
-                    executor.shutdownNow();
-                    if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-                        log.error("线程池无法正常关闭");
-                    }
-                }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+            // 结束流水线的所有线程，异常中止时未完成的阶段被中断
+            pipeline.close();
         }
     }
 
     /**
-     * 多线程处理WebP帧
-     * 仿照processFramesInParallel方法，使用线程池并行处理WebP动画的每一帧
+     * 获取GIF源帧的预解码窗口大小
+     *
+     * @param threadCount 帧处理线程数
+     * @return 最多已解码但尚未编码的源帧数量，未配置时为线程数的2倍
      */
-    private static void processWebpFramesInParallel(BufferedImage[] frames, int frameCount, int width, int height,
-                                                    int densityLevel, boolean limitSize, String colorMode,
-                                                    String progressId, int totalPixels, List<Path> tempFiles,
-                                                    Path[] charFramePaths, double pregressStart, double pregressEnd,
-                                                    double singlePregress, ProgressService progressService, Path tempDir) {
-        // 优化线程数配置，避免过多线程导致资源竞争
-        int threadCount = parallelConfig != null ? 
-            parallelConfig.calculateThreadCount(frameCount) : 
-            Math.min(Math.max(Runtime.getRuntime().availableProcessors() / 2, 1), Math.min(frameCount, 4));
-        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
-        AtomicReference<Double> currentProgress = new AtomicReference<>(pregressStart);
-        // 每帧的进度分为两个阶段：文本生成、图像转换（WebP编码在后续单独处理）
-        double progressPerStage = singlePregress / 2.0;
-        
-        try {
-            // 存储每帧的处理结果
-            List<Future<WebpFrameProcessResult>> futures = new ArrayList<>();
-            
-            // 提交所有帧的处理任务
-            for (int i = 0; i < frameCount; i++) {
-                final int frameIndex = i;
-                Future<WebpFrameProcessResult> future = executor.submit(() -> {
+    private static int getGifDecodeWindow(int threadCount) {
+        int configured = parallelConfig != null ? parallelConfig.getGifDecodeWindow() : 0;
+        return Math.max(1, configured > 0 ? configured : threadCount * 2);
+    }
+
+    /**
+     * 是否在帧处理线程中并行完成GIF帧的量化和LZW压缩
+     *
+     * @return 启用并行GIF编码返回true
+     */
+    private static boolean isParallelGifEncodingEnabled() {
+        return parallelConfig == null || parallelConfig.isGifParallelEncodingEnabled();
+    }
+
+    /**
+     * 获取GIF动画的固定全局颜色表
+     * <p>
+     * 灰度模式的字符画帧为灰度调色板图像，直接使用该调色板；彩色模式和彩色背景模式的颜色表
+     * 由颜色增强查找表的输出及其与背景的混合色一次量化得到，之后所有任务共用。
+     * </p>
+     *
+     * @param colorMode 颜色模式 (grayscale, color, colorBackground)
+     * @return 固定颜色表，未启用或灰度模式未输出调色板图像时返回null（各帧逐帧量化）
+     */
+    private static GifStreamWriter.Palette getGifPalette(String colorMode) {
+        boolean isColorMode = "color".equalsIgnoreCase(colorMode);
+        boolean isColorBackgroundMode = "colorBackground".equalsIgnoreCase(colorMode);
+        if (!isColorMode && !isColorBackgroundMode) {
+            boolean enabled = renderConfig == null || renderConfig.isGifFixedPaletteEnabled();
+            return enabled && isIndexedGrayscaleEnabled() ? GifStreamWriter.Palette.of(GRAYSCALE_PALETTE) : null;
+        }
+        if (renderConfig == null || !renderConfig.isGifFixedColorPaletteEnabled()) {
+            return null;
+        }
+        GifStreamWriter.Palette palette = isColorMode ? colorGifPalette : colorBackgroundGifPalette;
+        if (palette == null) {
+            synchronized (CharArtProcessor.class) {
+                palette = isColorMode ? colorGifPalette : colorBackgroundGifPalette;
+                if (palette == null) {
+                    long start = System.currentTimeMillis();
+                    palette = GifStreamWriter.Palette.quantize(createGifPaletteSamples(isColorBackgroundMode));
+                    if (isColorMode) {
+                        colorGifPalette = palette;
+                    } else {
+                        colorBackgroundGifPalette = palette;
+                    }
+                    log.debug("GIF固定颜色表生成完成: {}, 耗时{}ms", colorMode, System.currentTimeMillis() - start);
+                }
+            }
+        }
+        return palette;
+    }
+
+    /**
+     * 生成彩色字符画中可能出现的颜色样本
+     * <p>
+     * 在6位量化颜色空间中隔级取样，彩色模式取增强颜色及其与白色背景的抗锯齿混合色，
+     * 彩色背景模式取增强背景色、对比字符颜色及两者的混合色。
+     * </p>
+     *
+     * @param isColorBackgroundMode 是否为彩色背景模式
+     * @return 颜色样本（0xRRGGBB）
+     */
+    private static int[] createGifPaletteSamples(boolean isColorBackgroundMode) {
+        int[] samples = new int[32 * 32 * 32 * 5 + 1];
+        int count = 0;
+        samples[count++] = 0xFFFFFF;
+        for (int r = 0; r < 256; r += 8) {
+            for (int g = 0; g < 256; g += 8) {
+                for (int b = 0; b < 256; b += 8) {
+                    int cellRgb = (r << 16) | (g << 8) | b;
+                    int enhancedRgb = ColorEnhancer.enhance(cellRgb);
+                    int background = isColorBackgroundMode ? enhancedRgb : 0xFFFFFF;
+                    int foreground = isColorBackgroundMode ? ColorEnhancer.contrast(cellRgb) : enhancedRgb;
+                    samples[count++] = foreground;
+                    samples[count++] = blendRgb(foreground, background, 3);
+                    samples[count++] = blendRgb(foreground, background, 2);
+                    samples[count++] = blendRgb(foreground, background, 1);
+                    if (isColorBackgroundMode) {
+                        samples[count++] = background;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(samples, count);
+    }
+
+    /**
+     * 按quarters/4的比例混合前景色和背景色
+     */
+    private static int blendRgb(int foreground, int background, int quarters) {
+        int red = (((foreground >> 16) & 0xFF) * quarters + ((background >> 16) & 0xFF) * (4 - quarters)) / 4;
+        int green = (((foreground >> 8) & 0xFF) * quarters + ((background >> 8) & 0xFF) * (4 - quarters)) / 4;
+        int blue = ((foreground & 0xFF) * quarters + (background & 0xFF) * (4 - quarters)) / 4;
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * 获取内存中等待编码的动画帧的内存预算
+     *
+     * @return 内存预算（字节），未启用内存传递时为0
+     */
+    private static long getFrameMemoryBudget() {
+        if (parallelConfig == null) {
+            return 256L * 1024 * 1024;
+        }
+        if (!parallelConfig.isInMemoryFramesEnabled()) {
+            return 0;
+        }
+        return Math.max(0, parallelConfig.getFrameMemoryBudgetMb()) * 1024L * 1024L;
+    }
+
+    /**
+     * 在内存预算内为一帧预留内存
+     *
+     * @param bufferedBytes 已预留的字节数
+     * @param imageBytes 本帧占用的字节数
+     * @param budget 内存预算（字节）
+     * @return 预留成功返回true，超出预算返回false
+     */
+    private static boolean tryReserveFrameMemory(AtomicLong bufferedBytes, long imageBytes, long budget) {
+        while (true) {
+            long current = bufferedBytes.get();
+            if (current + imageBytes > budget) {
+                return false;
+            }
+            if (bufferedBytes.compareAndSet(current, current + imageBytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 估算图像像素数据占用的字节数
+     *
+     * @param image 图像
+     * @return 像素缓冲区的字节数
+     */
+    private static long estimateImageBytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * 增量渲染一帧
+     * <p>
+     * 比较当前帧与上一帧的字符网格，只渲染发生变化的单元格所影响的矩形区域。
+     * 字形可能延伸到相邻单元格，因此变化区域向外扩展字形溢出的行列数；
+     * 渲染时再向外多绘制同样多的单元格，使区域内的像素与整帧渲染逐像素一致。
+     * 两帧完全相同时只重绘左上角单元格。
+     * </p>
+     *
+     * @param previous 上一帧的字符网格
+     * @param current 当前帧的字符网格
+     * @param colorMode 颜色模式
+     * @param originalImage 原始帧图像
+     * @param progressId 进度ID
+     * @param progressService 进度服务
+     * @return 局部帧，两帧网格尺寸或字符集不同时返回null，应渲染整帧
+     * @throws IOException 渲染失败时抛出
+     */
+    private static PartialFrame renderPartialFrame(CharGrid previous, CharGrid current, String colorMode,
+                                                   BufferedImage originalImage, String progressId,
+                                                   ProgressService progressService) throws IOException {
+        int gridWidth = current.getWidth();
+        int gridHeight = current.getHeight();
+        if (previous.getWidth() != gridWidth || previous.getHeight() != gridHeight
+                || previous.hasColors() != current.hasColors()
+                || !Arrays.equals(previous.getCharset(), current.getCharset())) {
+            return null;
+        }
+
+        // 找出字符或颜色发生变化的单元格及其包围盒
+        byte[] previousGlyphs = previous.getGlyphs();
+        byte[] currentGlyphs = current.getGlyphs();
+        int[] previousColors = previous.getColors();
+        int[] currentColors = current.getColors();
+        boolean[] dirty = new boolean[gridWidth * gridHeight];
+        int minX = gridWidth;
+        int minY = gridHeight;
+        int maxX = -1;
+        int maxY = -1;
+        for (int y = 0, i = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++, i++) {
+                if (previousGlyphs[i] != currentGlyphs[i] || (currentColors != null && previousColors[i] != currentColors[i])) {
+                    dirty[i] = true;
+                    minX = Math.min(minX, x);
+                    minY = Math.min(minY, y);
+                    maxX = Math.max(maxX, x);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+        }
+        if (maxX < 0) {
+            dirty[0] = true;
+            minX = 0;
+            minY = 0;
+            maxX = 0;
+            maxY = 0;
+        }
+
+        GlyphAtlas atlas = GlyphAtlas.of(new Font(Font.MONOSPACED, Font.BOLD, CHAR_IMAGE_FONT_SIZE), current.getCharset());
+        int reachX = atlas.getOverhangColumns();
+        int reachY = atlas.getOverhangLines();
+        // 受变化单元格影响的区域
+        int areaLeft = Math.max(0, minX - reachX);
+        int areaTop = Math.max(0, minY - reachY);
+        int areaRight = Math.min(gridWidth - 1, maxX + reachX);
+        int areaBottom = Math.min(gridHeight - 1, maxY + reachY);
+        // 区域外的单元格字形也可能延伸进区域，需要一起绘制
+        int renderLeft = Math.max(0, areaLeft - reachX);
+        int renderTop = Math.max(0, areaTop - reachY);
+        int renderRight = Math.min(gridWidth - 1, areaRight + reachX);
+        int renderBottom = Math.min(gridHeight - 1, areaBottom + reachY);
+        CharGrid renderGrid = current.region(renderLeft, renderTop, renderRight - renderLeft + 1, renderBottom - renderTop + 1);
+        BufferedImage rendered = renderCharImage(renderGrid, colorMode, originalImage, progressId, 0, 0, 0, 0,
+                null, progressService, false, false, null);
+
+        int cellWidth = atlas.getCellWidth();
+        int cellHeight = atlas.getCellHeight();
+        int areaColumns = areaRight - areaLeft + 1;
+        int areaRows = areaBottom - areaTop + 1;
+        int imageWidth = areaColumns * cellWidth;
+        int imageHeight = areaRows * cellHeight;
+        BufferedImage crop = rendered.getSubimage((areaLeft - renderLeft) * cellWidth, (areaTop - renderTop) * cellHeight,
+                imageWidth, imageHeight);
+        WritableRaster cropRaster = rendered.getColorModel().createCompatibleWritableRaster(imageWidth, imageHeight);
+        crop.copyData(cropRaster);
+        BufferedImage image = new BufferedImage(rendered.getColorModel(), cropRaster, rendered.isAlphaPremultiplied(), null);
+
+        // 标记区域内受变化单元格影响的像素，其余像素与上一帧相同
+        boolean[] changedCells = new boolean[areaColumns * areaRows];
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                if (!dirty[y * gridWidth + x]) {
+                    continue;
+                }
+                for (int cy = Math.max(areaTop, y - reachY); cy <= Math.min(areaBottom, y + reachY); cy++) {
+                    int rowStart = (cy - areaTop) * areaColumns;
+                    for (int cx = Math.max(areaLeft, x - reachX); cx <= Math.min(areaRight, x + reachX); cx++) {
+                        changedCells[rowStart + cx - areaLeft] = true;
+                    }
+                }
+            }
+        }
+        boolean[] changedMask = new boolean[imageWidth * imageHeight];
+        for (int row = 0; row < areaRows; row++) {
+            for (int column = 0; column < areaColumns; column++) {
+                if (!changedCells[row * areaColumns + column]) {
+                    continue;
+                }
+                for (int py = 0; py < cellHeight; py++) {
+                    int start = (row * cellHeight + py) * imageWidth + column * cellWidth;
+                    Arrays.fill(changedMask, start, start + cellWidth, true);
+                }
+            }
+        }
+        return new PartialFrame(image, areaLeft * cellWidth, areaTop * cellHeight, changedMask);
+    }
+
+    /**
+     * 增量渲染得到的局部帧
+     * <p>
+     * 图像只覆盖画布上从(x, y)开始的矩形区域，changedMask按行标记区域内受变化单元格影响的像素，
+     * 未标记的像素与上一帧相同。
+     * </p>
+     */
+    private static final class PartialFrame {
+
+        private final BufferedImage image;
+        private final int x;
+        private final int y;
+        private final boolean[] changedMask;
+
+        PartialFrame(BufferedImage image, int x, int y, boolean[] changedMask) {
+            this.image = image;
+            this.x = x;
+            this.y = y;
+            this.changedMask = changedMask;
+        }
+    }
+
+    /**
+     * 将局部帧编码为WebP帧
+     * <p>
+     * WebP动画帧在画布上的位置必须为偶数，奇数位置时图像向左或向上扩展一个像素。
+     * 扩展的像素和区域内未变化的像素写为透明，与画布混合时保留上一帧的像素。
+     * </p>
+     *
+     * @param frameIndex 帧索引
+     * @param partialFrame 局部帧
+     * @param contentKey 帧内容键
+     * @param lossless 是否无损编码
+     * @param quality 压缩质量（0-100）
+     * @return 编码结果，位置为对齐后的位置
+     * @throws IOException 如果编码失败
+     */
+    private static WebpFrameProcessResult encodeWebpPartialFrame(int frameIndex, PartialFrame partialFrame, FrameContentKey contentKey,
+                                                                boolean lossless, int quality) throws IOException {
+        int padX = partialFrame.x & 1;
+        int padY = partialFrame.y & 1;
+        int width = partialFrame.image.getWidth();
+        int height = partialFrame.image.getHeight();
+        int frameWidth = width + padX;
+        BufferedImage image = new BufferedImage(frameWidth, height + padY, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            partialFrame.image.getRGB(0, y, width, 1, row, 0, width);
+            int offset = (y + padY) * frameWidth + padX;
+            for (int x = 0; x < width; x++) {
+                if (partialFrame.changedMask[y * width + x]) {
+                    pixels[offset + x] = row[x] | 0xFF000000;
+                }
+            }
+        }
+        return new WebpFrameProcessResult(frameIndex, WebpAnimationWriter.encodeFrame(image, lossless, quality), contentKey,
+                partialFrame.x - padX, partialFrame.y - padY);
+    }
+
+    /**
+     * 创建本次动画转换使用的重复帧渲染缓存
+     *
+     * @return 重复帧渲染缓存，未启用重复帧检测时返回null
+     */
+    private static <T> FrameRenderCache<T> createFrameRenderCache() {
+        if (parallelConfig != null && !parallelConfig.isDuplicateFrameDetectionEnabled()) {
+            return null;
+        }
+        int cacheSize = parallelConfig != null ? parallelConfig.getDuplicateFrameCacheSize() : 16;
+        return new FrameRenderCache<>(Math.max(1, cacheSize));
+    }
+
+    /**
+     * 判断一帧能否合并到前一帧
+     * <p>
+     * 两帧内容键相等且合并后的延迟不超过输出格式允许的上限时，可以只保留前一帧并累加延迟。
+     * </p>
+     *
+     * @param previousKey 前一帧的内容键
+     * @param previousDelay 前一帧（含已合并帧）的延迟（毫秒）
+     * @param key 当前帧的内容键，未启用重复帧检测时为null
+     * @param delay 当前帧的延迟（毫秒）
+     * @param maxDelay 单帧允许的最大延迟（毫秒）
+     * @return 可以合并时返回true
+     */
+    private static boolean canMergeFrame(FrameContentKey previousKey, int previousDelay, FrameContentKey key, int delay, int maxDelay) {
+        return key != null && key.equals(previousKey) && (long) previousDelay + delay <= maxDelay;
+    }
+
+    /**
+     * 重复帧渲染缓存
+     * <p>
+     * 以帧内容键缓存最近渲染的帧输出，内容相同的帧只渲染一次：第一个登记的帧负责渲染，
+     * 同时或之后登记的相同帧直接复用其输出，在按帧序取出时等待渲染完成。缓存按最近使用淘汰，只保留有限数量的不同内容，
+     * 被淘汰的内容再次出现时重新渲染。渲染失败的条目会被移除，等待中的帧得到同样的异常。
+     * </p>
+     */
+    private static final class FrameRenderCache<T> {
+
+        private final Map<Object, CompletableFuture<T>> entries;
+        private final AtomicInteger reusedFrames = new AtomicInteger();
+
+        FrameRenderCache(int capacity) {
+            this.entries = new LinkedHashMap<Object, CompletableFuture<T>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, CompletableFuture<T>> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        /**
+         * 登记一帧的内容键
+         * <p>
+         * 缓存中已有相同内容时返回其渲染输出（可能仍在渲染中）；否则以owner登记，
+         * 由调用方渲染后完成owner，渲染失败时调用abandon。
+         * </p>
+         *
+         * @param key 帧内容键；增量渲染时输出还取决于上一帧，使用上一帧与当前帧内容键组成的列表
+         * @param owner 由调用方负责完成的渲染输出
+         * @return 内容相同的帧的渲染输出，返回null表示调用方负责渲染
+         */
+        CompletableFuture<T> claim(Object key, CompletableFuture<T> owner) {
+            CompletableFuture<T> existing;
+            synchronized (entries) {
+                existing = entries.putIfAbsent(key, owner);
+            }
+            if (existing != null) {
+                reusedFrames.incrementAndGet();
+            }
+            return existing;
+        }
+
+        /**
+         * 放弃渲染已登记的内容，移除缓存条目，等待该输出的帧得到同样的异常
+         *
+         * @param key 登记时的内容键
+         * @param owner 登记时的渲染输出
+         * @param error 渲染失败的原因
+         */
+        void abandon(Object key, CompletableFuture<T> owner, Throwable error) {
+            synchronized (entries) {
+                entries.remove(key, owner);
+            }
+            owner.completeExceptionally(error);
+        }
+
+        /**
+         * 获取复用渲染输出的帧数
+         *
+         * @return 未重新渲染、直接复用其他帧输出的帧数
+         */
+        int getReusedFrames() {
+            return reusedFrames.get();
+        }
+    }
+
+    /**
+     * 多线程处理WebP帧
+     * 与processFramesInParallel相同，按"文本生成 → 图像生成 → 编码"组织为流水线。传入encodedFrames时编码阶段将字符画图片
+     * 编码为WebP帧，否则写出为PNG文件，主线程按帧序收集每帧的编码结果或文件路径。源阶段按帧序从frameSource取得源帧（进程内按需解码，或取出WebP处理服务已解码的帧），
+     * 已取出但尚未收集的帧数有上限。
+     * 启用重复帧检测时，内容相同的帧共用同一个字符画帧文件，连续相同的帧在charFramePaths和delays中
+     * 原地合并为一帧并累加延迟，返回合并后的帧数。
+     * 传入frameOffsets时增量渲染：除第一帧外，每帧只渲染相对上一帧发生变化的区域，
+     * 区域在画布上的位置写入frameOffsets。
+     *
+     * @param frameSource 按帧序提供完整源帧，在单个线程中调用
+     * @param encodedFrames 每帧的WebP编码结果，为null时写出PNG文件并将路径写入charFramePaths
+     * @param frameOffsets 每帧字符画图片在画布上的位置（{x, y}），为null时每帧都渲染整帧
+     * @return 合并后的帧数，charFramePaths（或encodedFrames）、delays和frameOffsets的前该数量个元素有效
+     */
+    private static int processWebpFramesInParallel(FramePipeline.FrameSource<BufferedImage> frameSource, int frameCount, int width, int height,
+                                                   int densityLevel, boolean limitSize, String colorMode,
+                                                   String progressId, int totalPixels, List<Path> tempFiles,
+                                                   Path[] charFramePaths, WebpAnimationWriter.EncodedFrame[] encodedFrames,
+                                                   int[] delays, int[][] frameOffsets,
+                                                   double pregressStart, double pregressEnd,
+                                                   double singlePregress, ProgressService progressService, Path tempDir) {
+        // 优化线程数配置，避免过多线程导致资源竞争
+        int threadCount = parallelConfig != null ?
+            parallelConfig.calculateThreadCount(frameCount) :
+            Math.min(Math.max(Runtime.getRuntime().availableProcessors() / 2, 1), Math.min(frameCount, 4));
+        AtomicReference<Double> currentProgress = new AtomicReference<>(pregressStart);
+        boolean withColors = needsCellColors(colorMode);
+        // 每帧的进度分为两个阶段：文本生成、图像转换（WebP编码在后续单独处理）
+        double progressPerStage = singlePregress / 2.0;
+        // 重复帧检测：内容相同的帧共用字符画帧文件
+        FrameRenderCache<WebpFrameProcessResult> frameCache = createFrameRenderCache();
+        FrameContentKey[] contentKeys = new FrameContentKey[frameCount];
+        // 源阶段在单个线程中按帧序执行，只有该线程访问
+        AtomicReference<CompletableFuture<CharGrid>> lastGridFuture = new AtomicReference<>();
+        boolean webpLossless = renderConfig == null || renderConfig.isWebpLossless();
+        int webpQuality = renderConfig != null ? renderConfig.getWebpQuality() : 80;
+
+        // 窗口限制已取出但尚未收集的帧数，进程内解码时同时限制已解码的源帧数
+        FramePipeline<AnimationFrame<WebpFrameProcessResult>> pipeline = createFramePipeline("char-art-webp-frame",
+                frameCount, threadCount, threadCount * 2);
+        pipeline.addStage("文本生成", getPipelineStageThreads(ParallelProcessingConfig::getPipelineTextThreads, threadCount),
+                (frameIndex, frame) -> generateFrameGrid(frame, frameIndex, frameCount, "WebP", width, height, densityLevel,
+                        limitSize, withColors, progressId, totalPixels, currentProgress, progressPerStage, progressService));
+        pipeline.addStage("图像生成", getPipelineStageThreads(ParallelProcessingConfig::getPipelineRenderThreads, threadCount),
+                (frameIndex, frame) -> {
+                    // 增量渲染时取得上一帧的字符网格
+                    CharGrid previousGrid = frame.previousGridFuture != null ? frame.previousGridFuture.get() : null;
+                    frame.previousGridFuture = null;
+                    // 内容相同的帧只渲染一次，共用同一个字符画帧文件
+                    if (!claimFrameOutput(frameCache, frame, previousGrid)) {
+                        return;
+                    }
                     try {
-                        // 检查线程中断状态
-                        if (Thread.currentThread().isInterrupted()) {
-                            throw new InterruptedException("任务被中断");
+                        frame.partialFrame = previousGrid != null
+                                ? renderPartialFrame(previousGrid, frame.grid, colorMode, frame.source, progressId, progressService)
+                                : null;
+                        // 进程内编码需要完整的图像，不写出帧文件
+                        if (encodedFrames == null) {
+                            frame.charImagePath = createTempFileInDirectory(tempDir, "char_image_", ".png");
+                            synchronized (tempFiles) {
+                                tempFiles.add(frame.charImagePath);
+                            }
                         }
-                        
-                        // 获取当前帧
-                        BufferedImage frame = frames[frameIndex];
-                        
-                        // 更新进度：开始处理当前帧
-                        progressService.updateProgress(progressId, currentProgress.get(), 
-                            "处理WebP第" + (frameIndex + 1) + "/" + frameCount + "帧", "帧处理", 
-                            (frameIndex + 1), frameCount, false);
-                        
-                        // 生成字符画文本
-                        int framePixelOffset = width * height * frameIndex;
-                        String frameText = convertImageToCharText(frame, densityLevel, limitSize, progressId, 
-                            totalPixels, framePixelOffset, frameIndex + 1, frameCount, currentProgress.get(), 
-                            currentProgress.get() + progressPerStage, "文本生成：第" + (frameIndex + 1) + "帧/共" + frameCount + "帧", 
-                            progressService, false, tempDir);
-                        
-                        // 文本生成完成，更新进度
-                        double newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
-                        progressService.updateProgress(progressId, newProgress, 
-                            "第" + (frameIndex + 1) + "帧字符画文本生成完成", "文本生成",
-                                frameIndex + 1, frameCount, false);
-                        
-                        // 生成字符画图片
-                        Path charFramePath = createCharImageFile(frameText, colorMode, frame, progressId, 
-                            framePixelOffset, totalPixels, tempFiles, frameCount, currentProgress.get(), 
-                            currentProgress.get() + progressPerStage, "图像生成：第" + (frameIndex + 1) + "帧/共" + frameCount + "帧", 
-                            progressService, false, tempDir);
-                        
-                        synchronized (tempFiles) {
-                            tempFiles.add(charFramePath);
+                        if (frame.partialFrame == null) {
+                            // 写出帧文件时超大图片直接流式写入文件，此时不返回图像
+                            frame.charImage = renderCharImage(frame.grid, colorMode, frame.source, progressId,
+                                width * height * frameIndex, totalPixels, currentProgress.get(),
+                                currentProgress.get() + progressPerStage, "图像生成：第" + (frameIndex + 1) + "帧/共" + frameCount + "帧",
+                                progressService, false, false, frame.charImagePath);
                         }
-                        
-                        // 图像生成完成，更新进度
-                        newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
-                        progressService.updateProgress(progressId, newProgress, 
-                            "第" + (frameIndex + 1) + "帧字符画图片生成完成", "图像生成",
-                                frameIndex + 1, frameCount, false);
-                        
-                        // 释放当前帧的内存
-                        frames[frameIndex] = null;
-                        
-                        return new WebpFrameProcessResult(frameIndex, charFramePath);
-                        
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("处理第" + (frameIndex + 1) + "帧被中断", e);
                     } catch (Exception e) {
-                        log.error("处理第{}帧时发生错误: {}", frameIndex + 1, e.getMessage(), e);
-                        throw new RuntimeException("处理第" + (frameIndex + 1) + "帧失败: " + e.getMessage(), e);
+                        abandonFrameOutput(frameCache, frame, e);
+                        throw e;
                     }
+                    // 释放源帧和字符网格，下一帧需要的网格由gridFuture保留
+                    frame.source = null;
+                    frame.grid = null;
+                });
+        pipeline.addStage("编码", getPipelineStageThreads(ParallelProcessingConfig::getPipelineEncodeThreads, threadCount),
+                (frameIndex, frame) -> {
+                    if (frame.output == null) {
+                        try {
+                            WebpFrameProcessResult written;
+                            if (encodedFrames != null) {
+                                written = frame.partialFrame != null
+                                        ? encodeWebpPartialFrame(frameIndex, frame.partialFrame, frame.contentKey, webpLossless, webpQuality)
+                                        : new WebpFrameProcessResult(frameIndex,
+                                                WebpAnimationWriter.encodeFrame(frame.charImage, webpLossless, webpQuality),
+                                                frame.contentKey, 0, 0);
+                            } else if (frame.partialFrame != null) {
+                                // 只写出变化区域的图像，由WebP处理服务按位置叠加到上一帧上
+                                writePngFile(frame.partialFrame.image, frame.charImagePath, pngOptions(false));
+                                written = new WebpFrameProcessResult(frameIndex, frame.charImagePath, frame.contentKey,
+                                        frame.partialFrame.x, frame.partialFrame.y);
+                            } else {
+                                if (frame.charImage != null) {
+                                    writePngFile(frame.charImage, frame.charImagePath, pngOptions(false));
+                                }
+                                written = new WebpFrameProcessResult(frameIndex, frame.charImagePath, frame.contentKey);
+                            }
+                            completeFrameOutput(frame, written);
+                        } catch (Exception e) {
+                            abandonFrameOutput(frameCache, frame, e);
+                            throw e;
+                        }
+                        frame.partialFrame = null;
+                        frame.charImage = null;
+                    }
+
+                    // 图像生成完成，更新进度
+                    double newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
+                    progressService.updateProgress(progressId, newProgress,
+                        "第" + (frameIndex + 1) + "帧字符画图片生成完成", "图像生成",
+                            frameIndex + 1, frameCount, false);
                 });
-                futures.add(future);
-            }
+
+        try {
+            // 按帧序取得源帧，增量渲染时每帧持有上一帧字符网格的future
+            pipeline.start("解码", frameIndex -> {
+                AnimationFrame<WebpFrameProcessResult> frame = new AnimationFrame<>();
+                frame.source = frameSource.next(frameIndex);
+                if (frameOffsets != null) {
+                    frame.gridFuture = new CompletableFuture<>();
+                    frame.previousGridFuture = lastGridFuture.getAndSet(frame.gridFuture);
+                }
+                return frame;
+            });
+            long taskTimeout = getTaskTimeout();
 
             // 按顺序收集结果
             for (int i = 0; i < frameCount; i++) {
                 try {
                     // 检查主线程中断状态
                     if (Thread.currentThread().isInterrupted()) {
-                        // 取消所有未完成的任务
-                        futures.forEach(f -> f.cancel(true));
                         throw new InterruptedException("主处理线程被中断");
                     }
-                    
-                    // 获取帧处理结果，增加超时时间
-                    WebpFrameProcessResult result = futures.get(i).get(60, TimeUnit.SECONDS);
-                    
+
+                    // 获取帧处理结果；复用其他帧输出的帧还需等待该帧写出完成
+                    WebpFrameProcessResult result = takeFrameOutput(pipeline, i, taskTimeout);
+
                     // 将结果存储到数组中
-                    charFramePaths[result.getFrameIndex()] = result.getCharFramePath();
-                    
+                    charFramePaths[i] = result.getCharFramePath();
+                    if (encodedFrames != null) {
+                        encodedFrames[i] = result.getEncodedFrame();
+                    }
+                    contentKeys[i] = result.getContentKey();
+                    if (frameOffsets != null) {
+                        frameOffsets[i] = new int[]{result.getFrameX(), result.getFrameY()};
+                    }
+
                     // WebP编码进度更新（这里只是标记，实际编码在后续进行）
-                    progressService.updateProgress(progressId, currentProgress.get(), 
+                    progressService.updateProgress(progressId, currentProgress.get(),
                         "第" + (i + 1) + "帧处理完成", "帧处理完成",
                             i + 1, frameCount, false);
-                    
+
                 } catch (TimeoutException e) {
                     log.error("第{}帧处理超时", i + 1);
-                    // 取消所有未完成的任务
-                    futures.forEach(f -> f.cancel(true));
                     throw new ServiceException("第" + (i + 1) + "帧处理超时", e);
                 } catch (ExecutionException e) {
-                    log.error("第{}帧处理失败: {}", i + 1, e.getCause().getMessage());
-                    throw new ServiceException("第" + (i + 1) + "帧处理失败: " + e.getCause().getMessage(), e.getCause());
+                    log.error("WebP帧处理失败: {}", e.getMessage());
+                    throw new ServiceException(e.getMessage(), e.getCause());
                 }
             }
-            
+
+            // 连续相同的帧原地合并为一帧，只累加延迟
+            int outputFrameCount = 0;
+            for (int i = 0; i < frameCount; i++) {
+                if (outputFrameCount > 0 && canMergeFrame(contentKeys[outputFrameCount - 1], delays[outputFrameCount - 1],
+                        contentKeys[i], delays[i], WEBP_MAX_DELAY_MILLIS)) {
+                    delays[outputFrameCount - 1] += delays[i];
+                } else {
+                    charFramePaths[outputFrameCount] = charFramePaths[i];
+                    if (encodedFrames != null) {
+                        encodedFrames[outputFrameCount] = encodedFrames[i];
+                    }
+                    delays[outputFrameCount] = delays[i];
+                    contentKeys[outputFrameCount] = contentKeys[i];
+                    if (frameOffsets != null) {
+                        frameOffsets[outputFrameCount] = frameOffsets[i];
+                    }
+                    outputFrameCount++;
+                }
+            }
+            if (frameCache != null) {
+                log.debug("WebP重复帧检测完成: 共{}帧，复用渲染输出{}帧，合并连续相同帧{}帧",
+                        frameCount, frameCache.getReusedFrames(), frameCount - outputFrameCount);
+            }
+            return outputFrameCount;
+
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new ServiceException("WebP帧并行处理被中断", e);
@@ -1268,28 +2843,219 @@ public class CharArtProcessor {
             progressService.updateProgress(progressId, pregressEnd, "处理完成", "完成", frameCount, frameCount, false);
             throw e;
         } finally {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
-                    log.warn("强制关闭WebP处理线程池");
-                    executor.shutdownNow();
-                    if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-                        log.error("WebP处理线程池无法正常关闭");
-                    }
-                }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+            // 结束流水线的所有线程，异常中止时未完成的阶段被中断
+            pipeline.close();
             // 手动触发垃圾回收，释放已处理帧的内存
             System.gc();
         }
     }
 
     /**
-     * 使用多线程将帧添加到GIF编码器，并定期更新进度
+     * 创建动画帧流水线
+     *
+     * @param name 流水线名称，用于线程名
+     * @param frameCount 总帧数
+     * @param threadCount 帧处理线程数，未配置队列容量时作为阶段之间队列的容量
+     * @param window 已进入流水线但尚未被主线程取出的最大帧数
+     * @return 尚未添加阶段的流水线
+     */
+    private static <T> FramePipeline<T> createFramePipeline(String name, int frameCount, int threadCount, int window) {
+        int configured = parallelConfig != null ? parallelConfig.getPipelineQueueCapacity() : 0;
+        return new FramePipeline<>(name, frameCount, window, configured > 0 ? configured : threadCount);
+    }
+
+    /**
+     * 获取流水线阶段的线程数
+     *
+     * @param setting 读取该阶段线程数配置的方法
+     * @param threadCount 帧处理线程数
+     * @return 配置的线程数，未配置时为帧处理线程数
+     */
+    private static int getPipelineStageThreads(ToIntFunction<ParallelProcessingConfig> setting, int threadCount) {
+        int configured = parallelConfig != null ? setting.applyAsInt(parallelConfig) : 0;
+        return Math.max(1, configured > 0 ? configured : threadCount);
+    }
+
+    /**
+     * 获取单帧处理的超时时间
+     *
+     * @return 主线程等待一帧处理完成的最长时间（毫秒）
+     */
+    private static long getTaskTimeout() {
+        return parallelConfig != null && parallelConfig.getTaskTimeout() > 0 ? parallelConfig.getTaskTimeout() : 60000L;
+    }
+
+    /**
+     * 等待编码线程池中的编码任务完成
+     * <p>
+     * 整张图片写入或一帧编码到GIF可能远超单帧处理时间，因此使用单独的编码超时时间，配置不大于0时不限制等待时间。
+     * </p>
+     *
+     * @param task 编码任务
+     * @throws InterruptedException 如果等待时被中断
+     * @throws ExecutionException 如果编码任务失败
+     * @throws TimeoutException 如果等待超过编码超时时间
+     */
+    private static void awaitEncoderTask(Future<?> task) throws InterruptedException, ExecutionException, TimeoutException {
+        long timeout = parallelConfig != null ? parallelConfig.getEncodeTimeout() : 600000L;
+        if (timeout > 0) {
+            task.get(timeout, TimeUnit.MILLISECONDS);
+        } else {
+            task.get();
+        }
+    }
+
+    /**
+     * 流水线文本生成阶段：将一帧源图像转换为字符网格
+     * <p>
+     * 增量渲染时生成后立即交给下一帧，失败时下一帧得到同样的异常。
+     * </p>
+     */
+    private static void generateFrameGrid(AnimationFrame<?> frame, int frameIndex, int frameCount, String formatName,
+                                          int width, int height, int densityLevel, boolean limitSize, boolean withColors,
+                                          String progressId, int totalPixels, AtomicReference<Double> currentProgress,
+                                          double progressPerStage, ProgressService progressService) {
+        try {
+            // 更新进度：开始处理当前帧
+            progressService.updateProgress(progressId, currentProgress.get(),
+                "处理" + formatName + "第" + (frameIndex + 1) + "/" + frameCount + "帧", "帧处理",
+                (frameIndex + 1), frameCount, false);
+
+            // 生成字符画文本
+            frame.grid = convertImageToCharGrid(frame.source, densityLevel, limitSize, withColors, progressId,
+                totalPixels, width * height * frameIndex, frameIndex + 1, frameCount, currentProgress.get(),
+                currentProgress.get() + progressPerStage, "文本生成：第" + (frameIndex + 1) + "帧/共" + frameCount + "帧",
+                progressService, false);
+        } catch (RuntimeException e) {
+            if (frame.gridFuture != null) {
+                frame.gridFuture.completeExceptionally(e);
+            }
+            throw e;
+        }
+        if (frame.gridFuture != null) {
+            frame.gridFuture.complete(frame.grid);
+            frame.gridFuture = null;
+        }
+
+        // 文本生成完成，更新进度
+        double newProgress = currentProgress.updateAndGet(current -> current + progressPerStage);
+        progressService.updateProgress(progressId, newProgress,
+            "第" + (frameIndex + 1) + "帧字符画文本生成完成", "文本生成",
+                frameIndex + 1, frameCount, false);
+    }
+
+    /**
+     * 在重复帧缓存中登记一帧
+     * <p>
+     * 缓存中已有相同内容时将该输出作为本帧输出，本帧不再渲染；否则本帧负责渲染，
+     * 输出由编码阶段通过completeFrameOutput完成。
+     * </p>
+     *
+     * @param frameCache 重复帧缓存，未启用重复帧检测时为null
+     * @param frame 当前帧，字符网格已生成
+     * @param previousGrid 增量渲染时上一帧的字符网格，否则为null
+     * @return 本帧需要渲染时返回true
+     */
+    private static <R> boolean claimFrameOutput(FrameRenderCache<R> frameCache, AnimationFrame<R> frame, CharGrid previousGrid) {
+        if (frameCache == null) {
+            return true;
+        }
+        frame.contentKey = new FrameContentKey(frame.grid);
+        // 增量渲染的输出还取决于上一帧，缓存键包含上一帧的内容
+        frame.cacheKey = previousGrid != null
+                ? Arrays.asList(new FrameContentKey(previousGrid), frame.contentKey)
+                : frame.contentKey;
+        CompletableFuture<R> owner = new CompletableFuture<>();
+        CompletableFuture<R> existing = frameCache.claim(frame.cacheKey, owner);
+        if (existing != null) {
+            frame.output = existing;
+            frame.source = null;
+            frame.grid = null;
+            return false;
+        }
+        frame.renderOwner = owner;
+        return true;
+    }
+
+    /**
+     * 设置本帧渲染完成的输出，同时交给复用该输出的其他帧
+     */
+    private static <R> void completeFrameOutput(AnimationFrame<R> frame, R output) {
+        if (frame.renderOwner != null) {
+            frame.renderOwner.complete(output);
+            frame.output = frame.renderOwner;
+        } else {
+            frame.output = CompletableFuture.completedFuture(output);
+        }
+    }
+
+    /**
+     * 本帧渲染失败，撤销在重复帧缓存中的登记
+     */
+    private static <R> void abandonFrameOutput(FrameRenderCache<R> frameCache, AnimationFrame<R> frame, Throwable error) {
+        if (frameCache != null && frame.renderOwner != null) {
+            frameCache.abandon(frame.cacheKey, frame.renderOwner, error);
+        }
+    }
+
+    /**
+     * 按帧序从流水线取出下一帧的输出
+     * <p>
+     * 复用其他帧输出的帧在流水线中不做渲染，需要等待负责渲染的帧完成。
+     * </p>
+     *
+     * @param pipeline 动画帧流水线
+     * @param frameIndex 帧序号
+     * @param timeoutMillis 超时时间（毫秒）
+     * @return 本帧的输出，可能来自内容相同的其他帧
+     */
+    private static <R> R takeFrameOutput(FramePipeline<AnimationFrame<R>> pipeline, int frameIndex, long timeoutMillis)
+            throws InterruptedException, TimeoutException, ExecutionException {
+        AnimationFrame<R> frame = pipeline.take(timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            return frame.output.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new ExecutionException("第" + (frameIndex + 1) + "帧处理失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 在动画帧流水线各阶段之间传递的一帧
+     * <p>
+     * 各阶段依次填充字段：源阶段设置源帧和字符网格的future，文本生成阶段生成字符网格，
+     * 图像生成阶段渲染字符画图像或登记复用内容相同帧的输出，编码阶段得到最终输出。
+     * 不再需要的中间结果及时置空，释放内存。
+     * </p>
+     *
+     * @param <R> 帧输出类型
+     */
+    private static final class AnimationFrame<R> {
+
+        private BufferedImage source;
+        private CharGrid grid;
+        /** 本帧字符网格，增量渲染时交给下一帧 */
+        private CompletableFuture<CharGrid> gridFuture;
+        /** 上一帧字符网格，增量渲染时使用 */
+        private CompletableFuture<CharGrid> previousGridFuture;
+        private FrameContentKey contentKey;
+        private Object cacheKey;
+        private PartialFrame partialFrame;
+        private BufferedImage charImage;
+        private Path charImagePath;
+        /** 本帧负责渲染、由编码阶段完成的缓存条目 */
+        private CompletableFuture<R> renderOwner;
+        private CompletableFuture<R> output;
+    }
+
+    /**
+     * 在共享编码线程池中将帧添加到GIF编码器，并按实际写出的字节数更新进度
+     * <p>
+     * 编码线程写出GIF数据时由统计字节数的输出流回调进度，调用线程只等待任务完成。
+     * 本帧的进度按已写出字节数占此前各帧平均大小的比例推进，第一帧按每像素半字节预估。
+     * </p>
      * 
      * @param gifEncoder GIF编码器
+     * @param gifOut GIF编码器使用的统计字节数的输出流
      * @param charImage 字符画图片
      * @param delay 帧延迟
      * @param progressId 进度ID
@@ -1300,81 +3066,53 @@ public class CharArtProcessor {
      * @param progressPerStage 每阶段进度增量
      * @throws ServiceException 如果添加帧失败
      */
-    private static void addFrameToGifWithProgress(AnimatedGifEncoder gifEncoder, BufferedImage charImage, 
+    private static void addFrameToGifWithProgress(AnimatedGifEncoder gifEncoder, ProgressOutputStream gifOut, BufferedImage charImage, 
                                                  int delay, String progressId, ProgressService progressService,
                                                  int frameNumber, int totalFrames, double startProgress, 
                                                  double progressPerStage) throws ServiceException {
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        AtomicReference<Exception> exceptionRef = new AtomicReference<>();
-        
-        try {
-            // 提交GIF帧添加任务
-            Future<Void> addFrameTask = executor.submit(() -> {
-                try {
-                    synchronized (gifEncoder) {
-                        gifEncoder.setDelay(delay);
-                        gifEncoder.addFrame(charImage);
-                    }
-                } catch (Exception e) {
-                    exceptionRef.set(e);
-                }
-                return null;
-            });
-            
-            // 在添加过程中定期更新进度
-            double currentProgress = startProgress;
-            double targetProgress = startProgress + progressPerStage;
-            double progressStep = progressPerStage / 20.0; // 分20步更新进度
-            
-            while (!addFrameTask.isDone()) {
-                try {
-                    // 等待500毫秒
-                    long updateInterval = parallelConfig != null ? parallelConfig.getProgressUpdateInterval() : 500L;
-                    Thread.sleep(updateInterval);
-                    
-                    // 更新进度
-                    currentProgress = Math.min(currentProgress + progressStep, targetProgress);
-                    progressService.updateProgress(progressId, currentProgress, 
-                        "正在编码第" + frameNumber + "/" + totalFrames + "帧到GIF...", 
-                        "GIF编码", frameNumber, totalFrames, false);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new ServiceException("GIF帧添加被中断", e);
+        long startBytes = gifOut.getCount();
+        long expectedBytes = frameNumber > 1
+                ? Math.max(1L, startBytes / (frameNumber - 1))
+                : Math.max(1L, (long) charImage.getWidth() * charImage.getHeight() / 2);
+        double targetProgress = startProgress + progressPerStage;
+        gifOut.setListener(writtenBytes -> {
+            long frameBytes = writtenBytes - startBytes;
+            double progress = startProgress + progressPerStage * Math.min(0.99, (double) frameBytes / expectedBytes);
+            progressService.updateProgress(progressId, progress,
+                "正在编码第" + frameNumber + "/" + totalFrames + "帧到GIF: 已写入" + formatBytes(frameBytes),
+                "GIF编码", frameNumber, totalFrames, false);
+        });
+
+        Future<?> addFrameTask = getEncoderExecutor().submit(() -> {
+            synchronized (gifEncoder) {
+                gifEncoder.setDelay(delay);
+                if (!gifEncoder.addFrame(charImage)) {
+                    throw new IOException("GIF编码器写入帧数据失败");
                 }
             }
-            
-            // 等待任务完成
-            addFrameTask.get(30, TimeUnit.SECONDS);
-            
-            // 检查是否有异常
-            if (exceptionRef.get() != null) {
-                throw new ServiceException("添加GIF帧失败: " + exceptionRef.get().getMessage(), exceptionRef.get());
-            }
-            
+            return null;
+        });
+        try {
+            awaitEncoderTask(addFrameTask);
+
             // 最终进度更新
             progressService.updateProgress(progressId, targetProgress, 
                 "第" + frameNumber + "帧编码到GIF完成", "GIF编码", 
                 frameNumber, totalFrames, false);
             
-            log.debug("多线程GIF帧添加完成，帧号: {}", frameNumber);
-            
-        } catch (TimeoutException e) {
-            throw new ServiceException("GIF帧添加超时", e);
+            log.debug("GIF帧添加完成，帧号: {}, 大小: {} 字节", frameNumber, gifOut.getCount() - startBytes);
         } catch (InterruptedException e) {
+            addFrameTask.cancel(true);
             Thread.currentThread().interrupt();
             throw new ServiceException("GIF帧添加被中断", e);
+        } catch (TimeoutException e) {
+            addFrameTask.cancel(true);
+            log.error("第 {} 帧添加到GIF超时", frameNumber);
+            throw new ServiceException("第" + frameNumber + "帧添加到GIF超时", e);
         } catch (ExecutionException e) {
-            throw new ServiceException("GIF帧添加执行失败: " + e.getMessage(), e);
+            throw new ServiceException("添加GIF帧失败: " + e.getCause().getMessage(), e.getCause());
         } finally {
-            executor.shutdown();
-            try {
-                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                executor.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+            gifOut.setListener(null);
         }
     }
 
@@ -0,0 +1,316 @@
+package com.doreamr233.charartconverter.util;
+
+import com.doreamr233.charartconverter.enums.OutputFormat;
+import com.doreamr233.charartconverter.model.CharGrid;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 字符画文本格式生成器
+ * <p>
+ * 直接由字符网格和单元格颜色生成ANSI真彩色文本、HTML文档或SVG矢量图，
+ * 不经过字形光栅化和图像编码。颜色与字符画图片一致：彩色模式的字符使用增强颜色，
+ * 彩色背景模式的背景使用增强颜色、字符使用对比颜色，灰度模式不着色。
+ * 同一行中颜色相同的相邻单元格合并为一个着色片段，以减小输出体积。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class CharTextFormatter {
+
+    /**
+     * 与字符画图片相同的字体
+     */
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.BOLD, 12);
+
+    /**
+     * 单元格宽度、行高和基线偏移，与字符画图片的单元格尺寸一致
+     */
+    private static final int CELL_WIDTH;
+    private static final int LINE_HEIGHT;
+    private static final int ASCENT;
+
+    private static final String ANSI_RESET = "\u001b[0m";
+
+    /**
+     * 文本缓冲区初始容量上限（字符数），超出部分由StringBuilder按需扩容，
+     * 避免按彩色输出的最坏情况为大网格一次性预分配过大的缓冲区
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1 << 20;
+
+    static {
+        BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = probe.createGraphics();
+        FontMetrics metrics = g.getFontMetrics(FONT);
+        CELL_WIDTH = metrics.charWidth('M');
+        LINE_HEIGHT = metrics.getHeight();
+        ASCENT = metrics.getAscent();
+        g.dispose();
+    }
+
+    private CharTextFormatter() {
+    }
+
+    /**
+     * 计算文本缓冲区的初始容量
+     *
+     * @param estimate 预估的文本长度（字符数）
+     * @return 不超过上限的初始容量
+     */
+    private static int initialCapacity(long estimate) {
+        return (int) Math.min(estimate, MAX_INITIAL_CAPACITY);
+    }
+
+    /**
+     * 按指定格式生成字符画
+     *
+     * @param grid 字符网格，彩色模式下需包含单元格颜色
+     * @param colorMode 颜色模式 (grayscale, color, colorBackground)
+     * @param format 文本输出格式
+     * @return UTF-8编码的结果
+     */
+    public static byte[] format(CharGrid grid, String colorMode, OutputFormat format) {
+        boolean isColorMode = "color".equalsIgnoreCase(colorMode);
+        boolean isColorBackgroundMode = "colorBackground".equalsIgnoreCase(colorMode);
+        boolean useCellColors = (isColorMode || isColorBackgroundMode) && grid.hasColors();
+        String text;
+        switch (format) {
+            case ANSI:
+                text = toAnsi(grid, useCellColors, isColorBackgroundMode);
+                break;
+            case HTML:
+                text = toHtml(grid, useCellColors, isColorBackgroundMode);
+                break;
+            case SVG:
+                text = toSvg(grid, useCellColors, isColorMode, isColorBackgroundMode);
+                break;
+            default:
+                throw new IllegalArgumentException("不是文本输出格式: " + format);
+        }
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 生成ANSI真彩色文本
+     * <p>
+     * 每个同色片段前输出一次24位颜色转义序列，每行末尾重置属性。
+     * 灰度模式输出不含转义序列的纯文本。
+     * </p>
+     */
+    private static String toAnsi(CharGrid grid, boolean useCellColors, boolean isColorBackgroundMode) {
+        int width = grid.getWidth();
+        int height = grid.getHeight();
+        StringBuilder sb = new StringBuilder(initialCapacity((long) height * (width + 1) * (useCellColors ? 4 : 1)));
+        for (int y = 0; y < height; y++) {
+            int runStart = 0;
+            while (runStart < width) {
+                int runEnd = useCellColors ? findRunEnd(grid, y, runStart) : width;
+                if (useCellColors) {
+                    int cellRgb = grid.colorAt(runStart, y);
+                    int enhancedRgb = ColorEnhancer.enhance(cellRgb);
+                    if (isColorBackgroundMode) {
+                        appendAnsiColor(sb, 38, ColorEnhancer.contrast(cellRgb));
+                        appendAnsiColor(sb, 48, enhancedRgb);
+                    } else {
+                        appendAnsiColor(sb, 38, enhancedRgb);
+                    }
+                }
+                for (int x = runStart; x < runEnd; x++) {
+                    sb.append(grid.charAt(x, y));
+                }
+                runStart = runEnd;
+            }
+            if (useCellColors) {
+                sb.append(ANSI_RESET);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 生成HTML文档
+     * <p>
+     * 字符画放在一个pre元素中，字体和行高与字符画图片相同，每个同色片段为一个span。
+     * </p>
+     */
+    private static String toHtml(CharGrid grid, boolean useCellColors, boolean isColorBackgroundMode) {
+        int width = grid.getWidth();
+        int height = grid.getHeight();
+        StringBuilder sb = new StringBuilder(initialCapacity(256 + (long) height * (width + 1) * (useCellColors ? 6 : 1)));
+        sb.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>字符画</title>\n<style>\n")
+                .append("pre{margin:0;background:#ffffff;color:#000000;font-family:monospace;font-weight:bold;")
+                .append("font-size:").append(FONT.getSize()).append("px;line-height:").append(LINE_HEIGHT).append("px;}\n")
+                .append("</style>\n</head>\n<body>\n<pre>");
+        for (int y = 0; y < height; y++) {
+            int runStart = 0;
+            while (runStart < width) {
+                int runEnd = useCellColors ? findRunEnd(grid, y, runStart) : width;
+                if (useCellColors) {
+                    int cellRgb = grid.colorAt(runStart, y);
+                    int enhancedRgb = ColorEnhancer.enhance(cellRgb);
+                    sb.append("<span style=\"");
+                    if (isColorBackgroundMode) {
+                        sb.append("color:");
+                        appendHexColor(sb, ColorEnhancer.contrast(cellRgb));
+                        sb.append(";background:");
+                        appendHexColor(sb, enhancedRgb);
+                    } else {
+                        sb.append("color:");
+                        appendHexColor(sb, enhancedRgb);
+                    }
+                    sb.append("\">");
+                }
+                appendEscaped(sb, grid, y, runStart, runEnd);
+                if (useCellColors) {
+                    sb.append("</span>");
+                }
+                runStart = runEnd;
+            }
+            sb.append('\n');
+        }
+        sb.append("</pre>\n</body>\n</html>\n");
+        return sb.toString();
+    }
+
+    /**
+     * 生成SVG矢量图
+     * <p>
+     * 画布尺寸与字符画图片相同。彩色背景模式的同色片段和彩色模式的连续空格先绘制为矩形，
+     * 然后每个字符行输出一个text元素，通过textLength将字符宽度拉伸到单元格宽度，保证列对齐。
+     * </p>
+     */
+    private static String toSvg(CharGrid grid, boolean useCellColors, boolean isColorMode, boolean isColorBackgroundMode) {
+        int width = grid.getWidth();
+        int height = grid.getHeight();
+        int imageWidth = width * CELL_WIDTH;
+        int imageHeight = height * LINE_HEIGHT;
+        StringBuilder sb = new StringBuilder(initialCapacity(256 + (long) height * (width + 64) * (useCellColors ? 8 : 1)));
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(imageWidth)
+                .append("\" height=\"").append(imageHeight)
+                .append("\" viewBox=\"0 0 ").append(imageWidth).append(' ').append(imageHeight)
+                .append("\" font-family=\"monospace\" font-weight=\"bold\" font-size=\"").append(FONT.getSize())
+                .append("\" xml:space=\"preserve\">\n")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"#ffffff\"/>\n");
+
+        if (useCellColors) {
+            for (int y = 0; y < height; y++) {
+                int runStart = 0;
+                while (runStart < width) {
+                    int runEnd = findRunEnd(grid, y, runStart);
+                    int enhancedRgb = ColorEnhancer.enhance(grid.colorAt(runStart, y));
+                    if (isColorBackgroundMode) {
+                        appendSvgRect(sb, runStart, runEnd, y, enhancedRgb);
+                    } else if (isColorMode) {
+                        // 彩色模式下空格与图片一致绘制为背景色块
+                        int spaceStart = -1;
+                        for (int x = runStart; x <= runEnd; x++) {
+                            boolean isSpace = x < runEnd && grid.charAt(x, y) == ' ';
+                            if (isSpace && spaceStart < 0) {
+                                spaceStart = x;
+                            } else if (!isSpace && spaceStart >= 0) {
+                                appendSvgRect(sb, spaceStart, x, y, enhancedRgb);
+                                spaceStart = -1;
+                            }
+                        }
+                    }
+                    runStart = runEnd;
+                }
+            }
+        }
+
+        for (int y = 0; y < height; y++) {
+            sb.append("<text y=\"").append(y * LINE_HEIGHT + ASCENT)
+                    .append("\" textLength=\"").append(imageWidth).append("\" lengthAdjust=\"spacing\">");
+            int runStart = 0;
+            while (runStart < width) {
+                int runEnd = useCellColors ? findRunEnd(grid, y, runStart) : width;
+                if (useCellColors) {
+                    int cellRgb = grid.colorAt(runStart, y);
+                    sb.append("<tspan fill=\"");
+                    appendHexColor(sb, isColorBackgroundMode ? ColorEnhancer.contrast(cellRgb) : ColorEnhancer.enhance(cellRgb));
+                    sb.append("\">");
+                }
+                appendEscaped(sb, grid, y, runStart, runEnd);
+                if (useCellColors) {
+                    sb.append("</tspan>");
+                }
+                runStart = runEnd;
+            }
+            sb.append("</text>\n");
+        }
+        sb.append("</svg>\n");
+        return sb.toString();
+    }
+
+    /**
+     * 查找从指定列开始、增强颜色相同的片段结束位置
+     *
+     * @param grid 字符网格
+     * @param y 行号
+     * @param runStart 片段起始列
+     * @return 片段结束列（不包含）
+     */
+    private static int findRunEnd(CharGrid grid, int y, int runStart) {
+        int width = grid.getWidth();
+        int enhancedRgb = ColorEnhancer.enhance(grid.colorAt(runStart, y));
+        int runEnd = runStart + 1;
+        while (runEnd < width && ColorEnhancer.enhance(grid.colorAt(runEnd, y)) == enhancedRgb) {
+            runEnd++;
+        }
+        return runEnd;
+    }
+
+    private static void appendAnsiColor(StringBuilder sb, int selector, int rgb) {
+        sb.append("\u001b[").append(selector).append(";2;")
+                .append((rgb >> 16) & 0xFF).append(';')
+                .append((rgb >> 8) & 0xFF).append(';')
+                .append(rgb & 0xFF).append('m');
+    }
+
+    private static void appendHexColor(StringBuilder sb, int rgb) {
+        sb.append('#');
+        String hex = Integer.toHexString(rgb & 0xFFFFFF);
+        for (int i = hex.length(); i < 6; i++) {
+            sb.append('0');
+        }
+        sb.append(hex);
+    }
+
+    private static void appendSvgRect(StringBuilder sb, int xStart, int xEnd, int y, int rgb) {
+        sb.append("<rect x=\"").append(xStart * CELL_WIDTH)
+                .append("\" y=\"").append(y * LINE_HEIGHT)
+                .append("\" width=\"").append((xEnd - xStart) * CELL_WIDTH)
+                .append("\" height=\"").append(LINE_HEIGHT)
+                .append("\" fill=\"");
+        appendHexColor(sb, rgb);
+        sb.append("\"/>\n");
+    }
+
+    /**
+     * 追加一段字符并转义HTML/XML特殊字符
+     */
+    private static void appendEscaped(StringBuilder sb, CharGrid grid, int y, int xStart, int xEnd) {
+        for (int x = xStart; x < xEnd; x++) {
+            char c = grid.charAt(x, y);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                default:
+                    sb.append(c);
+                    break;
+            }
+        }
+    }
+}
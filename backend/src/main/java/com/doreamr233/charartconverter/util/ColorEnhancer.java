@@ -0,0 +1,121 @@
+package com.doreamr233.charartconverter.util;
+
+import java.awt.Color;
+
+/**
+ * 颜色增强查找表
+ * <p>
+ * 彩色模式和彩色背景模式下，每个单元格的颜色都要提高饱和度和亮度，
+ * 彩色背景模式还需要一个与背景相似但有对比度的字符颜色。
+ * 该类将输入颜色量化为18位（每通道6位），预先计算每个量化颜色对应的
+ * 增强颜色和对比字符颜色，渲染时只需一次数组访问，不创建任何对象。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class ColorEnhancer {
+
+    /**
+     * 每个颜色通道保留的位数
+     */
+    private static final int CHANNEL_BITS = 6;
+
+    /**
+     * 查找表大小（2^18）
+     */
+    private static final int TABLE_SIZE = 1 << (CHANNEL_BITS * 3);
+
+    /**
+     * 增强后的颜色（0xRRGGBB）
+     */
+    private static final int[] ENHANCED = new int[TABLE_SIZE];
+
+    /**
+     * 与增强颜色相似但有对比度的字符颜色（0xRRGGBB）
+     */
+    private static final int[] CONTRAST = new int[TABLE_SIZE];
+
+    static {
+        float[] hsb = new float[3];
+        for (int key = 0; key < TABLE_SIZE; key++) {
+            int red = expandChannel(key >> (CHANNEL_BITS * 2));
+            int green = expandChannel((key >> CHANNEL_BITS) & ((1 << CHANNEL_BITS) - 1));
+            int blue = expandChannel(key & ((1 << CHANNEL_BITS) - 1));
+
+            // 增强颜色饱和度和亮度
+            Color.RGBtoHSB(red, green, blue, hsb);
+            // 增加饱和度，但不超过1.0
+            float saturation = Math.min(1.0f, hsb[1] * 1.5f);
+            // 确保亮度适中，不会太暗或太亮
+            float brightness = Math.max(0.3f, Math.min(0.9f, hsb[2] * 1.2f));
+            int enhanced = Color.HSBtoRGB(hsb[0], saturation, brightness) & 0xFFFFFF;
+
+            ENHANCED[key] = enhanced;
+            CONTRAST[key] = contrastOf(enhanced);
+        }
+    }
+
+    private ColorEnhancer() {
+    }
+
+    /**
+     * 获取增强后的颜色
+     *
+     * @param rgb 原始颜色（0xRRGGBB，忽略高8位）
+     * @return 提高饱和度和亮度后的颜色（0xRRGGBB）
+     */
+    public static int enhance(int rgb) {
+        return ENHANCED[keyOf(rgb)];
+    }
+
+    /**
+     * 获取增强颜色对应的对比字符颜色
+     *
+     * @param rgb 原始颜色（0xRRGGBB，忽略高8位）
+     * @return 与增强颜色相似但有对比度的颜色（0xRRGGBB）
+     */
+    public static int contrast(int rgb) {
+        return CONTRAST[keyOf(rgb)];
+    }
+
+    /**
+     * 计算颜色在查找表中的下标
+     *
+     * @param rgb 原始颜色
+     * @return 18位量化颜色
+     */
+    private static int keyOf(int rgb) {
+        return ((rgb >> 6) & 0x3F000) | ((rgb >> 4) & 0xFC0) | ((rgb >> 2) & 0x3F);
+    }
+
+    /**
+     * 将6位通道值还原为8位（高位复制到低位，使0和63分别对应0和255）
+     *
+     * @param value 6位通道值
+     * @return 8位通道值
+     */
+    private static int expandChannel(int value) {
+        return (value << 2) | (value >> 4);
+    }
+
+    /**
+     * 计算与背景相似但有一定对比度的字符颜色
+     * <p>
+     * 亮色背景使用稍暗的相似颜色，暗色背景使用稍亮的相似颜色。
+     * </p>
+     *
+     * @param enhanced 增强后的背景颜色
+     * @return 字符颜色
+     */
+    private static int contrastOf(int enhanced) {
+        int red = (enhanced >> 16) & 0xFF;
+        int green = (enhanced >> 8) & 0xFF;
+        int blue = enhanced & 0xFF;
+        double brightness = (red * 0.299 + green * 0.587 + blue * 0.114) / 255;
+        int delta = brightness > 0.5 ? -80 : 80;
+        red = Math.max(0, Math.min(255, red + delta));
+        green = Math.max(0, Math.min(255, green + delta));
+        blue = Math.max(0, Math.min(255, blue + delta));
+        return (red << 16) | (green << 8) | blue;
+    }
+}
@@ -0,0 +1,300 @@
+package com.doreamr233.charartconverter.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 动画帧流水线
+ * <p>
+ * 将动画帧的处理拆分为按顺序连接的阶段：源阶段在单个线程中按帧序产生帧，之后每个阶段由各自数量的线程处理，
+ * 阶段之间通过有界队列传递帧。下游阶段较慢时队列被填满，上游阶段的线程阻塞在写入队列上，
+ * 从而逐级限制源阶段的产生速度。调用方按帧序取出最后一个阶段处理完成的帧，第0帧完成后即可取出，
+ * 不需要等待其他帧。已产生但尚未被取出的帧数不超过窗口大小，先完成的帧等待前面的帧时占用的内存有上限。
+ * </p>
+ * <p>
+ * 任一阶段处理失败时流水线中止，尚未取出的帧都以该异常结束。流水线使用完毕后必须调用close释放线程。
+ * </p>
+ *
+ * @param <T> 在各阶段之间传递的帧对象类型，各阶段直接修改该对象
+ * @author doreamr233
+ */
+public class FramePipeline<T> implements AutoCloseable {
+
+    /**
+     * 按帧序产生帧的源阶段
+     *
+     * @param <T> 帧对象类型
+     */
+    @FunctionalInterface
+    public interface FrameSource<T> {
+        /**
+         * 产生一帧
+         *
+         * @param frameIndex 帧序号（从0开始）
+         * @return 帧对象
+         * @throws Exception 产生失败时抛出，流水线中止
+         */
+        T next(int frameIndex) throws Exception;
+    }
+
+    /**
+     * 处理一帧的阶段
+     *
+     * @param <T> 帧对象类型
+     */
+    @FunctionalInterface
+    public interface FrameStage<T> {
+        /**
+         * 处理一帧
+         *
+         * @param frameIndex 帧序号（从0开始）
+         * @param frame 帧对象
+         * @throws Exception 处理失败时抛出，流水线中止
+         */
+        void process(int frameIndex, T frame) throws Exception;
+    }
+
+    /**
+     * 在阶段之间传递的帧及其序号
+     */
+    private static final class Slot<T> {
+        private final int frameIndex;
+        private final T frame;
+
+        Slot(int frameIndex, T frame) {
+            this.frameIndex = frameIndex;
+            this.frame = frame;
+        }
+    }
+
+    /**
+     * 阶段定义
+     */
+    private static final class Stage<T> {
+        private final String name;
+        private final int parallelism;
+        private final FrameStage<T> action;
+
+        Stage(String name, int parallelism, FrameStage<T> action) {
+            this.name = name;
+            this.parallelism = parallelism;
+            this.action = action;
+        }
+    }
+
+    private final String name;
+    private final int frameCount;
+    private final int queueCapacity;
+    private final Semaphore window;
+    private final List<Stage<T>> stages = new ArrayList<>();
+    private final CompletableFuture<T>[] results;
+    private ExecutorService executor;
+    private volatile ExecutionException failure;
+    private int nextFrame;
+
+    /**
+     * 创建动画帧流水线
+     *
+     * @param name 流水线名称，用于线程名
+     * @param frameCount 总帧数
+     * @param window 已产生但尚未被取出的最大帧数
+     * @param queueCapacity 阶段之间每个队列的容量
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public FramePipeline(String name, int frameCount, int window, int queueCapacity) {
+        this.name = name;
+        this.frameCount = frameCount;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.window = new Semaphore(Math.max(1, window));
+        this.results = new CompletableFuture[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            results[i] = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * 在流水线末尾添加一个阶段
+     *
+     * @param stageName 阶段名称，用于线程名和错误信息
+     * @param parallelism 处理该阶段的线程数
+     * @param action 阶段处理逻辑
+     * @return 当前流水线
+     */
+    public FramePipeline<T> addStage(String stageName, int parallelism, FrameStage<T> action) {
+        if (executor != null) {
+            throw new IllegalStateException("流水线已启动，不能再添加阶段");
+        }
+        stages.add(new Stage<>(stageName, Math.max(1, parallelism), action));
+        return this;
+    }
+
+    /**
+     * 启动流水线
+     *
+     * @param sourceName 源阶段名称，用于错误信息
+     * @param source 按帧序产生帧的源阶段，在单个线程中调用
+     * @return 当前流水线
+     */
+    public FramePipeline<T> start(String sourceName, FrameSource<T> source) {
+        if (executor != null) {
+            throw new IllegalStateException("流水线已启动");
+        }
+        int threadCount = 1;
+        for (Stage<T> stage : stages) {
+            threadCount += stage.parallelism;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threadCount, r -> {
+            Thread thread = new Thread(r, name + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<BlockingQueue<Slot<T>>> queues = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        for (int i = 0; i < stages.size(); i++) {
+            Stage<T> stage = stages.get(i);
+            BlockingQueue<Slot<T>> input = queues.get(i);
+            BlockingQueue<Slot<T>> output = i + 1 < queues.size() ? queues.get(i + 1) : null;
+            for (int j = 0; j < stage.parallelism; j++) {
+                executor.execute(() -> runStage(stage, input, output));
+            }
+        }
+        // 源阶段最后提交：源阶段立即失败时会关闭线程池，之后不能再提交阶段线程
+        executor.execute(() -> runSource(sourceName, source, queues.isEmpty() ? null : queues.get(0)));
+        return this;
+    }
+
+    /**
+     * 按帧序取出下一个处理完成的帧
+     *
+     * @param timeout 等待的最长时间
+     * @param unit 时间单位
+     * @return 下一帧
+     * @throws InterruptedException 等待时被中断
+     * @throws TimeoutException 超时仍未完成
+     * @throws ExecutionException 流水线中止，异常信息包含失败的帧和阶段
+     */
+    public T take(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException, ExecutionException {
+        if (nextFrame >= frameCount) {
+            throw new IllegalStateException("所有帧均已取出");
+        }
+        CompletableFuture<T> result = results[nextFrame];
+        T frame;
+        try {
+            frame = result.get(timeout, unit);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof ExecutionException ? (ExecutionException) e.getCause() : e;
+        }
+        results[nextFrame] = null;
+        nextFrame++;
+        window.release();
+        return frame;
+    }
+
+    /**
+     * 中止流水线并释放所有线程
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 源阶段：按帧序产生帧并交给第一个阶段，窗口已满时等待调用方取出帧
+     */
+    private void runSource(String sourceName, FrameSource<T> source, BlockingQueue<Slot<T>> output) {
+        for (int i = 0; i < frameCount && failure == null; i++) {
+            T frame;
+            try {
+                window.acquire();
+                frame = source.next(i);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                fail(i, sourceName, e);
+                return;
+            }
+            if (!forward(new Slot<>(i, frame), output)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 阶段工作线程：从输入队列取出帧处理后交给下一个阶段，直到流水线关闭
+     */
+    private void runStage(Stage<T> stage, BlockingQueue<Slot<T>> input, BlockingQueue<Slot<T>> output) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Slot<T> slot;
+            try {
+                slot = input.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                stage.action.process(slot.frameIndex, slot.frame);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                fail(slot.frameIndex, stage.name, e);
+                return;
+            }
+            if (!forward(slot, output)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 将帧交给下一个阶段；已是最后一个阶段时作为结果完成
+     *
+     * @return 被中断时返回false
+     */
+    private boolean forward(Slot<T> slot, BlockingQueue<Slot<T>> output) {
+        if (output == null) {
+            results[slot.frameIndex].complete(slot.frame);
+            return true;
+        }
+        try {
+            output.put(slot);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 中止流水线，尚未完成的帧都以该异常结束
+     */
+    private void fail(int frameIndex, String stageName, Exception cause) {
+        ExecutionException error;
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            error = new ExecutionException("第" + (frameIndex + 1) + "帧" + stageName + "失败: " + cause.getMessage(), cause);
+            failure = error;
+        }
+        for (CompletableFuture<T> result : results) {
+            if (result != null) {
+                result.completeExceptionally(error);
+            }
+        }
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,543 @@
+package com.doreamr233.charartconverter.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 按需解码的GIF动画读取器
+ * <p>
+ * 打开时只扫描一遍文件结构，校验格式并得到画布尺寸、帧数和每帧延迟，不解码任何图像数据；
+ * 之后每次调用{@link #nextFrame()}按顺序解码下一帧并与之前的画面合成。
+ * 读取器只保留合成所需的前两帧画面，内存占用与帧数无关。
+ * </p>
+ * <p>
+ * 帧的合成规则（处置方式、透明色、背景色和交错扫描的处理）与AnimatedGifEncoder附带的GifDecoder相同，
+ * 解码得到的每一帧与GifDecoder的结果逐像素一致。返回的帧图像之后不会被读取器修改，
+ * 可以交给其他线程只读使用。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class GifStreamReader {
+
+    /**
+     * LZW码表容量
+     */
+    private static final int MAX_STACK_SIZE = 4096;
+
+    private final byte[] data;
+    private final int width;
+    private final int height;
+    private final int[] gct;
+    private final int bgIndex;
+    private final int contentStart;
+
+    private int frameCount;
+    private int[] delays;
+    private int loopCount = 1;
+
+    // 解析状态：图形控制扩展的取值在帧之间保持，与GifDecoder相同
+    private int pos;
+    private int dispose;
+    private boolean transparency;
+    private int delay;
+    private int transIndex;
+    private int bgColor;
+
+    // 合成状态
+    private int decodedFrames;
+    private int lastDispose;
+    private int lastX;
+    private int lastY;
+    private int lastW;
+    private int lastH;
+    private int lastBgColor;
+    private BufferedImage lastImage;
+    private BufferedImage imageBeforeLast;
+
+    // LZW解码缓冲区
+    private final short[] prefix = new short[MAX_STACK_SIZE];
+    private final byte[] suffix = new byte[MAX_STACK_SIZE];
+    private final byte[] pixelStack = new byte[MAX_STACK_SIZE + 1];
+    private byte[] pixels;
+
+    private GifStreamReader(byte[] data) throws IOException {
+        this.data = data;
+        if (data.length < 13 || data[0] != 'G' || data[1] != 'I' || data[2] != 'F') {
+            throw new IOException("不是GIF文件");
+        }
+        pos = 6;
+        width = readShort();
+        height = readShort();
+        int packed = read();
+        bgIndex = read();
+        read(); // 像素宽高比
+        if ((packed & 0x80) != 0) {
+            gct = readColorTable(2 << (packed & 7));
+            bgColor = gct[bgIndex];
+        } else {
+            gct = null;
+        }
+        contentStart = pos;
+    }
+
+    /**
+     * 打开GIF数据并扫描文件结构
+     *
+     * @param data GIF文件内容，读取期间不能修改
+     * @return 定位在第一帧之前的读取器
+     * @throws IOException 文件格式错误或数据不完整时抛出
+     */
+    public static GifStreamReader open(byte[] data) throws IOException {
+        GifStreamReader reader = new GifStreamReader(data);
+        reader.scan();
+        return reader;
+    }
+
+    /**
+     * 获取画布宽度
+     *
+     * @return 逻辑屏幕宽度（像素）
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 获取画布高度
+     *
+     * @return 逻辑屏幕高度（像素）
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 获取帧数
+     *
+     * @return 文件中的图像帧数
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 获取指定帧的延迟时间
+     *
+     * @param index 帧索引
+     * @return 延迟时间（毫秒）
+     */
+    public int getDelay(int index) {
+        return delays[index];
+    }
+
+    /**
+     * 获取循环次数
+     *
+     * @return 循环次数，0表示无限循环，没有循环扩展时为1
+     */
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    /**
+     * 是否还有未解码的帧
+     *
+     * @return 还有帧时返回true
+     */
+    public boolean hasNextFrame() {
+        return decodedFrames < frameCount;
+    }
+
+    /**
+     * 解码下一帧
+     *
+     * @return 与之前画面合成后的完整帧（TYPE_INT_ARGB）
+     * @throws IOException 所有帧都已读取时抛出
+     */
+    public BufferedImage nextFrame() throws IOException {
+        if (!hasNextFrame()) {
+            throw new IOException("GIF中没有更多的帧");
+        }
+        BufferedImage frame = null;
+        while (frame == null) {
+            frame = readNextBlock(true);
+        }
+        return frame;
+    }
+
+    /**
+     * 扫描整个文件，统计帧数和每帧延迟，并校验所有数据块都在文件范围内
+     */
+    private void scan() throws IOException {
+        int[] scannedDelays = new int[16];
+        int count = 0;
+        while (true) {
+            int code = peekBlockCode();
+            if (code == 0x3B) {
+                break;
+            }
+            readNextBlock(false);
+            if (code == 0x2C) {
+                // 图像描述符之前的图形控制扩展决定该帧的延迟
+                if (count == scannedDelays.length) {
+                    scannedDelays = Arrays.copyOf(scannedDelays, count * 2);
+                }
+                scannedDelays[count++] = delay;
+            }
+        }
+        if (count == 0) {
+            throw new IOException("GIF中没有图像帧");
+        }
+        frameCount = count;
+        delays = Arrays.copyOf(scannedDelays, count);
+
+        // 恢复解析状态，从第一帧开始解码
+        pos = contentStart;
+        dispose = 0;
+        transparency = false;
+        delay = 0;
+        transIndex = 0;
+        bgColor = gct != null ? gct[bgIndex] : 0;
+    }
+
+    private int peekBlockCode() throws IOException {
+        if (pos >= data.length) {
+            throw new IOException("GIF数据不完整");
+        }
+        return data[pos] & 0xFF;
+    }
+
+    /**
+     * 读取下一个数据块
+     *
+     * @param decode 是否解码图像，扫描时为false
+     * @return 解码得到的帧，当前数据块不是图像或未解码时返回null
+     */
+    private BufferedImage readNextBlock(boolean decode) throws IOException {
+        int code = read();
+        switch (code) {
+            case 0x2C:
+                return readImage(decode);
+            case 0x21:
+                int label = read();
+                if (label == 0xF9) {
+                    readGraphicControlExtension();
+                } else if (label == 0xFF) {
+                    int start = pos;
+                    int size = readBlockSize();
+                    String app = new String(data, start + 1, Math.min(size, 11), StandardCharsets.US_ASCII);
+                    if ("NETSCAPE2.0".equals(app)) {
+                        readNetscapeExtension();
+                    } else {
+                        skipBlocks();
+                    }
+                } else {
+                    skipBlocks();
+                }
+                return null;
+            case 0x00:
+                return null;
+            default:
+                throw new IOException("GIF数据块标识无效: " + code);
+        }
+    }
+
+    private void readGraphicControlExtension() throws IOException {
+        read(); // 块大小
+        int packed = read();
+        dispose = (packed & 0x1C) >> 2;
+        if (dispose == 0) {
+            // 未指定处置方式时保留画面
+            dispose = 1;
+        }
+        transparency = (packed & 1) != 0;
+        delay = readShort() * 10;
+        transIndex = read();
+        read(); // 块终止符
+    }
+
+    private void readNetscapeExtension() throws IOException {
+        while (true) {
+            int start = pos;
+            int size = readBlockSize();
+            if (size == 0) {
+                return;
+            }
+            if (data[start + 1] == 1 && size >= 3) {
+                loopCount = (data[start + 2] & 0xFF) | (data[start + 3] & 0xFF) << 8;
+            }
+        }
+    }
+
+    private BufferedImage readImage(boolean decode) throws IOException {
+        int ix = readShort();
+        int iy = readShort();
+        int iw = readShort();
+        int ih = readShort();
+        int packed = read();
+        boolean interlace = (packed & 0x40) != 0;
+        int[] act;
+        if ((packed & 0x80) != 0) {
+            act = readColorTable(2 << (packed & 7));
+        } else {
+            act = gct;
+            if (bgIndex == transIndex) {
+                bgColor = 0;
+            }
+        }
+        if (act == null) {
+            throw new IOException("GIF帧没有颜色表");
+        }
+        if (!decode) {
+            read(); // LZW初始码长
+            skipBlocks();
+            return null;
+        }
+
+        decodeImageData(iw * ih);
+        if (transparency) {
+            act = act.clone();
+            act[transIndex] = 0;
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] dest = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        composeBackground(dest);
+        drawPixels(dest, act, ix, iy, iw, ih, interlace);
+
+        decodedFrames++;
+        lastDispose = dispose;
+        lastX = ix;
+        lastY = iy;
+        lastW = iw;
+        lastH = ih;
+        lastBgColor = bgColor;
+        imageBeforeLast = lastImage;
+        lastImage = image;
+        return image;
+    }
+
+    /**
+     * 根据上一帧的处置方式填充当前帧的初始画面
+     */
+    private void composeBackground(int[] dest) {
+        if (lastDispose <= 0) {
+            return;
+        }
+        // 处置方式3恢复到上上帧的画面（前两帧没有可恢复的画面）
+        BufferedImage base = lastDispose == 3 ? (decodedFrames >= 2 ? imageBeforeLast : null) : lastImage;
+        if (base == null) {
+            return;
+        }
+        int[] previous = ((DataBufferInt) base.getRaster().getDataBuffer()).getData();
+        System.arraycopy(previous, 0, dest, 0, width * height);
+        if (lastDispose == 2) {
+            // 处置方式2将上一帧区域恢复为背景色，当前帧有透明色时视背景为透明
+            int fill = transparency ? 0 : 0xFF000000 | lastBgColor;
+            int x0 = Math.max(0, lastX);
+            int y0 = Math.max(0, lastY);
+            int x1 = Math.min(width, lastX + lastW);
+            int y1 = Math.min(height, lastY + lastH);
+            for (int y = y0; y < y1; y++) {
+                Arrays.fill(dest, y * width + x0, y * width + Math.max(x0, x1), fill);
+            }
+        }
+    }
+
+    private void drawPixels(int[] dest, int[] act, int ix, int iy, int iw, int ih, boolean interlace) {
+        int pass = 1;
+        int inc = 8;
+        int iline = 0;
+        for (int i = 0; i < ih; i++) {
+            int line = i;
+            if (interlace) {
+                if (iline >= ih) {
+                    pass++;
+                    switch (pass) {
+                        case 2:
+                            iline = 4;
+                            break;
+                        case 3:
+                            iline = 2;
+                            inc = 4;
+                            break;
+                        case 4:
+                            iline = 1;
+                            inc = 2;
+                            break;
+                        default:
+                            break;
+                    }
+                }
+                line = iline;
+                iline += inc;
+            }
+            line += iy;
+            if (line < height) {
+                int k = line * width;
+                int dx = k + ix;
+                int dlim = dx + iw;
+                if (k + width < dlim) {
+                    dlim = k + width;
+                }
+                int sx = i * iw;
+                while (dx < dlim) {
+                    int c = act[pixels[sx++] & 0xFF];
+                    if (c != 0) {
+                        dest[dx] = c;
+                    }
+                    dx++;
+                }
+            }
+        }
+    }
+
+    /**
+     * LZW解码当前帧的像素索引，数据不足时剩余像素填0
+     */
+    private void decodeImageData(int npix) throws IOException {
+        if (pixels == null || pixels.length < npix) {
+            pixels = new byte[npix];
+        }
+        int dataSize = read();
+        int clear = 1 << dataSize;
+        int endOfInformation = clear + 1;
+        int available = clear + 2;
+        int oldCode = -1;
+        int codeSize = dataSize + 1;
+        int codeMask = (1 << codeSize) - 1;
+        for (int code = 0; code < clear && code < MAX_STACK_SIZE; code++) {
+            prefix[code] = 0;
+            suffix[code] = (byte) code;
+        }
+
+        int datum = 0;
+        int bits = 0;
+        int count = 0;
+        int blockPos = 0;
+        int first = 0;
+        int top = 0;
+        int pi = 0;
+        boolean terminated = false;
+        while (pi < npix) {
+            if (top == 0) {
+                if (bits < codeSize) {
+                    if (count == 0) {
+                        count = readBlockSize();
+                        if (count <= 0) {
+                            terminated = true;
+                            break;
+                        }
+                        blockPos = pos - count;
+                    }
+                    datum += (data[blockPos++] & 0xFF) << bits;
+                    bits += 8;
+                    count--;
+                    continue;
+                }
+                int code = datum & codeMask;
+                datum >>= codeSize;
+                bits -= codeSize;
+                if (code > available || code == endOfInformation) {
+                    break;
+                }
+                if (code == clear) {
+                    codeSize = dataSize + 1;
+                    codeMask = (1 << codeSize) - 1;
+                    available = clear + 2;
+                    oldCode = -1;
+                    continue;
+                }
+                if (oldCode == -1) {
+                    pixelStack[top++] = suffix[code];
+                    oldCode = code;
+                    first = code;
+                    continue;
+                }
+                int inCode = code;
+                if (code == available) {
+                    pixelStack[top++] = (byte) first;
+                    code = oldCode;
+                }
+                while (code > clear) {
+                    pixelStack[top++] = suffix[code];
+                    code = prefix[code];
+                }
+                first = suffix[code] & 0xFF;
+                if (available >= MAX_STACK_SIZE) {
+                    pixelStack[top++] = (byte) first;
+                    continue;
+                }
+                pixelStack[top++] = (byte) first;
+                prefix[available] = (short) oldCode;
+                suffix[available] = (byte) first;
+                available++;
+                if ((available & codeMask) == 0 && available < MAX_STACK_SIZE) {
+                    codeSize++;
+                    codeMask += available;
+                }
+                oldCode = inCode;
+            }
+            top--;
+            pixels[pi++] = pixelStack[top];
+        }
+        Arrays.fill(pixels, pi, npix, (byte) 0);
+        if (!terminated) {
+            // 跳过当前数据子块的剩余部分和之后的数据子块
+            skipBlocks();
+        }
+    }
+
+    private int[] readColorTable(int colors) throws IOException {
+        int bytes = colors * 3;
+        if (pos + bytes > data.length) {
+            throw new IOException("GIF颜色表数据不完整");
+        }
+        int[] table = new int[256];
+        for (int i = 0; i < colors; i++) {
+            int r = data[pos++] & 0xFF;
+            int g = data[pos++] & 0xFF;
+            int b = data[pos++] & 0xFF;
+            table[i] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+        return table;
+    }
+
+    /**
+     * 读取一个数据子块的长度并跳过其内容
+     *
+     * @return 子块长度，0表示块终止符
+     */
+    private int readBlockSize() throws IOException {
+        int size = read();
+        if (pos + size > data.length) {
+            throw new IOException("GIF数据子块不完整");
+        }
+        pos += size;
+        return size;
+    }
+
+    /**
+     * 跳过数据子块直到块终止符
+     */
+    private void skipBlocks() throws IOException {
+        while (readBlockSize() > 0) {
+            // 继续跳过
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos >= data.length) {
+            throw new IOException("GIF数据不完整");
+        }
+        return data[pos++] & 0xFF;
+    }
+
+    private int readShort() throws IOException {
+        return read() | (read() << 8);
+    }
+}
@@ -0,0 +1,743 @@
+package com.doreamr233.charartconverter.util;
+
+import com.madgag.gif.fmsware.NeuQuant;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 流式GIF动画写入器
+ * <p>
+ * 将GIF编码拆分为两步：{@link #encodeFrame(BufferedImage, int)}完成单帧的调色板量化、
+ * 像素索引映射和LZW压缩，生成包含图形控制扩展、图像描述符、局部颜色表和图像数据的完整帧数据块，
+ * 该方法没有共享状态，可以在多个帧处理线程中同时调用；{@link #writeFrame(byte[])}只按帧序
+ * 把已编码的数据块写入输出流，是唯一需要串行执行的部分。
+ * </p>
+ * <p>
+ * 量化使用与AnimatedGifEncoder相同的NeuQuant算法和采样间隔，LZW压缩与其编码规则相同，
+ * 因此解码得到的帧与AnimatedGifEncoder的输出逐像素一致。
+ * </p>
+ * <p>
+ * 创建写入器时也可以指定一个固定的全局颜色表（{@link Palette}），此时使用
+ * {@link #encodeFrame(BufferedImage, int, Palette)}编码的帧不做逐帧量化，
+ * 像素直接映射为全局颜色表中的索引，帧数据块中不含局部颜色表。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class GifStreamWriter implements Closeable {
+
+    /**
+     * NeuQuant采样间隔，与AnimatedGifEncoder的默认质量相同
+     */
+    private static final int QUANTIZE_SAMPLE = 10;
+
+    /**
+     * 颜色表位数，局部颜色表和全局颜色表均为256色
+     */
+    private static final int COLOR_DEPTH = 8;
+
+    /**
+     * LZW编码的最大码长
+     */
+    private static final int LZW_MAX_BITS = 12;
+
+    /**
+     * LZW码表容量
+     */
+    private static final int LZW_MAX_CODES = 1 << LZW_MAX_BITS;
+
+    /**
+     * LZW哈希表大小（80%占用率）
+     */
+    private static final int LZW_HASH_SIZE = 5003;
+
+    /**
+     * 帧数据块中图像描述符的宽度字段偏移（图形控制扩展占8字节，描述符标识和左上角坐标占5字节）
+     */
+    private static final int DESCRIPTOR_WIDTH_OFFSET = 8 + 5;
+
+    /**
+     * 帧数据块中图形控制扩展的延迟字段偏移（扩展标识、标签、长度和标志各占1字节）
+     */
+    private static final int DELAY_OFFSET = 4;
+
+    /**
+     * 单帧可表示的最大延迟（毫秒），GIF以16位无符号整数记录百分之一秒
+     */
+    public static final int MAX_DELAY_MILLIS = 0xFFFF * 10;
+
+    /**
+     * 处置方式：未指定
+     */
+    private static final int DISPOSE_UNSPECIFIED = 0;
+
+    /**
+     * 处置方式：不处置，下一帧叠加在本帧之上
+     */
+    private static final int DISPOSE_NONE = 1;
+
+    /**
+     * 固定颜色表
+     * <p>
+     * 由调色板颜色模型创建时，使用该颜色模型的索引图像直接复用像素索引；
+     * 由样本颜色创建时，预先计算每个18位量化颜色（每通道6位）对应的颜色表索引，
+     * 映射一个像素只需一次数组访问。实例创建后不可变，可在多个线程中共享。
+     * </p>
+     */
+    public static final class Palette {
+
+        private static final int CHANNEL_BITS = 6;
+
+        private final byte[] colorTable;
+        private final IndexColorModel colorModel;
+        private final byte[] lookup;
+
+        private Palette(byte[] colorTable, IndexColorModel colorModel, byte[] lookup) {
+            this.colorTable = colorTable;
+            this.colorModel = colorModel;
+            this.lookup = lookup;
+        }
+
+        /**
+         * 使用调色板颜色模型作为颜色表
+         * <p>
+         * 只能编码使用同一颜色模型的TYPE_BYTE_INDEXED图像，像素索引原样写入。
+         * </p>
+         *
+         * @param colorModel 颜色数不超过256的调色板颜色模型
+         * @return 固定颜色表
+         */
+        public static Palette of(IndexColorModel colorModel) {
+            byte[] colorTable = new byte[3 << COLOR_DEPTH];
+            for (int i = 0; i < colorModel.getMapSize(); i++) {
+                colorTable[i * 3] = (byte) colorModel.getRed(i);
+                colorTable[i * 3 + 1] = (byte) colorModel.getGreen(i);
+                colorTable[i * 3 + 2] = (byte) colorModel.getBlue(i);
+            }
+            return new Palette(colorTable, colorModel, null);
+        }
+
+        /**
+         * 对样本颜色做一次NeuQuant量化生成颜色表
+         *
+         * @param samples 样本颜色（0xRRGGBB），应覆盖待编码图像中可能出现的颜色
+         * @return 固定颜色表
+         */
+        public static Palette quantize(int[] samples) {
+            byte[] bgr = new byte[samples.length * 3];
+            for (int i = 0, k = 0; i < samples.length; i++) {
+                bgr[k++] = (byte) samples[i];
+                bgr[k++] = (byte) (samples[i] >> 8);
+                bgr[k++] = (byte) (samples[i] >> 16);
+            }
+            NeuQuant quantizer = new NeuQuant(bgr, bgr.length, 1);
+            byte[] colorTable = quantizer.process();
+            for (int i = 0; i < colorTable.length; i += 3) {
+                byte blue = colorTable[i];
+                colorTable[i] = colorTable[i + 2];
+                colorTable[i + 2] = blue;
+            }
+            int levels = 1 << CHANNEL_BITS;
+            byte[] lookup = new byte[1 << (CHANNEL_BITS * 3)];
+            for (int key = 0; key < lookup.length; key++) {
+                int red = expandChannel(key >> (CHANNEL_BITS * 2));
+                int green = expandChannel((key >> CHANNEL_BITS) & (levels - 1));
+                int blue = expandChannel(key & (levels - 1));
+                lookup[key] = (byte) quantizer.map(blue, green, red);
+            }
+            return new Palette(colorTable, null, lookup);
+        }
+
+        /**
+         * 获取颜色对应的颜色表索引
+         *
+         * @param rgb 颜色（0xRRGGBB，忽略高8位）
+         * @return 颜色表索引
+         */
+        int indexOf(int rgb) {
+            return lookup[((rgb >> 6) & 0x3F000) | ((rgb >> 4) & 0xFC0) | ((rgb >> 2) & 0x3F)] & 0xFF;
+        }
+
+        private static int expandChannel(int value) {
+            return (value << 2) | (value >> 4);
+        }
+    }
+
+    private final OutputStream out;
+    private final int repeat;
+    private final Palette globalPalette;
+    private boolean headerWritten;
+    private boolean finished;
+
+    /**
+     * 创建GIF动画写入器
+     * <p>
+     * 文件头和逻辑屏幕描述符在写入第一帧时输出，画布尺寸取第一帧的尺寸。
+     * </p>
+     *
+     * @param out 输出流，由调用方负责关闭
+     * @param repeat 循环次数，0表示无限循环，小于0时不写入循环扩展
+     */
+    public GifStreamWriter(OutputStream out, int repeat) {
+        this(out, repeat, null);
+    }
+
+    /**
+     * 创建使用固定全局颜色表的GIF动画写入器
+     *
+     * @param out 输出流，由调用方负责关闭
+     * @param repeat 循环次数，0表示无限循环，小于0时不写入循环扩展
+     * @param globalPalette 全局颜色表，为null时不写入全局颜色表，各帧使用局部颜色表
+     */
+    public GifStreamWriter(OutputStream out, int repeat, Palette globalPalette) {
+        this.out = out;
+        this.repeat = repeat;
+        this.globalPalette = globalPalette;
+    }
+
+    /**
+     * 获取全局颜色表
+     *
+     * @return 全局颜色表，未使用时为null
+     */
+    public Palette getGlobalPalette() {
+        return globalPalette;
+    }
+
+    /**
+     * 编码一帧
+     * <p>
+     * 对图像做NeuQuant量化并生成256色局部颜色表，将像素映射为颜色索引后进行LZW压缩。
+     * 方法只使用局部状态，可在多个线程中并行调用。
+     * </p>
+     *
+     * @param image 帧图像
+     * @param delayMillis 帧延迟时间（毫秒）
+     * @return 可直接写入GIF文件的帧数据块
+     */
+    public static byte[] encodeFrame(BufferedImage image, int delayMillis) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] bgr = toBgrPixels(image);
+
+        NeuQuant quantizer = new NeuQuant(bgr, bgr.length, QUANTIZE_SAMPLE);
+        byte[] colorTable = toRgbColorTable(quantizer.process());
+
+        // 字符画中相邻像素大多颜色相同，缓存上一个像素的映射结果以减少网络搜索
+        byte[] indexedPixels = new byte[width * height];
+        int lastColor = -1;
+        byte lastIndex = 0;
+        for (int i = 0, k = 0; i < indexedPixels.length; i++, k += 3) {
+            int color = (bgr[k] & 0xFF) | (bgr[k + 1] & 0xFF) << 8 | (bgr[k + 2] & 0xFF) << 16;
+            if (color != lastColor) {
+                lastColor = color;
+                lastIndex = (byte) quantizer.map(bgr[k] & 0xFF, bgr[k + 1] & 0xFF, bgr[k + 2] & 0xFF);
+            }
+            indexedPixels[i] = lastIndex;
+        }
+
+        return buildFrameBlock(width, height, delayMillis, colorTable, indexedPixels);
+    }
+
+    /**
+     * 使用固定颜色表编码一帧
+     * <p>
+     * 不做逐帧量化：使用该颜色表颜色模型的索引图像直接复用像素索引，其他图像通过查找表映射每个像素，
+     * 然后进行LZW压缩。生成的帧数据块不含局部颜色表，只能写入以同一颜色表为全局颜色表的写入器。
+     * 方法只使用局部状态，可在多个线程中并行调用。
+     * </p>
+     *
+     * @param image 帧图像
+     * @param delayMillis 帧延迟时间（毫秒）
+     * @param palette 全局颜色表
+     * @return 可直接写入GIF文件的帧数据块
+     * @throws IllegalArgumentException 颜色表无法映射该图像时抛出
+     */
+    public static byte[] encodeFrame(BufferedImage image, int delayMillis, Palette palette) {
+        return buildFrameBlock(image.getWidth(), image.getHeight(), delayMillis, null, toPaletteIndices(image, palette));
+    }
+
+    /**
+     * 编码一个局部帧
+     * <p>
+     * 用于动画帧增量渲染：帧图像只覆盖画布上发生变化的矩形区域，按指定位置叠加在上一帧之上，
+     * 处置方式为"不处置"，未覆盖的区域保持上一帧的内容。区域内未变化的像素写为透明色，
+     * 这些像素在LZW压缩中形成长游程；颜色表中没有空闲索引可用作透明色时，按原像素写出，显示结果相同。
+     * 未指定固定颜色表时只对变化的像素做NeuQuant量化并生成局部颜色表。
+     * </p>
+     *
+     * @param image 变化区域的帧图像
+     * @param delayMillis 帧延迟时间（毫秒）
+     * @param palette 全局颜色表，为null时生成局部颜色表
+     * @param left 区域在画布上的X坐标
+     * @param top 区域在画布上的Y坐标
+     * @param changedMask 按行存储的像素是否变化的标记，为null时所有像素都不透明
+     * @return 可直接写入GIF文件的帧数据块
+     * @throws IllegalArgumentException 颜色表无法映射该图像时抛出
+     */
+    public static byte[] encodePartialFrame(BufferedImage image, int delayMillis, Palette palette,
+                                            int left, int top, boolean[] changedMask) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] colorTable = null;
+        byte[] indexedPixels;
+        if (palette != null) {
+            indexedPixels = toPaletteIndices(image, palette);
+        } else {
+            // 只用变化的像素训练量化网络，透明像素的颜色不影响颜色表
+            byte[] bgr = toBgrPixels(image);
+            byte[] samples = bgr;
+            if (changedMask != null) {
+                samples = new byte[bgr.length];
+                int count = 0;
+                for (int i = 0, k = 0; i < changedMask.length; i++, k += 3) {
+                    if (changedMask[i]) {
+                        samples[count++] = bgr[k];
+                        samples[count++] = bgr[k + 1];
+                        samples[count++] = bgr[k + 2];
+                    }
+                }
+                samples = Arrays.copyOf(samples, count);
+            }
+            NeuQuant quantizer = new NeuQuant(samples, samples.length, QUANTIZE_SAMPLE);
+            colorTable = toRgbColorTable(quantizer.process());
+            indexedPixels = new byte[width * height];
+            int lastColor = -1;
+            byte lastIndex = 0;
+            for (int i = 0, k = 0; i < indexedPixels.length; i++, k += 3) {
+                if (changedMask != null && !changedMask[i]) {
+                    continue;
+                }
+                int color = (bgr[k] & 0xFF) | (bgr[k + 1] & 0xFF) << 8 | (bgr[k + 2] & 0xFF) << 16;
+                if (color != lastColor) {
+                    lastColor = color;
+                    lastIndex = (byte) quantizer.map(bgr[k] & 0xFF, bgr[k + 1] & 0xFF, bgr[k + 2] & 0xFF);
+                }
+                indexedPixels[i] = lastIndex;
+            }
+        }
+
+        int transparentIndex = -1;
+        if (changedMask != null) {
+            // 选择变化像素没有用到的索引作为透明色
+            boolean[] used = new boolean[1 << COLOR_DEPTH];
+            boolean hasUnchanged = false;
+            for (int i = 0; i < indexedPixels.length; i++) {
+                if (changedMask[i]) {
+                    used[indexedPixels[i] & 0xFF] = true;
+                } else {
+                    hasUnchanged = true;
+                }
+            }
+            for (int i = 0; hasUnchanged && i < used.length; i++) {
+                if (!used[i]) {
+                    transparentIndex = i;
+                    break;
+                }
+            }
+            if (transparentIndex >= 0) {
+                for (int i = 0; i < indexedPixels.length; i++) {
+                    if (!changedMask[i]) {
+                        indexedPixels[i] = (byte) transparentIndex;
+                    }
+                }
+            } else if (palette == null && hasUnchanged) {
+                // 没有空闲索引时未变化的像素也需要映射到颜色表中
+                return encodePartialFrame(image, delayMillis, null, left, top, null);
+            }
+        }
+        return buildFrameBlock(width, height, delayMillis, colorTable, indexedPixels,
+                left, top, DISPOSE_NONE, transparentIndex);
+    }
+
+    /**
+     * 将图像像素映射为固定颜色表的索引
+     */
+    private static byte[] toPaletteIndices(BufferedImage image, Palette palette) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] indexedPixels = new byte[width * height];
+        WritableRaster raster = image.getRaster();
+        if (palette.colorModel != null) {
+            if (image.getType() != BufferedImage.TYPE_BYTE_INDEXED || !palette.colorModel.equals(image.getColorModel())
+                    || !(raster.getSampleModel() instanceof PixelInterleavedSampleModel)) {
+                throw new IllegalArgumentException("图像不是使用该颜色表的索引图像");
+            }
+            // 像素本身就是颜色表索引，逐行复制即可
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+            int stride = sampleModel.getScanlineStride();
+            int offset = sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(data, offset + y * stride, indexedPixels, y * width, width);
+            }
+        } else {
+            int[] row = new int[width];
+            boolean intRgb = image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB;
+            int lastColor = -1;
+            byte lastIndex = 0;
+            for (int y = 0, i = 0; y < height; y++) {
+                if (intRgb) {
+                    raster.getDataElements(0, y, width, 1, row);
+                } else {
+                    image.getRGB(0, y, width, 1, row, 0, width);
+                }
+                for (int x = 0; x < width; x++, i++) {
+                    int color = row[x] & 0xFFFFFF;
+                    if (color != lastColor) {
+                        lastColor = color;
+                        lastIndex = (byte) palette.indexOf(color);
+                    }
+                    indexedPixels[i] = lastIndex;
+                }
+            }
+        }
+        return indexedPixels;
+    }
+
+    /**
+     * 获取帧数据块使用指定延迟时的版本
+     * <p>
+     * 用于合并连续相同的帧：只改写图形控制扩展中的延迟字段，图像数据保持不变。
+     * 延迟相同时直接返回原数据块，否则返回修改后的副本，原数据块可能被多个帧共用，不会被修改。
+     * </p>
+     *
+     * @param frameBlock 已编码的帧数据块
+     * @param delayMillis 新的帧延迟时间（毫秒），不超过{@link #MAX_DELAY_MILLIS}
+     * @return 使用新延迟的帧数据块
+     */
+    public static byte[] withDelay(byte[] frameBlock, int delayMillis) {
+        int delay = Math.round(delayMillis / 10.0f);
+        if (readShort(frameBlock, DELAY_OFFSET) == delay) {
+            return frameBlock;
+        }
+        byte[] copy = frameBlock.clone();
+        copy[DELAY_OFFSET] = (byte) delay;
+        copy[DELAY_OFFSET + 1] = (byte) (delay >> 8);
+        return copy;
+    }
+
+    /**
+     * 组装帧数据块
+     *
+     * @param colorTable 局部颜色表，使用全局颜色表时为null
+     */
+    private static byte[] buildFrameBlock(int width, int height, int delayMillis, byte[] colorTable, byte[] indexedPixels) {
+        return buildFrameBlock(width, height, delayMillis, colorTable, indexedPixels, 0, 0, DISPOSE_UNSPECIFIED, -1);
+    }
+
+    /**
+     * 组装指定位置、处置方式和透明色的帧数据块
+     *
+     * @param transparentIndex 透明色索引，为-1时不使用透明色
+     */
+    private static byte[] buildFrameBlock(int width, int height, int delayMillis, byte[] colorTable, byte[] indexedPixels,
+                                          int left, int top, int disposal, int transparentIndex) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream((3 << COLOR_DEPTH) + indexedPixels.length / 4 + 64);
+        writeGraphicControlExtension(block, delayMillis, disposal, transparentIndex);
+        writeImageDescriptor(block, left, top, width, height, colorTable != null);
+        if (colorTable != null) {
+            block.write(colorTable, 0, colorTable.length);
+            for (int i = colorTable.length; i < (3 << COLOR_DEPTH); i++) {
+                block.write(0);
+            }
+        }
+        lzwEncode(indexedPixels, COLOR_DEPTH, block);
+        return block.toByteArray();
+    }
+
+    /**
+     * 按帧序写入一个已编码的帧数据块
+     *
+     * @param frameBlock {@link #encodeFrame(BufferedImage, int)}生成的帧数据块
+     * @throws IOException 写入失败时抛出
+     */
+    public synchronized void writeFrame(byte[] frameBlock) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("GIF已写入结束标记");
+        }
+        if (!headerWritten) {
+            int width = readShort(frameBlock, DESCRIPTOR_WIDTH_OFFSET);
+            int height = readShort(frameBlock, DESCRIPTOR_WIDTH_OFFSET + 2);
+            writeHeader(width, height);
+            headerWritten = true;
+        }
+        out.write(frameBlock);
+    }
+
+    /**
+     * 写入GIF结束标记并刷新输出流
+     *
+     * @throws IOException 写入失败时抛出
+     */
+    public synchronized void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (!headerWritten) {
+            throw new IllegalStateException("GIF中没有任何帧");
+        }
+        out.write(0x3B);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * 关闭写入器，不关闭下层输出流
+     *
+     * @throws IOException 刷新输出流失败时抛出
+     */
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    private void writeHeader(int width, int height) throws IOException {
+        out.write("GIF89a".getBytes(StandardCharsets.US_ASCII));
+        // 逻辑屏幕描述符：颜色分辨率为8位，指定了固定颜色表时写入256色全局颜色表
+        writeShort(out, width);
+        writeShort(out, height);
+        out.write(globalPalette != null ? 0x80 | 0x70 | (COLOR_DEPTH - 1) : 0x70);
+        out.write(0);
+        out.write(0);
+        if (globalPalette != null) {
+            out.write(globalPalette.colorTable);
+        }
+        if (repeat >= 0) {
+            // NETSCAPE2.0应用扩展，指定循环次数
+            out.write(0x21);
+            out.write(0xFF);
+            out.write(11);
+            out.write("NETSCAPE2.0".getBytes(StandardCharsets.US_ASCII));
+            out.write(3);
+            out.write(1);
+            writeShort(out, repeat);
+            out.write(0);
+        }
+    }
+
+    private static void writeGraphicControlExtension(ByteArrayOutputStream block, int delayMillis, int disposal, int transparentIndex) {
+        block.write(0x21);
+        block.write(0xF9);
+        block.write(4);
+        // 处置方式和透明色标志
+        block.write(disposal << 2 | (transparentIndex >= 0 ? 1 : 0));
+        writeShort(block, Math.round(delayMillis / 10.0f));
+        block.write(Math.max(0, transparentIndex));
+        block.write(0);
+    }
+
+    private static void writeImageDescriptor(ByteArrayOutputStream block, int left, int top, int width, int height, boolean localColorTable) {
+        block.write(0x2C);
+        writeShort(block, left);
+        writeShort(block, top);
+        writeShort(block, width);
+        writeShort(block, height);
+        block.write(localColorTable ? 0x80 | (COLOR_DEPTH - 1) : 0);
+    }
+
+    /**
+     * 将NeuQuant生成的BGR顺序颜色表原地转换为GIF使用的RGB顺序
+     */
+    private static byte[] toRgbColorTable(byte[] colorTable) {
+        for (int i = 0; i < colorTable.length; i += 3) {
+            byte blue = colorTable[i];
+            colorTable[i] = colorTable[i + 2];
+            colorTable[i + 2] = blue;
+        }
+        return colorTable;
+    }
+
+    /**
+     * 将图像转换为NeuQuant使用的BGR字节数组
+     */
+    private static byte[] toBgrPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] bgr = new byte[width * height * 3];
+        int[] row = new int[width];
+        WritableRaster raster = image.getRaster();
+        boolean intRgb = image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB;
+        int k = 0;
+        for (int y = 0; y < height; y++) {
+            if (intRgb) {
+                raster.getDataElements(0, y, width, 1, row);
+            } else {
+                image.getRGB(0, y, width, 1, row, 0, width);
+            }
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                bgr[k++] = (byte) rgb;
+                bgr[k++] = (byte) (rgb >> 8);
+                bgr[k++] = (byte) (rgb >> 16);
+            }
+        }
+        return bgr;
+    }
+
+    /**
+     * 对颜色索引做GIF变长码LZW压缩，并按数据子块格式写出
+     * <p>
+     * 码长增长和清除码的时机与AnimatedGifEncoder使用的LZWEncoder相同。
+     * </p>
+     *
+     * @param pixels 颜色索引
+     * @param minCodeSize 初始码长（颜色表位数）
+     * @param block 输出缓冲
+     */
+    static void lzwEncode(byte[] pixels, int minCodeSize, ByteArrayOutputStream block) {
+        block.write(minCodeSize);
+        SubBlockOutput output = new SubBlockOutput(block);
+
+        int clearCode = 1 << minCodeSize;
+        int endCode = clearCode + 1;
+        int initBits = minCodeSize + 1;
+        int[] hashKeys = new int[LZW_HASH_SIZE];
+        int[] hashCodes = new int[LZW_HASH_SIZE];
+        Arrays.fill(hashKeys, -1);
+
+        int hashShift = 0;
+        for (int size = LZW_HASH_SIZE; size < 65536; size *= 2) {
+            hashShift++;
+        }
+        hashShift = 8 - hashShift;
+
+        int bits = initBits;
+        int maxCode = (1 << bits) - 1;
+        int nextCode = clearCode + 2;
+        output.write(clearCode, bits);
+
+        if (pixels.length == 0) {
+            output.write(endCode, bits);
+            output.finish();
+            return;
+        }
+
+        int prefix = pixels[0] & 0xFF;
+        for (int p = 1; p < pixels.length; p++) {
+            int c = pixels[p] & 0xFF;
+            int key = (c << LZW_MAX_BITS) + prefix;
+            int i = (c << hashShift) ^ prefix;
+            if (hashKeys[i] == key) {
+                prefix = hashCodes[i];
+                continue;
+            }
+            boolean found = false;
+            if (hashKeys[i] >= 0) {
+                int step = i == 0 ? 1 : LZW_HASH_SIZE - i;
+                do {
+                    i -= step;
+                    if (i < 0) {
+                        i += LZW_HASH_SIZE;
+                    }
+                    if (hashKeys[i] == key) {
+                        found = true;
+                        break;
+                    }
+                } while (hashKeys[i] >= 0);
+            }
+            if (found) {
+                prefix = hashCodes[i];
+                continue;
+            }
+
+            output.write(prefix, bits);
+            if (nextCode > maxCode) {
+                bits++;
+                maxCode = bits == LZW_MAX_BITS ? LZW_MAX_CODES : (1 << bits) - 1;
+            }
+            prefix = c;
+            if (nextCode < LZW_MAX_CODES) {
+                hashCodes[i] = nextCode++;
+                hashKeys[i] = key;
+            } else {
+                // 码表已满，输出清除码并重新开始
+                Arrays.fill(hashKeys, -1);
+                output.write(clearCode, bits);
+                nextCode = clearCode + 2;
+                bits = initBits;
+                maxCode = (1 << bits) - 1;
+            }
+        }
+        output.write(prefix, bits);
+        if (nextCode > maxCode) {
+            bits++;
+        }
+        output.write(endCode, Math.min(bits, LZW_MAX_BITS));
+        output.finish();
+    }
+
+    /**
+     * 按GIF数据子块格式（长度字节加最多255字节数据）输出LZW码流
+     */
+    private static final class SubBlockOutput {
+        private final ByteArrayOutputStream block;
+        private final byte[] buffer = new byte[255];
+        private int count;
+        private int accumulator;
+        private int accumulatorBits;
+
+        SubBlockOutput(ByteArrayOutputStream block) {
+            this.block = block;
+        }
+
+        void write(int code, int bits) {
+            accumulator |= code << accumulatorBits;
+            accumulatorBits += bits;
+            while (accumulatorBits >= 8) {
+                writeByte(accumulator & 0xFF);
+                accumulator >>>= 8;
+                accumulatorBits -= 8;
+            }
+        }
+
+        void finish() {
+            if (accumulatorBits > 0) {
+                writeByte(accumulator & 0xFF);
+                accumulator = 0;
+                accumulatorBits = 0;
+            }
+            flushBlock();
+            block.write(0);
+        }
+
+        private void writeByte(int value) {
+            buffer[count++] = (byte) value;
+            if (count == buffer.length) {
+                flushBlock();
+            }
+        }
+
+        private void flushBlock() {
+            if (count > 0) {
+                block.write(count);
+                block.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+}
@@ -0,0 +1,395 @@
+package com.doreamr233.charartconverter.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 字形图集
+ * <p>
+ * 按字体和字符集预先将每个字符光栅化一次，保存其抗锯齿覆盖度，
+ * 渲染时直接将覆盖度按前景色混合到目标图像的int[]像素数组中，
+ * 代替逐字符调用{@link Graphics2D#drawString(String, int, int)}。
+ * </p>
+ * <p>
+ * 混合公式与Java2D灰度抗锯齿文本管线一致（使用相同的8位乘法表），
+ * 因此在TYPE_INT_RGB目标上按相同顺序绘制时，输出与Java2D逐像素相同。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class GlyphAtlas {
+
+    /**
+     * 已创建的图集缓存，键为字体与字符集
+     */
+    private static final Map<String, GlyphAtlas> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 8位乘法表，MUL8[a][b] 约等于 a * b / 255，与Java2D的mul8table取值相同
+     */
+    private static final byte[][] MUL8 = buildMul8Table();
+
+    private final int cellWidth;
+    private final int cellHeight;
+    private final int ascent;
+
+    /**
+     * 所有字形的覆盖度按顺序存放在同一个数组中
+     */
+    private final byte[] coverage;
+    private final int[] coverageOffset;
+
+    /**
+     * 每个字形相对于单元格左上角的包围盒
+     */
+    private final int[] glyphX;
+    private final int[] glyphY;
+    private final int[] glyphWidth;
+    private final int[] glyphHeight;
+
+    /**
+     * 字形最多会延伸到上下相邻的几行
+     */
+    private final int overhangLines;
+
+    /**
+     * 字形最多会延伸到左右相邻的几列
+     */
+    private final int overhangColumns;
+
+    private GlyphAtlas(Font font, char[] charset) {
+        // 与createCharImageFile相同的方式获取字体度量，保证单元格尺寸一致
+        BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Graphics2D probeG = probe.createGraphics();
+        probeG.setFont(font);
+        FontMetrics metrics = probeG.getFontMetrics(font);
+        probeG.dispose();
+
+        this.cellWidth = metrics.charWidth('M');
+        this.cellHeight = metrics.getHeight();
+        this.ascent = metrics.getAscent();
+
+        int count = charset.length;
+        this.coverageOffset = new int[count];
+        this.glyphX = new int[count];
+        this.glyphY = new int[count];
+        this.glyphWidth = new int[count];
+        this.glyphHeight = new int[count];
+
+        // 在白色画布上用黑色绘制字符，画布四周留出足够边距以容纳超出单元格的笔画
+        int pad = Math.max(cellWidth, cellHeight);
+        int canvasWidth = cellWidth + pad * 2;
+        int canvasHeight = cellHeight + pad * 2;
+        BufferedImage canvas = new BufferedImage(canvasWidth, canvasHeight, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = new int[canvasWidth * canvasHeight];
+        byte[][] glyphCoverage = new byte[count][];
+        int total = 0;
+
+        for (int i = 0; i < count; i++) {
+            Graphics2D g = canvas.createGraphics();
+            applyTextHints(g);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, canvasWidth, canvasHeight);
+            g.setFont(font);
+            g.setColor(Color.BLACK);
+            g.drawString(String.valueOf(charset[i]), pad, pad + ascent);
+            g.dispose();
+            canvas.getRGB(0, 0, canvasWidth, canvasHeight, pixels, 0, canvasWidth);
+
+            // 求出被覆盖像素的包围盒
+            int minX = canvasWidth;
+            int minY = canvasHeight;
+            int maxX = -1;
+            int maxY = -1;
+            for (int y = 0; y < canvasHeight; y++) {
+                for (int x = 0; x < canvasWidth; x++) {
+                    if ((pixels[y * canvasWidth + x] & 0xFF) != 0xFF) {
+                        minX = Math.min(minX, x);
+                        maxX = Math.max(maxX, x);
+                        minY = Math.min(minY, y);
+                        maxY = Math.max(maxY, y);
+                    }
+                }
+            }
+            if (maxX < 0) {
+                glyphCoverage[i] = new byte[0];
+                continue;
+            }
+
+            int w = maxX - minX + 1;
+            int h = maxY - minY + 1;
+            byte[] data = new byte[w * h];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    // 白底黑字的像素值即为 255 - 覆盖度
+                    data[y * w + x] = (byte) (0xFF - (pixels[(minY + y) * canvasWidth + minX + x] & 0xFF));
+                }
+            }
+            glyphCoverage[i] = data;
+            glyphX[i] = minX - pad;
+            glyphY[i] = minY - pad;
+            glyphWidth[i] = w;
+            glyphHeight[i] = h;
+            total += data.length;
+        }
+
+        // 计算字形超出单元格上下边界的最大行数和左右边界的最大列数
+        int overhang = 0;
+        int overhangX = 0;
+        for (int i = 0; i < count; i++) {
+            if (glyphWidth[i] == 0) {
+                continue;
+            }
+            int above = Math.max(0, -glyphY[i]);
+            int below = Math.max(0, glyphY[i] + glyphHeight[i] - cellHeight);
+            overhang = Math.max(overhang, (Math.max(above, below) + cellHeight - 1) / cellHeight);
+            int left = Math.max(0, -glyphX[i]);
+            int right = Math.max(0, glyphX[i] + glyphWidth[i] - cellWidth);
+            overhangX = Math.max(overhangX, (Math.max(left, right) + cellWidth - 1) / cellWidth);
+        }
+        this.overhangLines = overhang;
+        this.overhangColumns = overhangX;
+
+        this.coverage = new byte[total];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            coverageOffset[i] = offset;
+            System.arraycopy(glyphCoverage[i], 0, coverage, offset, glyphCoverage[i].length);
+            offset += glyphCoverage[i].length;
+        }
+    }
+
+    /**
+     * 获取指定字体和字符集的图集
+     * <p>
+     * 同一字体（名称、样式、字号）和字符集的图集只创建一次，之后在所有线程间共享。
+     * </p>
+     *
+     * @param font 字体
+     * @param charset 字符集
+     * @return 字形图集
+     */
+    public static GlyphAtlas of(Font font, char[] charset) {
+        String key = font.getFontName() + "|" + font.getStyle() + "|" + font.getSize2D() + "|" + new String(charset);
+        return CACHE.computeIfAbsent(key, k -> new GlyphAtlas(font, charset));
+    }
+
+    /**
+     * 设置文本渲染提示
+     * <p>
+     * 图集光栅化和Java2D回退路径都必须使用相同的提示，才能保证两者输出一致。
+     * </p>
+     *
+     * @param g 图形上下文
+     */
+    public static void applyTextHints(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+    }
+
+    /**
+     * 获取单元格宽度（字符宽度）
+     *
+     * @return 单元格宽度
+     */
+    public int getCellWidth() {
+        return cellWidth;
+    }
+
+    /**
+     * 获取单元格高度（行高）
+     *
+     * @return 单元格高度
+     */
+    public int getCellHeight() {
+        return cellHeight;
+    }
+
+    /**
+     * 获取基线相对于单元格顶部的偏移
+     *
+     * @return 字体上升高度
+     */
+    public int getAscent() {
+        return ascent;
+    }
+
+    /**
+     * 获取字形可能延伸到的相邻行数
+     * <p>
+     * 分条并行渲染时，每个条带需要额外重放上下这么多行的绘制操作，
+     * 才能得到与整图顺序绘制相同的结果。
+     * </p>
+     *
+     * @return 上下方向的最大溢出行数
+     */
+    public int getOverhangLines() {
+        return overhangLines;
+    }
+
+    /**
+     * 获取字形可能延伸到的相邻列数
+     * <p>
+     * 动画帧增量渲染时，一个单元格的变化最多影响左右这么多列的像素。
+     * </p>
+     *
+     * @return 左右方向的最大溢出列数
+     */
+    public int getOverhangColumns() {
+        return overhangColumns;
+    }
+
+    /**
+     * 用纯色填充一个单元格
+     * <p>
+     * 只写入[clipTop, clipBottom)范围内的行。
+     * </p>
+     *
+     * @param raster 目标像素数组（TYPE_INT_RGB）
+     * @param rasterWidth 目标图像宽度
+     * @param clipTop 可写区域起始行（包含）
+     * @param clipBottom 可写区域结束行（不包含）
+     * @param cellX 单元格左上角X坐标
+     * @param cellY 单元格左上角Y坐标
+     * @param rgb 填充颜色（0xRRGGBB）
+     */
+    public void fillCell(int[] raster, int rasterWidth, int clipTop, int clipBottom, int cellX, int cellY, int rgb) {
+        int x0 = Math.max(cellX, 0);
+        int x1 = Math.min(cellX + cellWidth, rasterWidth);
+        int y0 = Math.max(cellY, clipTop);
+        int y1 = Math.min(cellY + cellHeight, clipBottom);
+        for (int y = y0; y < y1; y++) {
+            int row = y * rasterWidth;
+            for (int x = x0; x < x1; x++) {
+                raster[row + x] = rgb;
+            }
+        }
+    }
+
+    /**
+     * 将字形按前景色混合到目标像素数组
+     * <p>
+     * 超出目标图像左右边界或[clipTop, clipBottom)行范围的部分会被裁剪。
+     * </p>
+     *
+     * @param raster 目标像素数组（TYPE_INT_RGB）
+     * @param rasterWidth 目标图像宽度
+     * @param clipTop 可写区域起始行（包含）
+     * @param clipBottom 可写区域结束行（不包含）
+     * @param glyph 字形在字符集中的索引
+     * @param cellX 单元格左上角X坐标
+     * @param cellY 单元格左上角Y坐标
+     * @param rgb 前景色（0xRRGGBB）
+     */
+    public void drawGlyph(int[] raster, int rasterWidth, int clipTop, int clipBottom, int glyph, int cellX, int cellY, int rgb) {
+        int w = glyphWidth[glyph];
+        int h = glyphHeight[glyph];
+        if (w == 0) {
+            return;
+        }
+        int left = cellX + glyphX[glyph];
+        int top = cellY + glyphY[glyph];
+        int x0 = Math.max(left, 0);
+        int x1 = Math.min(left + w, rasterWidth);
+        int y0 = Math.max(top, clipTop);
+        int y1 = Math.min(top + h, clipBottom);
+
+        int fgRed = (rgb >> 16) & 0xFF;
+        int fgGreen = (rgb >> 8) & 0xFF;
+        int fgBlue = rgb & 0xFF;
+        int base = coverageOffset[glyph];
+
+        for (int y = y0; y < y1; y++) {
+            int src = base + (y - top) * w + (x0 - left);
+            int dst = y * rasterWidth + x0;
+            for (int x = x0; x < x1; x++, src++, dst++) {
+                int alpha = coverage[src] & 0xFF;
+                if (alpha == 0) {
+                    continue;
+                }
+                if (alpha == 0xFF) {
+                    raster[dst] = rgb;
+                    continue;
+                }
+                int inverse = 0xFF - alpha;
+                int pixel = raster[dst];
+                byte[] mulAlpha = MUL8[alpha];
+                byte[] mulInverse = MUL8[inverse];
+                int red = (mulInverse[(pixel >> 16) & 0xFF] & 0xFF) + (mulAlpha[fgRed] & 0xFF);
+                int green = (mulInverse[(pixel >> 8) & 0xFF] & 0xFF) + (mulAlpha[fgGreen] & 0xFF);
+                int blue = (mulInverse[pixel & 0xFF] & 0xFF) + (mulAlpha[fgBlue] & 0xFF);
+                raster[dst] = (red << 16) | (green << 8) | blue;
+            }
+        }
+    }
+
+    /**
+     * 将黑色字形混合到8位灰度调色板像素数组
+     * <p>
+     * 像素数组中保存的是墨色深度（255 - 灰度），与CharArtProcessor的灰度调色板对应。
+     * 混合结果与{@link #drawGlyph}使用黑色前景时相同。
+     * </p>
+     *
+     * @param raster 目标像素数组（墨色深度）
+     * @param rasterWidth 目标图像宽度
+     * @param clipTop 可写区域起始行（包含）
+     * @param clipBottom 可写区域结束行（不包含）
+     * @param glyph 字形在字符集中的索引
+     * @param cellX 单元格左上角X坐标
+     * @param cellY 单元格左上角Y坐标
+     */
+    public void drawGlyphGray(byte[] raster, int rasterWidth, int clipTop, int clipBottom, int glyph, int cellX, int cellY) {
+        int w = glyphWidth[glyph];
+        int h = glyphHeight[glyph];
+        if (w == 0) {
+            return;
+        }
+        int left = cellX + glyphX[glyph];
+        int top = cellY + glyphY[glyph];
+        int x0 = Math.max(left, 0);
+        int x1 = Math.min(left + w, rasterWidth);
+        int y0 = Math.max(top, clipTop);
+        int y1 = Math.min(top + h, clipBottom);
+        int base = coverageOffset[glyph];
+
+        for (int y = y0; y < y1; y++) {
+            int src = base + (y - top) * w + (x0 - left);
+            int dst = y * rasterWidth + x0;
+            for (int x = x0; x < x1; x++, src++, dst++) {
+                int alpha = coverage[src] & 0xFF;
+                if (alpha != 0) {
+                    int gray = MUL8[0xFF - alpha][0xFF - (raster[dst] & 0xFF)] & 0xFF;
+                    raster[dst] = (byte) (0xFF - gray);
+                }
+            }
+        }
+    }
+
+    /**
+     * 构建8位乘法表
+     * <p>
+     * 采用与Java2D相同的定点递推方式生成，保证取整结果一致。
+     * </p>
+     *
+     * @return 256x256的乘法表
+     */
+    private static byte[][] buildMul8Table() {
+        byte[][] table = new byte[256][256];
+        for (int i = 1; i < 256; i++) {
+            int increment = (i << 16) + (i << 8) + i;
+            int value = increment + (1 << 23);
+            for (int j = 1; j < 256; j++) {
+                table[i][j] = (byte) (value >>> 24);
+                value += increment;
+            }
+        }
+        return table;
+    }
+}
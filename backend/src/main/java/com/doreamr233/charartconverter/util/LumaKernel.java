@@ -0,0 +1,256 @@
+package com.doreamr233.charartconverter.util;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * 亮度计算内核
+ * <p>
+ * 直接读取BufferedImage底层DataBuffer中的像素数据，按行输出RGB或灰度值，
+ * 避免逐像素调用{@link BufferedImage#getRGB(int, int)}带来的颜色模型转换开销。
+ * 支持TYPE_INT_RGB、TYPE_INT_ARGB、TYPE_3BYTE_BGR、TYPE_4BYTE_ABGR、
+ * 8位交错RGB(A)以及8位索引色（GIF帧、调色板PNG）等常见布局，
+ * 其他布局回退为按行批量调用getRGB。
+ * </p>
+ * <p>
+ * 灰度使用16位定点整数加权（0.299/0.587/0.114），
+ * 与浮点公式相比最多相差1个灰度级。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class LumaKernel {
+
+    /**
+     * 定点亮度权重（总和为65536）
+     */
+    private static final int LUMA_R = 19595;
+    private static final int LUMA_G = 38470;
+    private static final int LUMA_B = 7471;
+
+    /**
+     * 像素布局：打包整型RGB
+     */
+    private static final int LAYOUT_INT_RGB = 0;
+
+    /**
+     * 像素布局：交错字节RGB(A)
+     */
+    private static final int LAYOUT_BYTE_INTERLEAVED = 1;
+
+    /**
+     * 像素布局：8位索引色
+     */
+    private static final int LAYOUT_BYTE_INDEXED = 2;
+
+    /**
+     * 像素布局：无法直接读取，回退到getRGB
+     */
+    private static final int LAYOUT_GENERIC = 3;
+
+    private final BufferedImage image;
+    private final int width;
+    private final int height;
+    private final int layout;
+
+    private int[] intData;
+    private byte[] byteData;
+    private int[] palette;
+    private int baseOffset;
+    private int scanlineStride;
+    private int pixelStride;
+    private int redOffset;
+    private int greenOffset;
+    private int blueOffset;
+
+    private LumaKernel(BufferedImage image) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.layout = resolveLayout();
+    }
+
+    /**
+     * 为指定图像创建亮度内核
+     * <p>
+     * 创建时解析一次图像的像素布局，之后的按行读取不再做类型判断之外的任何分配。
+     * </p>
+     *
+     * @param image 源图像
+     * @return 亮度内核
+     */
+    public static LumaKernel of(BufferedImage image) {
+        return new LumaKernel(image);
+    }
+
+    /**
+     * 获取图像宽度
+     *
+     * @return 图像宽度
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 获取图像高度
+     *
+     * @return 图像高度
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 计算打包RGB颜色的灰度值
+     *
+     * @param rgb 打包的RGB颜色（忽略高8位）
+     * @return 灰度值 (0-255)
+     */
+    public static int luma(int rgb) {
+        return (((rgb >> 16) & 0xFF) * LUMA_R + ((rgb >> 8) & 0xFF) * LUMA_G + (rgb & 0xFF) * LUMA_B) >> 16;
+    }
+
+    /**
+     * 构建灰度到字符索引的查找表
+     * <p>
+     * 查找表下标为灰度值 (0-255)，值为字符集中的字符索引，
+     * 映射规则与 gray * (glyphCount - 1) / 255 一致。
+     * </p>
+     *
+     * @param glyphCount 字符集中的字符数量（不超过128）
+     * @return 长度为256的查找表
+     */
+    public static byte[] buildGlyphLut(int glyphCount) {
+        byte[] lut = new byte[256];
+        for (int gray = 0; gray < 256; gray++) {
+            lut[gray] = (byte) (gray * (glyphCount - 1) / 255);
+        }
+        return lut;
+    }
+
+    /**
+     * 读取一行像素的RGB值
+     *
+     * @param y   行号
+     * @param out 输出数组，长度不小于图像宽度，写入0xRRGGBB格式的颜色
+     */
+    public void readRgbRow(int y, int[] out) {
+        switch (layout) {
+            case LAYOUT_INT_RGB: {
+                int index = baseOffset + y * scanlineStride;
+                for (int x = 0; x < width; x++) {
+                    out[x] = intData[index + x] & 0xFFFFFF;
+                }
+                break;
+            }
+            case LAYOUT_BYTE_INTERLEAVED: {
+                int index = baseOffset + y * scanlineStride;
+                for (int x = 0; x < width; x++, index += pixelStride) {
+                    out[x] = ((byteData[index + redOffset] & 0xFF) << 16)
+                            | ((byteData[index + greenOffset] & 0xFF) << 8)
+                            | (byteData[index + blueOffset] & 0xFF);
+                }
+                break;
+            }
+            case LAYOUT_BYTE_INDEXED: {
+                int index = baseOffset + y * scanlineStride;
+                for (int x = 0; x < width; x++) {
+                    out[x] = palette[byteData[index + x] & 0xFF];
+                }
+                break;
+            }
+            default: {
+                image.getRGB(0, y, width, 1, out, 0, width);
+                for (int x = 0; x < width; x++) {
+                    out[x] &= 0xFFFFFF;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 读取一行像素的灰度值
+     *
+     * @param y   行号
+     * @param out 输出数组，长度不小于图像宽度，写入0-255的灰度值
+     */
+    public void readLumaRow(int y, int[] out) {
+        readRgbRow(y, out);
+        for (int x = 0; x < width; x++) {
+            out[x] = luma(out[x]);
+        }
+    }
+
+    /**
+     * 解析图像的像素布局，并缓存直接访问所需的数组和偏移量
+     *
+     * @return 像素布局类型
+     */
+    private int resolveLayout() {
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        SampleModel sampleModel = raster.getSampleModel();
+        ColorModel colorModel = image.getColorModel();
+        int translateX = raster.getSampleModelTranslateX();
+        int translateY = raster.getSampleModelTranslateY();
+        int imageType = image.getType();
+
+        if ((imageType == BufferedImage.TYPE_INT_RGB || imageType == BufferedImage.TYPE_INT_ARGB)
+                && dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel sppsm = (SinglePixelPackedSampleModel) sampleModel;
+            intData = ((DataBufferInt) dataBuffer).getData();
+            scanlineStride = sppsm.getScanlineStride();
+            baseOffset = dataBuffer.getOffset() - translateY * scanlineStride - translateX;
+            return LAYOUT_INT_RGB;
+        }
+
+        if (dataBuffer instanceof DataBufferByte && sampleModel instanceof PixelInterleavedSampleModel) {
+            PixelInterleavedSampleModel pism = (PixelInterleavedSampleModel) sampleModel;
+            int[] bandOffsets = pism.getBandOffsets();
+            scanlineStride = pism.getScanlineStride();
+            pixelStride = pism.getPixelStride();
+
+            if (colorModel instanceof IndexColorModel && pism.getNumBands() == 1
+                    && colorModel.getPixelSize() == 8) {
+                IndexColorModel icm = (IndexColorModel) colorModel;
+                palette = new int[256];
+                int[] rgbs = new int[icm.getMapSize()];
+                icm.getRGBs(rgbs);
+                for (int i = 0; i < rgbs.length && i < palette.length; i++) {
+                    palette[i] = rgbs[i] & 0xFFFFFF;
+                }
+                byteData = ((DataBufferByte) dataBuffer).getData();
+                baseOffset = dataBuffer.getOffset() + bandOffsets[0]
+                        - translateY * scanlineStride - translateX * pixelStride;
+                return LAYOUT_BYTE_INDEXED;
+            }
+
+            if (colorModel instanceof ComponentColorModel && !colorModel.isAlphaPremultiplied()
+                    && colorModel.getColorSpace().isCS_sRGB()
+                    && colorModel.getColorSpace().getType() == ColorSpace.TYPE_RGB
+                    && (pism.getNumBands() == 3 || pism.getNumBands() == 4)
+                    && pism.getSampleSize(0) == 8) {
+                byteData = ((DataBufferByte) dataBuffer).getData();
+                redOffset = bandOffsets[0];
+                greenOffset = bandOffsets[1];
+                blueOffset = bandOffsets[2];
+                baseOffset = dataBuffer.getOffset() - translateY * scanlineStride - translateX * pixelStride;
+                return LAYOUT_BYTE_INTERLEAVED;
+            }
+        }
+
+        return LAYOUT_GENERIC;
+    }
+}
@@ -0,0 +1,645 @@
+package com.doreamr233.charartconverter.util;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 流式PNG写入器
+ * <p>
+ * 按扫描行顺序逐行接收像素，过滤后送入deflate流并分块写出IDAT，
+ * 不需要在内存中保留整张图像。支持8位RGB真彩色、8位RGBA和8位调色板三种格式。
+ * </p>
+ * <p>
+ * 过滤后的数据按固定大小切分为多个块，每个块使用独立的Deflater压缩，
+ * 并以前一块末尾32KB数据作为预置字典，非最后一块以SYNC_FLUSH结束，
+ * 拼接后即为一个完整的zlib流（与pigz的做法相同）。配置了线程池时各块并行压缩，
+ * 未配置时在当前线程依次压缩，两种方式输出的文件完全相同。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class PngStreamWriter implements Closeable {
+
+    /**
+     * 扫描行过滤方式
+     */
+    public enum Filter {
+        /** 不过滤 */
+        NONE,
+        /** 与左侧像素做差 */
+        SUB,
+        /** 与上方像素做差 */
+        UP,
+        /** 与左侧和上方像素的平均值做差 */
+        AVERAGE,
+        /** Paeth预测 */
+        PAETH,
+        /** 逐行选择有符号字节绝对值之和最小的过滤方式（调色板图像按PNG规范建议不过滤） */
+        ADAPTIVE
+    }
+
+    /**
+     * 编码参数
+     */
+    public static final class Options {
+
+        /**
+         * 默认参数：压缩级别6，自适应过滤，单线程压缩
+         */
+        public static final Options DEFAULT = new Options(6, Filter.ADAPTIVE, null, 1);
+
+        private final int level;
+        private final Filter filter;
+        private final Executor executor;
+        private final int parallelism;
+
+        /**
+         * 创建编码参数
+         *
+         * @param level deflate压缩级别（0-9）
+         * @param filter 扫描行过滤方式
+         * @param executor 并行压缩使用的线程池，为null时在写入线程中压缩
+         * @param parallelism 最多同时压缩的块数
+         */
+        public Options(int level, Filter filter, Executor executor, int parallelism) {
+            this.level = Math.max(Deflater.NO_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, level));
+            this.filter = filter != null ? filter : Filter.ADAPTIVE;
+            this.executor = executor;
+            this.parallelism = Math.max(1, parallelism);
+        }
+
+        /**
+         * 获取使用相同压缩级别和过滤方式、在写入线程中压缩的参数
+         *
+         * @return 单线程编码参数
+         */
+        public Options serial() {
+            return executor == null ? this : new Options(level, filter, null, 1);
+        }
+    }
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * 单个IDAT块的最大数据长度
+     */
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 每个独立压缩块的未压缩数据长度
+     */
+    private static final int DEFLATE_BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * deflate窗口大小，即预置字典的最大长度
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_PALETTE = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+
+    private static final int FILTER_TYPE_NONE = 0;
+    private static final int FILTER_TYPE_SUB = 1;
+    private static final int FILTER_TYPE_UP = 2;
+    private static final int FILTER_TYPE_AVERAGE = 3;
+    private static final int FILTER_TYPE_PAETH = 4;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final int level;
+    private final Executor executor;
+    private final int parallelism;
+    private final CRC32 crc = new CRC32();
+    private final Adler32 adler = new Adler32();
+
+    /**
+     * 固定过滤方式时使用的过滤类型，自适应过滤时为-1
+     */
+    private final int fixedFilterType;
+
+    /**
+     * 当前行和上一行的原始字节（不含过滤类型字节）
+     */
+    private byte[] currentRow;
+    private byte[] previousRow;
+
+    /**
+     * 各过滤方式的输出缓冲区，首字节为过滤类型
+     */
+    private final byte[][] filtered;
+
+    /**
+     * 待压缩的过滤后数据
+     */
+    private byte[] block;
+    private int blockLength;
+
+    /**
+     * 上一个压缩块的数据，用于截取预置字典
+     */
+    private byte[] previousBlock;
+
+    /**
+     * 按顺序等待写出的压缩结果
+     */
+    private final ArrayDeque<CompletableFuture<byte[]>> pending = new ArrayDeque<>();
+
+    private final byte[] idatBuffer = new byte[IDAT_CHUNK_SIZE];
+    private int idatLength;
+    private int rowsWritten;
+    private boolean finished;
+
+    private PngStreamWriter(OutputStream out, int width, int height, int colorType, IndexColorModel palette,
+                            Options options) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.bytesPerPixel = colorType == COLOR_TYPE_RGB ? 3 : colorType == COLOR_TYPE_RGBA ? 4 : 1;
+        this.level = options.level;
+        this.executor = options.executor;
+        this.parallelism = options.parallelism;
+
+        Filter filter = options.filter;
+        if (filter == Filter.ADAPTIVE && colorType == COLOR_TYPE_PALETTE) {
+            filter = Filter.NONE;
+        }
+        this.fixedFilterType = filter == Filter.ADAPTIVE ? -1 : filter.ordinal();
+
+        int rowBytes = width * bytesPerPixel;
+        this.currentRow = new byte[rowBytes];
+        this.previousRow = new byte[rowBytes];
+        this.filtered = new byte[fixedFilterType < 0 ? 5 : 1][rowBytes + 1];
+        this.block = new byte[Math.max(DEFLATE_BLOCK_SIZE, rowBytes + 1)];
+
+        this.out.write(SIGNATURE);
+        writeHeader(colorType);
+        if (palette != null) {
+            writePalette(palette);
+        }
+        writeZlibHeader();
+    }
+
+    /**
+     * 创建8位RGB真彩色PNG写入器
+     *
+     * @param out 输出流
+     * @param width 图像宽度
+     * @param height 图像高度
+     * @param options 编码参数
+     * @return PNG写入器
+     * @throws IOException 写入文件头失败时抛出
+     */
+    public static PngStreamWriter rgb(OutputStream out, int width, int height, Options options) throws IOException {
+        return new PngStreamWriter(out, width, height, COLOR_TYPE_RGB, null, options);
+    }
+
+    /**
+     * 创建8位RGBA真彩色PNG写入器
+     *
+     * @param out 输出流
+     * @param width 图像宽度
+     * @param height 图像高度
+     * @param options 编码参数
+     * @return PNG写入器
+     * @throws IOException 写入文件头失败时抛出
+     */
+    public static PngStreamWriter rgba(OutputStream out, int width, int height, Options options) throws IOException {
+        return new PngStreamWriter(out, width, height, COLOR_TYPE_RGBA, null, options);
+    }
+
+    /**
+     * 创建8位调色板PNG写入器
+     *
+     * @param out 输出流
+     * @param width 图像宽度
+     * @param height 图像高度
+     * @param palette 调色板（最多256色，不含透明度）
+     * @param options 编码参数
+     * @return PNG写入器
+     * @throws IOException 写入文件头失败时抛出
+     */
+    public static PngStreamWriter indexed(OutputStream out, int width, int height, IndexColorModel palette,
+                                          Options options) throws IOException {
+        return new PngStreamWriter(out, width, height, COLOR_TYPE_PALETTE, palette, options);
+    }
+
+    /**
+     * 将整张图像编码为PNG
+     * <p>
+     * 不透明的8位调色板图像写出为调色板PNG，带透明度的图像写出为RGBA，其余写出为RGB。
+     * 完成后不关闭输出流。
+     * </p>
+     *
+     * @param image 图像
+     * @param out 输出流
+     * @param options 编码参数
+     * @throws IOException 写入失败时抛出
+     */
+    public static void write(BufferedImage image, OutputStream out, Options options) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        WritableRaster raster = image.getRaster();
+        int type = image.getType();
+
+        if (type == BufferedImage.TYPE_BYTE_INDEXED && image.getTransparency() == Transparency.OPAQUE
+                && raster.getNumBands() == 1) {
+            PngStreamWriter png = indexed(out, width, height, (IndexColorModel) image.getColorModel(), options);
+            try {
+                byte[] row = new byte[width];
+                for (int y = 0; y < height; y++) {
+                    raster.getDataElements(0, y, width, 1, row);
+                    png.writeIndexedRow(row, 0);
+                }
+                png.finish();
+            } finally {
+                png.release();
+            }
+            return;
+        }
+
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        PngStreamWriter png = hasAlpha ? rgba(out, width, height, options) : rgb(out, width, height, options);
+        try {
+            int[] row = new int[width];
+            boolean packed = type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB;
+            for (int y = 0; y < height; y++) {
+                // 整型打包像素直接读取数据元素，其余格式经颜色模型转换为ARGB
+                if (packed) {
+                    raster.getDataElements(0, y, width, 1, row);
+                } else {
+                    image.getRGB(0, y, width, 1, row, 0, width);
+                }
+                if (hasAlpha) {
+                    png.writeArgbRow(row, 0);
+                } else {
+                    png.writeRgbRow(row, 0);
+                }
+            }
+            png.finish();
+        } finally {
+            png.release();
+        }
+    }
+
+    /**
+     * 写入一行RGB像素
+     *
+     * @param pixels 像素数组（0xRRGGBB）
+     * @param offset 本行第一个像素在数组中的位置
+     * @throws IOException 写入失败时抛出
+     */
+    public void writeRgbRow(int[] pixels, int offset) throws IOException {
+        byte[] row = currentRow;
+        for (int x = 0, i = 0; x < width; x++) {
+            int rgb = pixels[offset + x];
+            row[i++] = (byte) (rgb >> 16);
+            row[i++] = (byte) (rgb >> 8);
+            row[i++] = (byte) rgb;
+        }
+        writeRow();
+    }
+
+    /**
+     * 写入一行带透明度的像素
+     *
+     * @param pixels 像素数组（0xAARRGGBB）
+     * @param offset 本行第一个像素在数组中的位置
+     * @throws IOException 写入失败时抛出
+     */
+    public void writeArgbRow(int[] pixels, int offset) throws IOException {
+        byte[] row = currentRow;
+        for (int x = 0, i = 0; x < width; x++) {
+            int argb = pixels[offset + x];
+            row[i++] = (byte) (argb >> 16);
+            row[i++] = (byte) (argb >> 8);
+            row[i++] = (byte) argb;
+            row[i++] = (byte) (argb >>> 24);
+        }
+        writeRow();
+    }
+
+    /**
+     * 写入一行调色板索引
+     *
+     * @param pixels 索引数组
+     * @param offset 本行第一个像素在数组中的位置
+     * @throws IOException 写入失败时抛出
+     */
+    public void writeIndexedRow(byte[] pixels, int offset) throws IOException {
+        System.arraycopy(pixels, offset, currentRow, 0, width);
+        writeRow();
+    }
+
+    /**
+     * 结束写入
+     * <p>
+     * 压缩剩余的数据并写出最后的IDAT块和IEND块。
+     * 写入的行数必须等于图像高度。
+     * </p>
+     *
+     * @throws IOException 写入失败或行数不足时抛出
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (rowsWritten != height) {
+            throw new IOException("PNG行数不完整: " + rowsWritten + "/" + height);
+        }
+        submitBlock(true);
+        while (!pending.isEmpty()) {
+            writeCompressed(pending.removeFirst());
+        }
+        int checksum = (int) adler.getValue();
+        appendIdat(new byte[]{(byte) (checksum >>> 24), (byte) (checksum >>> 16), (byte) (checksum >>> 8), (byte) checksum}, 4);
+        flushIdat();
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+        finished = true;
+    }
+
+    /**
+     * 丢弃尚未写出的压缩任务并关闭输出流
+     *
+     * @throws IOException 关闭输出流失败时抛出
+     */
+    @Override
+    public void close() throws IOException {
+        release();
+        out.close();
+    }
+
+    /**
+     * 丢弃尚未写出的压缩任务，不关闭输出流
+     */
+    private void release() {
+        for (CompletableFuture<byte[]> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    /**
+     * 过滤当前行并追加到待压缩数据
+     */
+    private void writeRow() throws IOException {
+        if (rowsWritten >= height) {
+            throw new IOException("PNG行数超出图像高度: " + height);
+        }
+        byte[] chosen = filterRow();
+        if (blockLength + chosen.length > block.length) {
+            submitBlock(false);
+        }
+        System.arraycopy(chosen, 0, block, blockLength, chosen.length);
+        blockLength += chosen.length;
+
+        byte[] swap = previousRow;
+        previousRow = currentRow;
+        currentRow = swap;
+        rowsWritten++;
+    }
+
+    /**
+     * 对当前行应用过滤，返回首字节为过滤类型的结果
+     */
+    private byte[] filterRow() {
+        byte[] prior = rowsWritten == 0 ? null : previousRow;
+        if (fixedFilterType >= 0) {
+            applyFilter(fixedFilterType, currentRow, prior, filtered[0]);
+            return filtered[0];
+        }
+
+        // 选择有符号字节绝对值之和最小的过滤方式
+        byte[] best = null;
+        long bestSum = Long.MAX_VALUE;
+        for (int type = FILTER_TYPE_NONE; type <= FILTER_TYPE_PAETH; type++) {
+            long sum = applyFilter(type, currentRow, prior, filtered[type]);
+            if (sum < bestSum) {
+                best = filtered[type];
+                bestSum = sum;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 按指定过滤类型过滤一行
+     *
+     * @param type 过滤类型
+     * @param row 原始行
+     * @param prior 上一行，第一行为null
+     * @param target 输出缓冲区，首字节写入过滤类型
+     * @return 过滤结果有符号字节绝对值之和
+     */
+    private long applyFilter(int type, byte[] row, byte[] prior, byte[] target) {
+        int bpp = bytesPerPixel;
+        int length = row.length;
+        long sum = 0;
+        target[0] = (byte) type;
+        for (int i = 0; i < length; i++) {
+            int raw = row[i] & 0xFF;
+            int predictor;
+            switch (type) {
+                case FILTER_TYPE_SUB:
+                    predictor = i >= bpp ? row[i - bpp] & 0xFF : 0;
+                    break;
+                case FILTER_TYPE_UP:
+                    predictor = prior != null ? prior[i] & 0xFF : 0;
+                    break;
+                case FILTER_TYPE_AVERAGE:
+                    predictor = ((i >= bpp ? row[i - bpp] & 0xFF : 0) + (prior != null ? prior[i] & 0xFF : 0)) >> 1;
+                    break;
+                case FILTER_TYPE_PAETH:
+                    predictor = paethPredictor(i >= bpp ? row[i - bpp] & 0xFF : 0,
+                            prior != null ? prior[i] & 0xFF : 0,
+                            prior != null && i >= bpp ? prior[i - bpp] & 0xFF : 0);
+                    break;
+                default:
+                    predictor = 0;
+                    break;
+            }
+            byte value = (byte) (raw - predictor);
+            target[i + 1] = value;
+            sum += Math.abs(value);
+        }
+        return sum;
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * 提交当前待压缩数据
+     * <p>
+     * 同时在途的压缩块超过并行度时，先按顺序写出最早的结果，限制内存占用。
+     * </p>
+     *
+     * @param last 是否为最后一块
+     */
+    private void submitBlock(boolean last) throws IOException {
+        byte[] data = Arrays.copyOf(block, blockLength);
+        blockLength = 0;
+        adler.update(data);
+
+        byte[] dictionary = null;
+        if (previousBlock != null) {
+            int dictionaryLength = Math.min(DICTIONARY_SIZE, previousBlock.length);
+            dictionary = Arrays.copyOfRange(previousBlock, previousBlock.length - dictionaryLength, previousBlock.length);
+        }
+        previousBlock = data;
+
+        byte[] dict = dictionary;
+        if (executor == null) {
+            pending.addLast(CompletableFuture.completedFuture(deflateBlock(data, dict, level, last)));
+        } else {
+            pending.addLast(CompletableFuture.supplyAsync(() -> deflateBlock(data, dict, level, last), executor));
+        }
+        while (pending.size() > parallelism) {
+            writeCompressed(pending.removeFirst());
+        }
+    }
+
+    /**
+     * 使用独立的Deflater压缩一块数据，输出原始deflate数据（不含zlib头）
+     *
+     * @param data 未压缩数据
+     * @param dictionary 预置字典，第一块为null
+     * @param level 压缩级别
+     * @param last 是否为最后一块，最后一块以结束块收尾，其余块以SYNC_FLUSH收尾
+     * @return 压缩后的数据
+     */
+    private static byte[] deflateBlock(byte[] data, byte[] dictionary, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+            } else {
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeCompressed(CompletableFuture<byte[]> future) throws IOException {
+        byte[] compressed;
+        try {
+            compressed = future.join();
+        } catch (CompletionException e) {
+            throw new IOException("PNG数据压缩失败: " + e.getCause().getMessage(), e.getCause());
+        }
+        appendIdat(compressed, compressed.length);
+    }
+
+    /**
+     * 写出zlib流头部（CMF和FLG），压缩级别标记与zlib的取值一致
+     */
+    private void writeZlibHeader() throws IOException {
+        int cmf = 0x78;
+        int levelFlag = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int flg = levelFlag << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        appendIdat(new byte[]{(byte) cmf, (byte) flg}, 2);
+    }
+
+    /**
+     * 将压缩数据累积到IDAT缓冲区，缓冲区满时写出一个IDAT块
+     */
+    private void appendIdat(byte[] data, int length) throws IOException {
+        int offset = 0;
+        while (length > 0) {
+            int n = Math.min(length, idatBuffer.length - idatLength);
+            System.arraycopy(data, offset, idatBuffer, idatLength, n);
+            idatLength += n;
+            offset += n;
+            length -= n;
+            if (idatLength == idatBuffer.length) {
+                flushIdat();
+            }
+        }
+    }
+
+    private void flushIdat() throws IOException {
+        if (idatLength > 0) {
+            writeChunk("IDAT", idatBuffer, idatLength);
+            idatLength = 0;
+        }
+    }
+
+    private void writeHeader(int colorType) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(8);
+        header.writeByte(colorType);
+        header.writeByte(0);
+        header.writeByte(0);
+        header.writeByte(0);
+        writeChunk("IHDR", bytes.toByteArray(), bytes.size());
+    }
+
+    private void writePalette(IndexColorModel palette) throws IOException {
+        int size = palette.getMapSize();
+        byte[] data = new byte[size * 3];
+        for (int i = 0; i < size; i++) {
+            data[i * 3] = (byte) palette.getRed(i);
+            data[i * 3 + 1] = (byte) palette.getGreen(i);
+            data[i * 3 + 2] = (byte) palette.getBlue(i);
+        }
+        writeChunk("PLTE", data, data.length);
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+}
@@ -0,0 +1,89 @@
+package com.doreamr233.charartconverter.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * 统计写入字节数的输出流
+ * <p>
+ * 将数据原样写入下层输出流，同时累计已写入的字节数，并在写入线程中按最小时间间隔
+ * 回调进度监听器，使进度反映实际写出的数据量，而不需要额外线程轮询。
+ * 监听器可在写入过程中更换，用于按帧报告进度。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public class ProgressOutputStream extends FilterOutputStream {
+
+    /**
+     * 每写入多少字节检查一次是否需要回调，避免逐字节读取时钟
+     */
+    private static final long CHECK_BYTES = 16 * 1024;
+
+    private final long minIntervalNanos;
+    private volatile LongConsumer listener;
+    private volatile long count;
+    private long nextCheck = CHECK_BYTES;
+    private long lastReportNanos = System.nanoTime();
+
+    /**
+     * 创建统计写入字节数的输出流
+     *
+     * @param out 下层输出流
+     * @param minIntervalMillis 两次回调之间的最小间隔（毫秒）
+     * @param listener 进度监听器，参数为累计写入的字节数，可为null
+     */
+    public ProgressOutputStream(OutputStream out, long minIntervalMillis, LongConsumer listener) {
+        super(out);
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, minIntervalMillis));
+        this.listener = listener;
+    }
+
+    /**
+     * 更换进度监听器
+     *
+     * @param listener 新的进度监听器，为null时不再回调
+     */
+    public void setListener(LongConsumer listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 获取累计写入的字节数
+     *
+     * @return 已写入下层输出流的字节数
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+        maybeReport();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+        maybeReport();
+    }
+
+    private void maybeReport() {
+        if (count < nextCheck) {
+            return;
+        }
+        nextCheck = count + CHECK_BYTES;
+        LongConsumer current = listener;
+        long now = System.nanoTime();
+        if (current != null && now - lastReportNanos >= minIntervalNanos) {
+            lastReportNanos = now;
+            current.accept(count);
+        }
+    }
+}
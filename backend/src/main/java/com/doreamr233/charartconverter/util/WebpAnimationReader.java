@@ -0,0 +1,443 @@
+package com.doreamr233.charartconverter.util;
+
+import com.luciad.imageio.webp.WebPImageReaderSpi;
+
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 按需解码的WebP动画读取器
+ * <p>
+ * 打开时只解析一遍RIFF容器结构（VP8X、ANIM和ANMF数据块），校验格式并得到画布尺寸、帧数和每帧延迟，
+ * 不解码任何图像数据；之后每次调用{@link #nextFrame()}按顺序解码下一帧的VP8/VP8L位流并与之前的画面合成。
+ * 单帧位流由webp-imageio附带的libwebp解码，读取器只保留一张画布，内存占用与帧数无关。
+ * </p>
+ * <p>
+ * 帧的合成规则与libwebp的动画解码器（WebP处理服务使用的PIL即基于它）相同：画布初始为全透明黑色，
+ * 忽略ANIM中的背景色；上一帧处置方式为"处置到背景"时先将其区域清为全透明，
+ * 当前帧按混合方式与画布做非预乘alpha混合或直接覆盖，关键帧从全透明画布开始且不混合。返回的帧丢弃alpha通道，
+ * 与WebP处理服务将帧转换为RGB后的结果逐像素一致。返回的帧图像之后不会被读取器修改，可以交给其他线程只读使用。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class WebpAnimationReader implements Closeable {
+
+    /**
+     * VP8X数据块中表示包含动画的标志位
+     */
+    private static final int FLAG_ANIMATION = 0x02;
+
+    /**
+     * VP8X数据块中表示包含alpha通道的标志位
+     */
+    private static final int FLAG_ALPHA = 0x10;
+
+    /**
+     * ANMF帧标志：不与画布混合，直接覆盖
+     */
+    private static final int FRAME_NO_BLEND = 0x02;
+
+    /**
+     * ANMF帧标志：显示后将帧区域处置为背景
+     */
+    private static final int FRAME_DISPOSE_BACKGROUND = 0x01;
+
+    /**
+     * ANMF数据块中帧数据之前的头部长度
+     */
+    private static final int FRAME_HEADER_SIZE = 16;
+
+    private final byte[] data;
+    private final int width;
+    private final int height;
+
+    private int frameCount;
+    private int[] frameStarts;
+    private int[] frameEnds;
+    private int[] delays;
+    private int loopCount;
+
+    // 合成状态
+    private int decodedFrames;
+    private int[] canvas;
+    private boolean lastDisposeBackground;
+    private boolean lastKeyFrame;
+    private int lastX;
+    private int lastY;
+    private int lastW;
+    private int lastH;
+    private ImageReader bitstreamReader;
+
+    private WebpAnimationReader(byte[] data) throws IOException {
+        this.data = data;
+        if (data.length < 30 || !isFourCc(0, "RIFF") || !isFourCc(8, "WEBP") || !isFourCc(12, "VP8X")) {
+            throw new IOException("不是扩展格式的WebP文件");
+        }
+        if ((data[20] & FLAG_ANIMATION) == 0) {
+            throw new IOException("WebP文件不包含动画");
+        }
+        width = readUInt24(24) + 1;
+        height = readUInt24(27) + 1;
+    }
+
+    /**
+     * 打开WebP动画数据并解析容器结构
+     *
+     * @param data WebP文件内容，读取期间不能修改
+     * @return 定位在第一帧之前的读取器
+     * @throws IOException 文件格式错误、数据不完整或不是动画时抛出
+     */
+    public static WebpAnimationReader open(byte[] data) throws IOException {
+        WebpAnimationReader reader = new WebpAnimationReader(data);
+        reader.scan();
+        return reader;
+    }
+
+    /**
+     * 获取画布宽度
+     *
+     * @return 画布宽度（像素）
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 获取画布高度
+     *
+     * @return 画布高度（像素）
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 获取帧数
+     *
+     * @return 文件中的动画帧数
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 获取指定帧的延迟时间
+     *
+     * @param index 帧索引
+     * @return 延迟时间（毫秒）
+     */
+    public int getDelay(int index) {
+        return delays[index];
+    }
+
+    /**
+     * 获取指定帧在画布上的位置和尺寸
+     *
+     * @param index 帧索引
+     * @return {x, y, 宽度, 高度}
+     */
+    public int[] getFrameBounds(int index) {
+        int start = frameStarts[index] - FRAME_HEADER_SIZE;
+        return new int[]{readUInt24(start) * 2, readUInt24(start + 3) * 2,
+                readUInt24(start + 6) + 1, readUInt24(start + 9) + 1};
+    }
+
+    /**
+     * 获取循环次数
+     *
+     * @return 循环次数，0表示无限循环
+     */
+    public int getLoopCount() {
+        return loopCount;
+    }
+
+    /**
+     * 是否还有未解码的帧
+     *
+     * @return 还有帧时返回true
+     */
+    public boolean hasNextFrame() {
+        return decodedFrames < frameCount;
+    }
+
+    /**
+     * 解码下一帧
+     *
+     * @return 与之前画面合成后的完整帧（TYPE_INT_RGB）
+     * @throws IOException 位流解码失败或所有帧都已读取时抛出
+     */
+    public BufferedImage nextFrame() throws IOException {
+        if (!hasNextFrame()) {
+            throw new IOException("WebP中没有更多的帧");
+        }
+        int index = decodedFrames;
+        int[] bounds = getFrameBounds(index);
+        int x = bounds[0];
+        int y = bounds[1];
+        int frameWidth = bounds[2];
+        int frameHeight = bounds[3];
+        int flags = data[frameStarts[index] - 1] & 0xFF;
+        int[] pixels = decodeBitstream(frameStarts[index], frameEnds[index], frameWidth, frameHeight);
+        boolean blend = (flags & FRAME_NO_BLEND) == 0;
+        boolean fullFrame = frameWidth == width && frameHeight == height;
+        boolean lastFullFrame = lastW == width && lastH == height;
+        // 关键帧与之前的画面无关：从全透明画布开始，帧像素直接覆盖
+        boolean keyFrame = canvas == null || (fullFrame && !blend)
+                || (lastDisposeBackground && (lastFullFrame || lastKeyFrame));
+
+        if (canvas == null) {
+            canvas = new int[width * height];
+        } else if (keyFrame) {
+            Arrays.fill(canvas, 0);
+        } else if (lastDisposeBackground) {
+            // 上一帧处置到背景：区域清为全透明，与libwebp一致忽略ANIM背景色
+            for (int row = lastY; row < lastY + lastH; row++) {
+                Arrays.fill(canvas, row * width + lastX, row * width + lastX + lastW, 0);
+            }
+        }
+        for (int row = 0; row < frameHeight; row++) {
+            int canvasRow = y + row;
+            int canvasOffset = canvasRow * width + x;
+            int frameOffset = row * frameWidth;
+            if (!blend || keyFrame) {
+                System.arraycopy(pixels, frameOffset, canvas, canvasOffset, frameWidth);
+                continue;
+            }
+            // libwebp不与刚处置到背景的区域混合，该区域内直接使用帧像素
+            boolean inDisposedRow = lastDisposeBackground && canvasRow >= lastY && canvasRow < lastY + lastH;
+            for (int column = 0; column < frameWidth; column++) {
+                int canvasColumn = x + column;
+                int src = pixels[frameOffset + column];
+                if (inDisposedRow && canvasColumn >= lastX && canvasColumn < lastX + lastW) {
+                    canvas[canvasOffset + column] = src;
+                } else {
+                    canvas[canvasOffset + column] = blendPixel(src, canvas[canvasOffset + column]);
+                }
+            }
+        }
+        lastDisposeBackground = (flags & FRAME_DISPOSE_BACKGROUND) != 0;
+        lastKeyFrame = keyFrame;
+        lastX = x;
+        lastY = y;
+        lastW = frameWidth;
+        lastH = frameHeight;
+        decodedFrames++;
+
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] target = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < target.length; i++) {
+            target[i] = canvas[i] & 0xFFFFFF;
+        }
+        return frame;
+    }
+
+    /**
+     * 释放位流解码器
+     */
+    @Override
+    public void close() {
+        if (bitstreamReader != null) {
+            bitstreamReader.dispose();
+            bitstreamReader = null;
+        }
+    }
+
+    /**
+     * 解析RIFF容器，记录每个ANMF帧数据的范围和延迟，并校验帧区域都在画布内
+     */
+    private void scan() throws IOException {
+        long riffEnd = Math.min(data.length, 8L + readUInt32(4));
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int[] scannedDelays = new int[16];
+        int count = 0;
+        boolean hasAnim = false;
+        int pos = 12;
+        while (pos + 8 <= riffEnd) {
+            long chunkSize = readUInt32(pos + 4);
+            long payloadEnd = pos + 8L + chunkSize;
+            if (payloadEnd > riffEnd) {
+                throw new IOException("WebP数据不完整");
+            }
+            int payload = pos + 8;
+            if (isFourCc(pos, "ANIM")) {
+                if (chunkSize < 6) {
+                    throw new IOException("WebP的ANIM数据块长度错误");
+                }
+                loopCount = (data[payload + 4] & 0xFF) | (data[payload + 5] & 0xFF) << 8;
+                hasAnim = true;
+            } else if (isFourCc(pos, "ANMF")) {
+                if (chunkSize < FRAME_HEADER_SIZE + 8) {
+                    throw new IOException("WebP的ANMF数据块长度错误");
+                }
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                    scannedDelays = Arrays.copyOf(scannedDelays, count * 2);
+                }
+                int x = readUInt24(payload) * 2;
+                int y = readUInt24(payload + 3) * 2;
+                int frameWidth = readUInt24(payload + 6) + 1;
+                int frameHeight = readUInt24(payload + 9) + 1;
+                if (x + frameWidth > width || y + frameHeight > height) {
+                    throw new IOException("WebP第" + (count + 1) + "帧超出画布范围");
+                }
+                starts[count] = payload + FRAME_HEADER_SIZE;
+                ends[count] = (int) payloadEnd;
+                scannedDelays[count] = readUInt24(payload + 12);
+                count++;
+            }
+            // 数据块按偶数字节对齐
+            pos = (int) (payloadEnd + (chunkSize & 1));
+        }
+        if (!hasAnim || count == 0) {
+            throw new IOException("WebP中没有动画帧");
+        }
+        frameCount = count;
+        frameStarts = Arrays.copyOf(starts, count);
+        frameEnds = Arrays.copyOf(ends, count);
+        delays = Arrays.copyOf(scannedDelays, count);
+    }
+
+    /**
+     * 解码一帧的位流
+     * <p>
+     * 帧数据由可选的ALPH数据块和一个VP8或VP8L数据块组成，重新封装为独立的WebP文件后交给libwebp解码；
+     * 有ALPH数据块时需要带alpha标志的VP8X头。
+     * </p>
+     *
+     * @return 帧像素（非预乘ARGB）
+     */
+    private int[] decodeBitstream(int start, int end, int frameWidth, int frameHeight) throws IOException {
+        int alphaStart = -1;
+        int alphaEnd = -1;
+        int imageStart = -1;
+        int imageEnd = -1;
+        int pos = start;
+        while (pos + 8 <= end) {
+            long chunkSize = readUInt32(pos + 4);
+            long chunkEnd = pos + 8L + chunkSize;
+            if (chunkEnd > end) {
+                throw new IOException("WebP帧数据不完整");
+            }
+            if (isFourCc(pos, "ALPH")) {
+                alphaStart = pos;
+                alphaEnd = (int) chunkEnd;
+            } else if (isFourCc(pos, "VP8 ") || isFourCc(pos, "VP8L")) {
+                imageStart = pos;
+                imageEnd = (int) chunkEnd;
+                break;
+            }
+            pos = (int) (chunkEnd + (chunkSize & 1));
+        }
+        if (imageStart < 0) {
+            throw new IOException("WebP帧缺少图像数据");
+        }
+
+        boolean withAlpha = alphaStart >= 0 && isFourCc(imageStart, "VP8 ");
+        int imageLength = padded(imageEnd - imageStart);
+        int alphaLength = withAlpha ? padded(alphaEnd - alphaStart) : 0;
+        int vp8xLength = withAlpha ? 18 : 0;
+        byte[] file = new byte[12 + vp8xLength + alphaLength + imageLength];
+        writeFourCc(file, 0, "RIFF");
+        writeUInt32(file, 4, file.length - 8);
+        writeFourCc(file, 8, "WEBP");
+        int offset = 12;
+        if (withAlpha) {
+            writeFourCc(file, offset, "VP8X");
+            writeUInt32(file, offset + 4, 10);
+            file[offset + 8] = (byte) FLAG_ALPHA;
+            writeUInt24(file, offset + 12, frameWidth - 1);
+            writeUInt24(file, offset + 15, frameHeight - 1);
+            offset += vp8xLength;
+            System.arraycopy(data, alphaStart, file, offset, alphaEnd - alphaStart);
+            offset += alphaLength;
+        }
+        System.arraycopy(data, imageStart, file, offset, imageEnd - imageStart);
+
+        if (bitstreamReader == null) {
+            bitstreamReader = new WebPImageReaderSpi().createReaderInstance();
+        }
+        BufferedImage image;
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(file))) {
+            bitstreamReader.setInput(input);
+            image = bitstreamReader.read(0, null);
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            throw new IOException("WebP帧位流解码失败: " + e.getMessage(), e);
+        } finally {
+            bitstreamReader.setInput(null);
+        }
+        if (image.getWidth() != frameWidth || image.getHeight() != frameHeight) {
+            throw new IOException("WebP帧尺寸与ANMF数据块不一致");
+        }
+        return image.getRGB(0, 0, frameWidth, frameHeight, null, 0, frameWidth);
+    }
+
+    /**
+     * 非预乘alpha混合，整数运算与libwebp动画解码器的BlendPixelNonPremult相同
+     */
+    private static int blendPixel(int src, int dst) {
+        int srcAlpha = src >>> 24;
+        if (srcAlpha == 0xFF) {
+            return src;
+        }
+        if (srcAlpha == 0) {
+            return dst;
+        }
+        int dstAlpha = dst >>> 24;
+        int dstFactorAlpha = (dstAlpha * (256 - srcAlpha)) >> 8;
+        int blendAlpha = srcAlpha + dstFactorAlpha;
+        long scale = (1L << 24) / blendAlpha;
+        int red = blendChannel(src, srcAlpha, dst, dstFactorAlpha, scale, 16);
+        int green = blendChannel(src, srcAlpha, dst, dstFactorAlpha, scale, 8);
+        int blue = blendChannel(src, srcAlpha, dst, dstFactorAlpha, scale, 0);
+        return (blendAlpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    private static int blendChannel(int src, int srcAlpha, int dst, int dstAlpha, long scale, int shift) {
+        long unscaled = (long) ((src >> shift) & 0xFF) * srcAlpha + (long) ((dst >> shift) & 0xFF) * dstAlpha;
+        return (int) ((unscaled * scale) >>> 24) & 0xFF;
+    }
+
+    private static int padded(int length) {
+        return length + (length & 1);
+    }
+
+    private boolean isFourCc(int pos, String fourCc) {
+        return data[pos] == fourCc.charAt(0) && data[pos + 1] == fourCc.charAt(1)
+                && data[pos + 2] == fourCc.charAt(2) && data[pos + 3] == fourCc.charAt(3);
+    }
+
+    private int readUInt24(int pos) {
+        return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8 | (data[pos + 2] & 0xFF) << 16;
+    }
+
+    private long readUInt32(int pos) {
+        return readUInt24(pos) | (long) (data[pos + 3] & 0xFF) << 24;
+    }
+
+    private static void writeFourCc(byte[] target, int pos, String fourCc) {
+        for (int i = 0; i < 4; i++) {
+            target[pos + i] = (byte) fourCc.charAt(i);
+        }
+    }
+
+    private static void writeUInt24(byte[] target, int pos, int value) {
+        target[pos] = (byte) value;
+        target[pos + 1] = (byte) (value >> 8);
+        target[pos + 2] = (byte) (value >> 16);
+    }
+
+    private static void writeUInt32(byte[] target, int pos, int value) {
+        writeUInt24(target, pos, value);
+        target[pos + 3] = (byte) (value >>> 24);
+    }
+}
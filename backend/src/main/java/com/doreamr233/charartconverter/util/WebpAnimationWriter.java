@@ -0,0 +1,365 @@
+package com.doreamr233.charartconverter.util;
+
+import com.luciad.imageio.webp.WebPImageWriterSpi;
+import com.luciad.imageio.webp.WebPWriteParam;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 流式WebP动画写入器
+ * <p>
+ * 单帧图像由{@link #encodeFrame(BufferedImage, boolean, int)}交给webp-imageio附带的libwebp编码，
+ * 该方法不依赖写入器状态，可以在多个线程中同时调用；编码结果按帧序通过{@link #writeFrame(EncodedFrame, int, int, int)}
+ * 直接作为ANMF数据块追加到文件末尾，写入器只保存文件头中待回填的信息，内存占用与帧数无关。
+ * {@link #finish()}回填RIFF长度和VP8X标志后文件即完整。
+ * </p>
+ * <p>
+ * 画布背景为全透明，帧均使用"不处置"方式，可以只覆盖画布上的局部区域叠加在上一帧之上；
+ * 包含alpha通道的帧与画布混合，alpha为0的像素保留上一帧的像素，不含alpha通道的帧直接覆盖。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public final class WebpAnimationWriter implements Closeable {
+
+    /**
+     * WebP画布和帧的最大边长
+     */
+    public static final int MAX_DIMENSION = 16383;
+
+    /**
+     * 单帧的最大延迟（毫秒），ANMF中延迟为24位无符号数
+     */
+    public static final int MAX_DELAY = 0xFFFFFF;
+
+    /**
+     * VP8X数据块中表示包含动画的标志位
+     */
+    private static final int FLAG_ANIMATION = 0x02;
+
+    /**
+     * VP8X数据块中表示包含alpha通道的标志位
+     */
+    private static final int FLAG_ALPHA = 0x10;
+
+    /**
+     * ANMF帧标志：不与画布混合，直接覆盖
+     */
+    private static final int FRAME_NO_BLEND = 0x02;
+
+    /**
+     * VP8X标志字节在文件中的位置
+     */
+    private static final int FLAGS_POSITION = 20;
+
+    /**
+     * RIFF头、VP8X数据块和ANIM数据块的总长度
+     */
+    private static final int HEADER_SIZE = 12 + 18 + 14;
+
+    /**
+     * 一帧编码后的位流
+     */
+    public static final class EncodedFrame {
+
+        private final byte[] data;
+        private final int width;
+        private final int height;
+        private final boolean alpha;
+
+        EncodedFrame(byte[] data, int width, int height, boolean alpha) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.alpha = alpha;
+        }
+
+        /**
+         * 获取帧宽度
+         *
+         * @return 帧宽度（像素）
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * 获取帧高度
+         *
+         * @return 帧高度（像素）
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * 获取编码后的长度
+         *
+         * @return ANMF数据块中帧数据的字节数
+         */
+        public int getLength() {
+            return data.length;
+        }
+    }
+
+    /**
+     * 本地编码库是否可用，首次检查时确定
+     */
+    private static volatile Boolean available;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private long position = HEADER_SIZE;
+    private boolean hasAlpha;
+    private int frameCount;
+
+    private WebpAnimationWriter(FileChannel channel, int width, int height) {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 创建WebP动画文件并写入文件头
+     *
+     * @param output 输出文件路径，已存在时覆盖
+     * @param width 画布宽度
+     * @param height 画布高度
+     * @param loopCount 循环次数，0表示无限循环
+     * @return 写入器
+     * @throws IOException 画布尺寸超出WebP限制或写入失败时抛出
+     */
+    public static WebpAnimationWriter create(Path output, int width, int height, int loopCount) throws IOException {
+        checkDimension(width, height);
+        FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            putFourCc(header, "RIFF");
+            // RIFF长度在finish时回填
+            header.putInt(0);
+            putFourCc(header, "WEBP");
+            putFourCc(header, "VP8X");
+            header.putInt(10);
+            header.putInt(FLAG_ANIMATION);
+            putUInt24(header, width - 1);
+            putUInt24(header, height - 1);
+            putFourCc(header, "ANIM");
+            header.putInt(6);
+            // 背景色：全透明
+            header.putInt(0);
+            header.putShort((short) loopCount);
+            header.flip();
+            writeFully(channel, header, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new WebpAnimationWriter(channel, width, height);
+    }
+
+    /**
+     * 检查本地编码库是否可用
+     * <p>
+     * 首次调用时编码一个1x1像素的图像，之后直接返回检查结果。
+     * </p>
+     *
+     * @return 可以在进程内编码WebP时返回true
+     */
+    public static boolean isAvailable() {
+        Boolean result = available;
+        if (result == null) {
+            try {
+                encodeFrame(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB), true, 0);
+                result = true;
+            } catch (IOException | LinkageError e) {
+                result = false;
+            }
+            available = result;
+        }
+        return result;
+    }
+
+    /**
+     * 编码一帧图像
+     * <p>
+     * 图像中alpha为0的像素在写入时保留画布原有的像素。
+     * </p>
+     *
+     * @param image 帧图像
+     * @param lossless 是否无损编码
+     * @param quality 压缩质量（0-100），无损编码时表示压缩力度
+     * @return 编码后的帧
+     * @throws IOException 图像尺寸超出WebP限制或编码失败时抛出
+     */
+    public static EncodedFrame encodeFrame(BufferedImage image, boolean lossless, int quality) throws IOException {
+        int frameWidth = image.getWidth();
+        int frameHeight = image.getHeight();
+        checkDimension(frameWidth, frameHeight);
+        ImageWriter writer = null;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(buffer)) {
+            writer = new WebPImageWriterSpi().createWriterInstance();
+            WebPWriteParam param = (WebPWriteParam) writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType(lossless ? "Lossless" : "Lossy");
+            param.setCompressionQuality(Math.max(0, Math.min(100, quality)) / 100f);
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            throw new IOException("WebP帧编码失败: " + e.getMessage(), e);
+        } finally {
+            if (writer != null) {
+                writer.dispose();
+            }
+        }
+        return extractFrameData(buffer.toByteArray(), frameWidth, frameHeight);
+    }
+
+    /**
+     * 按帧序追加一帧
+     *
+     * @param frame 编码后的帧
+     * @param x 帧在画布上的横坐标，必须为偶数
+     * @param y 帧在画布上的纵坐标，必须为偶数
+     * @param delay 延迟时间（毫秒）
+     * @throws IOException 帧位置不合法或写入失败时抛出
+     */
+    public void writeFrame(EncodedFrame frame, int x, int y, int delay) throws IOException {
+        if ((x & 1) != 0 || (y & 1) != 0 || x < 0 || y < 0
+                || x + frame.width > width || y + frame.height > height) {
+            throw new IOException("WebP第" + (frameCount + 1) + "帧位置不合法: (" + x + ", " + y + ")");
+        }
+        int payloadSize = 16 + frame.data.length;
+        ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        putFourCc(header, "ANMF");
+        header.putInt(payloadSize);
+        putUInt24(header, x / 2);
+        putUInt24(header, y / 2);
+        putUInt24(header, frame.width - 1);
+        putUInt24(header, frame.height - 1);
+        putUInt24(header, Math.max(0, Math.min(MAX_DELAY, delay)));
+        header.put((byte) (frame.alpha ? 0 : FRAME_NO_BLEND));
+        header.flip();
+        writeFully(channel, header, position);
+        writeFully(channel, ByteBuffer.wrap(frame.data), position + header.capacity());
+        // 编码结果的各数据块均已按偶数字节对齐
+        position += 8 + payloadSize;
+        hasAlpha |= frame.alpha;
+        frameCount++;
+    }
+
+    /**
+     * 回填文件头，完成写入
+     *
+     * @throws IOException 没有写入任何帧或写入失败时抛出
+     */
+    public void finish() throws IOException {
+        if (frameCount == 0) {
+            throw new IOException("WebP动画中没有帧");
+        }
+        if (position - 8 > 0xFFFFFFFFL) {
+            throw new IOException("WebP动画超过4GB");
+        }
+        ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        size.putInt((int) (position - 8));
+        size.flip();
+        writeFully(channel, size, 4);
+        ByteBuffer flags = ByteBuffer.allocate(1);
+        flags.put((byte) (FLAG_ANIMATION | (hasAlpha ? FLAG_ALPHA : 0)));
+        flags.flip();
+        writeFully(channel, flags, FLAGS_POSITION);
+        channel.truncate(position);
+    }
+
+    /**
+     * 关闭文件
+     *
+     * @throws IOException 关闭失败时抛出
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 从libwebp编码的独立WebP文件中取出帧数据块（可选的ALPH数据块和VP8或VP8L数据块）
+     */
+    private static EncodedFrame extractFrameData(byte[] file, int frameWidth, int frameHeight) throws IOException {
+        if (file.length < 20 || !isFourCc(file, 0, "RIFF") || !isFourCc(file, 8, "WEBP")) {
+            throw new IOException("WebP帧编码结果格式错误");
+        }
+        ByteArrayOutputStream data = new ByteArrayOutputStream(file.length);
+        boolean alpha = false;
+        boolean image = false;
+        int pos = 12;
+        while (pos + 8 <= file.length) {
+            long chunkSize = (file[pos + 4] & 0xFF) | (file[pos + 5] & 0xFF) << 8
+                    | (file[pos + 6] & 0xFF) << 16 | (long) (file[pos + 7] & 0xFF) << 24;
+            long chunkEnd = pos + 8L + chunkSize + (chunkSize & 1);
+            if (chunkEnd > file.length) {
+                throw new IOException("WebP帧编码结果不完整");
+            }
+            if (isFourCc(file, pos, "ALPH")) {
+                alpha = true;
+                data.write(file, pos, (int) (chunkEnd - pos));
+            } else if (isFourCc(file, pos, "VP8 ")) {
+                image = true;
+                data.write(file, pos, (int) (chunkEnd - pos));
+            } else if (isFourCc(file, pos, "VP8L")) {
+                image = true;
+                // VP8L头中的alpha提示位
+                alpha = chunkSize >= 5 && (file[pos + 8 + 4] & 0x10) != 0;
+                data.write(file, pos, (int) (chunkEnd - pos));
+            }
+            pos = (int) chunkEnd;
+        }
+        if (!image) {
+            throw new IOException("WebP帧编码结果缺少图像数据");
+        }
+        return new EncodedFrame(data.toByteArray(), frameWidth, frameHeight, alpha);
+    }
+
+    private static void checkDimension(int width, int height) throws IOException {
+        if (width < 1 || height < 1 || width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            throw new IOException("图像尺寸" + width + "x" + height + "超出WebP限制（最大" + MAX_DIMENSION + "像素）");
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static boolean isFourCc(byte[] data, int pos, String fourCc) {
+        return data[pos] == fourCc.charAt(0) && data[pos + 1] == fourCc.charAt(1)
+                && data[pos + 2] == fourCc.charAt(2) && data[pos + 3] == fourCc.charAt(3);
+    }
+
+    private static void putFourCc(ByteBuffer buffer, String fourCc) {
+        for (int i = 0; i < 4; i++) {
+            buffer.put((byte) fourCc.charAt(i));
+        }
+    }
+
+    private static void putUInt24(ByteBuffer buffer, int value) {
+        buffer.put((byte) value);
+        buffer.put((byte) (value >> 8));
+        buffer.put((byte) (value >> 16));
+    }
+}
@@ -0,0 +1,254 @@
+package com.doreamr233.charartconverter.util;
+
+import com.doreamr233.charartconverter.exception.ServiceException;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * WebP处理服务逐帧解码的帧流
+ * <p>
+ * WebP处理服务先通知帧数和画布尺寸，之后每解码一帧即通知一次，客户端收到通知后立即获取该帧。
+ * 调用方按帧序取出已获取的帧，不需要等待全部帧解码完成即可开始处理。
+ * 每帧的延迟在该帧到达时填入延迟数组，取出某一帧之后即可读取该帧及之前各帧的延迟。
+ * </p>
+ * <p>
+ * 获取窗口限制已获取但尚未取出的帧数：只有帧序小于已取出帧数加窗口大小的帧才开始获取，
+ * 调用方处理较慢时获取帧的线程等待，已解码的帧不会随帧数增加而堆积在内存中。
+ * </p>
+ * <p>
+ * 解码失败或连接断开时尚未到达的帧都以该异常结束。帧流使用完毕后必须调用close释放资源。
+ * </p>
+ *
+ * @author doreamr233
+ */
+public class WebpFrameStream implements AutoCloseable {
+
+    private final CompletableFuture<Void> header = new CompletableFuture<>();
+    private final long timeoutMillis;
+    private final Runnable closeAction;
+    private int frameCount;
+    private int width;
+    private int height;
+    private int[] delays;
+    private CompletableFuture<BufferedImage>[] frames;
+    private int announcedFrames;
+    private final Object fetchLock = new Object();
+    private int fetchWindow;
+    private int takenFrames;
+    private boolean failed;
+    private volatile boolean closed;
+
+    /**
+     * 创建帧流
+     *
+     * @param timeoutMillis 等待头信息和每一帧的最长时间（毫秒）
+     * @param closeAction 关闭帧流时释放获取帧所用资源的操作
+     */
+    WebpFrameStream(long timeoutMillis, Runnable closeAction) {
+        this.timeoutMillis = timeoutMillis;
+        this.closeAction = closeAction;
+    }
+
+    /**
+     * 收到头信息，确定帧数和画布尺寸
+     *
+     * @param frameCount 帧数
+     * @param width 画布宽度
+     * @param height 画布高度
+     * @param fetchWindow 最多已获取但尚未取出的帧数
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void start(int frameCount, int width, int height, int fetchWindow) {
+        if (frameCount <= 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("WebP帧流头信息无效: 帧数=" + frameCount + ", 尺寸=" + width + "x" + height);
+        }
+        this.frameCount = frameCount;
+        this.width = width;
+        this.height = height;
+        this.fetchWindow = Math.max(1, fetchWindow);
+        this.delays = new int[frameCount];
+        this.frames = new CompletableFuture[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = new CompletableFuture<>();
+        }
+        header.complete(null);
+    }
+
+    /**
+     * 是否已收到头信息
+     *
+     * @return 已收到头信息时返回true
+     */
+    boolean isStarted() {
+        return header.isDone() && !header.isCompletedExceptionally();
+    }
+
+    /**
+     * 收到一帧的通知，记录该帧的延迟
+     *
+     * @param frameIndex 帧序号（从0开始）
+     * @param delay 帧延迟（毫秒）
+     * @return 该帧的结果，由获取该帧的线程完成
+     */
+    CompletableFuture<BufferedImage> announce(int frameIndex, int delay) {
+        if (!isStarted()) {
+            throw new IllegalStateException("尚未收到WebP帧流头信息");
+        }
+        if (frameIndex < 0 || frameIndex >= frameCount) {
+            throw new IllegalArgumentException("WebP帧序号超出范围: " + frameIndex);
+        }
+        delays[frameIndex] = delay;
+        announcedFrames++;
+        return frames[frameIndex];
+    }
+
+    /**
+     * 已通知的帧数
+     *
+     * @return 已通知的帧数
+     */
+    int getAnnouncedFrames() {
+        return announcedFrames;
+    }
+
+    /**
+     * 等待该帧进入获取窗口，即之前的帧已取出足够多
+     *
+     * @param frameIndex 帧序号（从0开始）
+     * @return 可以获取该帧时返回true，帧流已失败或关闭时返回false
+     * @throws InterruptedException 如果等待时被中断
+     */
+    boolean awaitFetchTurn(int frameIndex) throws InterruptedException {
+        synchronized (fetchLock) {
+            while (!failed && frameIndex >= takenFrames + fetchWindow) {
+                fetchLock.wait();
+            }
+            return !failed;
+        }
+    }
+
+    /**
+     * 以异常结束头信息和所有尚未到达的帧
+     *
+     * @param cause 失败原因
+     */
+    void fail(Throwable cause) {
+        synchronized (fetchLock) {
+            failed = true;
+            fetchLock.notifyAll();
+        }
+        header.completeExceptionally(cause);
+        CompletableFuture<BufferedImage>[] pending = frames;
+        if (pending != null) {
+            for (CompletableFuture<BufferedImage> frame : pending) {
+                if (frame != null) {
+                    frame.completeExceptionally(cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待头信息
+     *
+     * @throws ServiceException 如果等待超时、被中断或WebP处理服务处理失败
+     */
+    void awaitHeader() {
+        try {
+            header.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("等待WebP帧流头信息时被中断", e);
+        } catch (TimeoutException e) {
+            throw new ServiceException("等待WebP帧流头信息超时", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ServiceException) {
+                throw (ServiceException) cause;
+            }
+            throw new ServiceException("WebP帧流启动失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 按帧序取出一帧，等待该帧到达
+     *
+     * @param frameIndex 帧序号（从0开始）
+     * @return 帧图像
+     * @throws Exception 如果等待超时、被中断或获取该帧失败
+     */
+    public BufferedImage takeFrame(int frameIndex) throws Exception {
+        CompletableFuture<BufferedImage> frame = frames[frameIndex];
+        try {
+            BufferedImage image = frame.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            frames[frameIndex] = null;
+            synchronized (fetchLock) {
+                // 取出一帧后窗口后移，唤醒等待获取后续帧的线程
+                takenFrames = Math.max(takenFrames, frameIndex + 1);
+                fetchLock.notifyAll();
+            }
+            return image;
+        } catch (TimeoutException e) {
+            throw new ServiceException("等待第" + (frameIndex + 1) + "帧超时", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 帧数，收到头信息之前为0
+     *
+     * @return 帧数
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 画布宽度，收到头信息之前为0
+     *
+     * @return 画布宽度（像素）
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 画布高度，收到头信息之前为0
+     *
+     * @return 画布高度（像素）
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 每帧的延迟（毫秒），未到达的帧为0
+     *
+     * @return 延迟数组
+     */
+    public int[] getDelays() {
+        return delays;
+    }
+
+    /**
+     * 关闭帧流，释放获取帧所用的资源
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        fail(new ServiceException("WebP帧流已关闭"));
+        closeAction.run();
+    }
+}
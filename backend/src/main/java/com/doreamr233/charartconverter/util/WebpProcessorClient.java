@@ -19,13 +19,26 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Resource;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * WebP处理服务客户端
@@ -56,6 +69,30 @@ public class WebpProcessorClient {
     @Value("${webp-processor.max-retries}")
     private int maxRetriesCount;
 
+    /**
+     * 是否优先在进程内解码WebP动画，解码失败时才使用WebP处理服务
+     */
+    @Value("${webp-processor.java-decoder-enabled:true}")
+    private boolean javaDecoderEnabled;
+
+    /**
+     * 是否通过一个请求批量获取WebP处理服务解码的帧，失败时回退为逐帧获取
+     */
+    @Value("${webp-processor.bulk-transfer-enabled:true}")
+    private boolean bulkTransferEnabled;
+
+    /**
+     * 与WebP处理服务共享的帧交换目录，为空时不通过共享目录交换帧
+     */
+    @Value("${webp-processor.shared-frames-directory:}")
+    private String sharedFramesDirectory;
+
+    /**
+     * 使用WebP处理服务解码时，是否在服务每解码一帧后立即获取该帧并开始处理
+     */
+    @Value("${webp-processor.frame-streaming-enabled:true}")
+    private boolean frameStreamingEnabled;
+
     /**
      * WebP处理进度服务
      */
@@ -94,6 +131,23 @@ public class WebpProcessorClient {
      * 存储任务ID与临时目录的映射
      */
     private final Map<String, Path> progressTempDirMap = new ConcurrentHashMap<>();
+
+    /**
+     * 存储WebP处理任务ID与逐帧获取帧的会话
+     */
+    private final Map<String, FrameStreamSession> frameStreams = new ConcurrentHashMap<>();
+
+    /**
+     * 逐帧获取帧的会话，保存获取帧所用的线程池和共享帧文件
+     */
+    private static final class FrameStreamSession {
+        private WebpFrameStream stream;
+        private String webPTaskId;
+        private ExecutorService fetchExecutor;
+        private Path rawFile;
+        private FileChannel rawChannel;
+        private boolean closed;
+    }
     
 
 
@@ -132,6 +186,24 @@ public class WebpProcessorClient {
         throw new HttpException("请求超时并达到重试次数上限，无法获取到响应！");
     }
 
+    /**
+     * 是否优先在进程内解码WebP动画
+     *
+     * @return 启用进程内解码返回true
+     */
+    public boolean isJavaDecoderEnabled() {
+        return javaDecoderEnabled;
+    }
+
+    /**
+     * 使用WebP处理服务解码时是否逐帧获取帧
+     *
+     * @return 启用逐帧获取返回true
+     */
+    public boolean isFrameStreamingEnabled() {
+        return frameStreamingEnabled;
+    }
+
     /**
      * 检查WebP处理服务是否可用
      *
@@ -348,6 +420,11 @@ public class WebpProcessorClient {
                 taskCalls.remove(webPTaskId);
                 // 清除心跳计数
                 heartbeatCounters.remove(webPTaskId);
+                // 连接断开后不会再收到帧通知，尚未到达的帧以异常结束
+                FrameStreamSession session = frameStreams.remove(webPTaskId);
+                if (session != null) {
+                    session.stream.fail(new ServiceException("与WebP处理服务的进度连接已断开"));
+                }
             }
         });
         progressThread.setName("SSE-Progress-" + webPTaskId);
@@ -425,8 +502,29 @@ public class WebpProcessorClient {
                         return 0;
                 }
             }
+            // 处理逐帧通知的头信息事件
+            if ("webp_header".equals(eventName)) {
+                FrameStreamSession session = frameStreams.get(webPTaskId);
+                if (session != null) {
+                    startFrameStream(session, new JSONObject(eventData));
+                }
+                return 0;
+            }
+            // 处理逐帧通知的单帧事件
+            if ("webp_frame".equals(eventName)) {
+                FrameStreamSession session = frameStreams.get(webPTaskId);
+                if (session != null) {
+                    announceFrame(session, new JSONObject(eventData));
+                }
+                return 0;
+            }
             // 处理WebP处理进度事件
             if ("webp".equals(eventName)){
+                // 逐帧获取帧时由字符画处理流程报告进度，不再转发解码进度
+                FrameStreamSession session = frameStreams.get(webPTaskId);
+                if (session != null && session.stream.isStarted()) {
+                    return 0;
+                }
                 // 解析JSON数据
                 JSONObject jsonData = new JSONObject(eventData);
 
@@ -529,6 +627,14 @@ public class WebpProcessorClient {
                     if (frameCount > 0) {
                         // 这是WebP解析的结果
                         log.debug("收到WebP解析结果: 帧数={}", frameCount);
+                        // 逐帧获取帧时所有帧已在通知时获取，只需确认没有遗漏的帧
+                        FrameStreamSession session = frameStreams.remove(webPTaskId);
+                        if (session != null) {
+                            finishFrameStream(session, frameCount);
+                            log.debug("WebP逐帧解码完成，主动关闭SSE连接: {}", webPTaskId);
+                            sendCloseMessage(webPTaskId);
+                            return 1;
+                        }
                         try {
                             // 使用parseResponse方法解析响应
                             WebpProcessResult result = parseResponse(eventData, oriTaskId);
@@ -596,12 +702,18 @@ public class WebpProcessorClient {
                 JSONObject jsonData = new JSONObject(eventData);
                 String errorMessage = jsonData.optString("message", "WebP处理失败");
                 
+                // 逐帧获取帧时尚未到达的帧以异常结束
+                FrameStreamSession session = frameStreams.remove(webPTaskId);
+                if (session != null) {
+                    session.stream.fail(new ServiceException("WebP处理失败: " + errorMessage));
+                }
+                
                 // 完成对应的CompletableFuture并传递异常
                 CompletableFuture<WebpProcessResult> errorFuture = pendingFutures.remove(webPTaskId);
                 if (errorFuture != null) {
                     errorFuture.completeExceptionally(new ServiceException("WebP处理失败: " + errorMessage));
                     log.debug("WebP错误已通过CompletableFuture传递");
-                } else {
+                } else if (session == null) {
                     log.warn("未找到对应的CompletableFuture: {}", webPTaskId);
                 }
                 
@@ -677,6 +789,12 @@ public class WebpProcessorClient {
             log.debug("已清理未完成的WebP动画Future: {}", taskId);
         }
         
+        FrameStreamSession frameStream = frameStreams.remove(taskId);
+        if (frameStream != null) {
+            frameStream.stream.fail(new ServiceException("SSE连接已关闭"));
+            log.debug("已清理未完成的WebP帧流: {}", taskId);
+        }
+        
         log.debug("任务{}的SSE连接已完全关闭", taskId);
     }
     
@@ -744,6 +862,19 @@ public class WebpProcessorClient {
      * @throws ServiceException 如果处理过程中发生错误
      */
     public CompletableFuture<WebpProcessResult> processWebpAsync(File webpFile, String oriTaskId) throws ServiceException {
+        return processWebpAsync(webpFile, oriTaskId, null);
+    }
+
+    /**
+     * 异步处理WebP文件
+     *
+     * @param webpFile WebP文件
+     * @param oriTaskId 前端SSE进度跟踪任务ID，如果为null则不进行进度跟踪
+     * @param session 逐帧获取帧的会话，为null时在全部帧解码完成后一次性获取
+     * @return CompletableFuture包装的WebP处理结果，逐帧获取帧时不会完成
+     * @throws ServiceException 如果处理过程中发生错误
+     */
+    private CompletableFuture<WebpProcessResult> processWebpAsync(File webpFile, String oriTaskId, FrameStreamSession session) throws ServiceException {
         CompletableFuture<WebpProcessResult> future = new CompletableFuture<>();
         
         try {
@@ -752,8 +883,13 @@ public class WebpProcessorClient {
             String webPTaskId = createProgressTask();
             log.debug("创建WebP任务的任务ID进行进度跟踪: {}", webPTaskId);
             
-            // 将Future存储到待完成映射中
-            pendingFutures.put(webPTaskId, future);
+            // 将Future或逐帧获取帧的会话存储到待完成映射中
+            if (session != null) {
+                session.webPTaskId = webPTaskId;
+                frameStreams.put(webPTaskId, session);
+            } else {
+                pendingFutures.put(webPTaskId, future);
+            }
             
             if (oriTaskId != null) {
                 // 如果提供了进度服务，则启动SSE监听
@@ -794,9 +930,25 @@ public class WebpProcessorClient {
                     .form("image", webpFile);
 
             request.form("task_id", webPTaskId);
+            if (session != null) {
+                request.form("stream_frames", "true");
+            }
+            
+            // 在共享帧交换目录中放置探测文件，WebP处理服务能看到它时才通过共享目录交换帧
+            Path sharedProbe = createSharedFramesProbe(webPTaskId);
+            if (sharedProbe != null) {
+                request.form("shared_probe", sharedProbe.getFileName().toString());
+            }
             
             // 发送请求并获取响应
-            HttpResponse response = executeWithRetry(request);
+            HttpResponse response;
+            try {
+                response = executeWithRetry(request);
+            } finally {
+                if (sharedProbe != null) {
+                    FileUtil.del(sharedProbe.toFile());
+                }
+            }
             
             if (response.getStatus() != HttpStatus.HTTP_OK) {
                 log.error("WebP处理失败: {} {}", response.getStatus(), response.body());
@@ -878,6 +1030,163 @@ public class WebpProcessorClient {
         }
     }
     
+    /**
+     * 使用WebP处理服务逐帧解码WebP文件
+     * <p>
+     * WebP处理服务每解码一帧即通过SSE通知，收到通知后在后台获取该帧（共享帧文件或HTTP），
+     * 调用方从返回的帧流中按帧序取出帧，解码、传输和后续处理同时进行。
+     * 已获取但尚未取出的帧数受获取窗口限制，调用方处理较慢时暂停获取。
+     * 方法在收到帧数和画布尺寸后返回。
+     * </p>
+     *
+     * @param webpFile WebP文件
+     * @param oriTaskId 前端SSE进度跟踪任务ID，不能为null
+     * @return 帧流，使用完毕后必须关闭
+     * @throws ServiceException 如果处理过程中发生错误
+     */
+    public WebpFrameStream processWebpStreaming(File webpFile, String oriTaskId) throws ServiceException {
+        if (oriTaskId == null || progressService == null) {
+            throw new ServiceException("逐帧获取WebP帧需要进度任务ID");
+        }
+        FrameStreamSession session = new FrameStreamSession();
+        session.stream = new WebpFrameStream(maxTimeout, () -> closeFrameStream(session));
+        try {
+            processWebpAsync(webpFile, oriTaskId, session);
+            session.stream.awaitHeader();
+            return session.stream;
+        } catch (RuntimeException e) {
+            session.stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 收到头信息，准备获取帧所用的线程池和共享帧文件
+     *
+     * @param session 逐帧获取帧的会话
+     * @param header 头信息
+     */
+    private void startFrameStream(FrameStreamSession session, JSONObject header) {
+        synchronized (session) {
+            if (session.closed) {
+                return;
+            }
+            try {
+                int frameCount = header.getInt("frameCount");
+                String rawFrames = header.optString("rawFrames", null);
+                if (rawFrames != null) {
+                    session.rawFile = resolveSharedFramesFile(rawFrames);
+                    session.rawChannel = FileChannel.open(session.rawFile, StandardOpenOption.READ);
+                }
+                int threadCount = parallelConfig != null ? parallelConfig.calculateThreadCount(frameCount) : Math.max(1, Math.min(frameCount, 4));
+                AtomicInteger threadIndex = new AtomicInteger();
+                session.fetchExecutor = Executors.newFixedThreadPool(Math.max(1, threadCount), r -> {
+                    Thread thread = new Thread(r, "webp-frame-fetch-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                // 获取窗口与帧处理流水线的窗口一致，为帧处理线程数的2倍
+                session.stream.start(frameCount, header.getInt("width"), header.getInt("height"), Math.max(1, threadCount) * 2);
+                log.debug("WebP逐帧解码开始: 任务={}, 帧数={}, 共享帧文件={}", session.webPTaskId, frameCount, rawFrames);
+            } catch (IOException | RuntimeException e) {
+                log.error("WebP帧流启动失败", e);
+                session.stream.fail(e);
+            }
+        }
+    }
+
+    /**
+     * 收到一帧的通知，该帧进入获取窗口后在后台获取
+     *
+     * @param session 逐帧获取帧的会话
+     * @param frameData 帧通知数据
+     */
+    private void announceFrame(FrameStreamSession session, JSONObject frameData) {
+        synchronized (session) {
+            if (session.closed || !session.stream.isStarted()) {
+                return;
+            }
+            int frameIndex = frameData.getInt("index");
+            String framePath = frameData.optString("frame", null);
+            CompletableFuture<BufferedImage> frame = session.stream.announce(frameIndex, frameData.getInt("delay"));
+            FileChannel rawChannel = session.rawChannel;
+            WebpFrameStream stream = session.stream;
+            session.fetchExecutor.execute(() -> {
+                try {
+                    if (!stream.awaitFetchTurn(frameIndex)) {
+                        return;
+                    }
+                    BufferedImage image = rawChannel != null
+                            ? readRawFrame(rawChannel, frameIndex, stream.getWidth(), stream.getHeight())
+                            : fetchFrame(framePath);
+                    if (image == null) {
+                        throw new IOException("第" + (frameIndex + 1) + "帧图像无法解码");
+                    }
+                    frame.complete(image);
+                } catch (Exception e) {
+                    frame.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * WebP处理服务解码完成，确认所有帧都已通知
+     *
+     * @param session 逐帧获取帧的会话
+     * @param frameCount WebP处理服务报告的帧数
+     */
+    private void finishFrameStream(FrameStreamSession session, int frameCount) {
+        synchronized (session) {
+            int announced = session.stream.getAnnouncedFrames();
+            if (!session.stream.isStarted() || announced != frameCount || frameCount != session.stream.getFrameCount()) {
+                session.stream.fail(new ServiceException("WebP处理服务只通知了" + announced + "/" + frameCount + "帧"));
+            }
+            // 已提交的获取任务继续执行，全部完成后线程退出
+            if (session.fetchExecutor != null) {
+                session.fetchExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * 关闭逐帧获取帧的会话，停止获取帧并删除共享帧文件
+     *
+     * @param session 逐帧获取帧的会话
+     */
+    private void closeFrameStream(FrameStreamSession session) {
+        boolean abort;
+        synchronized (session) {
+            session.closed = true;
+            // 已收到全部帧通知时由解码结果事件结束连接，否则主动断开，不再接收帧通知
+            boolean allAnnounced = session.stream.isStarted()
+                    && session.stream.getAnnouncedFrames() >= session.stream.getFrameCount();
+            abort = session.webPTaskId != null && !allAnnounced && frameStreams.remove(session.webPTaskId, session);
+            if (session.fetchExecutor != null) {
+                session.fetchExecutor.shutdownNow();
+            }
+            if (session.rawChannel != null) {
+                try {
+                    session.rawChannel.close();
+                } catch (IOException e) {
+                    log.debug("关闭共享帧文件失败: {}", e.getMessage());
+                }
+            }
+            if (session.rawFile != null) {
+                try {
+                    Files.deleteIfExists(session.rawFile);
+                } catch (IOException e) {
+                    log.debug("共享帧文件暂时无法删除: {}", session.rawFile);
+                }
+            }
+        }
+        if (abort) {
+            log.debug("WebP帧流提前关闭，主动关闭SSE连接: {}", session.webPTaskId);
+            sendCloseMessage(session.webPTaskId, "ERROR_OCCURRED");
+            closeProgressConnection(session.webPTaskId);
+        }
+    }
+
     /**
      * 解析服务响应
      *
@@ -901,34 +1210,26 @@ public class WebpProcessorClient {
                 delays[i] = delaysArray.getInt(i);
             }
             
-            // 提取帧路径并加载图像
-            BufferedImage[] frames = new BufferedImage[frameCount];
-            
             // 更新进度信息
             if (oriTaskId != null && progressService != null) {
                 progressService.updateProgress(oriTaskId, 38, "开始获取帧图像", "图像获取", 0, frameCount, false);
             }
-            
-            for (int i = 0; i < frameCount; i++) {
-                // 更新获取图片阶段的进度
-                if (oriTaskId != null && progressService != null) {
-                    double progress = 38 + ((i+1)  / (double)frameCount * (40-38));
-                    progressService.updateProgress(oriTaskId, progress, String.format("正在获取第 %d/%d 帧图像", i+1, frameCount), "图像获取", i+1, frameCount, false);
-                }
-                
-                String framePath = framesArray.getString(i);
-                // 构建图像URL
-                String frameUrl = serviceBaseUrl + "/api/get-image/" + new File(framePath).getPath();
-                // 使用HttpUtil获取图像
-                HttpResponse imageResponse = executeWithRetry(HttpUtil.createGet(frameUrl).timeout(maxTimeout));
-                if (imageResponse.getStatus() != HttpStatus.HTTP_OK) {
-                    throw new ServiceException("获取帧图像失败: " + imageResponse.getStatus());
+
+            // 提取帧路径并加载图像，优先读取共享帧文件，其次批量获取
+            BufferedImage[] frames = null;
+            if (jsonResponse.optString("rawFrames", null) != null) {
+                frames = readSharedFrames(jsonResponse.getString("rawFrames"), jsonResponse.getInt("width"),
+                        jsonResponse.getInt("height"), frameCount, oriTaskId);
+            } else if (bulkTransferEnabled) {
+                try {
+                    frames = fetchFramesInBulk(framesArray, frameCount, oriTaskId);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("批量获取帧图像失败，改为逐帧获取: {}", e.getMessage());
                 }
-                // 将响应体转换为BufferedImage
-                byte[] imageBytes = imageResponse.bodyBytes();
-                frames[i] = ImageIO.read(new ByteArrayInputStream(imageBytes));
-                
-                log.debug("已获取第 {}/{} 帧图像", i+1, frameCount);
+            }
+            
+            if (frames == null) {
+                frames = fetchFramesOneByOne(framesArray, frameCount, oriTaskId);
             }
             
             // 更新最终进度
@@ -950,6 +1251,238 @@ public class WebpProcessorClient {
         }
     }
 
+    /**
+     * 逐帧获取帧图像
+     *
+     * @param framesArray 帧文件相对路径数组
+     * @param frameCount 帧数
+     * @param oriTaskId 前端SSE任务ID
+     * @return 按帧序排列的帧图像
+     * @throws IOException 如果解码失败
+     */
+    private BufferedImage[] fetchFramesOneByOne(JSONArray framesArray, int frameCount, String oriTaskId) throws IOException {
+        BufferedImage[] frames = new BufferedImage[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            // 更新获取图片阶段的进度
+            updateFrameFetchProgress(oriTaskId, i + 1, frameCount);
+            
+            frames[i] = fetchFrame(framesArray.getString(i));
+            
+            log.debug("已获取第 {}/{} 帧图像", i+1, frameCount);
+        }
+        return frames;
+    }
+
+    /**
+     * 获取一帧图像
+     *
+     * @param framePath 帧文件相对路径
+     * @return 帧图像，无法解码时返回null
+     * @throws IOException 如果解码失败
+     */
+    private BufferedImage fetchFrame(String framePath) throws IOException {
+        // 构建图像URL
+        String frameUrl = serviceBaseUrl + "/api/get-image/" + new File(framePath).getPath();
+        // 使用HttpUtil获取图像
+        HttpResponse imageResponse = executeWithRetry(HttpUtil.createGet(frameUrl).timeout(maxTimeout));
+        if (imageResponse.getStatus() != HttpStatus.HTTP_OK) {
+            throw new ServiceException("获取帧图像失败: " + imageResponse.getStatus());
+        }
+        // 将响应体转换为BufferedImage
+        byte[] imageBytes = imageResponse.bodyBytes();
+        return ImageIO.read(new ByteArrayInputStream(imageBytes));
+    }
+
+    /**
+     * 通过一个请求批量获取帧图像
+     * <p>
+     * WebP处理服务在一个响应中按帧序流式返回所有帧的PNG数据，每帧为4字节大端序长度加文件内容。
+     * 每收到一帧即交给解码线程解码，接收与解码同时进行，不再为每帧单独发起请求。
+     * 请求失败或数据不完整时服务端的帧文件仍保留，调用方可以改为逐帧获取。
+     * </p>
+     *
+     * @param framesArray 帧文件相对路径数组
+     * @param frameCount 帧数
+     * @param oriTaskId 前端SSE任务ID
+     * @return 按帧序排列的帧图像
+     * @throws IOException 如果请求失败、数据不完整或解码失败
+     */
+    private BufferedImage[] fetchFramesInBulk(JSONArray framesArray, int frameCount, String oriTaskId) throws IOException {
+        int threadCount = parallelConfig != null ? parallelConfig.calculateThreadCount(frameCount) : Math.max(1, Math.min(frameCount, 4));
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService decodeExecutor = Executors.newFixedThreadPool(Math.max(1, threadCount), r -> {
+            Thread thread = new Thread(r, "webp-frame-decode-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpRequest request = HttpUtil.createPost(serviceBaseUrl + "/api/get-images")
+                .form("file_paths", framesArray.toString())
+                .timeout(maxTimeout);
+        try (HttpResponse response = request.executeAsync()) {
+            if (!response.isOk()) {
+                throw new IOException("响应状态码: " + response.getStatus());
+            }
+            List<Future<BufferedImage>> decodedFrames = new ArrayList<>(frameCount);
+            DataInputStream input = new DataInputStream(new BufferedInputStream(response.bodyStream()));
+            for (int i = 0; i < frameCount; i++) {
+                byte[] imageBytes;
+                try {
+                    int length = input.readInt();
+                    if (length < 0) {
+                        throw new IOException("第" + (i + 1) + "帧数据长度错误");
+                    }
+                    imageBytes = new byte[length];
+                    input.readFully(imageBytes);
+                } catch (EOFException e) {
+                    throw new IOException("第" + (i + 1) + "帧数据不完整", e);
+                }
+                decodedFrames.add(decodeExecutor.submit(() -> ImageIO.read(new ByteArrayInputStream(imageBytes))));
+                updateFrameFetchProgress(oriTaskId, i + 1, frameCount);
+            }
+
+            BufferedImage[] frames = new BufferedImage[frameCount];
+            for (int i = 0; i < frameCount; i++) {
+                frames[i] = decodedFrames.get(i).get();
+                if (frames[i] == null) {
+                    throw new IOException("第" + (i + 1) + "帧图像无法解码");
+                }
+            }
+            log.debug("已批量获取{}帧图像", frameCount);
+            return frames;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("批量获取帧图像被中断", e);
+        } catch (ExecutionException e) {
+            throw new IOException("帧图像解码失败: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            decodeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在共享帧交换目录中创建探测文件
+     * <p>
+     * WebP处理服务在接收请求时检查该文件是否存在，以确认两个服务挂载了同一目录。
+     * 调用方在请求返回后删除探测文件。
+     * </p>
+     *
+     * @param webPTaskId WebP处理任务ID
+     * @return 探测文件路径，未配置共享帧交换目录或创建失败时返回null
+     */
+    private Path createSharedFramesProbe(String webPTaskId) {
+        if (sharedFramesDirectory == null || sharedFramesDirectory.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            Path directory = Paths.get(sharedFramesDirectory.trim());
+            Files.createDirectories(directory);
+            return Files.createFile(directory.resolve("probe_" + webPTaskId));
+        } catch (IOException e) {
+            log.warn("无法在共享帧交换目录中创建探测文件，改为通过HTTP传输帧: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从共享帧交换目录读取原始帧
+     * <p>
+     * WebP处理服务将所有帧按帧序以原始RGB数据（每像素3字节）写入共享目录中的同一个文件，
+     * 这里逐帧将文件映射到内存并直接填充图像像素，不经过PNG编解码和HTTP传输。
+     * 读取完成后删除该文件。
+     * </p>
+     *
+     * @param fileName 共享帧文件名
+     * @param width 帧宽度
+     * @param height 帧高度
+     * @param frameCount 帧数
+     * @param oriTaskId 前端SSE任务ID
+     * @return 按帧序排列的帧图像
+     * @throws IOException 如果文件不存在、不在共享目录中或数据不完整
+     */
+    private BufferedImage[] readSharedFrames(String fileName, int width, int height, int frameCount, String oriTaskId) throws IOException {
+        Path rawFile = resolveSharedFramesFile(fileName);
+        try (FileChannel channel = FileChannel.open(rawFile, StandardOpenOption.READ)) {
+            if (channel.size() < (long) width * height * 3 * frameCount) {
+                throw new IOException("共享帧文件数据不完整: " + channel.size() + " 字节");
+            }
+            BufferedImage[] frames = new BufferedImage[frameCount];
+            for (int i = 0; i < frameCount; i++) {
+                frames[i] = readRawFrame(channel, i, width, height);
+                updateFrameFetchProgress(oriTaskId, i + 1, frameCount);
+            }
+            log.debug("已从共享帧文件读取{}帧图像: {}", frameCount, rawFile);
+            return frames;
+        } finally {
+            // 映射未释放时部分系统无法删除文件，此时留给WebP处理服务的临时文件清理任务处理
+            try {
+                Files.deleteIfExists(rawFile);
+            } catch (IOException e) {
+                log.debug("共享帧文件暂时无法删除: {}", rawFile);
+            }
+        }
+    }
+
+    /**
+     * 解析共享帧交换目录中的共享帧文件路径
+     *
+     * @param fileName 共享帧文件名
+     * @return 共享帧文件路径
+     * @throws IOException 如果文件不在共享帧交换目录中
+     */
+    private Path resolveSharedFramesFile(String fileName) throws IOException {
+        if (sharedFramesDirectory == null || sharedFramesDirectory.trim().isEmpty()) {
+            throw new IOException("未配置共享帧交换目录");
+        }
+        Path directory = Paths.get(sharedFramesDirectory.trim()).toAbsolutePath().normalize();
+        Path rawFile = directory.resolve(fileName).normalize();
+        if (!directory.equals(rawFile.getParent())) {
+            throw new IOException("共享帧文件路径无效: " + fileName);
+        }
+        return rawFile;
+    }
+
+    /**
+     * 将共享帧文件中的一帧映射到内存并转换为图像
+     *
+     * @param channel 共享帧文件
+     * @param frameIndex 帧序号（从0开始）
+     * @param width 帧宽度
+     * @param height 帧高度
+     * @return 帧图像
+     * @throws IOException 如果读取失败
+     */
+    private static BufferedImage readRawFrame(FileChannel channel, int frameIndex, int width, int height) throws IOException {
+        long frameBytes = (long) width * height * 3;
+        if (channel.size() < frameBytes * (frameIndex + 1)) {
+            throw new IOException("共享帧文件数据不完整: " + channel.size() + " 字节");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, frameIndex * frameBytes, frameBytes);
+        BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        byte[] row = new byte[width * 3];
+        for (int y = 0, p = 0; y < height; y++) {
+            buffer.get(row);
+            for (int x = 0; x < row.length; x += 3) {
+                pixels[p++] = (row[x] & 0xFF) << 16 | (row[x + 1] & 0xFF) << 8 | (row[x + 2] & 0xFF);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * 更新获取帧图像阶段的进度（38%-40%）
+     *
+     * @param oriTaskId 前端SSE任务ID
+     * @param fetchedFrames 已获取的帧数
+     * @param frameCount 总帧数
+     */
+    private void updateFrameFetchProgress(String oriTaskId, int fetchedFrames, int frameCount) {
+        if (oriTaskId != null && progressService != null) {
+            double progress = 38 + (fetchedFrames / (double) frameCount * (40 - 38));
+            progressService.updateProgress(oriTaskId, progress, String.format("正在获取第 %d/%d 帧图像", fetchedFrames, frameCount), "图像获取", fetchedFrames, frameCount, false);
+        }
+    }
+
 
     /**
      * 从临时文件异步创建WebP动画
@@ -958,14 +1491,16 @@ public class WebpProcessorClient {
      * 支持进度跟踪，可以通过任务ID监控处理进度。
      * 此方法从临时文件读取图像帧，而不是直接使用内存中的BufferedImage对象，
      * 有助于减少内存使用。
+     * 指定帧偏移量时，第一帧之后的帧文件只包含相对上一帧发生变化的区域，由WebP处理服务按偏移量叠加到上一帧上合成完整帧。
      * </p>
      *
      * @param framePaths 帧文件路径数组
      * @param delays 延迟数组（毫秒）
+     * @param frameOffsets 每帧在画布上的位置（{x, y}），为null时每个帧文件都是完整帧
      * @param oriTaskId 前端SSE进度跟踪任务ID，如果为null则不进行进度跟踪
      * @return CompletableFuture包装的临时WebP文件
      */
-    public CompletableFuture<File> createWebpAnimationFromFilesAsync(Path[] framePaths, int[] delays, String oriTaskId) {
+    public CompletableFuture<File> createWebpAnimationFromFilesAsync(Path[] framePaths, int[] delays, int[][] frameOffsets, String oriTaskId) {
         CompletableFuture<File> future = new CompletableFuture<>();
         
         try {
@@ -1044,6 +1579,15 @@ public class WebpProcessorClient {
             }
             request.form("frame_format", frameFormatArray.toString());
             request.form("frame_paths", framePathsArray.toString());
+
+            // 添加局部帧的偏移量
+            if (frameOffsets != null) {
+                JSONArray frameOffsetsArray = new JSONArray();
+                for (int[] offset : frameOffsets) {
+                    frameOffsetsArray.put(new JSONArray().put(offset[0]).put(offset[1]));
+                }
+                request.form("frame_offsets", frameOffsetsArray.toString());
+            }
             
             log.debug("已向Webp处理器发送创建WebP动画请求。任务ID {}", webPTaskId);
             HttpResponse response = executeWithRetry(request);
@@ -1089,13 +1633,14 @@ public class WebpProcessorClient {
      *
      * @param framePaths 帧文件路径数组
      * @param delays 延迟数组（毫秒）
+     * @param frameOffsets 每帧在画布上的位置（{x, y}），为null时每个帧文件都是完整帧
      * @param oriTaskId 前端SSE进度跟踪任务ID，如果为null则不进行进度跟踪
      * @return 临时WebP文件
      * @throws ServiceException 如果创建过程中发生错误
      */
-    public File createWebpAnimationFromFiles(Path[] framePaths, int[] delays, String oriTaskId) {
+    public File createWebpAnimationFromFiles(Path[] framePaths, int[] delays, int[][] frameOffsets, String oriTaskId) {
         try {
-            return createWebpAnimationFromFilesAsync(framePaths, delays, oriTaskId).get();
+            return createWebpAnimationFromFilesAsync(framePaths, delays, frameOffsets, oriTaskId).get();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new ServiceException("WebP动画创建被中断", e);
@@ -0,0 +1,111 @@
+package com.doreamr233.charartconverter.util;
+
+import com.doreamr233.charartconverter.config.ParallelProcessingConfig;
+import com.doreamr233.charartconverter.config.RenderConfig;
+import com.doreamr233.charartconverter.model.CharGrid;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 字符画处理器渲染测试类
+ * <p>
+ * 同一字符网格分别经字形图集和逐字符drawString渲染，在灰度、彩色和彩色背景模式下两者的像素应完全一致。
+ * drawString渲染关闭同色游程合并，游程合并会量化单元格颜色，不要求与字形图集逐像素一致。
+ * 字形图集分条并行渲染的结果也应与顺序渲染和drawString渲染完全一致。
+ * </p>
+ *
+ * @author doreamr233
+ */
+class CharArtProcessorTest {
+
+    private static final String[] COLOR_MODES = {"grayscale", "color", "colorBackground"};
+
+    @BeforeEach
+    void setUp() {
+        // 降低分条阈值，使测试用的小网格也会分条并行渲染
+        ParallelProcessingConfig parallelConfig = new ParallelProcessingConfig();
+        parallelConfig.setMinThreads(4);
+        parallelConfig.setStripParallelMinChars(1000);
+        CharArtProcessor.setParallelConfig(parallelConfig);
+    }
+
+    @AfterEach
+    void tearDown() {
+        CharArtProcessor.setParallelConfig(null);
+        CharArtProcessor.setRenderConfig(null);
+    }
+
+    @Test
+    void testRenderCharImage_GlyphAtlasMatchesDrawString() {
+        BufferedImage image = createImage(300, 200);
+        for (int densityLevel = 0; densityLevel < 3; densityLevel++) {
+            CharGrid grid = createGrid(image, densityLevel);
+            for (String colorMode : COLOR_MODES) {
+                assertArrayEquals(render(grid, colorMode, image, false, false), render(grid, colorMode, image, true, false),
+                        "密度" + densityLevel + " " + colorMode + ": 字形图集渲染应与drawString一致");
+            }
+        }
+    }
+
+    @Test
+    void testRenderCharImage_StripsMatchSerialRendering() {
+        ForkJoinPool bandPool = ReflectionTestUtils.invokeMethod(CharArtProcessor.class, "getBandPool");
+        assumeTrue(bandPool.getParallelism() > 1, "分带线程池只有一个线程，不会分条并行渲染");
+
+        BufferedImage image = createImage(300, 200);
+        for (int densityLevel = 0; densityLevel < 3; densityLevel++) {
+            CharGrid grid = createGrid(image, densityLevel);
+            assertTrue(grid.getWidth() * grid.getHeight() >= 1000, "网格应达到分条并行渲染的阈值");
+            for (String colorMode : COLOR_MODES) {
+                String message = "密度" + densityLevel + " " + colorMode;
+                int[] strips = render(grid, colorMode, image, true, true);
+                assertArrayEquals(render(grid, colorMode, image, true, false), strips, message + ": 分条并行渲染应与顺序渲染一致");
+                assertArrayEquals(render(grid, colorMode, image, false, false), strips, message + ": 分条并行渲染应与drawString一致");
+            }
+        }
+    }
+
+    /**
+     * 按指定的渲染方式渲染字符网格，返回图像的RGB像素
+     */
+    private static int[] render(CharGrid grid, String colorMode, BufferedImage originalImage,
+                                boolean glyphAtlasEnabled, boolean allowStripParallel) {
+        RenderConfig renderConfig = new RenderConfig();
+        renderConfig.setGlyphAtlasEnabled(glyphAtlasEnabled);
+        renderConfig.setRunBatchingEnabled(false);
+        CharArtProcessor.setRenderConfig(renderConfig);
+
+        BufferedImage result = ReflectionTestUtils.invokeMethod(CharArtProcessor.class, "renderCharImage",
+                grid, colorMode, originalImage, null, 0, 1, 0.0, 100.0, "渲染", null, false, allowStripParallel, null);
+        assertNotNull(result);
+        return result.getRGB(0, 0, result.getWidth(), result.getHeight(), null, 0, result.getWidth());
+    }
+
+    private static CharGrid createGrid(BufferedImage image, int densityLevel) {
+        return CharArtProcessor.convertImageToCharGrid(image, densityLevel, false, true, null, 1,
+                0, 1, 1, 0, 100, "生成字符画", null, false);
+    }
+
+    /**
+     * 创建渐变加噪声的测试图像，使网格包含字符集中的各种字符和颜色
+     */
+    private static BufferedImage createImage(int width, int height) {
+        Random random = new Random(3);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / (width - 1)) << 16 | (y * 255 / (height - 1)) << 8 | random.nextInt(256));
+            }
+        }
+        return image;
+    }
+}
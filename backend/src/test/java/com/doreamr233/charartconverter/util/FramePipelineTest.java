@@ -0,0 +1,182 @@
+package com.doreamr233.charartconverter.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 动画帧流水线测试类
+ * <p>
+ * 测试多阶段并行处理时按帧序取出结果、窗口和有界队列对源阶段的背压、
+ * 源阶段和处理阶段失败时异常的传递，以及关闭后线程的释放。
+ * </p>
+ *
+ * @author doreamr233
+ */
+class FramePipelineTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    void testTake_ReturnsFramesInOrder() throws Exception {
+        int frameCount = 200;
+        try (FramePipeline<int[]> pipeline = new FramePipeline<>("pipeline-order", frameCount, 8, 2)) {
+            // 处理时间随帧变化，后面的帧可能先于前面的帧完成
+            pipeline.addStage("加一", 3, (i, frame) -> {
+                Thread.sleep(i * 7 % 3);
+                frame[1] += 1;
+            });
+            pipeline.addStage("乘二", 4, (i, frame) -> {
+                Thread.sleep(i * 5 % 4);
+                frame[1] *= 2;
+            });
+            pipeline.start("源", i -> new int[]{i, i});
+
+            for (int i = 0; i < frameCount; i++) {
+                int[] frame = pipeline.take(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                assertEquals(i, frame[0], "帧应按序取出");
+                assertEquals((i + 1) * 2, frame[1], "第" + (i + 1) + "帧应依次经过所有阶段");
+            }
+            assertThrows(IllegalStateException.class, () -> pipeline.take(1, TimeUnit.SECONDS), "所有帧取出后不能再取");
+        }
+    }
+
+    @Test
+    void testWindow_LimitsFramesAhead() throws Exception {
+        int window = 3;
+        AtomicInteger produced = new AtomicInteger();
+        try (FramePipeline<int[]> pipeline = new FramePipeline<>("pipeline-window", 50, window, 4)) {
+            pipeline.addStage("处理", 2, (i, frame) -> { });
+            pipeline.start("源", i -> {
+                produced.incrementAndGet();
+                return new int[]{i};
+            });
+
+            waitUntil(() -> produced.get() >= window);
+            Thread.sleep(200);
+            assertEquals(window, produced.get(), "未取出的帧数不应超过窗口大小");
+
+            pipeline.take(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            waitUntil(() -> produced.get() >= window + 1);
+            Thread.sleep(200);
+            assertEquals(window + 1, produced.get(), "取出一帧后源阶段只应再产生一帧");
+        }
+    }
+
+    @Test
+    void testQueue_BlocksSourceWhenStageIsSlow() throws Exception {
+        int frameCount = 40;
+        int queueCapacity = 2;
+        AtomicInteger produced = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        try (FramePipeline<int[]> pipeline = new FramePipeline<>("pipeline-queue", frameCount, frameCount, queueCapacity)) {
+            pipeline.addStage("阻塞", 1, (i, frame) -> release.await());
+            pipeline.start("源", i -> {
+                produced.incrementAndGet();
+                return new int[]{i};
+            });
+
+            Thread.sleep(300);
+            // 阶段线程处理中的一帧、队列中的帧和源阶段阻塞在写入队列上的一帧
+            assertTrue(produced.get() <= 1 + queueCapacity + 1,
+                    "下游阶段阻塞时源阶段应停止产生帧，实际已产生" + produced.get() + "帧");
+
+            release.countDown();
+            for (int i = 0; i < frameCount; i++) {
+                assertEquals(i, pipeline.take(TIMEOUT_SECONDS, TimeUnit.SECONDS)[0]);
+            }
+        }
+    }
+
+    @Test
+    void testTake_WhenStageFails() throws Exception {
+        int frameCount = 100;
+        try (FramePipeline<int[]> pipeline = new FramePipeline<>("pipeline-stage-failure", frameCount, 8, 2)) {
+            pipeline.addStage("渲染", 3, (i, frame) -> {
+                if (i == 37) {
+                    throw new IllegalStateException("渲染出错");
+                }
+            });
+            pipeline.start("源", i -> new int[]{i});
+
+            int taken = 0;
+            ExecutionException error = null;
+            try {
+                while (taken < frameCount) {
+                    pipeline.take(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                    taken++;
+                }
+            } catch (ExecutionException e) {
+                error = e;
+            }
+
+            assertNotNull(error, "阶段失败时应抛出ExecutionException");
+            assertTrue(taken <= 37, "失败帧及之后的帧不应被取出");
+            assertTrue(error.getMessage().contains("第38帧渲染失败"), "异常信息应包含失败的帧和阶段: " + error.getMessage());
+            assertTrue(error.getCause() instanceof IllegalStateException, "异常原因应为阶段抛出的异常");
+        }
+    }
+
+    @Test
+    void testTake_WhenSourceFails() throws Exception {
+        try (FramePipeline<int[]> pipeline = new FramePipeline<>("pipeline-source-failure", 10, 4, 2)) {
+            pipeline.addStage("处理", 2, (i, frame) -> { });
+            pipeline.start("解码", i -> {
+                if (i == 3) {
+                    throw new IOException("数据损坏");
+                }
+                return new int[]{i};
+            });
+
+            // 流水线中止后尚未取出的帧都以该异常结束，失败帧之前的帧也可能取不到
+            int taken = 0;
+            ExecutionException error = null;
+            try {
+                while (taken < 10) {
+                    assertEquals(taken, pipeline.take(TIMEOUT_SECONDS, TimeUnit.SECONDS)[0]);
+                    taken++;
+                }
+            } catch (ExecutionException e) {
+                error = e;
+            }
+
+            assertNotNull(error, "源阶段失败时应抛出ExecutionException");
+            assertTrue(taken <= 3, "失败帧及之后的帧不应被取出");
+            assertTrue(error.getMessage().contains("第4帧解码失败"), "异常信息应包含失败的帧和阶段: " + error.getMessage());
+            assertTrue(error.getCause() instanceof IOException, "异常原因应为源阶段抛出的异常");
+        }
+    }
+
+    @Test
+    void testClose_StopsThreads() throws Exception {
+        FramePipeline<int[]> pipeline = new FramePipeline<>("pipeline-close", 100, 2, 1);
+        pipeline.addStage("处理", 3, (i, frame) -> { });
+        pipeline.start("源", i -> new int[]{i});
+        pipeline.take(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        pipeline.close();
+
+        waitUntil(() -> Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(thread -> thread.getName().startsWith("pipeline-close-")));
+    }
+
+    /**
+     * 等待条件成立，超时则测试失败
+     */
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("等待条件成立超时");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.doreamr233.charartconverter.util;
+
+import com.madgag.gif.fmsware.AnimatedGifEncoder;
+import com.madgag.gif.fmsware.GifDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按需解码的GIF动画读取器测试类
+ * <p>
+ * 以GifDecoder的解码结果为基准，验证读取器逐帧合成的画面、帧延迟和循环次数与其一致。
+ * 测试文件由随机参数拼装，覆盖各种处置方式、透明色、超出画布的局部帧、全局/局部颜色表、
+ * 交错标志、注释扩展以及省略图形控制扩展的帧。
+ * </p>
+ *
+ * @author doreamr233
+ */
+class GifStreamReaderTest {
+
+    @Test
+    void testNextFrame_MatchesGifDecoder() throws IOException {
+        for (int seed = 0; seed < 40; seed++) {
+            byte[] gif = createRandomGif(new Random(seed));
+            assertSameFrames(gif, "随机文件 seed=" + seed);
+        }
+    }
+
+    @Test
+    void testNextFrame_AnimatedGifEncoderOutput() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        encoder.start(out);
+        encoder.setRepeat(3);
+        for (int frame = 0; frame < 6; frame++) {
+            encoder.setDelay(40 + frame * 20);
+            BufferedImage image = new BufferedImage(80, 50, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.setRGB(x, y, ((x + frame * 9) & 0xFF) << 16 | (y * 5 & 0xFF) << 8 | (x * y & 0xFF));
+                }
+            }
+            encoder.addFrame(image);
+        }
+        encoder.finish();
+
+        GifStreamReader reader = GifStreamReader.open(out.toByteArray());
+        assertEquals(80, reader.getWidth());
+        assertEquals(50, reader.getHeight());
+        assertEquals(6, reader.getFrameCount());
+        assertEquals(3, reader.getLoopCount());
+        assertSameFrames(out.toByteArray(), "AnimatedGifEncoder输出");
+    }
+
+    @Test
+    void testOpen_WithInvalidData() {
+        assertThrows(IOException.class, () -> GifStreamReader.open("not a gif".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * 逐帧比较读取器与GifDecoder的结果
+     */
+    private static void assertSameFrames(byte[] gif, String message) throws IOException {
+        GifDecoder decoder = new GifDecoder();
+        assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(gif)), message + ": GifDecoder解码失败");
+        GifStreamReader reader = GifStreamReader.open(gif);
+
+        assertEquals(decoder.getFrameCount(), reader.getFrameCount(), message + ": 帧数");
+        assertEquals(decoder.getLoopCount(), reader.getLoopCount(), message + ": 循环次数");
+        for (int i = 0; i < decoder.getFrameCount(); i++) {
+            String frameMessage = message + " 第" + (i + 1) + "帧";
+            assertTrue(reader.hasNextFrame(), frameMessage + ": 应有下一帧");
+            BufferedImage expected = decoder.getFrame(i);
+            BufferedImage actual = reader.nextFrame();
+            assertEquals(decoder.getDelay(i), reader.getDelay(i), frameMessage + ": 延迟");
+            assertEquals(expected.getWidth(), actual.getWidth(), frameMessage + ": 宽度");
+            assertEquals(expected.getHeight(), actual.getHeight(), frameMessage + ": 高度");
+            int width = expected.getWidth();
+            int height = expected.getHeight();
+            assertArrayEquals(expected.getRGB(0, 0, width, height, null, 0, width),
+                    actual.getRGB(0, 0, width, height, null, 0, width), frameMessage + ": 像素");
+        }
+        assertFalse(reader.hasNextFrame(), message + ": 不应有多余的帧");
+    }
+
+    /**
+     * 拼装一个随机GIF文件
+     * <p>
+     * 帧数据块由{@link GifStreamWriter#encodeFrame(BufferedImage, int)}生成，
+     * 再改写其中的处置方式、透明色、位置和交错标志，或去掉局部颜色表和图形控制扩展。
+     * </p>
+     */
+    private static byte[] createRandomGif(Random random) throws IOException {
+        int canvasWidth = 40 + random.nextInt(60);
+        int canvasHeight = 30 + random.nextInt(50);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("GIF89a".getBytes(StandardCharsets.US_ASCII));
+        writeShort(out, canvasWidth);
+        writeShort(out, canvasHeight);
+        boolean globalColorTable = random.nextInt(4) != 0;
+        out.write(globalColorTable ? 0xF7 : 0x70);
+        out.write(random.nextInt(256));
+        out.write(0);
+        if (globalColorTable) {
+            for (int i = 0; i < 768; i++) {
+                out.write(random.nextInt(256));
+            }
+        }
+        if (random.nextBoolean()) {
+            out.write(new byte[]{0x21, (byte) 0xFF, 11});
+            out.write("NETSCAPE2.0".getBytes(StandardCharsets.US_ASCII));
+            out.write(new byte[]{3, 1, (byte) random.nextInt(3), 0, 0});
+        }
+
+        int frameCount = 2 + random.nextInt(8);
+        for (int frame = 0; frame < frameCount; frame++) {
+            int width = 1 + random.nextInt(canvasWidth);
+            int height = 1 + random.nextInt(canvasHeight);
+            // 局部帧可以略微超出画布
+            int left = random.nextInt(canvasWidth - width + 6);
+            int top = random.nextInt(canvasHeight - height + 6);
+
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            int[] colors = new int[1 + random.nextInt(6)];
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = random.nextInt(0x1000000);
+            }
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    image.setRGB(x, y, colors[(x / 3 + y / 2 + random.nextInt(2)) % colors.length]);
+                }
+            }
+
+            byte[] block = GifStreamWriter.encodeFrame(image, 10 * random.nextInt(20));
+            // 图形控制扩展：处置方式0-3，部分帧带透明色
+            block[3] = (byte) (random.nextInt(4) << 2 | (random.nextInt(3) == 0 ? 1 : 0));
+            block[6] = (byte) random.nextInt(256);
+            // 图像描述符：位置和交错标志
+            block[9] = (byte) left;
+            block[10] = 0;
+            block[11] = (byte) top;
+            block[12] = 0;
+            if (random.nextInt(5) == 0) {
+                block[17] |= 0x40;
+            }
+            if (globalColorTable && random.nextInt(3) == 0) {
+                // 去掉局部颜色表，使用全局颜色表
+                byte[] withoutTable = new byte[block.length - 768];
+                System.arraycopy(block, 0, withoutTable, 0, 18);
+                withoutTable[17] &= 0x40;
+                System.arraycopy(block, 18 + 768, withoutTable, 18, block.length - 18 - 768);
+                block = withoutTable;
+            }
+            if (frame > 0 && random.nextInt(6) == 0) {
+                // 省略图形控制扩展，沿用上一帧的取值
+                block = Arrays.copyOfRange(block, 8, block.length);
+            }
+            if (random.nextInt(5) == 0) {
+                out.write(new byte[]{0x21, (byte) 0xFE, 3, 'a', 'b', 'c', 0});
+            }
+            out.write(block);
+        }
+        out.write(0x3B);
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write(value >> 8 & 0xFF);
+    }
+}
@@ -0,0 +1,246 @@
+package com.doreamr233.charartconverter.util;
+
+import com.madgag.gif.fmsware.AnimatedGifEncoder;
+import com.madgag.gif.fmsware.GifDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式GIF动画写入器测试类
+ * <p>
+ * 以AnimatedGifEncoder的输出为基准：同一帧图像经相同的NeuQuant量化得到相同的索引图像，
+ * 写入器生成的帧数据块中图形控制扩展、图像描述符、局部颜色表和LZW压缩码流应与AnimatedGifEncoder
+ * 写出的非首帧一致（两者的数据子块长度不同，比较时先去掉子块分隔）。
+ * 同时验证固定全局颜色表的编码结果可被GifDecoder正确解码。
+ * </p>
+ *
+ * @author doreamr233
+ */
+class GifStreamWriterTest {
+
+    /**
+     * 带局部颜色表的帧数据块中LZW数据之前的长度：图形控制扩展8字节、图像描述符10字节、颜色表768字节
+     */
+    private static final int FRAME_HEADER_LENGTH = 8 + 10 + 768;
+
+    @Test
+    void testEncodeFrame_MatchesAnimatedGifEncoder() throws IOException {
+        // 小图、字符画风格的少量颜色、以及会触发LZW清除码的大幅噪声图
+        BufferedImage[] images = {
+                createImage(7, 5, 4, 1),
+                createImage(160, 90, 6, 2),
+                createImage(400, 300, 0, 3)
+        };
+        for (BufferedImage image : images) {
+            String size = image.getWidth() + "x" + image.getHeight();
+            byte[] reference = encodeWithAnimatedGifEncoder(image, 70);
+            byte[] frameBlock = GifStreamWriter.encodeFrame(image, 70);
+
+            // AnimatedGifEncoder的第二帧使用局部颜色表，是结束标记之前的最后一个帧数据块
+            int referenceStart = lastFrameBlockStart(reference);
+            assertArrayEquals(Arrays.copyOfRange(reference, referenceStart, referenceStart + FRAME_HEADER_LENGTH),
+                    Arrays.copyOf(frameBlock, FRAME_HEADER_LENGTH), size + "的帧头和局部颜色表应与AnimatedGifEncoder一致");
+            assertArrayEquals(joinSubBlocks(reference, referenceStart + FRAME_HEADER_LENGTH),
+                    joinSubBlocks(frameBlock, FRAME_HEADER_LENGTH), size + "的LZW码流应与AnimatedGifEncoder一致");
+        }
+    }
+
+    @Test
+    void testWriteFrames_DecodesLikeAnimatedGifEncoder() throws IOException {
+        BufferedImage first = createImage(120, 80, 5, 4);
+        BufferedImage second = createImage(120, 80, 5, 5);
+
+        ByteArrayOutputStream reference = new ByteArrayOutputStream();
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        encoder.start(reference);
+        encoder.setRepeat(0);
+        encoder.setDelay(120);
+        encoder.addFrame(first);
+        encoder.addFrame(second);
+        encoder.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifStreamWriter writer = new GifStreamWriter(out, 0);
+        writer.writeFrame(GifStreamWriter.encodeFrame(first, 120));
+        writer.writeFrame(GifStreamWriter.encodeFrame(second, 120));
+        writer.finish();
+
+        GifDecoder expected = decode(reference.toByteArray());
+        GifDecoder actual = decode(out.toByteArray());
+        assertEquals(expected.getFrameCount(), actual.getFrameCount());
+        assertEquals(expected.getLoopCount(), actual.getLoopCount());
+        for (int i = 0; i < expected.getFrameCount(); i++) {
+            assertEquals(expected.getDelay(i), actual.getDelay(i), "第" + (i + 1) + "帧延迟");
+            assertSamePixels(expected.getFrame(i), actual.getFrame(i), "第" + (i + 1) + "帧");
+        }
+    }
+
+    @Test
+    void testEncodeFrame_WithIndexedGlobalPalette() throws IOException {
+        byte[] gray = new byte[256];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = (byte) i;
+        }
+        IndexColorModel colorModel = new IndexColorModel(8, 256, gray, gray, gray);
+        GifStreamWriter.Palette palette = GifStreamWriter.Palette.of(colorModel);
+
+        BufferedImage image = new BufferedImage(90, 60, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        Random random = new Random(6);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.getRaster().setSample(x, y, 0, random.nextInt(256));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifStreamWriter writer = new GifStreamWriter(out, 0, palette);
+        byte[] frameBlock = GifStreamWriter.encodeFrame(image, 100, palette);
+        writer.writeFrame(frameBlock);
+        writer.writeFrame(frameBlock);
+        writer.finish();
+
+        // 图像描述符的标志字节：使用全局颜色表时不含局部颜色表
+        assertEquals(0, frameBlock[8 + 9], "使用全局颜色表的帧不应包含局部颜色表");
+        GifDecoder decoder = decode(out.toByteArray());
+        assertEquals(2, decoder.getFrameCount());
+        assertSamePixels(image, decoder.getFrame(0), "全局颜色表帧");
+    }
+
+    @Test
+    void testEncodeFrame_WithQuantizedGlobalPalette() throws IOException {
+        int[] colors = {0x000000, 0xFFFFFF, 0xFF0000, 0x00FF00, 0x0000FF, 0xFFFF00, 0x00FFFF, 0xFF00FF};
+        // NeuQuant需要足够多的样本才能让颜色表收敛到样本颜色
+        int[] samples = new int[4096];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = colors[i % colors.length];
+        }
+        GifStreamWriter.Palette palette = GifStreamWriter.Palette.quantize(samples);
+
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, colors[(x / 8 + y / 6) % colors.length]);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GifStreamWriter writer = new GifStreamWriter(out, 0, palette);
+        writer.writeFrame(GifStreamWriter.encodeFrame(image, 100, palette));
+        writer.finish();
+
+        BufferedImage decoded = decode(out.toByteArray()).getFrame(0);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int expected = image.getRGB(x, y);
+                int actual = decoded.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = Math.abs((expected >> shift & 0xFF) - (actual >> shift & 0xFF));
+                    assertTrue(difference <= 8, "像素(" + x + "," + y + ")应映射为颜色表中最接近的颜色");
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建测试图像
+     *
+     * @param colorCount 色块的颜色数，为0时生成渐变加噪声的图像
+     */
+    private static BufferedImage createImage(int width, int height, int colorCount, long seed) {
+        Random random = new Random(seed);
+        int[] colors = new int[Math.max(1, colorCount)];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = random.nextInt(0x1000000);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = colorCount > 0
+                        ? colors[(x / 3 + y / 2) % colorCount]
+                        : (x & 0xFF) << 16 | (y & 0xFF) << 8 | random.nextInt(256);
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * 使用AnimatedGifEncoder把同一图像写为两帧，第二帧带局部颜色表
+     */
+    private static byte[] encodeWithAnimatedGifEncoder(BufferedImage image, int delay) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnimatedGifEncoder encoder = new AnimatedGifEncoder();
+        encoder.start(out);
+        encoder.setRepeat(0);
+        encoder.setDelay(delay);
+        encoder.addFrame(image);
+        encoder.addFrame(image);
+        encoder.finish();
+        return out.toByteArray();
+    }
+
+    /**
+     * 找到GIF文件中最后一个帧数据块（从图形控制扩展开始）的位置
+     */
+    private static int lastFrameBlockStart(byte[] gif) {
+        int position = 13 + 768;
+        int lastStart = -1;
+        while (gif[position] != 0x3B) {
+            if (gif[position] == 0x21 && (gif[position + 1] & 0xFF) == 0xF9) {
+                lastStart = position;
+                position += 8;
+            } else if (gif[position] == 0x21) {
+                position = skipSubBlocks(gif, position + 2);
+            } else {
+                boolean localColorTable = (gif[position + 9] & 0x80) != 0;
+                position += 10 + (localColorTable ? 3 << ((gif[position + 9] & 0x07) + 1) : 0) + 1;
+                position = skipSubBlocks(gif, position);
+            }
+        }
+        return lastStart;
+    }
+
+    private static int skipSubBlocks(byte[] data, int position) {
+        while (data[position] != 0) {
+            position += (data[position] & 0xFF) + 1;
+        }
+        return position + 1;
+    }
+
+    /**
+     * 读取初始码长和各数据子块，拼接为连续的LZW码流
+     */
+    private static byte[] joinSubBlocks(byte[] data, int position) {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        joined.write(data[position++]);
+        while (data[position] != 0) {
+            int length = data[position] & 0xFF;
+            joined.write(data, position + 1, length);
+            position += length + 1;
+        }
+        return joined.toByteArray();
+    }
+
+    private static GifDecoder decode(byte[] gif) {
+        GifDecoder decoder = new GifDecoder();
+        assertEquals(GifDecoder.STATUS_OK, decoder.read(new ByteArrayInputStream(gif)), "GifDecoder应能解码写入器的输出");
+        return decoder;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual, String message) {
+        assertEquals(expected.getWidth(), actual.getWidth(), message + ": 宽度");
+        assertEquals(expected.getHeight(), actual.getHeight(), message + ": 高度");
+        int[] expectedPixels = expected.getRGB(0, 0, expected.getWidth(), expected.getHeight(), null, 0, expected.getWidth());
+        int[] actualPixels = actual.getRGB(0, 0, actual.getWidth(), actual.getHeight(), null, 0, actual.getWidth());
+        assertArrayEquals(expectedPixels, actualPixels, message + ": 像素");
+    }
+}
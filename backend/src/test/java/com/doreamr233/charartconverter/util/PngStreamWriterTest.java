@@ -0,0 +1,150 @@
+package com.doreamr233.charartconverter.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式PNG写入器测试类
+ * <p>
+ * 使用ImageIO解码写入器的输出，验证各种像素格式和过滤方式下解码结果与输入图像逐像素一致，
+ * 并验证并行压缩与单线程压缩的输出完全相同。
+ * </p>
+ * <p>
+ * 测试图像的数据量超过单个压缩块，覆盖多块拼接和预置字典的情况。
+ * </p>
+ *
+ * @author doreamr233
+ */
+class PngStreamWriterTest {
+
+    private static final int WIDTH = 317;
+    private static final int HEIGHT = 241;
+
+    @Test
+    void testWriteRgb_AllFilters() throws IOException {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 1);
+        for (PngStreamWriter.Filter filter : PngStreamWriter.Filter.values()) {
+            byte[] png = encode(image, new PngStreamWriter.Options(6, filter, null, 1));
+            assertSamePixels(image, decode(png), "过滤方式 " + filter);
+        }
+    }
+
+    @Test
+    void testWriteRgba() throws IOException {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB, 2);
+        byte[] png = encode(image, PngStreamWriter.Options.DEFAULT);
+        BufferedImage decoded = decode(png);
+
+        assertTrue(decoded.getColorModel().hasAlpha(), "带透明度的图像应写出为RGBA");
+        assertSamePixels(image, decoded, "RGBA");
+    }
+
+    @Test
+    void testWriteIndexed() throws IOException {
+        byte[] gray = new byte[256];
+        for (int i = 0; i < gray.length; i++) {
+            gray[i] = (byte) i;
+        }
+        IndexColorModel palette = new IndexColorModel(8, 256, gray, gray, gray);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_INDEXED, palette);
+        Random random = new Random(3);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.getRaster().setSample(x, y, 0, (x / 5 + y / 3 + random.nextInt(4)) & 0xFF);
+            }
+        }
+
+        byte[] png = encode(image, PngStreamWriter.Options.DEFAULT);
+        BufferedImage decoded = decode(png);
+
+        assertEquals(BufferedImage.TYPE_BYTE_INDEXED, decoded.getType(), "不透明的调色板图像应写出为调色板PNG");
+        assertSamePixels(image, decoded, "调色板");
+    }
+
+    @Test
+    void testParallelMatchesSerial() throws IOException {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PngStreamWriter.Options parallel = new PngStreamWriter.Options(6, PngStreamWriter.Filter.ADAPTIVE, executor, 4);
+            byte[] parallelPng = encode(image, parallel);
+            byte[] serialPng = encode(image, parallel.serial());
+
+            assertArrayEquals(serialPng, parallelPng, "并行压缩与单线程压缩的输出应完全相同");
+            assertSamePixels(image, decode(parallelPng), "并行压缩");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testWriteRows() throws IOException {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 5);
+        int[] pixels = image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngStreamWriter png = PngStreamWriter.rgb(out, WIDTH, HEIGHT, PngStreamWriter.Options.DEFAULT);
+        for (int y = 0; y < HEIGHT; y++) {
+            png.writeRgbRow(pixels, y * WIDTH);
+        }
+        png.finish();
+
+        assertSamePixels(image, decode(out.toByteArray()), "逐行写入");
+    }
+
+    @Test
+    void testFinish_WithMissingRows() throws IOException {
+        PngStreamWriter png = PngStreamWriter.rgb(new ByteArrayOutputStream(), 4, 4, PngStreamWriter.Options.DEFAULT);
+        png.writeRgbRow(new int[4], 0);
+
+        assertThrows(IOException.class, png::finish, "行数不足时应拒绝结束写入");
+    }
+
+    /**
+     * 创建带有渐变、色块和噪声的测试图像，各种过滤方式都能产生不同的输出
+     */
+    private static BufferedImage createImage(int type, long seed) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        Random random = new Random(seed);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int alpha = type == BufferedImage.TYPE_INT_ARGB ? (x * 7 + y) & 0xFF : 0xFF;
+                int red = x * 255 / (WIDTH - 1);
+                int green = ((x / 16 + y / 16) & 1) == 0 ? 40 : 200;
+                int blue = random.nextInt(256);
+                image.setRGB(x, y, alpha << 24 | red << 16 | green << 8 | blue);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, PngStreamWriter.Options options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngStreamWriter.write(image, out, options);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull(image, "ImageIO应能解码写入器的输出");
+        return image;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual, String message) {
+        assertEquals(expected.getWidth(), actual.getWidth(), message + ": 宽度");
+        assertEquals(expected.getHeight(), actual.getHeight(), message + ": 高度");
+        int[] expectedPixels = expected.getRGB(0, 0, expected.getWidth(), expected.getHeight(), null, 0, expected.getWidth());
+        int[] actualPixels = actual.getRGB(0, 0, actual.getWidth(), actual.getHeight(), null, 0, actual.getWidth());
+        assertArrayEquals(expectedPixels, actualPixels, message + ": 像素");
+    }
+}
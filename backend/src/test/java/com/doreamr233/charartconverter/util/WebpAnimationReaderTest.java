@@ -0,0 +1,277 @@
+package com.doreamr233.charartconverter.util;
+
+import com.luciad.imageio.webp.WebPImageWriterSpi;
+import com.luciad.imageio.webp.WebPWriteParam;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 按需解码的WebP动画读取器测试类
+ * <p>
+ * 测试文件由libwebp编码的单帧图像拼装为ANMF帧，帧的位置、尺寸、处置方式、混合方式和透明度随机。
+ * 期望的画面按libwebp动画解码器（anim_decode.c）的合成规则逐帧计算，单帧像素取ImageIO解码单帧图像的结果，
+ * 读取器合成的每一帧应与期望画面的RGB逐像素一致。
+ * </p>
+ *
+ * @author doreamr233
+ */
+class WebpAnimationReaderTest {
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(WebpAnimationWriter.isAvailable(), "本地WebP编码库不可用");
+    }
+
+    @Test
+    void testNextFrame_MatchesLibwebpComposition() throws IOException {
+        for (int seed = 0; seed < 20; seed++) {
+            assertComposition(new Random(seed), "seed=" + seed);
+        }
+    }
+
+    @Test
+    void testOpen_WithInvalidData() throws IOException {
+        assertThrows(IOException.class, () -> WebpAnimationReader.open(new byte[10]), "过短的数据应被拒绝");
+
+        BufferedImage still = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        assertThrows(IOException.class, () -> WebpAnimationReader.open(encodeStill(still, true)),
+                "不含动画的WebP文件应被拒绝");
+    }
+
+    /**
+     * 拼装一个随机动画，逐帧比较读取器与参考合成的结果
+     */
+    private static void assertComposition(Random random, String message) throws IOException {
+        int width = 20 + random.nextInt(60);
+        int height = 20 + random.nextInt(60);
+        int frameCount = 2 + random.nextInt(6);
+        int[][] bounds = new int[frameCount][];
+        int[] flags = new int[frameCount];
+        int[] delays = new int[frameCount];
+        int[][] framePixels = new int[frameCount][];
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("VP8X".getBytes(StandardCharsets.US_ASCII));
+        writeLittleEndian(body, 10, 4);
+        writeLittleEndian(body, 0x12, 4);
+        writeLittleEndian(body, width - 1, 3);
+        writeLittleEndian(body, height - 1, 3);
+        body.write("ANIM".getBytes(StandardCharsets.US_ASCII));
+        writeLittleEndian(body, 6, 4);
+        writeLittleEndian(body, 0xFF112233, 4);
+        writeLittleEndian(body, 3, 2);
+
+        for (int i = 0; i < frameCount; i++) {
+            int x = 0;
+            int y = 0;
+            int frameWidth = width;
+            int frameHeight = height;
+            if (random.nextInt(3) != 0) {
+                // ANMF中的位置以2像素为单位，帧尺寸可以为奇数
+                x = 2 * random.nextInt(width / 2);
+                y = 2 * random.nextInt(height / 2);
+                frameWidth = 1 + random.nextInt(width - x);
+                frameHeight = 1 + random.nextInt(height - y);
+            }
+            bounds[i] = new int[]{x, y, frameWidth, frameHeight};
+            flags[i] = random.nextInt(4);
+            delays[i] = random.nextInt(300);
+
+            BufferedImage image = createFrame(random, frameWidth, frameHeight);
+            byte[] still = encodeStill(image, random.nextBoolean());
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(still));
+            framePixels[i] = decoded.getRGB(0, 0, frameWidth, frameHeight, null, 0, frameWidth);
+
+            byte[] frameData = frameChunks(still);
+            body.write("ANMF".getBytes(StandardCharsets.US_ASCII));
+            writeLittleEndian(body, 16 + frameData.length, 4);
+            writeLittleEndian(body, x / 2, 3);
+            writeLittleEndian(body, y / 2, 3);
+            writeLittleEndian(body, frameWidth - 1, 3);
+            writeLittleEndian(body, frameHeight - 1, 3);
+            writeLittleEndian(body, delays[i], 3);
+            writeLittleEndian(body, flags[i], 1);
+            body.write(frameData);
+        }
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write("RIFF".getBytes(StandardCharsets.US_ASCII));
+        writeLittleEndian(file, body.size() + 4, 4);
+        file.write("WEBP".getBytes(StandardCharsets.US_ASCII));
+        body.writeTo(file);
+
+        int[] canvas = new int[width * height];
+        int[] disposedCanvas = new int[width * height];
+        int[] lastBounds = null;
+        boolean lastDispose = false;
+        boolean lastKeyFrame = false;
+        try (WebpAnimationReader reader = WebpAnimationReader.open(file.toByteArray())) {
+            assertEquals(width, reader.getWidth(), message + ": 画布宽度");
+            assertEquals(height, reader.getHeight(), message + ": 画布高度");
+            assertEquals(frameCount, reader.getFrameCount(), message + ": 帧数");
+            assertEquals(3, reader.getLoopCount(), message + ": 循环次数");
+
+            for (int i = 0; i < frameCount; i++) {
+                String frameMessage = message + " 第" + (i + 1) + "帧";
+                assertEquals(delays[i], reader.getDelay(i), frameMessage + ": 延迟");
+                assertArrayEquals(bounds[i], reader.getFrameBounds(i), frameMessage + ": 位置和尺寸");
+
+                int[] rect = bounds[i];
+                boolean blend = (flags[i] & 2) == 0;
+                boolean fullFrame = rect[2] == width && rect[3] == height;
+                boolean hasAlpha = false;
+                for (int pixel : framePixels[i]) {
+                    hasAlpha |= pixel >>> 24 != 0xFF;
+                }
+                boolean keyFrame = i == 0 || ((!hasAlpha || !blend) && fullFrame)
+                        || (lastDispose && ((lastBounds[2] == width && lastBounds[3] == height) || lastKeyFrame));
+                if (keyFrame) {
+                    Arrays.fill(canvas, 0);
+                } else {
+                    System.arraycopy(disposedCanvas, 0, canvas, 0, canvas.length);
+                }
+                for (int row = 0; row < rect[3]; row++) {
+                    for (int column = 0; column < rect[2]; column++) {
+                        int index = (rect[1] + row) * width + rect[0] + column;
+                        int src = framePixels[i][row * rect[2] + column];
+                        boolean inDisposed = lastDispose && contains(lastBounds, rect[0] + column, rect[1] + row);
+                        canvas[index] = blend && !keyFrame && !inDisposed && src >>> 24 != 0xFF
+                                ? blendPixel(src, disposedCanvas[index]) : src;
+                    }
+                }
+                lastBounds = rect;
+                lastDispose = (flags[i] & 1) != 0;
+                lastKeyFrame = keyFrame;
+                System.arraycopy(canvas, 0, disposedCanvas, 0, canvas.length);
+                if (lastDispose) {
+                    for (int row = rect[1]; row < rect[1] + rect[3]; row++) {
+                        Arrays.fill(disposedCanvas, row * width + rect[0], row * width + rect[0] + rect[2], 0);
+                    }
+                }
+
+                BufferedImage frame = reader.nextFrame();
+                assertEquals(BufferedImage.TYPE_INT_RGB, frame.getType(), frameMessage + ": 图像类型");
+                int[] actual = frame.getRGB(0, 0, width, height, null, 0, width);
+                for (int k = 0; k < actual.length; k++) {
+                    if ((actual[k] & 0xFFFFFF) != (canvas[k] & 0xFFFFFF)) {
+                        fail(frameMessage + ": 像素(" + k % width + "," + k / width + ")应为"
+                                + Integer.toHexString(canvas[k] & 0xFFFFFF) + "，实际为" + Integer.toHexString(actual[k] & 0xFFFFFF));
+                    }
+                }
+            }
+            assertFalse(reader.hasNextFrame(), message + ": 不应有多余的帧");
+        }
+    }
+
+    /**
+     * 创建随机帧：不透明、二值透明、任意透明度或按图案透明
+     */
+    private static BufferedImage createFrame(Random random, int width, int height) {
+        int alphaMode = random.nextInt(4);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha;
+                switch (alphaMode) {
+                    case 0:
+                        alpha = 0xFF;
+                        break;
+                    case 1:
+                        alpha = random.nextInt(3) == 0 ? 0 : 0xFF;
+                        break;
+                    case 2:
+                        alpha = random.nextInt(256);
+                        break;
+                    default:
+                        alpha = (x + y) % 5 == 0 ? 0 : 128 + x;
+                        break;
+                }
+                image.setRGB(x, y, (alpha & 0xFF) << 24 | random.nextInt(1 << 24));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * libwebp动画解码器的非预乘alpha混合
+     */
+    private static int blendPixel(int src, int dst) {
+        int srcAlpha = src >>> 24;
+        if (srcAlpha == 0) {
+            return dst;
+        }
+        int dstFactorAlpha = ((dst >>> 24) * (256 - srcAlpha)) >> 8;
+        int blendAlpha = srcAlpha + dstFactorAlpha;
+        long scale = (1L << 24) / blendAlpha;
+        return blendAlpha << 24
+                | blendChannel(src, srcAlpha, dst, dstFactorAlpha, scale, 16) << 16
+                | blendChannel(src, srcAlpha, dst, dstFactorAlpha, scale, 8) << 8
+                | blendChannel(src, srcAlpha, dst, dstFactorAlpha, scale, 0);
+    }
+
+    private static int blendChannel(int src, int srcAlpha, int dst, int dstAlpha, long scale, int shift) {
+        long sum = (long) ((src >> shift) & 0xFF) * srcAlpha + (long) ((dst >> shift) & 0xFF) * dstAlpha;
+        return (int) ((sum * scale) >> 24) & 0xFF;
+    }
+
+    private static boolean contains(int[] rect, int x, int y) {
+        return x >= rect[0] && x < rect[0] + rect[2] && y >= rect[1] && y < rect[1] + rect[3];
+    }
+
+    /**
+     * 使用libwebp把图像编码为独立的WebP文件
+     */
+    private static byte[] encodeStill(BufferedImage image, boolean lossless) throws IOException {
+        ImageWriter writer = new WebPImageWriterSpi().createWriterInstance();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(out)) {
+            WebPWriteParam param = (WebPWriteParam) writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType(lossless ? "Lossless" : "Lossy");
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 取出独立WebP文件中除VP8X以外的数据块，作为ANMF的帧数据
+     */
+    private static byte[] frameChunks(byte[] file) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 12;
+        while (pos + 8 <= file.length) {
+            int size = (file[pos + 4] & 0xFF) | (file[pos + 5] & 0xFF) << 8
+                    | (file[pos + 6] & 0xFF) << 16 | (file[pos + 7] & 0xFF) << 24;
+            int end = pos + 8 + size + (size & 1);
+            if (!new String(file, pos, 4, StandardCharsets.US_ASCII).equals("VP8X")) {
+                out.write(file, pos, end - pos);
+            }
+            pos = end;
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeLittleEndian(ByteArrayOutputStream out, int value, int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            out.write(value >> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.doreamr233.charartconverter.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 流式WebP动画写入器测试类
+ * <p>
+ * 写入器写出的动画由WebpAnimationReader读回：局部帧按指定位置叠加在上一帧之上，
+ * alpha为0的像素保留上一帧，半透明像素与上一帧混合，不含alpha通道的帧直接覆盖。
+ * 同时测试帧位置的校验：ANMF以2像素为单位记录位置，奇数坐标和超出画布的帧应被拒绝。
+ * </p>
+ *
+ * @author doreamr233
+ */
+class WebpAnimationWriterTest {
+
+    private static final int WIDTH = 61;
+    private static final int HEIGHT = 45;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(WebpAnimationWriter.isAvailable(), "本地WebP编码库不可用");
+    }
+
+    @Test
+    void testWriteFrames_RoundTrip() throws IOException {
+        Random random = new Random(1);
+        BufferedImage background = createOpaqueImage(random, WIDTH, HEIGHT);
+
+        // 二值透明的局部帧：棋盘格中透明的像素保留上一帧
+        BufferedImage sprite = new BufferedImage(17, 9, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < sprite.getHeight(); y++) {
+            for (int x = 0; x < sprite.getWidth(); x++) {
+                int alpha = (x + y) % 2 == 0 ? 0xFF : 0;
+                sprite.setRGB(x, y, alpha << 24 | random.nextInt(1 << 24));
+            }
+        }
+
+        // 半透明的局部帧，与上一帧混合
+        BufferedImage overlay = new BufferedImage(13, 11, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < overlay.getHeight(); y++) {
+            for (int x = 0; x < overlay.getWidth(); x++) {
+                overlay.setRGB(x, y, 0x80 << 24 | random.nextInt(1 << 24));
+            }
+        }
+
+        // 不含alpha通道的局部帧，直接覆盖
+        BufferedImage patch = createOpaqueImage(random, 31, 11);
+
+        Path output = tempDir.resolve("round-trip.webp");
+        try (WebpAnimationWriter writer = WebpAnimationWriter.create(output, WIDTH, HEIGHT, 2)) {
+            writer.writeFrame(WebpAnimationWriter.encodeFrame(background, true, 75), 0, 0, 100);
+            writer.writeFrame(WebpAnimationWriter.encodeFrame(sprite, true, 75), 6, 4, 120);
+            writer.writeFrame(WebpAnimationWriter.encodeFrame(overlay, true, 75), 40, 30, 140);
+            writer.writeFrame(WebpAnimationWriter.encodeFrame(patch, true, 75), 0, 34, 160);
+            writer.finish();
+        }
+
+        int[] expected = background.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        try (WebpAnimationReader reader = WebpAnimationReader.open(Files.readAllBytes(output))) {
+            assertEquals(WIDTH, reader.getWidth());
+            assertEquals(HEIGHT, reader.getHeight());
+            assertEquals(4, reader.getFrameCount());
+            assertEquals(2, reader.getLoopCount());
+            assertArrayEquals(new int[]{6, 4, 17, 9}, reader.getFrameBounds(1), "局部帧的位置和尺寸");
+            assertArrayEquals(new int[]{40, 30, 13, 11}, reader.getFrameBounds(2), "局部帧的位置和尺寸");
+            for (int i = 0; i < 4; i++) {
+                assertEquals(100 + 20 * i, reader.getDelay(i), "第" + (i + 1) + "帧延迟");
+            }
+
+            assertPixels(expected, reader.nextFrame(), 0, "第1帧");
+
+            overlay(expected, sprite, 6, 4);
+            assertPixels(expected, reader.nextFrame(), 0, "第2帧：透明像素应保留上一帧");
+
+            overlay(expected, overlay, 40, 30);
+            assertPixels(expected, reader.nextFrame(), 2, "第3帧：半透明像素应与上一帧混合");
+
+            overlay(expected, patch, 0, 34);
+            assertPixels(expected, reader.nextFrame(), 2, "第4帧：不透明帧应直接覆盖");
+            assertFalse(reader.hasNextFrame());
+        }
+    }
+
+    @Test
+    void testWriteFrame_WithInvalidPosition() throws IOException {
+        WebpAnimationWriter.EncodedFrame frame =
+                WebpAnimationWriter.encodeFrame(createOpaqueImage(new Random(2), 8, 8), true, 75);
+        try (WebpAnimationWriter writer = WebpAnimationWriter.create(tempDir.resolve("invalid.webp"), WIDTH, HEIGHT, 0)) {
+            assertThrows(IOException.class, () -> writer.writeFrame(frame, 1, 0, 100), "奇数横坐标应被拒绝");
+            assertThrows(IOException.class, () -> writer.writeFrame(frame, 0, 3, 100), "奇数纵坐标应被拒绝");
+            assertThrows(IOException.class, () -> writer.writeFrame(frame, WIDTH - 7, 0, 100), "超出画布的帧应被拒绝");
+            assertThrows(IOException.class, () -> writer.writeFrame(frame, -2, 0, 100), "负坐标应被拒绝");
+
+            // 偶数坐标且不超出画布的帧可以写入
+            writer.writeFrame(frame, WIDTH - 9, HEIGHT - 9, 100);
+            writer.finish();
+        }
+    }
+
+    @Test
+    void testFinish_WithoutFrames() throws IOException {
+        try (WebpAnimationWriter writer = WebpAnimationWriter.create(tempDir.resolve("empty.webp"), WIDTH, HEIGHT, 0)) {
+            assertThrows(IOException.class, writer::finish, "没有帧的动画应被拒绝");
+        }
+    }
+
+    private static BufferedImage createOpaqueImage(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(1 << 24));
+            }
+        }
+        return image;
+    }
+
+    /**
+     * 将帧图像按非预乘alpha叠加到不透明的期望画面上
+     */
+    private static void overlay(int[] canvas, BufferedImage frame, int left, int top) {
+        for (int y = 0; y < frame.getHeight(); y++) {
+            for (int x = 0; x < frame.getWidth(); x++) {
+                int src = frame.getRGB(x, y);
+                int alpha = src >>> 24;
+                int index = (top + y) * WIDTH + left + x;
+                int dst = canvas[index];
+                int result = 0xFF000000;
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int channel = ((src >> shift & 0xFF) * alpha + (dst >> shift & 0xFF) * (0xFF - alpha) + 127) / 0xFF;
+                    result |= channel << shift;
+                }
+                canvas[index] = result;
+            }
+        }
+    }
+
+    private static void assertPixels(int[] expected, BufferedImage actual, int tolerance, String message) {
+        int[] pixels = actual.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        for (int i = 0; i < pixels.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                int difference = Math.abs((expected[i] >> shift & 0xFF) - (pixels[i] >> shift & 0xFF));
+                if (difference > tolerance) {
+                    fail(message + ": 像素(" + i % WIDTH + "," + i / WIDTH + ")应为" + Integer.toHexString(expected[i] & 0xFFFFFF)
+                            + "，实际为" + Integer.toHexString(pixels[i] & 0xFFFFFF));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package com.doreamr233.charartconverter.util;
+
+import com.doreamr233.charartconverter.exception.ServiceException;
+import com.doreamr233.charartconverter.model.WebpProcessResult;
+import com.doreamr233.charartconverter.service.ProgressService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * WebP处理服务客户端测试类
+ * <p>
+ * 使用本地HttpServer模拟WebP处理服务，测试批量获取帧图像时对长度前缀记录流的解析：
+ * 完整的记录流按帧序解码，数据截断、长度错误和无法解码的帧以IOException结束，
+ * 批量获取失败时解析响应改为逐帧获取。
+ * </p>
+ * <p>
+ * 同时模拟逐帧通知的SSE进度流，测试帧流按帧序取出通过HTTP或共享帧文件获取的帧，
+ * 已获取但尚未取出的帧数不超过获取窗口，以及解码出错、连接断开和帧通知不全时尚未到达的帧以异常结束。
+ * </p>
+ *
+ * @author doreamr233
+ */
+class WebpProcessorClientTest {
+
+    private static final int FRAME_COUNT = 12;
+    private static final int WIDTH = 48;
+    private static final int HEIGHT = 32;
+    private static final String WEBP_TASK_ID = "webp-task";
+    private static final String RAW_FRAMES_FILE = "webp_frames_test_" + WEBP_TASK_ID + ".raw";
+
+    /**
+     * 未配置并行处理时获取帧的线程数为4，获取窗口为线程数的2倍
+     */
+    private static final int FETCH_WINDOW = 8;
+
+    /**
+     * 出错的模拟流在通知这么多帧之后等待测试取出这些帧
+     */
+    private static final int FRAMES_BEFORE_FAILURE = 4;
+
+    /**
+     * 模拟服务批量返回帧数据的方式
+     */
+    private enum BulkMode {
+        COMPLETE, TRUNCATED, NEGATIVE_LENGTH, UNDECODABLE, NOT_FOUND
+    }
+
+    /**
+     * 模拟服务逐帧通知的方式
+     */
+    private enum StreamMode {
+        COMPLETE, DECODE_ERROR, CONNECTION_DROPPED, FRAMES_MISSING
+    }
+
+    private final Map<String, byte[]> frameFiles = new ConcurrentHashMap<>();
+    private final AtomicInteger bulkRequests = new AtomicInteger();
+    private final AtomicInteger singleRequests = new AtomicInteger();
+    private volatile BulkMode bulkMode = BulkMode.COMPLETE;
+    private volatile StreamMode streamMode = StreamMode.COMPLETE;
+    private volatile boolean streamRequested;
+    private volatile boolean sharedProbeSent;
+    private final CountDownLatch submitted = new CountDownLatch(1);
+    private final CountDownLatch framesTaken = new CountDownLatch(1);
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private WebpProcessorClient client;
+    private BufferedImage[] images;
+    private JSONArray framePaths;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        images = new BufferedImage[FRAME_COUNT];
+        framePaths = new JSONArray();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            images[i] = createFrame(i);
+            String path = "webp_frames_test/frame_" + i + ".png";
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(images[i], "png", png);
+            frameFiles.put(path, png.toByteArray());
+            framePaths.put(path);
+        }
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/api/get-images", this::handleGetImages);
+        server.createContext("/api/get-image/", this::handleGetImage);
+        server.createContext("/api/progress/create", exchange -> reply(exchange, "{\"task_id\":\"" + WEBP_TASK_ID + "\"}"));
+        server.createContext("/api/progress/close/", exchange -> reply(exchange, "{}"));
+        server.createContext("/api/progress/", this::handleProgressStream);
+        server.createContext("/api/process-webp", this::handleProcessWebp);
+        server.start();
+
+        client = new WebpProcessorClient();
+        ReflectionTestUtils.setField(client, "serviceBaseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(client, "maxTimeout", 10000);
+        ReflectionTestUtils.setField(client, "maxRetriesCount", 0);
+        ReflectionTestUtils.setField(client, "bulkTransferEnabled", true);
+        ReflectionTestUtils.setField(client, "progressService", mock(ProgressService.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void testFetchFramesInBulk_DecodesFramesInOrder() {
+        BufferedImage[] frames = ReflectionTestUtils.invokeMethod(client, "fetchFramesInBulk", framePaths, FRAME_COUNT, null);
+
+        assertEquals(FRAME_COUNT, frames.length);
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            assertSamePixels(images[i], frames[i], "第" + (i + 1) + "帧");
+        }
+        assertEquals(1, bulkRequests.get(), "所有帧应通过一个请求获取");
+        assertEquals(0, singleRequests.get(), "批量获取成功时不应逐帧请求");
+    }
+
+    @Test
+    void testFetchFramesInBulk_WithTruncatedStream() {
+        bulkMode = BulkMode.TRUNCATED;
+        assertBulkFailure("第6帧数据不完整");
+    }
+
+    @Test
+    void testFetchFramesInBulk_WithNegativeLength() {
+        bulkMode = BulkMode.NEGATIVE_LENGTH;
+        assertBulkFailure("第6帧数据长度错误");
+    }
+
+    @Test
+    void testFetchFramesInBulk_WithUndecodableFrame() {
+        bulkMode = BulkMode.UNDECODABLE;
+        assertBulkFailure("第6帧图像无法解码");
+    }
+
+    @Test
+    void testParseResponse_FallsBackToSingleFrames() {
+        for (BulkMode mode : new BulkMode[]{BulkMode.TRUNCATED, BulkMode.NEGATIVE_LENGTH, BulkMode.NOT_FOUND}) {
+            bulkMode = mode;
+            singleRequests.set(0);
+
+            WebpProcessResult result = ReflectionTestUtils.invokeMethod(client, "parseResponse", createResponse(), "task");
+
+            assertEquals(FRAME_COUNT, result.getFrameCount(), mode + ": 帧数");
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                assertEquals(10 * (i + 1), result.getDelays()[i], mode + ": 第" + (i + 1) + "帧延迟");
+                assertSamePixels(images[i], result.getFrames()[i], mode + ": 第" + (i + 1) + "帧");
+            }
+            assertEquals(FRAME_COUNT, singleRequests.get(), mode + ": 批量获取失败时应逐帧获取所有帧");
+        }
+    }
+
+    @Test
+    void testParseResponse_WithBulkTransferDisabled() {
+        ReflectionTestUtils.setField(client, "bulkTransferEnabled", false);
+
+        WebpProcessResult result = ReflectionTestUtils.invokeMethod(client, "parseResponse", createResponse(), "task");
+
+        assertEquals(FRAME_COUNT, result.getFrames().length);
+        assertEquals(0, bulkRequests.get(), "关闭批量获取时不应发送批量请求");
+        assertEquals(FRAME_COUNT, singleRequests.get());
+    }
+
+    @Test
+    void testProcessWebpStreaming_FetchesFramesOverHttp() throws Exception {
+        try (WebpFrameStream stream = client.processWebpStreaming(createInputFile(), "task")) {
+            assertTrue(streamRequested, "应请求服务逐帧通知");
+            assertEquals(FRAME_COUNT, stream.getFrameCount());
+            assertEquals(WIDTH, stream.getWidth());
+            assertEquals(HEIGHT, stream.getHeight());
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                assertSamePixels(images[i], stream.takeFrame(i), "第" + (i + 1) + "帧");
+                assertEquals(10 * (i + 1), stream.getDelays()[i], "第" + (i + 1) + "帧延迟");
+            }
+        }
+        assertEquals(FRAME_COUNT, singleRequests.get(), "每帧应在通知后单独获取");
+    }
+
+    @Test
+    void testProcessWebpStreaming_LimitsFramesFetchedAhead() throws Exception {
+        try (WebpFrameStream stream = client.processWebpStreaming(createInputFile(), "task")) {
+            // 所有帧都已通知但尚未取出任何帧时，只获取窗口内的帧
+            assertTrue(awaitCount(singleRequests, FETCH_WINDOW), "应获取窗口内的" + FETCH_WINDOW + "帧");
+            Thread.sleep(200);
+            assertEquals(FRAME_COUNT, stream.getAnnouncedFrames(), "所有帧都应已通知");
+            assertEquals(FETCH_WINDOW, singleRequests.get(), "未取出帧时不应获取窗口之外的帧");
+
+            assertSamePixels(images[0], stream.takeFrame(0), "第1帧");
+            assertTrue(awaitCount(singleRequests, FETCH_WINDOW + 1), "取出一帧后窗口应后移一帧");
+            Thread.sleep(200);
+            assertEquals(FETCH_WINDOW + 1, singleRequests.get(), "取出一帧后只应多获取一帧");
+
+            for (int i = 1; i < FRAME_COUNT; i++) {
+                assertSamePixels(images[i], stream.takeFrame(i), "第" + (i + 1) + "帧");
+            }
+        }
+        assertEquals(FRAME_COUNT, singleRequests.get());
+    }
+
+    @Test
+    void testProcessWebpStreaming_ReadsSharedFramesFile() throws Exception {
+        ReflectionTestUtils.setField(client, "sharedFramesDirectory", tempDir.toString());
+
+        try (WebpFrameStream stream = client.processWebpStreaming(createInputFile(), "task")) {
+            assertTrue(sharedProbeSent, "配置共享帧交换目录时应发送探测文件");
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                assertSamePixels(images[i], stream.takeFrame(i), "第" + (i + 1) + "帧");
+            }
+        }
+        assertEquals(0, singleRequests.get(), "使用共享帧文件时不应通过HTTP获取帧");
+        assertFalse(Files.exists(tempDir.resolve(RAW_FRAMES_FILE)), "关闭帧流后应删除共享帧文件");
+    }
+
+    @Test
+    void testProcessWebpStreaming_WhenDecodingFails() throws Exception {
+        streamMode = StreamMode.DECODE_ERROR;
+        assertStreamFailure("WebP处理失败: 解码出错");
+    }
+
+    @Test
+    void testProcessWebpStreaming_WhenConnectionDrops() throws Exception {
+        streamMode = StreamMode.CONNECTION_DROPPED;
+        assertStreamFailure("进度连接已断开");
+    }
+
+    @Test
+    void testProcessWebpStreaming_WhenFramesAreMissing() throws Exception {
+        streamMode = StreamMode.FRAMES_MISSING;
+        assertStreamFailure("只通知了" + (FRAME_COUNT - 3) + "/" + FRAME_COUNT + "帧");
+    }
+
+    /**
+     * 已通知的帧可以取出，之后尚未到达的帧应以包含指定信息的ServiceException结束
+     */
+    private void assertStreamFailure(String message) throws Exception {
+        int announced = streamMode == StreamMode.FRAMES_MISSING ? FRAME_COUNT - 3 : FRAMES_BEFORE_FAILURE;
+        try (WebpFrameStream stream = client.processWebpStreaming(createInputFile(), "task")) {
+            for (int i = 0; i < announced; i++) {
+                assertSamePixels(images[i], stream.takeFrame(i), "第" + (i + 1) + "帧");
+            }
+            framesTaken.countDown();
+
+            ServiceException e = assertThrows(ServiceException.class, () -> stream.takeFrame(announced));
+            assertTrue(e.getMessage().contains(message), "异常信息应包含" + message + "，实际为" + e.getMessage());
+            assertThrows(ServiceException.class, () -> stream.takeFrame(FRAME_COUNT - 1), "之后的帧也应以异常结束");
+        }
+    }
+
+    /**
+     * 等待计数达到指定值
+     *
+     * @return 10秒内达到指定值时返回true
+     */
+    private static boolean awaitCount(AtomicInteger counter, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (counter.get() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * 批量获取应以包含指定信息的IOException结束
+     */
+    private void assertBulkFailure(String message) {
+        UndeclaredThrowableException e = assertThrows(UndeclaredThrowableException.class,
+                () -> ReflectionTestUtils.invokeMethod(client, "fetchFramesInBulk", framePaths, FRAME_COUNT, null));
+        assertTrue(e.getCause() instanceof IOException, "批量获取失败时应抛出IOException");
+        assertTrue(e.getCause().getMessage().contains(message), "异常信息应为" + message + "，实际为" + e.getCause().getMessage());
+    }
+
+    /**
+     * 按请求的路径顺序返回长度前缀记录流，并按模式破坏第6帧的记录
+     */
+    private void handleGetImages(HttpExchange exchange) throws IOException {
+        bulkRequests.incrementAndGet();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        String value = URLDecoder.decode(body.substring(body.indexOf('=') + 1), StandardCharsets.UTF_8.name());
+        JSONArray paths = new JSONArray(value);
+        if (bulkMode == BulkMode.NOT_FOUND) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.sendResponseHeaders(200, 0);
+        try (DataOutputStream out = new DataOutputStream(exchange.getResponseBody())) {
+            for (int i = 0; i < paths.length(); i++) {
+                byte[] data = frameFiles.get(paths.getString(i));
+                if (i == 5 && bulkMode == BulkMode.TRUNCATED) {
+                    out.writeInt(data.length);
+                    out.write(data, 0, data.length / 2);
+                    return;
+                }
+                if (i == 5 && bulkMode == BulkMode.NEGATIVE_LENGTH) {
+                    out.writeInt(-1);
+                    return;
+                }
+                if (i == 5 && bulkMode == BulkMode.UNDECODABLE) {
+                    data = new byte[]{1, 2, 3, 4};
+                }
+                out.writeInt(data.length);
+                out.write(data);
+                out.flush();
+            }
+        }
+    }
+
+    private void handleGetImage(HttpExchange exchange) throws IOException {
+        singleRequests.incrementAndGet();
+        String path = exchange.getRequestURI().getPath().substring("/api/get-image/".length());
+        byte[] data = frameFiles.get(path);
+        if (data == null) {
+            exchange.sendResponseHeaders(404, -1);
+        } else {
+            exchange.sendResponseHeaders(200, data.length);
+            exchange.getResponseBody().write(data);
+        }
+        exchange.close();
+    }
+
+    private void handleProcessWebp(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1);
+        streamRequested = body.contains("name=\"stream_frames\"");
+        sharedProbeSent = body.contains("name=\"shared_probe\"");
+        reply(exchange, new JSONObject()
+                .put("task_id", WEBP_TASK_ID)
+                .put("message", "WebP处理任务已提交")
+                .put("status", "processing")
+                .toString());
+        submitted.countDown();
+    }
+
+    /**
+     * 模拟逐帧通知的SSE进度流
+     * <p>
+     * 收到处理请求后先发送头信息，再逐帧写入共享帧文件或准备帧文件并发送通知，最后发送解码结果。
+     * 出错的模式在通知部分帧后等待测试取出这些帧，再发送错误事件、断开连接或发送帧数不符的结果。
+     * </p>
+     */
+    private void handleProgressStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            sendEvent(out, "heartbeat", new JSONObject().put("time", System.currentTimeMillis()));
+            if (!await(submitted)) {
+                return;
+            }
+
+            Path rawFile = sharedProbeSent ? tempDir.resolve(RAW_FRAMES_FILE) : null;
+            if (rawFile != null) {
+                // 与WebP处理服务一致，发送头信息之前创建共享帧文件
+                Files.createFile(rawFile);
+            }
+            sendEvent(out, "webp_header", new JSONObject()
+                    .put("frameCount", FRAME_COUNT)
+                    .put("width", WIDTH)
+                    .put("height", HEIGHT)
+                    .put("task_id", WEBP_TASK_ID)
+                    .put("rawFrames", rawFile != null ? RAW_FRAMES_FILE : null));
+
+            int announced = streamMode == StreamMode.COMPLETE ? FRAME_COUNT
+                    : streamMode == StreamMode.FRAMES_MISSING ? FRAME_COUNT - 3 : FRAMES_BEFORE_FAILURE;
+            JSONArray delays = new JSONArray();
+            for (int i = 0; i < announced; i++) {
+                if (rawFile != null) {
+                    appendRawFrame(rawFile, images[i]);
+                }
+                delays.put(10 * (i + 1));
+                sendEvent(out, "webp_frame", new JSONObject()
+                        .put("index", i)
+                        .put("delay", 10 * (i + 1))
+                        .put("frame", rawFile != null ? null : framePaths.getString(i))
+                        .put("task_id", WEBP_TASK_ID));
+            }
+            if (announced < FRAME_COUNT && !await(framesTaken)) {
+                return;
+            }
+
+            if (streamMode == StreamMode.DECODE_ERROR) {
+                sendEvent(out, "webp_error", new JSONObject().put("message", "解码出错"));
+            } else if (streamMode != StreamMode.CONNECTION_DROPPED) {
+                sendEvent(out, "webp_result", new JSONObject()
+                        .put("frameCount", FRAME_COUNT)
+                        .put("delays", delays)
+                        .put("frames", rawFile != null ? new JSONArray() : framePaths)
+                        .put("task_id", WEBP_TASK_ID));
+            }
+        }
+    }
+
+    private static void appendRawFrame(Path rawFile, BufferedImage image) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WIDTH * HEIGHT * 3);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int rgb = image.getRGB(x, y);
+                buffer.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+            }
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(rawFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void sendEvent(OutputStream out, String event, JSONObject data) throws IOException {
+        out.write(("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void reply(HttpExchange exchange, String body) throws IOException {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, data.length);
+        exchange.getResponseBody().write(data);
+        exchange.close();
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private File createInputFile() throws IOException {
+        return Files.write(tempDir.resolve("input.webp"), new byte[]{'R', 'I', 'F', 'F'}).toFile();
+    }
+
+    private String createResponse() {
+        JSONArray delays = new JSONArray();
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            delays.put(10 * (i + 1));
+        }
+        return new JSONObject()
+                .put("frameCount", FRAME_COUNT)
+                .put("delays", delays)
+                .put("frames", framePaths)
+                .toString();
+    }
+
+    private static BufferedImage createFrame(int index) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, (x * 5 + index * 20 & 0xFF) << 16 | (y * 7 & 0xFF) << 8 | (x * y + index & 0xFF));
+            }
+        }
+        return image;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual, String message) {
+        assertNotNull(actual, message + ": 应能解码");
+        assertEquals(expected.getWidth(), actual.getWidth(), message + ": 宽度");
+        assertEquals(expected.getHeight(), actual.getHeight(), message + ": 高度");
+        assertArrayEquals(expected.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+                actual.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH), message + ": 像素");
+    }
+}
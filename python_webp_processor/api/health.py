@@ -24,7 +24,8 @@ endpoints = [
     {"path": "/api/progress/{task_id}", "method": "GET", "description": "获取任务进度SSE流"},
     {"path": "/api/process-webp", "method": "POST", "description": "处理WebP动图提取帧"},
     {"path": "/api/create-webp-animation", "method": "POST", "description": "创建WebP动画"},
-    {"path": "/api/get-image/{file_path:path}", "method": "GET", "description": "获取图片文件"}
+    {"path": "/api/get-image/{file_path:path}", "method": "GET", "description": "获取图片文件"},
+    {"path": "/api/get-images", "method": "POST", "description": "批量获取图片文件"}
 ]
 
 class HealthResponse(BaseModel):
@@ -13,7 +13,7 @@ import os
 import time
 import uuid
 from datetime import datetime
-from typing import Dict, Any, Optional, List
+from typing import Dict, Any, Optional, List, Tuple
 
 import aioredis
 from aioredis import Redis
@@ -22,7 +22,7 @@ from sse_starlette.sse import EventSourceResponse
 
 from config import PROGRESS_UPDATE_INTERVAL
 from model.responseModel import ProgressCreateResponse, SuccessResponse
-from utils.utils import cleanup_temp_files
+from utils.utils import cleanup_temp_files, cleanup_shared_frames
 
 logger: logging.Logger = logging.getLogger(__name__)
 
@@ -44,6 +44,32 @@ redis_pool: Optional[Redis] = None
 # 应用引用
 app_ref = None
 
+#: str: 原子地截断进度信息列表的Lua脚本。列表超过上限时最多只保留最近的若干条，
+#: 并将删除的条数累加到偏移量中，事件生成器据此把已发送位置换算为列表下标。
+#: 只删除所有已连接客户端都已发送过的信息，没有客户端连接时不截断，避免未发送的事件丢失。
+_TRIM_PROGRESS_SCRIPT = """
+local count = redis.call('LLEN', KEYS[1])
+if count > tonumber(ARGV[1]) then
+    local sent = nil
+    for _, value in ipairs(redis.call('HVALS', KEYS[3])) do
+        local index = tonumber(value)
+        if sent == nil or index < sent then
+            sent = index
+        end
+    end
+    if sent ~= nil then
+        local offset = tonumber(redis.call('GET', KEYS[2]) or '0')
+        local removed = math.min(count - tonumber(ARGV[2]), sent + 1 - offset)
+        if removed > 0 then
+            redis.call('LTRIM', KEYS[1], removed, -1)
+            redis.call('INCRBY', KEYS[2], removed)
+            redis.call('EXPIRE', KEYS[2], 86400)
+        end
+    end
+end
+return count
+"""
+
 async def get_redis() -> Redis:
     """获取Redis连接，支持自动重连"""
     global redis_pool
@@ -176,7 +202,7 @@ async def create_progress():
             
             # 初始化进度存储，创建初始进度记录
             await execute_redis_operation(
-                lambda redis: redis.delete(f"progress:{task_id}")
+                lambda redis: redis.delete(f"progress:{task_id}", f"progress_offset:{task_id}", f"progress_sent:{task_id}")
             )
             
             # 创建初始进度记录
@@ -227,6 +253,58 @@ async def create_progress():
     return None
 
 
+async def _trim_progress_list(task_id: str) -> None:
+    """限制任务存储的进度信息数量，超过100条时最多只保留最近50条。
+
+    只删除所有客户端都已发送的信息，客户端发送较慢时列表会暂时超过上限。
+
+    Args:
+        task_id (str): 任务唯一标识符
+    """
+    await execute_redis_operation(
+        lambda redis: redis.eval(_TRIM_PROGRESS_SCRIPT, 3, f"progress:{task_id}", f"progress_offset:{task_id}",
+                                 f"progress_sent:{task_id}", 100, 50)
+    )
+
+
+async def _read_progress_list(task_id: str) -> Tuple[int, List[str]]:
+    """读取任务的进度信息列表。
+
+    列表可能已被截断，同时返回列表第一条信息在该任务所有信息中的序号。
+
+    Args:
+        task_id (str): 任务唯一标识符
+
+    Returns:
+        Tuple[int, List[str]]: 第一条信息的序号和进度信息列表。
+    """
+    async def read(redis):
+        async with redis.pipeline(transaction=True) as pipe:
+            pipe.get(f"progress_offset:{task_id}")
+            pipe.lrange(f"progress:{task_id}", 0, -1)
+            offset, progress_list = await pipe.execute()
+        return int(offset or 0), progress_list
+
+    return await execute_redis_operation(read)
+
+
+async def _record_sent_index(task_id: str, client_id: str, index: int) -> None:
+    """记录客户端已发送到的进度信息序号，截断进度列表时不会删除该序号之后的信息。
+
+    Args:
+        task_id (str): 任务唯一标识符
+        client_id (str): 客户端ID
+        index (int): 已发送的最后一条信息的序号，尚未发送任何信息时为-1
+    """
+    async def record(redis):
+        async with redis.pipeline(transaction=True) as pipe:
+            pipe.hset(f"progress_sent:{task_id}", client_id, index)
+            pipe.expire(f"progress_sent:{task_id}", 86400)
+            await pipe.execute()
+
+    await execute_redis_operation(record)
+
+
 async def progress_event_generator(task_id: str, client_id: str):
     """服务器发送事件 (SSE) 生成器。
 
@@ -241,25 +319,24 @@ async def progress_event_generator(task_id: str, client_id: str):
     """
     logger.debug(f"开始为任务 {task_id} 生成进度事件，客户端ID: {client_id}")
     
-    # 跟踪已发送的消息索引
+    # 跟踪已发送消息的序号（不受列表截断影响）
     last_sent_index = -1
     
     try:
-        # 注册客户端
+        # 注册客户端，并在发送前登记已发送位置，防止截断列表时删除尚未发送的信息
         await execute_redis_operation(
             lambda redis: redis.hset(f"clients:{task_id}", client_id, time.time())
         )
+        await _record_sent_index(task_id, client_id, last_sent_index)
         
         # 发送初始心跳
         yield send_heartbeat()
         last_heartbeat = time.time()
         
         # 发送已有的进度信息
-        progress_list = await execute_redis_operation(
-            lambda redis: redis.lrange(f"progress:{task_id}", 0, -1)
-        )
+        offset, progress_list = await _read_progress_list(task_id)
         if progress_list:
-            for index, info_str in enumerate(progress_list):
+            for index, info_str in enumerate(progress_list, start=offset):
                 try:
                     info = json.loads(info_str)
                     # 检查是否是自定义事件
@@ -285,6 +362,7 @@ async def progress_event_generator(task_id: str, client_id: str):
                 except json.JSONDecodeError:
                     logger.error(f"解析进度信息失败: {info_str}")
                     continue
+            await _record_sent_index(task_id, client_id, last_sent_index)
         
         connection_active = True
         
@@ -307,14 +385,14 @@ async def progress_event_generator(task_id: str, client_id: str):
                     break
                 
                 # 检查是否有新的进度更新
-                progress_list = await execute_redis_operation(
-                    lambda redis: redis.lrange(f"progress:{task_id}", 0, -1)
-                )
+                offset, progress_list = await _read_progress_list(task_id)
+                if last_sent_index + 1 < offset:
+                    logger.warning(f"任务 {task_id} 的进度信息 {last_sent_index + 1} 至 {offset - 1} 未发送即被截断")
                 if progress_list:
                     # 发送所有未发送的新消息
-                    for index in range(last_sent_index + 1, len(progress_list)):
+                    for index in range(max(last_sent_index + 1, offset), offset + len(progress_list)):
                         try:
-                            info_str = progress_list[index]
+                            info_str = progress_list[index - offset]
                             info = json.loads(info_str)
                             
                             # 检查是否是自定义事件
@@ -339,9 +417,11 @@ async def progress_event_generator(task_id: str, client_id: str):
                             info_str="未知错误"
                             logger.error(f"解析进度信息失败: {info_str}")
                             continue
+                    if connection_active:
+                        await _record_sent_index(task_id, client_id, last_sent_index)
                     
                     # 如果没有新消息且超过10秒，发送心跳
-                    if last_sent_index + 1 >= len(progress_list) and current_time - last_heartbeat > 10:
+                    if last_sent_index + 1 >= offset + len(progress_list) and current_time - last_heartbeat > 10:
                         # 检查客户端是否仍然存在
                         client_exists = await execute_redis_operation(
                             lambda redis: redis.hexists(f"clients:{task_id}", client_id)
@@ -388,6 +468,9 @@ async def progress_event_generator(task_id: str, client_id: str):
                     lambda redis: redis.hdel(f"clients:{task_id}", client_id)
                 )
                 logger.debug(f"客户端 {client_id} 从任务 {task_id} 断开连接")
+            await execute_redis_operation(
+                lambda redis: redis.hdel(f"progress_sent:{task_id}", client_id)
+            )
         except Exception as cleanup_error:
             logger.error(f"清理客户端连接时出错: {str(cleanup_error)}")
 
@@ -490,14 +573,7 @@ async def update_progress(
             )
             
             # 限制存储的进度信息数量，避免内存泄漏
-            progress_count = await execute_redis_operation(
-                lambda redis: redis.llen(f"progress:{task_id}")
-            )
-            if progress_count > 100:
-                # 保留最近50条
-                await execute_redis_operation(
-                    lambda redis: redis.ltrim(f"progress:{task_id}", -50, -1)
-                )
+            await _trim_progress_list(task_id)
             
             # 设置过期时间（24小时）
             await execute_redis_operation(
@@ -512,7 +588,7 @@ async def update_progress(
                     await asyncio.sleep(5)  # 等待5秒确保客户端收到最终进度
                     try:
                         await execute_redis_operation(
-                            lambda redis: redis.delete(f"progress:{task_id}")
+                            lambda redis: redis.delete(f"progress:{task_id}", f"progress_offset:{task_id}", f"progress_sent:{task_id}")
                         )
                         await execute_redis_operation(
                             lambda redis: redis.delete(f"clients:{task_id}")
@@ -575,14 +651,7 @@ async def send_event(task_id: str, event_type: str, data: Dict[str, Any], temp_p
             )
             
             # 限制存储的事件信息数量，避免内存泄漏
-            progress_count = await execute_redis_operation(
-                lambda redis: redis.llen(f"progress:{task_id}")
-            )
-            if progress_count > 100:
-                # 保留最近50条
-                await execute_redis_operation(
-                    lambda redis: redis.ltrim(f"progress:{task_id}", -50, -1)
-                )
+            await _trim_progress_list(task_id)
             
             # 设置过期时间（24小时）
             await execute_redis_operation(
@@ -638,6 +707,7 @@ async def close_progress_connection(task_id: str, close_reason: str = "TASK_COMP
             # 在错误或超时情况下，立即清理临时文件，不考虑保留时间
             try:
                 cleanup_temp_files(ignore_ttl=True)
+                cleanup_shared_frames(task_id)
                 logger.debug(f"已清理任务 {task_id} 的临时文件")
             except Exception as cleanup_error:
                 logger.error(f"清理任务 {task_id} 临时文件时出错: {str(cleanup_error)}")
@@ -689,7 +759,7 @@ async def close_progress_connection(task_id: str, close_reason: str = "TASK_COMP
             
             # 清理进度存储
             await execute_redis_operation(
-                lambda redis: redis.delete(f"progress:{task_id}")
+                lambda redis: redis.delete(f"progress:{task_id}", f"progress_offset:{task_id}", f"progress_sent:{task_id}")
             )
             logger.debug(f"已清理任务 {task_id} 的进度存储")
             
@@ -717,7 +787,7 @@ async def close_progress_connection(task_id: str, close_reason: str = "TASK_COMP
         # 即使出错，也尝试清理资源
         try:
             await execute_redis_operation(
-                lambda redis: redis.delete(f"progress:{task_id}")
+                lambda redis: redis.delete(f"progress:{task_id}", f"progress_offset:{task_id}", f"progress_sent:{task_id}")
             )
             await execute_redis_operation(
                 lambda redis: redis.delete(f"clients:{task_id}")
@@ -8,8 +8,11 @@
 import asyncio
 import json
 import logging
+import mmap
 import os
+import struct
 import threading
+import time
 import traceback
 from concurrent.futures import ThreadPoolExecutor
 from datetime import datetime
@@ -19,11 +22,12 @@ from urllib.parse import quote
 import requests
 from PIL import Image, ImageSequence
 from fastapi import APIRouter, UploadFile, File, Form, HTTPException, Path, BackgroundTasks
-from fastapi.responses import FileResponse
+from fastapi.responses import FileResponse, StreamingResponse
 
 from api.progress import update_progress, create_progress, send_event
-from config import TEMP_DIR, MAX_CONTENT_LENGTH, PROGRESS_UPDATE_INTERVAL, JAVA_BACKEND_URL
-from model.responseModel import AsyncTaskResponse, ProcessWebpResponse, CreateWebpResponse, ErrorResponse
+from config import TEMP_DIR, MAX_CONTENT_LENGTH, PROGRESS_UPDATE_INTERVAL, JAVA_BACKEND_URL, SHARED_FRAMES_DIR
+from model.responseModel import AsyncTaskResponse, ProcessWebpResponse, CreateWebpResponse, ErrorResponse, \
+    WebpHeaderResponse, WebpFrameResponse
 from utils.utils import cleanup_temp_files
 
 #: logging.Logger: 日志记录器实例。
@@ -116,20 +120,88 @@ async def get_image(file_path: str = Path(..., description="图片文件的路
         logger.error(f"获取图片时出错: {str(e)}")
         raise HTTPException(status_code=500, detail=f"获取图片时出错: {str(e)}")
 
+
+@router.post('/get-images', summary="批量获取处理后的图片文件")
+async def get_images(file_paths: str = Form(..., description="图片文件的相对路径列表（JSON格式，相对于TEMP_DIR）")):
+    """在一个响应中按请求顺序流式返回多个临时图片文件。
+
+    响应体由连续的帧记录组成，每条记录为4字节大端序的文件长度加文件内容，
+    客户端可以在收到每条记录后立即开始解码，不需要为每个文件单独发起请求。
+    所有文件都发送完成后才删除文件，传输中断时文件保留，客户端仍可逐个获取。
+
+    Args:
+        file_paths (str): 图片文件相对路径的JSON数组。
+
+    Returns:
+        StreamingResponse: application/octet-stream格式的帧记录流。
+
+    Raises:
+        HTTPException: 如果参数格式错误、文件不存在、路径非法或不是支持的图片格式，则返回400、404或403错误。
+    """
+    try:
+        file_paths_list = json.loads(file_paths)
+    except json.JSONDecodeError:
+        raise HTTPException(status_code=400, detail="file_paths参数格式错误")
+    if not isinstance(file_paths_list, list) or not file_paths_list:
+        raise HTTPException(status_code=400, detail="file_paths不能为空")
+
+    # 开始发送前检查所有文件，出错时直接返回错误状态
+    full_paths = []
+    temp_root = os.path.abspath(TEMP_DIR)
+    for file_path in file_paths_list:
+        full_path = os.path.abspath(os.path.join(TEMP_DIR, str(file_path)))
+        if not full_path.startswith(temp_root):
+            logger.warning(f"非法文件路径: {full_path}")
+            raise HTTPException(status_code=403, detail="非法文件路径")
+        if not os.path.isfile(full_path):
+            logger.warning(f"请求的文件不存在: {full_path}")
+            raise HTTPException(status_code=404, detail="请求的文件不存在")
+        if not full_path.lower().endswith(('.png', '.jpg', '.jpeg', '.gif', '.bmp', '.webp')):
+            logger.warning(f"请求的文件不是支持的图片格式: {full_path}")
+            raise HTTPException(status_code=400, detail="请求的文件不是支持的图片格式")
+        full_paths.append(full_path)
+
+    def frame_records():
+        """逐个读取文件并生成帧记录，全部发送后删除文件和空目录。"""
+        for full_path in full_paths:
+            with open(full_path, 'rb') as f:
+                data = f.read()
+            yield struct.pack('>I', len(data)) + data
+        for full_path in full_paths:
+            try:
+                if os.path.exists(full_path):
+                    os.remove(full_path)
+                dir_path = os.path.dirname(full_path)
+                if os.path.exists(dir_path) and dir_path != temp_root and len(os.listdir(dir_path)) == 0:
+                    os.rmdir(dir_path)
+                    logger.debug(f"空文件夹已删除: {dir_path}")
+            except Exception as ex:
+                logger.error(f"删除文件或文件夹时出错: {str(ex)}")
+        logger.debug(f"已批量传输并删除 {len(full_paths)} 个文件")
+
+    return StreamingResponse(frame_records(), media_type='application/octet-stream')
+
 @router.post('/process-webp', response_model=AsyncTaskResponse, summary="异步处理WebP动图")
 async def process_webp(
     background_tasks: BackgroundTasks,
     image: UploadFile = File(..., description="WebP动图文件"),
-    task_id: Optional[str] = Form(None, description="任务ID（可选）")
+    task_id: Optional[str] = Form(None, description="任务ID（可选）"),
+    shared_probe: Optional[str] = Form(None, description="后端在共享帧交换目录中创建的探测文件名（可选）"),
+    stream_frames: bool = Form(False, description="是否每解码一帧即通过SSE通知（可选）")
 ):
     """接收一个WebP动图文件，并在后台异步进行处理。
 
     此端点会立即返回一个任务ID，客户端可以通过SSE订阅该ID以获取实时进度和最终结果。
+    如果提供的探测文件在共享帧交换目录中可见，说明两个服务挂载了同一目录，
+    解码后的帧将以原始RGB数据写入该目录，不再逐帧编码为PNG。
+    启用逐帧通知时，每解码一帧即通过SSE发送 `webp_frame` 事件，客户端可以边解码边处理。
 
     Args:
         background_tasks (BackgroundTasks): FastAPI后台任务调度器。
         image (UploadFile): 用户上传的WebP格式动图文件。
         task_id (Optional[str]): 客户端提供的可选任务ID，用于跟踪。
+        shared_probe (Optional[str]): 后端在共享帧交换目录中创建的探测文件名。
+        stream_frames (bool): 是否每解码一帧即通过SSE通知。
 
     Returns:
         AsyncTaskResponse: 包含任务ID和初始状态的响应对象。
@@ -168,7 +240,10 @@ async def process_webp(
             logger.debug(f"使用请求提供的任务ID: {task_id}")
         
         # 在后台执行处理任务
-        background_tasks.add_task(_process_webp_sync, task_id, file_content, image.filename)
+        # 探测文件由后端在请求返回后删除，因此必须在此处同步检查
+        use_shared_frames = _shared_frames_available(shared_probe)
+        background_tasks.add_task(_process_webp_sync, task_id, file_content, image.filename, use_shared_frames,
+                                  stream_frames)
         
         return AsyncTaskResponse(
             task_id=task_id,
@@ -182,23 +257,58 @@ async def process_webp(
         logger.error(f"启动WebP处理任务时出错: {str(e)}")
         raise HTTPException(status_code=500, detail=f"启动任务失败: {str(e)}")
 
+def _shared_frames_available(shared_probe: Optional[str]) -> bool:
+    """检查是否可以通过共享帧交换目录与Java后端交换帧。
+
+    只有配置了 `SHARED_FRAMES_DIR`，并且后端创建的探测文件在该目录中可见时才返回True，
+    避免两个服务实际未挂载同一目录时后端找不到帧文件。
+
+    Args:
+        shared_probe (Optional[str]): 后端创建的探测文件名。
+
+    Returns:
+        bool: 是否使用共享目录交换帧。
+    """
+    if not SHARED_FRAMES_DIR or not shared_probe:
+        return False
+    if os.path.basename(shared_probe) != shared_probe:
+        logger.warning(f"共享帧探测文件名无效: {shared_probe}")
+        return False
+    if not os.path.isfile(os.path.join(SHARED_FRAMES_DIR, shared_probe)):
+        logger.warning(f"共享帧交换目录中未找到探测文件 {shared_probe}，改为通过HTTP传输帧")
+        return False
+    return True
+
 async def _process_webp_sync(
     task_id: str,
     file_content: bytes,
-    filename: str
+    filename: str,
+    use_shared_frames: bool = False,
+    stream_frames: bool = False
 ):
     """在后台同步处理WebP文件，包括提取帧和调用字符画转换。
 
     这是一个后台任务，负责处理WebP文件的核心逻辑。它会更新任务进度，
     提取所有帧，然后将每一帧发送到Java后端进行字符画转换。
 
+    使用共享帧交换目录时，所有帧按帧序以原始RGB数据写入同一个内存映射文件，
+    第i帧位于 `i * width * height * 3` 字节处，后端直接映射该文件读取，不经过PNG编解码和HTTP传输。
+
+    启用逐帧通知时，开始解码前先发送包含帧数和画布尺寸的 `webp_header` 事件，
+    之后每解码一帧即发送 `webp_frame` 事件，全部帧解码完成后仍发送 `webp_result` 事件。
+
     Args:
         task_id (str): 用于跟踪进度的任务ID。
         file_content (bytes): WebP文件的二进制内容。
         filename (str): 原始文件名。
+        use_shared_frames (bool): 是否通过共享帧交换目录交换帧。
+        stream_frames (bool): 是否每解码一帧即通过SSE通知。
     """
     temp_path = None
     frames_dir = None
+    raw_path = None
+    raw_file = None
+    raw_map = None
     try:
         file_size = len(file_content)
         
@@ -244,25 +354,51 @@ async def _process_webp_sync(
             # 提取每一帧和延迟信息
             delays = []
             frame_paths = []
+            width, height = img.size
+            frame_bytes = width * height * 3
             
-            # 创建临时目录来存储帧
             timestamp = datetime.now().strftime('%Y%m%d%H%M%S')
-            frames_dir = os.path.join(TEMP_DIR, f"webp_frames_{timestamp}")
-            os.makedirs(frames_dir, exist_ok=True)
-            logger.debug(f"任务 {task_id}: 创建临时目录存储帧: {frames_dir}")
+            if use_shared_frames:
+                # 在共享目录中创建容纳所有帧的文件并映射到内存
+                raw_filename = f"webp_frames_{timestamp}_{task_id}.raw"
+                raw_path = os.path.join(SHARED_FRAMES_DIR, raw_filename)
+                raw_file = open(raw_path, 'w+b')
+                raw_file.truncate(frame_bytes * frame_count)
+                raw_map = mmap.mmap(raw_file.fileno(), frame_bytes * frame_count)
+                logger.debug(f"任务 {task_id}: 创建共享帧文件: {raw_path}")
+            else:
+                # 创建临时目录来存储帧
+                frames_dir = os.path.join(TEMP_DIR, f"webp_frames_{timestamp}")
+                os.makedirs(frames_dir, exist_ok=True)
+                logger.debug(f"任务 {task_id}: 创建临时目录存储帧: {frames_dir}")
             
-            for i, frame in enumerate(ImageSequence.Iterator(img)):
-                # 计算当前进度
-                current_progress = 33.0 + ((i+1) / float(frame_count)) * (37.0 - 33.0)
-                await update_progress(
-                    task_id, 
-                    current_progress, 
-                    f"正在处理第 {i+1}/{frame_count} 帧",
-                    "帧提取",
-                    i+1,  # 当前帧索引
-                    frame_count  # 总帧数
+            if stream_frames:
+                header_response = WebpHeaderResponse(
+                    frameCount=frame_count,
+                    width=width,
+                    height=height,
+                    task_id=task_id,
+                    rawFrames=os.path.basename(raw_path) if raw_path else None
                 )
-                logger.debug(f"任务 {task_id}: 进度更新 {current_progress}%, 处理第 {i+1}/{frame_count} 帧")
+                await send_event(task_id, "webp_header", header_response.model_dump())
+            
+            # 逐帧通知时不在每帧之后等待，进度更新按时间间隔节流
+            last_progress_time = 0.0
+            for i, frame in enumerate(ImageSequence.Iterator(img)):
+                now = time.monotonic()
+                if not stream_frames or now - last_progress_time >= PROGRESS_UPDATE_INTERVAL or i + 1 == frame_count:
+                    last_progress_time = now
+                    # 计算当前进度
+                    current_progress = 33.0 + ((i+1) / float(frame_count)) * (37.0 - 33.0)
+                    await update_progress(
+                        task_id, 
+                        current_progress, 
+                        f"正在处理第 {i+1}/{frame_count} 帧",
+                        "帧提取",
+                        i+1,  # 当前帧索引
+                        frame_count  # 总帧数
+                    )
+                    logger.debug(f"任务 {task_id}: 进度更新 {current_progress}%, 处理第 {i+1}/{frame_count} 帧")
                 
                 # 复制帧以避免引用问题
                 frame_copy = frame.copy()
@@ -271,34 +407,64 @@ async def _process_webp_sync(
                 if frame_copy.mode != 'RGB':
                     frame_copy = frame_copy.convert('RGB')
                 
-                # 保存帧到临时文件
-                frame_filename = f"frame_{i:04d}.png"
-                frame_path = os.path.join(frames_dir, frame_filename)
-                frame_copy.save(frame_path, format="PNG")
-                # 添加相对路径而非绝对路径
-                relative_path = os.path.join(os.path.basename(frames_dir), frame_filename)
-                frame_paths.append(relative_path)
+                if raw_map is not None:
+                    # 将帧的原始RGB数据写入共享帧文件
+                    if frame_copy.size != (width, height):
+                        raise ValueError(f"第 {i+1} 帧尺寸 {frame_copy.size} 与画布尺寸 {(width, height)} 不一致")
+                    relative_path = None
+                    raw_map[i * frame_bytes:(i + 1) * frame_bytes] = frame_copy.tobytes()
+                else:
+                    # 保存帧到临时文件；逐帧通知时已取走的帧会被删除，目录为空时也会被删除，需要重新创建
+                    os.makedirs(frames_dir, exist_ok=True)
+                    frame_filename = f"frame_{i:04d}.png"
+                    frame_path = os.path.join(frames_dir, frame_filename)
+                    frame_copy.save(frame_path, format="PNG")
+                    # 添加相对路径而非绝对路径
+                    relative_path = os.path.join(os.path.basename(frames_dir), frame_filename)
+                    frame_paths.append(relative_path)
                 
                 # 获取帧延迟（毫秒）
                 # WebP帧延迟存储在info字典中，如果没有则使用默认值100ms
                 delay = frame.info.get('duration', 100)
                 delays.append(delay)
                 
-                logger.debug(f"任务 {task_id}: 处理第 {i+1}/{frame_count} 帧, 延迟: {delay}ms, 保存到: {frame_path}")
+                if stream_frames:
+                    frame_response = WebpFrameResponse(index=i, delay=delay, frame=relative_path, task_id=task_id)
+                    await send_event(task_id, "webp_frame", frame_response.model_dump())
                 
-                # 添加短暂延迟，避免进度更新过于频繁，减少CPU占用
-                await asyncio.sleep(PROGRESS_UPDATE_INTERVAL)
+                if raw_map is not None:
+                    logger.debug(f"任务 {task_id}: 处理第 {i+1}/{frame_count} 帧, 延迟: {delay}ms, 写入共享帧文件: {raw_path} 偏移 {i * frame_bytes}")
+                else:
+                    logger.debug(f"任务 {task_id}: 处理第 {i+1}/{frame_count} 帧, 延迟: {delay}ms, 保存到: {frame_path}")
+                
+                if stream_frames:
+                    # 只让出事件循环以便及时推送帧通知，不等待
+                    await asyncio.sleep(0)
+                else:
+                    # 添加短暂延迟，避免进度更新过于频繁，减少CPU占用
+                    await asyncio.sleep(PROGRESS_UPDATE_INTERVAL)
             
             # 更新进度：完成处理
             await update_progress(task_id, 37.0, "帧提取完成，准备返回结果", "完成", frame_count, frame_count)
             logger.debug(f"任务 {task_id}: 所有帧提取完成，进度更新 37%")
             
+            # 共享帧文件需在通知后端之前写回磁盘并关闭
+            if raw_map is not None:
+                raw_map.flush()
+                raw_map.close()
+                raw_map = None
+                raw_file.close()
+                raw_file = None
+            
             # 构建结果数据，使用 ProcessWebpResponse 模型
             result_response = ProcessWebpResponse(
                 frameCount=frame_count,
                 delays=delays,
                 frames=frame_paths,
-                task_id=task_id
+                task_id=task_id,
+                rawFrames=os.path.basename(raw_path) if raw_path else None,
+                width=width,
+                height=height
             )
 
             # 通过SSE发送处理结果
@@ -324,6 +490,12 @@ async def _process_webp_sync(
             temp_paths_to_clean.append(temp_path)
         if frames_dir and os.path.exists(frames_dir):
             temp_paths_to_clean.append(frames_dir)
+        if raw_map is not None:
+            raw_map.close()
+        if raw_file is not None:
+            raw_file.close()
+        if raw_path and os.path.exists(raw_path):
+            temp_paths_to_clean.append(raw_path)
         
         # 构建错误结果数据，使用 ErrorResponse 模型
         error_response = ErrorResponse(
@@ -349,7 +521,8 @@ async def create_webp_animation(
     frame_paths: str = Form(..., description="帧文件路径列表（JSON格式）"),
     delays: str = Form(..., description="延迟时间列表（JSON格式，毫秒）"),
     frame_format: str = Form(..., description="帧格式列表（JSON格式）"),
-    task_id: Optional[str] = Form(None, description="任务ID（可选）")
+    task_id: Optional[str] = Form(None, description="任务ID（可选）"),
+    frame_offsets: Optional[str] = Form(None, description="帧偏移量列表（JSON格式，[[x, y], ...]，可选）")
 ):
     """从一系列帧图像异步创建WebP动画。
 
@@ -362,6 +535,8 @@ async def create_webp_animation(
         delays (str): 包含各帧延迟时间的JSON字符串数组（毫秒）。
         frame_format (str): 包含各帧格式的JSON字符串数组。
         task_id (Optional[str]): 客户端提供的可选任务ID。
+        frame_offsets (Optional[str]): 包含各帧在画布上位置的JSON数组。提供时，第一帧为完整画布，
+            之后的帧只包含相对上一帧发生变化的区域，按位置叠加到上一帧上合成完整帧。
 
     Returns:
         AsyncTaskResponse: 包含任务ID和初始状态的响应对象。
@@ -394,6 +569,18 @@ async def create_webp_animation(
             logger.warning(f"解析帧格式信息失败: {str(e)}")
             raise HTTPException(status_code=400, detail=f"解析帧格式信息失败: {str(e)}")
         
+        # 解析帧偏移量信息
+        frame_offsets_list = None
+        if frame_offsets:
+            try:
+                frame_offsets_list = json.loads(frame_offsets)
+            except json.JSONDecodeError as e:
+                logger.warning(f"解析帧偏移量信息失败: {str(e)}")
+                raise HTTPException(status_code=400, detail=f"解析帧偏移量信息失败: {str(e)}")
+            if len(frame_offsets_list) != len(frame_paths_list):
+                logger.warning(f"帧数量({len(frame_paths_list)})与帧偏移量数量({len(frame_offsets_list)})不匹配")
+                raise HTTPException(status_code=400, detail="帧数量与帧偏移量数量不匹配")
+        
         # 获取或创建任务ID
         if not task_id:
             progress_response = await create_progress()
@@ -413,7 +600,8 @@ async def create_webp_animation(
             raise HTTPException(status_code=400, detail="没有提供帧")
         
         # 在后台执行处理任务
-        background_tasks.add_task(_create_webp_animation_sync, task_id, frame_paths_list, delays_list, frame_format_list)
+        background_tasks.add_task(_create_webp_animation_sync, task_id, frame_paths_list, delays_list, frame_format_list,
+                                  frame_offsets_list)
         
         return AsyncTaskResponse(
             task_id=task_id,
@@ -480,11 +668,34 @@ async def _save_webp_with_progress(frames_pil: List[Image.Image], output_path: s
         # 保存完成，更新进度到98%
         await update_progress(task_id, 98.0, "WebP动画保存完成", "合成")
 
+def _compose_partial_frames(frames_pil: List[Image.Image], frame_offsets_list: List[List[int]]) -> List[Image.Image]:
+    """将局部帧按偏移量依次叠加到画布上，得到完整帧。
+
+    第一帧为完整画布，之后每帧只包含相对上一帧发生变化的矩形区域，
+    覆盖到上一帧画布的副本上即得到该帧的完整图像。
+
+    Args:
+        frames_pil (List[Image.Image]): 第一帧为完整帧、其余为局部帧的图像列表。
+        frame_offsets_list (List[List[int]]): 每帧在画布上的位置[x, y]。
+
+    Returns:
+        List[Image.Image]: 完整帧列表。
+    """
+    canvas = frames_pil[0].convert('RGB')
+    composed = [canvas]
+    for frame, offset in zip(frames_pil[1:], frame_offsets_list[1:]):
+        canvas = canvas.copy()
+        canvas.paste(frame.convert('RGB'), (int(offset[0]), int(offset[1])))
+        composed.append(canvas)
+    return composed
+
+
 async def _create_webp_animation_sync(
     task_id: str,
     frame_paths_list: List[str],
     delays_list: List[int],
-    frame_format_list: List[str]
+    frame_format_list: List[str],
+    frame_offsets_list: Optional[List[List[int]]] = None
 ):
     """在后台同步创建WebP动画。
 
@@ -496,6 +707,7 @@ async def _create_webp_animation_sync(
         frame_paths_list (List[str]): 从Java后端获取的各帧的相对路径列表。
         delays_list (List[int]): 每帧的延迟时间列表（毫秒）。
         frame_format_list (List[str]): 每帧的图像格式列表。
+        frame_offsets_list (Optional[List[List[int]]]): 每帧在画布上的位置，提供时先将局部帧合成为完整帧。
     """
     temp_dir = None
     output_path = None
@@ -648,6 +860,9 @@ async def _create_webp_animation_sync(
             # 从临时文件加载所有帧图像，需要使用绝对路径
             absolute_frame_paths = [os.path.join(TEMP_DIR, path) for path in saved_frame_paths]
             frames_pil = [Image.open(frame_path) for frame_path in absolute_frame_paths]
+            if frame_offsets_list:
+                # 局部帧按偏移量叠加到上一帧上，合成完整帧
+                frames_pil = _compose_partial_frames(frames_pil, frame_offsets_list)
             
             # 更新进度
             await update_progress(task_id, 97.0, "正在合成WebP动画", "合成")
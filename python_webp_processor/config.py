@@ -71,6 +71,13 @@ else:
 logger.info(f"临时文件目录: {TEMP_DIR} (自动清理: {SHOULD_CLEANUP_TEMP_DIR})")
 logger.info(f"日志文件路径: {LOG_FILE}")
 
+#: str: 与Java后端共享的帧交换目录，从环境变量 `SHARED_FRAMES_DIR` 读取，默认为空（不启用）。
+#: 两个服务挂载同一目录时，解码后的帧以原始RGB数据写入该目录，由后端直接映射读取。
+SHARED_FRAMES_DIR = os.environ.get('SHARED_FRAMES_DIR', '')
+if SHARED_FRAMES_DIR:
+    os.makedirs(SHARED_FRAMES_DIR, exist_ok=True)
+    logger.info(f"共享帧交换目录: {SHARED_FRAMES_DIR}")
+
 #: int: 临时文件的保留时间（秒），从环境变量 `TEMP_FILE_TTL` 读取，默认3600秒（1小时）。
 TEMP_FILE_TTL = int(os.environ.get('TEMP_FILE_TTL', '3600'))
 
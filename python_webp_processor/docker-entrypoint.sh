@@ -101,6 +101,17 @@ if [ ! -z "$JAVA_BACKEND_URL" ]; then
   sed -i "/^JAVA_BACKEND_URL=/c\JAVA_BACKEND_URL=$JAVA_BACKEND_URL" "$ENV_FILE"
 fi
 
+# 共享帧交换目录
+if [ ! -z "$SHARED_FRAMES_DIR" ]; then
+  mkdir -p "$SHARED_FRAMES_DIR"
+  if ! grep -q "^SHARED_FRAMES_DIR=" "$ENV_FILE"; then
+    echo "" >> "$ENV_FILE"
+    echo "SHARED_FRAMES_DIR=$SHARED_FRAMES_DIR" >> "$ENV_FILE"
+  else
+    sed -i "/^SHARED_FRAMES_DIR=/c\SHARED_FRAMES_DIR=$SHARED_FRAMES_DIR" "$ENV_FILE"
+  fi
+fi
+
 # 显示配置信息
 echo "WebP处理服务配置:"
 echo "-------------------"
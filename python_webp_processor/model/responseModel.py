@@ -39,13 +39,49 @@ class ProcessWebpResponse(BaseModel):
     Attributes:
         frameCount (int): 动画帧数
         delays (List[int]): 每帧延迟时间列表（毫秒）
-        frames (List[str]): 提取的帧文件路径列表
+        frames (List[str]): 提取的帧文件路径列表，通过共享目录交换帧时为空
         task_id (str): 任务唯一标识符
+        rawFrames (Optional[str]): 共享目录中原始RGB帧文件的文件名（如果使用共享目录交换帧）
+        width (Optional[int]): 原始帧的宽度（像素）
+        height (Optional[int]): 原始帧的高度（像素）
     """
     frameCount: int
     delays: List[int]
     frames: List[str]
     task_id: str
+    rawFrames: Optional[str] = None
+    width: Optional[int] = None
+    height: Optional[int] = None
+
+class WebpHeaderResponse(BaseModel):
+    """WebP逐帧通知的头信息模型，在解码第一帧之前发送。
+
+    Attributes:
+        frameCount (int): 动画帧数
+        width (int): 帧宽度（像素）
+        height (int): 帧高度（像素）
+        task_id (str): 任务唯一标识符
+        rawFrames (Optional[str]): 共享目录中原始RGB帧文件的文件名（如果使用共享目录交换帧）
+    """
+    frameCount: int
+    width: int
+    height: int
+    task_id: str
+    rawFrames: Optional[str] = None
+
+class WebpFrameResponse(BaseModel):
+    """WebP逐帧通知的单帧模型，每解码一帧发送一次。
+
+    Attributes:
+        index (int): 帧序号（从0开始）
+        delay (int): 帧延迟时间（毫秒）
+        frame (Optional[str]): 帧文件路径，通过共享目录交换帧时为空
+        task_id (str): 任务唯一标识符
+    """
+    index: int
+    delay: int
+    frame: Optional[str] = None
+    task_id: str
 
 class ProgressCreateResponse(BaseModel):
     """创建进度跟踪响应模型。
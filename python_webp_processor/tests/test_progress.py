@@ -0,0 +1,93 @@
+"""
+@file: test_progress.py
+@description: 进度管理API测试
+
+验证进度信息列表截断时不会丢失尚未通过SSE发送的事件。
+在 python_webp_processor 目录下运行: python -m unittest discover -s tests -t .
+测试依赖见 requirements-dev.txt。
+"""
+import asyncio
+import json
+import unittest
+from unittest import mock
+
+try:
+    from fakeredis import aioredis as fake_aioredis
+except ImportError:
+    fake_aioredis = None
+
+from api import progress
+
+
+@unittest.skipIf(fake_aioredis is None, "需要安装 fakeredis[lua]")
+class ProgressEventGeneratorTest(unittest.IsolatedAsyncioTestCase):
+    """进度事件生成器与进度列表截断的测试。"""
+
+    async def asyncSetUp(self):
+        self.redis = fake_aioredis.FakeRedis(decode_responses=True)
+        patchers = [
+            mock.patch.object(progress, "redis_pool", self.redis),
+            mock.patch.object(progress, "PROGRESS_UPDATE_INTERVAL", 0.01),
+        ]
+        for patcher in patchers:
+            patcher.start()
+            self.addCleanup(patcher.stop)
+        self.task_id = (await progress.create_progress()).task_id
+
+    async def asyncTearDown(self):
+        await self.redis.flushall()
+
+    async def _send_frames(self, start: int, count: int) -> None:
+        for index in range(start, start + count):
+            await progress.send_event(self.task_id, "webp_frame", {"frameIndex": index})
+
+    async def test_generator_sendsAllEvents_WhenPushedBeforePoll(self):
+        generator = progress.progress_event_generator(self.task_id, "client")
+        try:
+            self.assertEqual("heartbeat", (await generator.__anext__())["event"])
+            self.assertEqual("webp", (await generator.__anext__())["event"])
+
+            # 生成器轮询之前写入超过截断上限的事件
+            await self._send_frames(0, 150)
+
+            frames = []
+            while len(frames) < 150:
+                event = await asyncio.wait_for(generator.__anext__(), timeout=5)
+                if event.get("event") == "webp_frame":
+                    frames.append(json.loads(event["data"])["frameIndex"])
+        finally:
+            await generator.aclose()
+
+        self.assertEqual(list(range(150)), frames)
+
+    async def test_trim_keepsAllEvents_WhenNoClientConnected(self):
+        await self._send_frames(0, 150)
+
+        offset, progress_list = await progress._read_progress_list(self.task_id)
+        self.assertEqual(0, offset)
+        self.assertEqual(151, len(progress_list))
+
+    async def test_trim_removesOnlySentEvents(self):
+        await progress._record_sent_index(self.task_id, "client", -1)
+        await self._send_frames(0, 150)
+        offset, progress_list = await progress._read_progress_list(self.task_id)
+        self.assertEqual(0, offset)
+        self.assertEqual(151, len(progress_list))
+
+        # 已发送到序号60，截断只能删除序号0至60的信息
+        await progress._record_sent_index(self.task_id, "client", 60)
+        await self._send_frames(150, 1)
+        offset, progress_list = await progress._read_progress_list(self.task_id)
+        self.assertEqual(61, offset)
+        self.assertEqual(60, json.loads(progress_list[0])["data"]["frameIndex"])
+
+        # 全部发送后最多保留最近50条
+        await progress._record_sent_index(self.task_id, "client", offset + len(progress_list) - 1)
+        await self._send_frames(151, 10)
+        offset, progress_list = await progress._read_progress_list(self.task_id)
+        self.assertEqual(50, len(progress_list))
+        self.assertEqual(160, json.loads(progress_list[-1])["data"]["frameIndex"])
+
+
+if __name__ == "__main__":
+    unittest.main()
@@ -1,7 +1,7 @@
 import logging
 import os
 import time
-from config import TEMP_DIR, TEMP_FILE_TTL
+from config import TEMP_DIR, TEMP_FILE_TTL, SHARED_FRAMES_DIR
 
 logger: logging.Logger = logging.getLogger(__name__)
 
@@ -46,42 +46,70 @@ def cleanup_temp_files(ignore_ttl=False, target_path=None):
                     logger.warning(f"删除指定目录失败 {target_path}: {e}")
                 return
         
-        # 默认行为：清理临时目录
-        if not os.path.exists(TEMP_DIR):
-            return
-        
+        # 默认行为：清理临时目录；按保留时间清理时还清理后端未能删除的共享帧文件。
+        # 共享目录中可能有其他任务正在使用的帧文件和探测文件，因此忽略保留时间时不清理共享目录
         current_time = time.time()
         cutoff_time = current_time - TEMP_FILE_TTL
+        cleanup_dirs = (TEMP_DIR,) if ignore_ttl else (TEMP_DIR, SHARED_FRAMES_DIR)
         
-        for filename in os.listdir(TEMP_DIR):
-            file_path = os.path.join(TEMP_DIR, filename)
+        for cleanup_dir in cleanup_dirs:
+            if not cleanup_dir or not os.path.exists(cleanup_dir):
+                continue
             
-            # 跳过目录
-            if os.path.isdir(file_path):
-                # 检查目录是否为空，如果为空则删除
+            for filename in os.listdir(cleanup_dir):
+                file_path = os.path.join(cleanup_dir, filename)
+                
+                # 跳过目录
+                if os.path.isdir(file_path):
+                    # 检查目录是否为空，如果为空则删除
+                    try:
+                        if not os.listdir(file_path):
+                            os.rmdir(file_path)
+                            logger.debug(f"删除空目录: {file_path}")
+                    except OSError:
+                        pass
+                    continue
+                
+                # 根据ignore_ttl参数决定是否检查文件修改时间
                 try:
-                    if not os.listdir(file_path):
-                        os.rmdir(file_path)
-                        logger.debug(f"删除空目录: {file_path}")
-                except OSError:
-                    pass
+                    should_delete = ignore_ttl
+                    if not ignore_ttl:
+                        file_mtime = os.path.getmtime(file_path)
+                        should_delete = file_mtime < cutoff_time
+                    
+                    if should_delete:
+                        os.remove(file_path)
+                        if ignore_ttl:
+                            logger.debug(f"强制删除文件: {file_path}")
+                        else:
+                            logger.info(f"删除过期文件: {file_path}")
+                except OSError as e:
+                    logger.warning(f"删除文件失败 {file_path}: {e}")
+                    
+    except Exception as e:
+        logger.error(f"清理临时文件时出错: {e}")
+
+def cleanup_shared_frames(task_id):
+    """清理指定任务写入共享帧目录的帧文件。
+    
+    共享帧文件按 webp_frames_{时间戳}_{任务ID}.raw 命名，只删除属于该任务的文件，
+    不影响其他任务正在使用的帧文件和探测文件。
+    
+    Args:
+        task_id (str): 任务唯一标识符
+    """
+    if not task_id or not SHARED_FRAMES_DIR or not os.path.isdir(SHARED_FRAMES_DIR):
+        return
+    suffix = f"_{task_id}.raw"
+    try:
+        for filename in os.listdir(SHARED_FRAMES_DIR):
+            if not (filename.startswith("webp_frames_") and filename.endswith(suffix)):
                 continue
-            
-            # 根据ignore_ttl参数决定是否检查文件修改时间
+            file_path = os.path.join(SHARED_FRAMES_DIR, filename)
             try:
-                should_delete = ignore_ttl
-                if not ignore_ttl:
-                    file_mtime = os.path.getmtime(file_path)
-                    should_delete = file_mtime < cutoff_time
-                
-                if should_delete:
-                    os.remove(file_path)
-                    if ignore_ttl:
-                        logger.debug(f"强制删除文件: {file_path}")
-                    else:
-                        logger.info(f"删除过期文件: {file_path}")
+                os.remove(file_path)
+                logger.debug(f"删除任务 {task_id} 的共享帧文件: {file_path}")
             except OSError as e:
-                logger.warning(f"删除文件失败 {file_path}: {e}")
-                
+                logger.warning(f"删除共享帧文件失败 {file_path}: {e}")
     except Exception as e:
-        logger.error(f"清理临时文件时出错: {e}")
\ No newline at end of file
+        logger.error(f"清理任务 {task_id} 的共享帧文件时出错: {e}")